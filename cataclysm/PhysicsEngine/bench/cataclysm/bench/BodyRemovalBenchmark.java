@@ -0,0 +1,98 @@
+package cataclysm.bench;
+
+import java.util.Random;
+
+import cataclysm.DefaultParameters;
+import cataclysm.PhysicsWorld;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.WrapperBuilder;
+import cataclysm.wrappers.WrapperFactory;
+import math.vector.Matrix4f;
+
+/**
+ * Measures the removal of many bodies in a single frame. <br>
+ * <br>
+ * 10k spheres are created on a grid and inserted by a first update. They are
+ * then deleted in a random order, either one by one with
+ * {@link PhysicsWorld#deleteBody(long)} or at once with
+ * {@link PhysicsWorld#deleteBodies(long[])}, and the next update processes the
+ * removals. The duration of the delete calls and of that update are printed
+ * separately. Each mode is run several times, the first rounds warm up the JIT.
+ * <br>
+ * <br>
+ * Usage: {@code BodyRemovalBenchmark [single|bulk] [bodies]}, both modes and
+ * 10000 bodies by default.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class BodyRemovalBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		String[] modes = args.length > 0 ? new String[] { args[0] } : new String[] { "single", "bulk" };
+		int bodies = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		for (String mode : modes) {
+			for (int round = 0; round < ROUNDS; round++) {
+				run(mode, bodies, round);
+			}
+		}
+	}
+
+	private static void run(String mode, int count, int round) {
+		PhysicsWorld world = new PhysicsWorld(new DefaultParameters(), 1);
+		WrapperBuilder sphere = new WrapperFactory().newSphere(0.4f);
+
+		int side = (int) Math.ceil(Math.cbrt(count));
+		Matrix4f[] transforms = new Matrix4f[count];
+		for (int i = 0; i < count; i++) {
+			transforms[i] = new Matrix4f();
+			transforms[i].setIdentity();
+			transforms[i].m30 = (i % side) * 2.0f;
+			transforms[i].m31 = ((i / side) % side) * 2.0f;
+			transforms[i].m32 = (i / (side * side)) * 2.0f;
+		}
+		RigidBody[] bodies = world.newBodies(transforms, sphere);
+		world.update(1);
+
+		long[] IDs = new long[count];
+		for (int i = 0; i < count; i++) {
+			IDs[i] = bodies[i].getID();
+		}
+		Random random = new Random(42);
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			long temp = IDs[i];
+			IDs[i] = IDs[j];
+			IDs[j] = temp;
+		}
+
+		long start = System.nanoTime();
+		int deleted = 0;
+		switch (mode) {
+		case "single":
+			for (long ID : IDs) {
+				if (world.deleteBody(ID)) {
+					deleted++;
+				}
+			}
+			break;
+		case "bulk":
+			deleted = world.deleteBodies(IDs);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid mode, should be single or bulk, got " + mode);
+		}
+		long deleteTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		world.update(1);
+		long updateTime = System.nanoTime() - start;
+
+		System.out.printf("%s round %d: %d bodies deleted | delete calls %.2f ms | update %.2f ms | %d left%n", mode,
+				round, deleted, deleteTime * 1e-6, updateTime * 1e-6, world.getBodyManager().size());
+		world.cleanUp();
+	}
+
+}
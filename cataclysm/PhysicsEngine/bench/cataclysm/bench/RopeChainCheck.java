@@ -0,0 +1,107 @@
+package cataclysm.bench;
+
+import cataclysm.DefaultParameters;
+import cataclysm.PhysicsWorld;
+import cataclysm.constraints.AnchorPoint;
+import cataclysm.constraints.DistanceConstraint;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.WrapperFactory;
+import math.vector.Vector3f;
+
+/**
+ * Measures how much a rope stretches with and without
+ * {@link DefaultParameters#setDirectChainSolver(boolean)}. <br>
+ * <br>
+ * A rope of 40 links of length 1 is made of spheres joined by
+ * {@link DistanceConstraint}s, its first sphere hangs from a static anchor
+ * point. The rope starts horizontal and swings down under gravity for 5 s, at
+ * the default time step and iteration counts. The length of the rope, the sum
+ * of the distances between consecutive anchor points, is printed every second
+ * along with the worst stretch of a single link. <br>
+ * <br>
+ * Usage: {@code RopeChainCheck [iterative|direct] [sequential|packed]}, all the
+ * combinations are run by default. The exit code is 1 if the rope solved
+ * directly ends more than 5% longer than at rest.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class RopeChainCheck {
+
+	private static final int LINKS = 40;
+	private static final int SECONDS = 5;
+	private static final float TOLERANCE = 0.05f;
+
+	public static void main(String[] args) {
+		String[] solvers = args.length > 0 ? new String[] { args[0] } : new String[] { "iterative", "direct" };
+		String[] packings = args.length > 1 ? new String[] { args[1] } : new String[] { "sequential", "packed" };
+		boolean valid = true;
+		for (String packing : packings) {
+			for (String solver : solvers) {
+				valid &= run(solver, packing);
+			}
+		}
+		if (!valid) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean run(String solver, String packing) {
+		DefaultParameters params = new DefaultParameters();
+		switch (solver) {
+		case "iterative":
+			params.setDirectChainSolver(false);
+			break;
+		case "direct":
+			params.setDirectChainSolver(true);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid solver, should be iterative or direct, got " + solver);
+		}
+		switch (packing) {
+		case "sequential":
+			params.setPackedSolver(false);
+			break;
+		case "packed":
+			params.setPackedSolver(true);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid packing, should be sequential or packed, got " + packing);
+		}
+		PhysicsWorld world = new PhysicsWorld(params, 1);
+
+		WrapperFactory factory = new WrapperFactory();
+		RigidBody[] links = new RigidBody[LINKS];
+		AnchorPoint[] heads = new AnchorPoint[LINKS + 1];
+		AnchorPoint[] tails = new AnchorPoint[LINKS];
+		heads[0] = new AnchorPoint(new Vector3f(0, 50, 0));
+		for (int i = 0; i < LINKS; i++) {
+			links[i] = world.newBody(new Vector3f(i + 1, 50, 0), factory.newSphere(0.3f));
+			tails[i] = new AnchorPoint(new Vector3f(), links[i]);
+			world.addConstraint(new DistanceConstraint(heads[i], tails[i]));
+			heads[i + 1] = new AnchorPoint(new Vector3f(), links[i]);
+		}
+
+		int framesPerSecond = Math.round(1.0f / params.getTimeStep());
+		float length = 0;
+		for (int second = 1; second <= SECONDS; second++) {
+			world.update(framesPerSecond);
+			length = 0;
+			float worst = 0;
+			Vector3f previous = heads[0].getWorldSpacePosition();
+			Vector3f delta = new Vector3f();
+			for (RigidBody link : links) {
+				Vector3f.sub(link.getPosition(), previous, delta);
+				float d = delta.length();
+				length += d;
+				worst = Math.max(worst, d - 1.0f);
+				previous = link.getPosition();
+			}
+			System.out.printf("%s %s, t=%d s: rope length %.2f (rest %d), worst link stretch %.3f%n", solver, packing,
+					second, length, LINKS, worst);
+		}
+		world.cleanUp();
+		return !solver.equals("direct") || length <= LINKS * (1 + TOLERANCE);
+	}
+
+}
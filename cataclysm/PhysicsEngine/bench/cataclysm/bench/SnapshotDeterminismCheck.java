@@ -0,0 +1,184 @@
+package cataclysm.bench;
+
+import java.util.Arrays;
+
+import cataclysm.DefaultParameters;
+import cataclysm.PhysicsWorld;
+import cataclysm.WorldSnapshot;
+import cataclysm.broadphase.staticmeshes.Heightfield;
+import cataclysm.broadphase.staticmeshes.StaticMeshData;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.WrapperBuilder;
+import cataclysm.wrappers.WrapperFactory;
+import math.vector.Matrix3f;
+import math.vector.Matrix4f;
+import math.vector.Vector3f;
+
+/**
+ * Checks that the frames simulated after {@link PhysicsWorld#restore} are
+ * identical to the frames simulated after the {@link PhysicsWorld#snapshot}.
+ * <br>
+ * <br>
+ * A pile of 60 spheres, boxes and capsules falls on a flat mesh or on a
+ * heightfield. The world is snapshot after 150 frames, simulated for 200
+ * frames, restored, and simulated again for the same 200 frames, several
+ * times. The raw bits of the positions, the orientations and the velocities of
+ * all bodies are compared after each frame, the first difference is printed.
+ * <br>
+ * <br>
+ * Usage: {@code SnapshotDeterminismCheck [mesh|heightfield]}, both floors are
+ * checked by default. The exit code is 1 if a difference has been found.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class SnapshotDeterminismCheck {
+
+	private static final int BODIES = 60;
+	private static final int FRAMES_BEFORE = 150;
+	private static final int FRAMES_AFTER = 200;
+	private static final int REPLAYS = 3;
+
+	/**
+	 * The number of floats captured per body.
+	 */
+	private static final int STRIDE = 3 + 9 + 3 + 3;
+
+	public static void main(String[] args) {
+		String[] floors = args.length > 0 ? new String[] { args[0] } : new String[] { "mesh", "heightfield" };
+		boolean identical = true;
+		for (String floor : floors) {
+			identical &= run(floor);
+		}
+		if (!identical) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean run(String floor) {
+		PhysicsWorld world = new PhysicsWorld(new DefaultParameters(), 1);
+		switch (floor) {
+		case "mesh":
+			flatMesh(world);
+			break;
+		case "heightfield":
+			heightfield(world);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid floor, should be mesh or heightfield, got " + floor);
+		}
+		RigidBody[] bodies = pile(world);
+
+		world.update(FRAMES_BEFORE);
+		WorldSnapshot snapshot = world.snapshot();
+
+		int[][] expected = new int[FRAMES_AFTER][];
+		for (int frame = 0; frame < FRAMES_AFTER; frame++) {
+			world.update(1);
+			expected[frame] = capture(bodies);
+		}
+		for (int i = 0; i < bodies.length; i++) {
+			// the payload of a NaN depends on the order of the operands chosen by the JIT
+			if (Float.isNaN(bodies[i].getPosition().y)) {
+				System.out.printf("%s: body %d has diverged to NaN, the frames can't be compared%n", floor, i);
+				world.cleanUp();
+				return false;
+			}
+		}
+
+		boolean identical = true;
+		for (int replay = 0; replay < REPLAYS && identical; replay++) {
+			world.restore(snapshot);
+			for (int frame = 0; frame < FRAMES_AFTER; frame++) {
+				world.update(1);
+				int[] state = capture(bodies);
+				if (!Arrays.equals(expected[frame], state)) {
+					int i = Arrays.mismatch(expected[frame], state);
+					System.out.printf("%s: replay %d diverges at frame %d, body %d, float %d: %s != %s%n", floor,
+							replay, frame, i / STRIDE, i % STRIDE, Float.intBitsToFloat(expected[frame][i]),
+							Float.intBitsToFloat(state[i]));
+					identical = false;
+					break;
+				}
+			}
+		}
+		if (identical) {
+			System.out.printf("%s: %d replays of %d frames are identical%n", floor, REPLAYS, FRAMES_AFTER);
+		}
+		world.cleanUp();
+		return identical;
+	}
+
+	private static int[] capture(RigidBody[] bodies) {
+		int[] state = new int[bodies.length * STRIDE];
+		int k = 0;
+		for (RigidBody body : bodies) {
+			Vector3f position = body.getPosition();
+			Matrix3f orientation = body.getOrientation();
+			Vector3f velocity = body.getVelocity();
+			Vector3f angularVelocity = body.getAngularVelocity();
+			float[] values = { position.x, position.y, position.z, orientation.m00, orientation.m01, orientation.m02,
+					orientation.m10, orientation.m11, orientation.m12, orientation.m20, orientation.m21,
+					orientation.m22, velocity.x, velocity.y, velocity.z, angularVelocity.x, angularVelocity.y,
+					angularVelocity.z };
+			for (float value : values) {
+				state[k++] = Float.floatToRawIntBits(value);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * 60 bodies stacked in a 4 x 3 x 5 grid, alternating spheres, boxes and
+	 * capsules, with a small offset between layers so that the pile collapses.
+	 */
+	private static RigidBody[] pile(PhysicsWorld world) {
+		WrapperFactory factory = new WrapperFactory();
+		RigidBody[] bodies = new RigidBody[BODIES];
+		int n = 0;
+		for (int y = 0; y < 5; y++) {
+			for (int x = 0; x < 4; x++) {
+				for (int z = 0; z < 3; z++) {
+					WrapperBuilder builder;
+					switch (n % 3) {
+					case 0:
+						builder = factory.newSphere(0.5f);
+						break;
+					case 1:
+						builder = factory.newBox(0.9f, 0.9f, 0.9f);
+						break;
+					default:
+						builder = factory.newCapsule(0.3f, 0.4f);
+						break;
+					}
+					Vector3f position = new Vector3f(x * 1.3f + 0.2f * y, 3.0f + y * 1.2f, z * 1.3f + 0.1f * y);
+					bodies[n] = world.newBody(position, builder);
+					bodies[n].getAngularVelocity().set(0.3f * x, 0.5f, 0.2f * z);
+					n++;
+				}
+			}
+		}
+		return bodies;
+	}
+
+	private static void flatMesh(PhysicsWorld world) {
+		float s = 30;
+		Vector3f[] vertices = { new Vector3f(-s, 0, -s), new Vector3f(s, 0, -s), new Vector3f(s, 0, s),
+				new Vector3f(-s, 0, s) };
+		Matrix4f identity = new Matrix4f();
+		identity.setIdentity();
+		world.newMesh(new StaticMeshData(new int[] { 0, 2, 1, 0, 3, 2 }, vertices), identity, true);
+	}
+
+	private static void heightfield(PhysicsWorld world) {
+		int n = 60;
+		float[] heights = new float[(n + 1) * (n + 1)];
+		for (int i = 0; i <= n; i++) {
+			for (int j = 0; j <= n; j++) {
+				heights[i * (n + 1) + j] = 0.4f * (float) Math.sin(i * 0.3) * (float) Math.cos(j * 0.25);
+			}
+		}
+		world.newHeightfield(new Heightfield(heights, n + 1, n + 1, 1.0f, new Vector3f(-20, 0, -20)));
+	}
+
+}
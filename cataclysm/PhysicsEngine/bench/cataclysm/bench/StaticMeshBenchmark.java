@@ -0,0 +1,210 @@
+package cataclysm.bench;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import cataclysm.DefaultParameters;
+import cataclysm.PhysicsWorld;
+import cataclysm.RayTest;
+import cataclysm.broadphase.AABB;
+import cataclysm.broadphase.staticmeshes.StaticMesh;
+import cataclysm.broadphase.staticmeshes.StaticMeshData;
+import cataclysm.broadphase.staticmeshes.Triangle;
+import math.vector.Matrix4f;
+import math.vector.Vector3f;
+
+/**
+ * Compares the octrees of the grid with the per-mesh BVHs enabled by
+ * {@link DefaultParameters#setStaticMeshBVH(boolean)}, on the two kinds of
+ * static geometry queries: box queries and ray tests. <br>
+ * <br>
+ * Two scenes are available: {@code tiles}, 500 copies of a tile of 3200
+ * triangles, and {@code terrain}, a single 1 km terrain of 500k triangles. For
+ * each accelerator, the benchmark prints the insertion time, the memory used by
+ * the world, the mean duration of 200k box queries and of 200k ray tests, as
+ * well as checksums of the results. The ray checksums must be identical for
+ * both accelerators. The box queries only return candidates: the octrees
+ * return the whole leaf cells, the BVHs are tighter. The queries are run
+ * twice, only the second pass is timed. <br>
+ * <br>
+ * Usage: {@code StaticMeshBenchmark [tiles|terrain] [octree|bvh]}, both
+ * scenes and both accelerators are run by default. The memory figures are
+ * only meaningful when a single accelerator is run per JVM.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class StaticMeshBenchmark {
+
+	private static final int BOX_QUERIES = 200000;
+	private static final int RAYS = 200000;
+
+	public static void main(String[] args) {
+		String[] scenes = args.length > 0 ? new String[] { args[0] } : new String[] { "tiles", "terrain" };
+		String[] modes = args.length > 1 ? new String[] { args[1] } : new String[] { "octree", "bvh" };
+		for (String scene : scenes) {
+			for (String mode : modes) {
+				run(scene, mode);
+			}
+		}
+	}
+
+	private static void run(String scene, String mode) {
+		DefaultParameters params = new DefaultParameters();
+		switch (mode) {
+		case "octree":
+			params.setStaticMeshBVH(false);
+			break;
+		case "bvh":
+			params.setStaticMeshBVH(true);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid accelerator, should be octree or bvh, got " + mode);
+		}
+
+		long memoryBefore = usedMemory();
+		long start = System.nanoTime();
+		PhysicsWorld world = new PhysicsWorld(params, 1);
+		float extentX, extentZ;
+		switch (scene) {
+		case "tiles":
+			buildTiles(world);
+			extentX = 400;
+			extentZ = 320;
+			break;
+		case "terrain":
+			Matrix4f identity = new Matrix4f();
+			identity.setIdentity();
+			world.newMesh(heightfield(500, 1000), identity, false);
+			extentX = 1000;
+			extentZ = 800;
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid scene, should be tiles or terrain, got " + scene);
+		}
+		world.update(1);
+		double insertion = (System.nanoTime() - start) * 1.0E-6;
+		double memory = (usedMemory() - memoryBefore) * 1.0E-6;
+
+		Set<Triangle> triangles = new HashSet<Triangle>();
+		AABB box = new AABB();
+		long boxTime = 0;
+		long found = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			Random random = new Random(7);
+			found = 0;
+			long t = System.nanoTime();
+			for (int i = 0; i < BOX_QUERIES; i++) {
+				float x = random.nextFloat() * extentX;
+				float z = random.nextFloat() * extentZ;
+				float size = 0.5f + random.nextFloat() * 1.5f;
+				box.minX = x;
+				box.maxX = x + size;
+				box.minY = -3;
+				box.maxY = 3;
+				box.minZ = z;
+				box.maxZ = z + size;
+				triangles.clear();
+				world.boxTriangleQuery(box, triangles);
+				found += triangles.size();
+			}
+			boxTime = System.nanoTime() - t;
+		}
+
+		RayTest test = new RayTest();
+		Vector3f origin = new Vector3f();
+		Vector3f dir = new Vector3f();
+		long rayTime = 0;
+		int hits = 0;
+		double distances = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			Random random = new Random(3);
+			hits = 0;
+			distances = 0;
+			long t = System.nanoTime();
+			for (int i = 0; i < RAYS; i++) {
+				origin.set(random.nextFloat() * extentX, 5, random.nextFloat() * extentZ);
+				// half of the rays are steep, the others graze the geometry
+				dir.set(random.nextFloat() - 0.5f, i % 2 == 0 ? -1 : -0.1f, random.nextFloat() - 0.5f);
+				dir.normalise();
+				test.reset(origin, dir, 100);
+				world.rayTest(test);
+				if (test.hit()) {
+					hits++;
+					distances += test.getHitDistance();
+				}
+			}
+			rayTime = System.nanoTime() - t;
+		}
+
+		System.out.printf(
+				"%s %s: insertion %.0f ms, memory %.1f MB | box queries %.2f us (%d triangles) | rays %.2f us (%d hits, distances %.3f)%n",
+				scene, mode, insertion, memory, boxTime * 1.0E-3 / BOX_QUERIES, found, rayTime * 1.0E-3 / RAYS, hits,
+				distances);
+		world.cleanUp();
+	}
+
+	/**
+	 * 25 x 20 copies of a 20 m tile of 40 x 40 quads.
+	 */
+	private static void buildTiles(PhysicsWorld world) {
+		StaticMeshData tile = heightfield(40, 20);
+		StaticMesh first = null;
+		for (int i = 0; i < 25; i++) {
+			for (int j = 0; j < 20; j++) {
+				Matrix4f transform = new Matrix4f();
+				transform.setIdentity();
+				transform.translate(new Vector3f(i * 20, 0, j * 20));
+				if (first == null) {
+					first = world.newMesh(tile, transform, true);
+				} else {
+					world.copyMesh(transform, first, false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A square grid of n x n quads with a bumpy height.
+	 *
+	 * @param n    The number of quads per side
+	 * @param size The length of a side
+	 * @return The mesh data
+	 */
+	private static StaticMeshData heightfield(int n, float size) {
+		Vector3f[] vertices = new Vector3f[(n + 1) * (n + 1)];
+		for (int i = 0; i <= n; i++) {
+			for (int j = 0; j <= n; j++) {
+				float height = 2.0f * (float) Math.sin(i * 0.05 + j * 0.07)
+						+ 0.3f * (float) Math.sin(i * 0.7 + j * 1.3);
+				vertices[i * (n + 1) + j] = new Vector3f(i * size / n, height, j * size / n);
+			}
+		}
+		int[] indices = new int[n * n * 6];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				int a = i * (n + 1) + j;
+				int b = a + 1;
+				int c = a + n + 1;
+				int d = c + 1;
+				indices[k++] = a;
+				indices[k++] = b;
+				indices[k++] = c;
+				indices[k++] = b;
+				indices[k++] = d;
+				indices[k++] = c;
+			}
+		}
+		return new StaticMeshData(indices, vertices);
+	}
+
+	private static long usedMemory() {
+		System.gc();
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -5,12 +5,17 @@ import java.util.List;
 import cataclysm.broadphase.staticmeshes.StaticMeshManager;
 import cataclysm.constraints.AbstractConstraint;
 import cataclysm.constraints.ConstraintSolver;
+import cataclysm.contact_creation.TimeOfImpact;
 import cataclysm.integrators.ExternalForceIntegrator;
+import cataclysm.integrators.ForceFieldManager;
 import cataclysm.integrators.GyroscopicIntegrator;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.RigidBodyManager;
 import math.MatrixOps;
 import math.vector.Matrix3f;
+import math.vector.Quaternion;
 import math.vector.Vector3f;
 
 /**
@@ -21,6 +26,12 @@ import math.vector.Vector3f;
  */
 public abstract class AbstractPhysicsEngine {
 
+	/**
+	 * The number of frames between two orthonormalizations of the rotation
+	 * matrices, when they are integrated directly.
+	 */
+	private static final int ORTHONORMALIZATION_PERIOD = 64;
+
 	/**
 	 * The world in which the physics engine updates objects
 	 */
@@ -36,6 +47,11 @@ public abstract class AbstractPhysicsEngine {
 	 */
 	protected final ExternalForceIntegrator forceInegrator;
 
+	/**
+	 * Applies the forces of the local force fields
+	 */
+	protected final ForceFieldManager forceFields;
+
 	/**
 	 * Solves the constraints system
 	 */
@@ -46,6 +62,11 @@ public abstract class AbstractPhysicsEngine {
 	 */
 	protected final GyroscopicIntegrator gyroscopicIntegrator = new GyroscopicIntegrator();
 
+	/**
+	 * Measures the duration of the phases of the simulation
+	 */
+	protected final Profiler profiler;
+
 	/**
 	 * Build a new physics engine
 	 * 
@@ -55,7 +76,10 @@ public abstract class AbstractPhysicsEngine {
 		this.world = world;
 		this.params = world.getParameters();
 		this.forceInegrator = params.getForceIntegrator();
+		this.forceFields = world.getForceFields();
 		this.solver = solver;
+		this.profiler = world.getUpdateStats().profiler;
+		solver.setProfiler(profiler);
 	}
 
 	/**
@@ -78,19 +102,23 @@ public abstract class AbstractPhysicsEngine {
 			List<AbstractConstraint> constraints, PhysicsStats stats);
 
 	/**
-	 * Applies external forces on all bodies subject to them.
+	 * Applies external forces on all bodies subject to them, followed by the
+	 * forces of the force fields containing them.
 	 * 
 	 * @param bodies
 	 * @param timeStep
 	 */
 	protected void applyForces(List<RigidBody> bodies, float timeStep) {
+		long start = profiler.start();
 		for (RigidBody body : bodies) {
 			if (!body.isExternalForces() || body.isSleeping()) {
 				continue;
 			}
 
 			forceInegrator.applyExternalForces(body, timeStep);
+			forceFields.applyForces(body, timeStep);
 		}
+		profiler.stop(Phase.FORCES, start);
 	}
 
 	/**
@@ -100,12 +128,21 @@ public abstract class AbstractPhysicsEngine {
 	 * @param gyroscopicIntegration true if the gyroscopic term should be taken into
 	 *                              account while solving the differential equation
 	 *                              on the angular velocity
+	 * @param lastSubstep           true for the last substep of the frame, the
+	 *                              sleep counters only count frames and the
+	 *                              rotations are orthonormalized once per frame
 	 */
-	protected void integrateVelocity(List<RigidBody> bodies, float timeStep, boolean gyroscopicIntegration) {
+	protected void integrateVelocity(List<RigidBody> bodies, float timeStep, boolean gyroscopicIntegration,
+			boolean lastSubstep) {
 
 		// some temporary variables
 		final Matrix3f rotation = new Matrix3f();
 		final Vector3f axis = new Vector3f();
+		final Quaternion orientation = new Quaternion();
+		final boolean quaternionIntegration = params.useQuaternionIntegration();
+		final boolean orthonormalize = lastSubstep && world.getElapsedFrames() % ORTHONORMALIZATION_PERIOD == 0;
+		TimeOfImpact timeOfImpact = null;
+		long start = profiler.start();
 		
 		for (RigidBody body : bodies) {
 			if (body.isSkipIntegration()) {
@@ -139,7 +176,7 @@ public abstract class AbstractPhysicsEngine {
 
 			if (translation_negligible && rotation_negligible) {
 				int sleepCounter = body.getSleepCounter();
-				if (sleepCounter >= Epsilons.Sleep.FRAMES_SPENT_AT_REST) {
+				if (lastSubstep && sleepCounter >= Epsilons.Sleep.FRAMES_SPENT_AT_REST) {
 					body.setSleeping(true);
 					velocity.set(0, 0, 0);
 					angularVelocity.set(0, 0, 0);
@@ -148,7 +185,7 @@ public abstract class AbstractPhysicsEngine {
 				} else {
 					pseudoVel.set(0, 0, 0);
 					pseudoAngVel.set(0, 0, 0);
-					if (Epsilons.Sleep.SLEEPING_ALLOWED) {
+					if (lastSubstep && Epsilons.Sleep.SLEEPING_ALLOWED) {
 						body.setSleepCounter(sleepCounter + 1);
 					}
 				}
@@ -159,15 +196,41 @@ public abstract class AbstractPhysicsEngine {
 			}
 
 			if (!translation_negligible) {
-				body.translate(dx * timeStep, dy * timeStep, dz * timeStep);
+				float fraction = 1.0f;
+				if (body.isContinuousCollision()) {
+					if (timeOfImpact == null) {
+						timeOfImpact = new TimeOfImpact();
+					}
+					fraction = timeOfImpact.computeTimeOfImpact(body, dx * timeStep, dy * timeStep, dz * timeStep,
+							world);
+					if (fraction < 1.0f) {
+						// The body stops at the time of impact, the approaching part of the
+						// velocity is removed so that it doesn't push through the triangle at the
+						// next frame.
+						Vector3f n = timeOfImpact.getHitNormal();
+						float approach = Vector3f.dot(velocity, n);
+						if (approach > 0) {
+							velocity.set(velocity.x - approach * n.x, velocity.y - approach * n.y,
+									velocity.z - approach * n.z);
+						}
+					}
+				}
+				body.translate(dx * timeStep * fraction, dy * timeStep * fraction, dz * timeStep * fraction);
 			}
 
 			if (!rotation_negligible) {
-				float omega = (float) Math.sqrt(omega2);
-				float one_over_omega = 1.0f / omega;
-				axis.set(axis.x * one_over_omega, axis.y * one_over_omega, axis.z * one_over_omega);
-				MatrixOps.createRotationMatrix3f(omega * timeStep, axis, rotation);
-				body.rotateAboutCenterOfMass(rotation);
+				if (quaternionIntegration) {
+					body.integrateOrientation(axis, timeStep, orientation);
+				} else {
+					float omega = (float) Math.sqrt(omega2);
+					float one_over_omega = 1.0f / omega;
+					axis.set(axis.x * one_over_omega, axis.y * one_over_omega, axis.z * one_over_omega);
+					MatrixOps.createRotationMatrix3f(omega * timeStep, axis, rotation);
+					body.rotateAboutCenterOfMass(rotation);
+					if (orthonormalize) {
+						body.orthonormalize(orientation);
+					}
+				}
 			}
 
 			body.updateTransforms();
@@ -176,6 +239,7 @@ public abstract class AbstractPhysicsEngine {
 			pseudoAngVel.set(0, 0, 0);
 
 		}
+		profiler.stop(Phase.INTEGRATION, start);
 	}
 
 }
@@ -6,6 +6,10 @@ import cataclysm.wrappers.RigidBody;
 /**
  * Determines if two rigid bodies can collide by applying the following rule: <br>
  * {@code boolean canCollide = (maskA & categoryB) != 0 && (maskB & categoryA) != 0;}
+ * <br>
+ * When this filter is used, the rule is checked by the broadphase along with the
+ * collision groups of {@link DefaultParameters#setGroupCollision(int, int, boolean)},
+ * the pairs which can't collide are never passed to {@link #canCollide}.
  * 
  * @author Briac
  *
@@ -1,9 +1,14 @@
 package cataclysm;
 
+import java.util.Arrays;
+
 import cataclysm.broadphase.AABB;
+import cataclysm.constraints.DistanceConstraint;
+import cataclysm.constraints.PackedImpulseSolver;
 import cataclysm.contact_creation.ContactProperties;
 import cataclysm.integrators.ExternalForceIntegrator;
 import cataclysm.integrators.VerticalGravityIntegrator;
+import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.Wrapper;
 
 /**
@@ -32,6 +37,14 @@ public class DefaultParameters {
 	 */
 	private int maxIterationsPosition;
 
+	/**
+	 * Le nombre de sous-pas d'intégration effectués à chaque pas de temps. La
+	 * détection des collisions n'est faite qu'une seule fois par pas de temps,
+	 * seuls la résolution des contraintes et l'intégration des vitesses sont
+	 * répétées avec un pas de timeStep / substeps.
+	 */
+	private int substeps = 1;
+
 	/**
 	 * La taille d'une cellule de base dans l'octree.
 	 */
@@ -42,6 +55,13 @@ public class DefaultParameters {
 	 */
 	private final int maxOctreeDepth;
 
+	/**
+	 * Si true, chaque maillage statique reçoit sa propre hiérarchie de boîtes
+	 * englobantes au lieu d'être inséré dans les octrees. Doit être choisi avant
+	 * la création du {@link PhysicsWorld}.
+	 */
+	private boolean staticMeshBVH = false;
+
 	/**
 	 * Les forces externes appliquées aux objets.
 	 */
@@ -58,6 +78,17 @@ public class DefaultParameters {
 	 */
 	private final CollisionFilter collisionFilter;
 
+	/**
+	 * La table des collisions entre groupes : le bit j de collisionGroups[i] est
+	 * à 1 si les objets du groupe i peuvent toucher ceux du groupe j.
+	 */
+	private final int[] collisionGroups = new int[32];
+
+	/**
+	 * true tant qu'aucune paire de groupes n'est interdite.
+	 */
+	private boolean allGroupsCollide = true;
+
 	/**
 	 * Indique s'il faut int�grer le terme gyroscopique dans les �quations de la
 	 * rotation. <br>
@@ -70,6 +101,25 @@ public class DefaultParameters {
 	 */
 	private boolean gyroscopic = false;
 
+	/**
+	 * Si true, l'orientation des objets est intégrée sous la forme d'un
+	 * quaternion unitaire, normalisé à chaque pas de temps.
+	 */
+	private boolean quaternionIntegration = false;
+
+	/**
+	 * Si true, les contacts sont résolus par un {@link PackedImpulseSolver}. Doit
+	 * être choisi avant la création du {@link PhysicsWorld}.
+	 */
+	private boolean packedSolver = false;
+
+	/**
+	 * Si true, les groupes de contraintes formant un arbre (chaînes, cordes) sont
+	 * résolus de façon exacte plutôt qu'itérativement. Doit être choisi avant la
+	 * création du {@link PhysicsWorld}.
+	 */
+	private boolean directChainSolver = false;
+
 	/**
 	 * true si la gravité est activée.
 	 */
@@ -96,6 +146,7 @@ public class DefaultParameters {
 		this.callbacks = new CataclysmCallbacks();
 		this.collisionFilter = new DefaultCollisionFilter();
 		this.contactProperties = new ContactProperties(0.2f, 0.3f);
+		Arrays.fill(collisionGroups, 0xFFFFFFFF);
 	}
 
 	public DefaultParameters(float timeStep, int maxIterationsPosition, int maxIterationVelocity, float gridCellSize, int maxOctreeDepth,
@@ -110,6 +161,7 @@ public class DefaultParameters {
 		this.callbacks = callbacks;
 		this.collisionFilter = filter;
 		this.contactProperties = contactProperties;
+		Arrays.fill(collisionGroups, 0xFFFFFFFF);
 	}
 
 	public boolean isGravity() {
@@ -148,6 +200,26 @@ public class DefaultParameters {
 		this.maxIterationsPosition = maxIterationsPosition;
 	}
 	
+	public int getSubsteps() {
+		return substeps;
+	}
+
+	/**
+	 * Des sous-pas permettent de stabiliser les assemblages de contraintes rigides
+	 * (véhicules, pistons, ...) sans diminuer le pas de temps de toute la
+	 * simulation, et donc sans multiplier le coût de la détection des collisions.
+	 * Les itérations de vitesse sont effectuées à chaque sous-pas, celles de
+	 * position seulement au dernier.
+	 * 
+	 * @param substeps Le nombre de sous-pas par pas de temps, au moins 1.
+	 */
+	public void setSubsteps(int substeps) {
+		if (substeps < 1) {
+			throw new IllegalArgumentException("Invalid substep count, should be >= 1, got " + substeps);
+		}
+		this.substeps = substeps;
+	}
+
 	public void setStepParams(float timeStep, int maxIterationsPosition, int maxIterationVelocity) {
 		this.timeStep = timeStep;
 		this.maxIterationsPosition = maxIterationsPosition;
@@ -171,6 +243,23 @@ public class DefaultParameters {
 		return maxOctreeDepth;
 	}
 
+	public boolean useStaticMeshBVH() {
+		return staticMeshBVH;
+	}
+
+	/**
+	 * Les triangles d'un maillage statique sont alors rangés dans une hiérarchie
+	 * de boîtes englobantes construite une seule fois lors de son insertion. Les
+	 * grands maillages n'ont plus à être découpés entre les cases de la grille et
+	 * les cellules des octrees. Ce paramètre n'a d'effet que s'il est choisi avant
+	 * la création du {@link PhysicsWorld}.
+	 * 
+	 * @param staticMeshBVH
+	 */
+	public void setStaticMeshBVH(boolean staticMeshBVH) {
+		this.staticMeshBVH = staticMeshBVH;
+	}
+
 	public boolean useGyroscopicIntegration() {
 		return gyroscopic;
 	}
@@ -179,6 +268,62 @@ public class DefaultParameters {
 		this.gyroscopic = gyroscopic;
 	}
 
+	public boolean useQuaternionIntegration() {
+		return quaternionIntegration;
+	}
+
+	/**
+	 * Par défaut, la rotation de chaque objet est composée à chaque pas de temps
+	 * avec une matrice de rotation construite à partir de sa vitesse angulaire,
+	 * les erreurs d'arrondi s'accumulant jusqu'à la prochaine
+	 * réorthonormalisation périodique. Si true, l'orientation est intégrée sous
+	 * la forme d'un quaternion unitaire normalisé à chaque pas de temps, dont
+	 * sont déduites les matrices de rotation. Une seule matrice est construite par
+	 * objet et par pas de temps au lieu de deux produits de matrices.
+	 * 
+	 * @param quaternionIntegration
+	 */
+	public void setQuaternionIntegration(boolean quaternionIntegration) {
+		this.quaternionIntegration = quaternionIntegration;
+	}
+
+	public boolean usePackedSolver() {
+		return packedSolver;
+	}
+
+	/**
+	 * Le {@link PackedImpulseSolver} regroupe tous les points de contact actifs
+	 * dans un tableau unique à chaque pas de temps, ce qui réduit le coût de chaque
+	 * itération lorsque les contacts sont nombreux. Ce paramètre n'a d'effet que
+	 * s'il est choisi avant la création du {@link PhysicsWorld}, et il n'est pas
+	 * compatible avec une simulation sur plusieurs threads.
+	 * 
+	 * @param packedSolver
+	 */
+	public void setPackedSolver(boolean packedSolver) {
+		this.packedSolver = packedSolver;
+	}
+
+	public boolean useDirectChainSolver() {
+		return directChainSolver;
+	}
+
+	/**
+	 * Les contraintes d'égalité sans borne sur leurs impulsions et reliées en
+	 * arbre, par exemple une corde de {@link DistanceConstraint} accrochée à un
+	 * seul point fixe, sont résolues en temps linéaire par une factorisation
+	 * directe. Leur vitesse relative est alors exactement corrigée à chaque
+	 * itération, quel que soit le nombre de maillons. Les autres contraintes
+	 * restent résolues itérativement. N'a d'effet que s'il est choisi avant la
+	 * création du {@link PhysicsWorld}, et n'est pas compatible avec une
+	 * simulation sur plusieurs threads.
+	 * 
+	 * @param directChainSolver
+	 */
+	public void setDirectChainSolver(boolean directChainSolver) {
+		this.directChainSolver = directChainSolver;
+	}
+
 	public ExternalForceIntegrator getForceIntegrator() {
 		return forceIntegrator;
 	}
@@ -191,6 +336,70 @@ public class DefaultParameters {
 		return collisionFilter;
 	}
 
+	/**
+	 * Autorise ou interdit les collisions entre deux groupes d'objets. Les groupes
+	 * d'un objet sont les indices des bits à 1 de sa catégorie, voir
+	 * {@link RigidBody#setCategory(int)}. La table est symétrique, toutes les
+	 * paires de groupes peuvent se toucher par défaut. <br>
+	 * Comme les masques, la table est appliquée lors de la broadphase : les paires
+	 * interdites ne sont jamais testées. Elle n'a d'effet qu'avec le
+	 * {@link DefaultCollisionFilter}, un filtre personnalisé décide seul des
+	 * collisions.
+	 * 
+	 * @param groupA  Un groupe, entre 0 et 31.
+	 * @param groupB  Un groupe, entre 0 et 31.
+	 * @param collide true si les deux groupes peuvent se toucher.
+	 */
+	public void setGroupCollision(int groupA, int groupB, boolean collide) {
+		checkGroup(groupA);
+		checkGroup(groupB);
+		if (collide) {
+			collisionGroups[groupA] |= 1 << groupB;
+			collisionGroups[groupB] |= 1 << groupA;
+		} else {
+			collisionGroups[groupA] &= ~(1 << groupB);
+			collisionGroups[groupB] &= ~(1 << groupA);
+		}
+
+		allGroupsCollide = true;
+		for (int row : collisionGroups) {
+			allGroupsCollide &= row == 0xFFFFFFFF;
+		}
+	}
+
+	/**
+	 * @param groupA Un groupe, entre 0 et 31.
+	 * @param groupB Un groupe, entre 0 et 31.
+	 * @return true si les objets des deux groupes peuvent se toucher.
+	 */
+	public boolean canGroupsCollide(int groupA, int groupB) {
+		checkGroup(groupA);
+		checkGroup(groupB);
+		return (collisionGroups[groupA] & (1 << groupB)) != 0;
+	}
+
+	/**
+	 * @param category La catégorie d'un objet.
+	 * @return Les catégories que l'objet peut toucher d'après la table des
+	 *         groupes, c'est-à-dire l'union des lignes de ses groupes.
+	 */
+	public int getGroupMask(int category) {
+		if (allGroupsCollide) {
+			return 0xFFFFFFFF;
+		}
+		int mask = 0;
+		for (int bits = category; bits != 0; bits &= bits - 1) {
+			mask |= collisionGroups[Integer.numberOfTrailingZeros(bits)];
+		}
+		return mask;
+	}
+
+	private static void checkGroup(int group) {
+		if (group < 0 || group >= 32) {
+			throw new IllegalArgumentException("Invalid group, should be in [0, 31], got " + group);
+		}
+	}
+
 	public ContactProperties getContactProperties() {
 		return contactProperties;
 	}
@@ -90,6 +90,18 @@ public class Epsilons {
 	 */
 	public static final float ALLOWED_PENETRATION = 0.01f;
 
+	/**
+	 * La distance de séparation visée lors du calcul du temps d'impact d'un
+	 * rigidbody en détection de collision continue.
+	 */
+	public static final float TOI_TARGET_SEPARATION = 0.5f * ALLOWED_PENETRATION;
+
+	/**
+	 * Le nombre maximal d'itérations lors du calcul du temps d'impact d'un
+	 * rigidbody en détection de collision continue.
+	 */
+	public static final int TOI_MAX_ITERATIONS = 20;
+
 	/**
 	 * La longueur minimale d'un vecteur lors d'une tentative de normalisation. Un
 	 * vecteur de module inf�rieur est consid�r� comme valant z�ro.
@@ -134,4 +146,11 @@ public class Epsilons {
 	 */
 	public static final float PARALLEL_LIMIT_2 = PARALLEL_LIMIT * PARALLEL_LIMIT;
 
+	/**
+	 * Les contacts d'un wrapper avec plusieurs triangles sont fusionnés en une
+	 * seule surface de contact si le produit scalaire entre leurs normales est
+	 * supérieur à cette limite (10 degrés).
+	 */
+	public static final float MESH_CONTACT_MERGE_LIMIT = (float) Math.cos(Math.toRadians(10.0));
+
 }
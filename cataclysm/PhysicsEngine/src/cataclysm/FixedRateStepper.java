@@ -0,0 +1,151 @@
+package cataclysm;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import cataclysm.wrappers.TransformBuffer;
+
+/**
+ * Runs a simulation in its own thread at the rate of its time step. The
+ * simulation catches up when it lags behind, up to a maximum number of frames
+ * per update; beyond that the lag is dropped and the simulation slows down.
+ * <br>
+ * The world must not be accessed by other threads while the stepper is
+ * running: modifications are posted with {@link #post(Consumer)} and executed
+ * between two updates, the transforms of the bodies are read from the
+ * {@link TransformBuffer} of the world, which is enabled by {@link #start()}.
+ * <br>
+ * If a task or an update throws, the simulation thread stops and keeps the
+ * exception, it is rethrown to the caller of {@link #post(Consumer)} and
+ * {@link #stop()}.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class FixedRateStepper implements Runnable {
+
+	private final PhysicsWorld world;
+	private final int maxFramesPerUpdate;
+	private final Queue<Consumer<PhysicsWorld>> tasks = new ConcurrentLinkedQueue<Consumer<PhysicsWorld>>();
+
+	private volatile boolean running = false;
+	private volatile Throwable failure;
+	private Thread thread;
+
+	/**
+	 * @param world
+	 * @param maxFramesPerUpdate The maximum number of frames simulated at once to
+	 *                           catch up with the wall clock.
+	 */
+	public FixedRateStepper(PhysicsWorld world, int maxFramesPerUpdate) {
+		if (maxFramesPerUpdate <= 0) {
+			throw new IllegalArgumentException(
+					"Invalid max frames per update, should be > 0, got " + maxFramesPerUpdate);
+		}
+		this.world = world;
+		this.maxFramesPerUpdate = maxFramesPerUpdate;
+	}
+
+	/**
+	 * Starts the simulation thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Error, the stepper is already running");
+		}
+		world.getTransformBuffer().setEnabled(true);
+		running = true;
+		thread = new Thread(this, "Cataclysm stepper");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the simulation thread and waits for the current update to complete.
+	 * The tasks posted in the meantime are not executed. The stepper can then be
+	 * started again.
+	 *
+	 * @throws InterruptedException
+	 * @throws IllegalStateException if the simulation thread had stopped on an
+	 *                               exception, which is given as the cause.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+		thread = null;
+
+		Throwable cause = failure;
+		failure = null;
+		if (cause != null) {
+			throw new IllegalStateException("Error, the simulation thread has stopped on an exception", cause);
+		}
+	}
+
+	/**
+	 * Executes a task in the simulation thread before the next update, may be
+	 * called by any thread.
+	 *
+	 * @param task
+	 * @throws IllegalStateException if the simulation thread has stopped on an
+	 *                               exception, which is given as the cause. The
+	 *                               task isn't posted.
+	 */
+	public void post(Consumer<PhysicsWorld> task) {
+		Throwable cause = failure;
+		if (cause != null) {
+			throw new IllegalStateException("Error, the simulation thread has stopped on an exception", cause);
+		}
+		tasks.add(task);
+	}
+
+	/**
+	 * @return false once {@link #stop()} has been called, or when the simulation
+	 *         thread has stopped on an exception.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void run() {
+		try {
+			loop();
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			running = false;
+		}
+	}
+
+	private void loop() {
+		long next = System.nanoTime();
+		while (running) {
+			Consumer<PhysicsWorld> task;
+			while ((task = tasks.poll()) != null) {
+				task.accept(world);
+			}
+
+			long step = (long) (world.getTimeStep() * 1.0E9);
+			long now = System.nanoTime();
+			if (now - next < 0) {
+				LockSupport.parkNanos(next - now);
+				continue;
+			}
+
+			long late = (now - next) / step + 1;
+			if (late > maxFramesPerUpdate) {
+				world.update(maxFramesPerUpdate);
+				next = System.nanoTime() + step;
+			} else {
+				world.update((int) late);
+				next += late * step;
+			}
+		}
+	}
+
+}
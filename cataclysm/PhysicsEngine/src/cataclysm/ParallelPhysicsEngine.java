@@ -9,6 +9,7 @@ import cataclysm.constraints.ParallelImpulseSolver;
 import cataclysm.parallel.PhysicsWork;
 import cataclysm.parallel.PhysicsWorkerPool;
 import cataclysm.parallel.PhysicsWorkerThread;
+import cataclysm.profiling.Phase;
 import cataclysm.record.PhysicsPlayer;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.RigidBodyManager;
@@ -29,10 +30,20 @@ final class ParallelPhysicsEngine extends AbstractPhysicsEngine{
 	 * @param params
 	 */
 	ParallelPhysicsEngine(PhysicsWorld world, int threads) {
-		super(world, new ParallelImpulseSolver(new PhysicsWorkerPool(threads, threads*10)));
+		super(world, newSolver(world, threads));
 		workers = ((ParallelImpulseSolver)super.solver).getWorkers();
 	}
 
+	private static ParallelImpulseSolver newSolver(PhysicsWorld world, int threads) {
+		if (world.getParameters().usePackedSolver()) {
+			throw new IllegalStateException("Error, the packed solver can't be used with several threads");
+		}
+		if (world.getParameters().useDirectChainSolver()) {
+			throw new IllegalStateException("Error, the direct chain solver can't be used with several threads");
+		}
+		return new ParallelImpulseSolver(new PhysicsWorkerPool(threads, threads * 10));
+	}
+
 	@Override
 	protected void update(RigidBodyManager bodies, StaticMeshManager meshes, List<AbstractConstraint> constraints,
 			PhysicsStats stats) {
@@ -50,21 +61,33 @@ final class ParallelPhysicsEngine extends AbstractPhysicsEngine{
 		float timeStep = params.getTimeStep();
 		boolean gyroscopicIntegration = params.useGyroscopicIntegration();
 
-		applyForces(bodies, timeStep);
+		int substeps = params.getSubsteps();
+		float subTimeStep = timeStep / substeps;
+
+		applyForces(bodies, subTimeStep);
 
 		bodies.parallelUpdate(workers);
 
 		stats.reset(bodies.size(), meshes.size(), constraints.size(), workers.getThreadCount());
 
-		solver.solve(bodies.getMeshContacts(), bodies.getBodyContacts(), constraints, timeStep, params.getMaxIterationsPosition(),
-				params.getMaxIterationVelocity());
+		for (int i = 0; i < substeps; i++) {
+			boolean lastSubstep = i == substeps - 1;
+			if (i > 0) {
+				applyForces(bodies, subTimeStep);
+			}
+
+			solver.solve(bodies.getMeshContacts(), bodies.getBodyContacts(), constraints, subTimeStep,
+					lastSubstep ? params.getMaxIterationsPosition() : 0, params.getMaxIterationVelocity());
 
-		integrateVelocity(bodies, timeStep, gyroscopicIntegration);
+			integrateVelocity(bodies, subTimeStep, gyroscopicIntegration, lastSubstep);
+		}
 
 		if (world.getActiveRecord() != null) {
+			long start = profiler.start();
 			world.getUpdateStats().physicsRecorder.start();
 			world.getActiveRecord().getCurrentFrame().fillBodiesStates(world);
 			world.getUpdateStats().physicsRecorder.pause();
+			profiler.stop(Phase.RECORDING, start);
 		}
 	}
 
@@ -82,11 +105,12 @@ final class ParallelPhysicsEngine extends AbstractPhysicsEngine{
 
 			});
 		}
-		forceInegrator.prepare();
+		forceInegrator.prepare(bodies.getElements(), workers);
 		workers.scheduleWork(tasks, "applyForces", 1);
 	}
 
-	private void integrateVelocity(RigidBodyManager bodies, float timeStep, boolean gyroscopicIntegration) {
+	private void integrateVelocity(RigidBodyManager bodies, float timeStep, boolean gyroscopicIntegration,
+			boolean lastSubstep) {
 		List<PhysicsWork> tasks = new ArrayList<PhysicsWork>();
 		for (int i = 0; i < workers.getThreadCount(); i++) {
 			final List<RigidBody> slice = workers.buildSubList(bodies.getElements(), i);
@@ -94,7 +118,7 @@ final class ParallelPhysicsEngine extends AbstractPhysicsEngine{
 
 				@Override
 				public void run(PhysicsWorkerThread physicsWorkerThread) {
-					integrateVelocity(slice, timeStep, gyroscopicIntegration);
+					integrateVelocity(slice, timeStep, gyroscopicIntegration, lastSubstep);
 					physicsWorkerThread.waitForTermination();
 				}
 
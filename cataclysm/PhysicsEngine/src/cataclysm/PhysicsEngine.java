@@ -4,7 +4,9 @@ import java.util.List;
 
 import cataclysm.broadphase.staticmeshes.StaticMeshManager;
 import cataclysm.constraints.AbstractConstraint;
+import cataclysm.constraints.PackedImpulseSolver;
 import cataclysm.constraints.SequentialImpulseSolver;
+import cataclysm.profiling.Phase;
 import cataclysm.record.PhysicsPlayer;
 import cataclysm.wrappers.RigidBodyManager;
 
@@ -22,7 +24,9 @@ final class PhysicsEngine extends AbstractPhysicsEngine{
 	 * @param params
 	 */
 	PhysicsEngine(PhysicsWorld world) {
-		super(world, new SequentialImpulseSolver());
+		super(world, world.getParameters().usePackedSolver()
+				? new PackedImpulseSolver(world.getParameters().useDirectChainSolver())
+				: new SequentialImpulseSolver(world.getParameters().useDirectChainSolver()));
 	}
 
 	@Override
@@ -42,7 +46,13 @@ final class PhysicsEngine extends AbstractPhysicsEngine{
 		float timeStep = params.getTimeStep();
 		boolean gyroscopicIntegration = params.useGyroscopicIntegration();
 
-		applyForces(bodies.getElements(), timeStep);
+		// The collision detection is done once per frame, only the constraint solver
+		// and the integration are repeated for each substep.
+		int substeps = params.getSubsteps();
+		float subTimeStep = timeStep / substeps;
+
+		forceInegrator.prepare(bodies.getElements(), null);
+		applyForces(bodies.getElements(), subTimeStep);
 
 		stats.broadAndNarrowphase.start();
 		bodies.update();
@@ -50,19 +60,37 @@ final class PhysicsEngine extends AbstractPhysicsEngine{
 
 		stats.reset(bodies.size(), meshes.size(), constraints.size(), 1);
 
-		stats.constraintSolver.start();
-		solver.solve(bodies.getMeshContacts(), bodies.getBodyContacts(), constraints, timeStep,
-				params.getMaxIterationsPosition(), params.getMaxIterationVelocity());
-		stats.constraintSolver.stop();
+		for (int i = 0; i < substeps; i++) {
+			boolean lastSubstep = i == substeps - 1;
+			if (i > 0) {
+				forceInegrator.prepare(bodies.getElements(), null);
+				applyForces(bodies.getElements(), subTimeStep);
+			}
+
+			stats.constraintSolver.start();
+			solver.solve(bodies.getMeshContacts(), bodies.getBodyContacts(), constraints, subTimeStep,
+					lastSubstep ? params.getMaxIterationsPosition() : 0, params.getMaxIterationVelocity());
+			if (lastSubstep) {
+				stats.constraintSolver.stop();
+			} else {
+				stats.constraintSolver.pause();
+			}
 
-		stats.velocityIntegration.start();
-		integrateVelocity(bodies.getElements(), timeStep, gyroscopicIntegration);
-		stats.velocityIntegration.stop();
+			stats.velocityIntegration.start();
+			integrateVelocity(bodies.getElements(), subTimeStep, gyroscopicIntegration, lastSubstep);
+			if (lastSubstep) {
+				stats.velocityIntegration.stop();
+			} else {
+				stats.velocityIntegration.pause();
+			}
+		}
 
 		if (world.getActiveRecord() != null) {
+			long start = profiler.start();
 			world.getUpdateStats().physicsRecorder.start();
 			world.getActiveRecord().getCurrentFrame().fillBodiesStates(world);
 			world.getUpdateStats().physicsRecorder.pause();
+			profiler.stop(Phase.RECORDING, start);
 		}
 	}
 
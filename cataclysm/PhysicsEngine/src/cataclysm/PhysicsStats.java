@@ -1,5 +1,7 @@
 package cataclysm;
 
+import cataclysm.profiling.Profiler;
+
 /**
  * Cette classe regroupe des infos concernant le nombre d'objet dans la
  * simulation et le temps de calcul de la dernière frame.
@@ -38,6 +40,8 @@ public class PhysicsStats {
 		private final TimeUnit unit;
 		private final String name;
 		private final long[] history;
+		private int last = -1;
+		private long historySum = 0;
 		private double average = 0.0;
 		private double std = 0.0;
 
@@ -77,19 +81,16 @@ public class PhysicsStats {
 		private void update(long deltaNanoSec) {
 			updateCount++;
 
-			average = 0;
-			for (int i = 0; i < history.length - 1; i++) {
-				history[i] = history[i + 1];
-				average += history[i];
-			}
-			average += deltaNanoSec;
-			history[history.length - 1] = deltaNanoSec;
+			// the history is a circular buffer, last is the index of the latest sample
+			last = last == history.length - 1 ? 0 : last + 1;
+			historySum += deltaNanoSec - history[last];
+			history[last] = deltaNanoSec;
 
 			int length = (int) (updateCount < history.length ? updateCount : history.length);
-			average /= length;
+			average = (double) historySum / length;
 
 			std = 0;
-			for (int i = history.length - length; i < history.length; i++) {
+			for (int i = 0; i < length; i++) {
 				std += (history[i] - average) * (history[i] - average);
 			}
 			std = Math.sqrt(std / length);
@@ -100,7 +101,7 @@ public class PhysicsStats {
 		}
 
 		public double getDeltaNanos() {
-			return history[history.length - 1];
+			return last < 0 ? 0 : history[last];
 		}
 
 		public String display(double totalNanoSec, boolean percentage) {
@@ -153,12 +154,31 @@ public class PhysicsStats {
 	public final TimeAverage physicsRecorder = new TimeAverage(TimeUnit.MILLISEC, "Simulation recording", smooth);
 	public final TimeAverage physicsPlayers = new TimeAverage(TimeUnit.MILLISEC, "Simulation replaying", smooth);
 
+	/**
+	 * The detailed timings of each phase of the simulation, disabled by default.
+	 * 
+	 * @see Profiler#setEnabled(boolean)
+	 */
+	public final Profiler profiler = new Profiler();
+
 	public void step(float timeStep) {
 		this.frame_count++;
 		this.simulationTime += timeStep;
 		userTime += globalUpdate.getDeltaNanos() * 1.0E-6;
 	}
 
+	/**
+	 * Moves the frame counter and the simulation time back to those of a restored
+	 * snapshot.
+	 * 
+	 * @param frameCount
+	 * @param simulationTime
+	 */
+	void rewind(long frameCount, double simulationTime) {
+		this.frame_count = frameCount;
+		this.simulationTime = simulationTime;
+	}
+
 	public void reset(int rigidBodies, int staticMeshes, int constraints, int threads) {
 		this.rigidBodies = rigidBodies;
 		this.staticMeshes = staticMeshes;
@@ -192,6 +212,18 @@ public class PhysicsStats {
 		return frame_count;
 	}
 
+	public int getRigidBodies() {
+		return rigidBodies;
+	}
+
+	public int getStaticMeshes() {
+		return staticMeshes;
+	}
+
+	public int getConstraints() {
+		return constraints;
+	}
+
 	public double getElapsedTime() {
 		return simulationTime;
 	}
@@ -6,15 +6,26 @@ import java.util.List;
 import java.util.Set;
 
 import cataclysm.broadphase.AABB;
+import cataclysm.broadphase.staticmeshes.Heightfield;
 import cataclysm.broadphase.staticmeshes.StaticMesh;
 import cataclysm.broadphase.staticmeshes.StaticMeshData;
 import cataclysm.broadphase.staticmeshes.StaticMeshManager;
 import cataclysm.broadphase.staticmeshes.Triangle;
 import cataclysm.constraints.AbstractConstraint;
+import cataclysm.contact_creation.ContactEventBuffer;
+import cataclysm.integrators.ForceField;
+import cataclysm.integrators.ForceFieldManager;
+import cataclysm.parallel.PhysicsWork;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
+import cataclysm.profiling.StepEvent;
+import cataclysm.parallel.PhysicsWorkerPool;
+import cataclysm.parallel.PhysicsWorkerThread;
 import cataclysm.record.PhysicsPlayer;
 import cataclysm.record.PhysicsRecorder;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.RigidBodyManager;
+import cataclysm.wrappers.TransformBuffer;
 import cataclysm.wrappers.Wrapper;
 import cataclysm.wrappers.WrapperBuilder;
 import math.MatrixOps;
@@ -54,6 +65,22 @@ public class PhysicsWorld implements GeometryQuery {
 	 */
 	private final List<AbstractConstraint> constraints = new ArrayList<AbstractConstraint>();
 
+	/**
+	 * Les champs de forces locaux.
+	 */
+	private final ForceFieldManager forceFields = new ForceFieldManager(this);
+
+	/**
+	 * Les évènements de contact du dernier appel à {@link #update(int)}.
+	 */
+	private final ContactEventBuffer contactEvents = new ContactEventBuffer(this);
+
+	/**
+	 * Les transformations des corps publiées à la fin de chaque pas de temps, pour
+	 * les lire depuis un autre thread.
+	 */
+	private final TransformBuffer transforms = new TransformBuffer();
+
 	/**
 	 * Le moteur physique permettant de simuler les contacts et les contraintes
 	 * entre les corps.
@@ -143,23 +170,48 @@ public class PhysicsWorld implements GeometryQuery {
 			throw new IllegalArgumentException("Invalid number of frames to simulate: " + frameCount);
 		}
 
+		contactEvents.clear();
+		Profiler profiler = stats.profiler;
 		for (int i = 0; i < frameCount; i++) {
+			StepEvent event = new StepEvent();
+			event.begin();
 			stats.globalUpdate.start();
+			long stepStart = profiler.start();
+			long start = profiler.start();
 			actors.removeIf(actor -> !actor.update(this));
+			profiler.stop(Phase.ACTORS, start);
+			start = profiler.start();
+			forceFields.update(params.getTimeStep());
+			profiler.stop(Phase.FORCES, start);
 			stats.step(params.getTimeStep());
 			if (activeRecord != null) {
+				start = profiler.start();
 				stats.physicsRecorder.start();
 				activeRecord.newFrame();
 				stats.physicsRecorder.pause();
+				profiler.stop(Phase.RECORDING, start);
 			}
 			engine.update(bodies, meshes, constraints, stats);
+			contactEvents.record(bodies.getMeshContacts(), bodies.getBodyContacts());
 			if (activeRecord != null) {
+				start = profiler.start();
 				stats.physicsRecorder.start();
 				activeRecord.endOfFrame();
 				stats.physicsRecorder.stop();
+				profiler.stop(Phase.RECORDING, start);
+			}
+			if (transforms.isEnabled()) {
+				transforms.publish(bodies, stats.getFrameCount(), stats.getElapsedTime());
 			}
 
 			stats.globalUpdate.stop();
+			profiler.stop(Phase.STEP, stepStart);
+			profiler.endFrame(stats.getFrameCount());
+			event.end();
+			if (event.shouldCommit()) {
+				event.set(stats);
+				event.commit();
+			}
 		}
 
 //		System.out.println(stats);
@@ -183,6 +235,50 @@ public class PhysicsWorld implements GeometryQuery {
 		return stats;
 	}
 
+	/**
+	 * Takes a snapshot of the state of the simulation, to restore it later with
+	 * {@link #restore(WorldSnapshot)}.
+	 * 
+	 * @return A new snapshot
+	 * @see WorldSnapshot
+	 */
+	public WorldSnapshot snapshot() {
+		return snapshot(new WorldSnapshot());
+	}
+
+	/**
+	 * Takes a snapshot of the state of the simulation in an existing snapshot,
+	 * whose memory is reused.
+	 * 
+	 * @param dest
+	 * @return dest
+	 * @throws IllegalStateException if bodies or meshes have been added or removed
+	 *                               since the last update, or if the world is
+	 *                               simulated by several threads.
+	 */
+	public WorldSnapshot snapshot(WorldSnapshot dest) {
+		dest.write(this, constraints);
+		return dest;
+	}
+
+	/**
+	 * Moves the simulation back to the state of a snapshot. The contact events of
+	 * the last update are cleared and the transforms of the bodies are published
+	 * again if the {@link TransformBuffer} is enabled.
+	 * 
+	 * @param snapshot A snapshot taken from this world
+	 * @throws IllegalStateException if the snapshot has been taken from another
+	 *                               world, or if bodies, meshes or constraints
+	 *                               have been added or removed since.
+	 */
+	public void restore(WorldSnapshot snapshot) {
+		snapshot.read(this, constraints);
+		contactEvents.clear();
+		if (transforms.isEnabled()) {
+			transforms.publish(bodies, stats.getFrameCount(), stats.getElapsedTime());
+		}
+	}
+
 	/**
 	 * Builds a new rigid body in the simulation.
 	 * 
@@ -217,6 +313,31 @@ public class PhysicsWorld implements GeometryQuery {
 		return bodies.removeElement(ID);
 	}
 
+	/**
+	 * Construit plusieurs rigidbody partageant les mêmes enveloppes, par exemple
+	 * lors du chargement d'un niveau.
+	 * 
+	 * @param transforms Position et rotation de chacun des objets. Ne doivent pas
+	 *                   contenir de facteur d'échelle.
+	 * @param builders   Les enveloppes des nouveaux corps.
+	 * @return Les nouveaux corps, dans l'ordre des transformations.
+	 */
+	public RigidBody[] newBodies(Matrix4f[] transforms, WrapperBuilder... builders) {
+		return bodies.newBodies(transforms, builders);
+	}
+
+	/**
+	 * Supprime plusieurs rigidbody en une seule fois, voir
+	 * {@link #deleteBody(long)}. Le coût est linéaire en le nombre de corps
+	 * supprimés.
+	 * 
+	 * @param IDs
+	 * @return Le nombre de corps effectivement supprimés.
+	 */
+	public int deleteBodies(long[] IDs) {
+		return bodies.removeAll(IDs);
+	}
+
 	/**
 	 * Teste la présence d'un rigidbody dans la simulation.
 	 * 
@@ -244,6 +365,27 @@ public class PhysicsWorld implements GeometryQuery {
 		return meshes.newMesh(data, transform, keepData);
 	}
 
+	/**
+	 * Construit un nouveau maillage de collision statique en passant par un
+	 * fichier cache, voir
+	 * {@link StaticMeshManager#newMesh(StaticMeshData, Matrix4f, boolean, String)}.
+	 * <br>
+	 * Attention, le maillage ne sera placé dans la simulation qu'après un appel à
+	 * {@link #start()} ou {@link #update(int)}
+	 * 
+	 * @param data      Les données géométriques du maillage.
+	 * @param transform Une transformation à appliquer aux données géométriques pour
+	 *                  construire les triangles du maillage.
+	 * @param keepData  Indique s'il faut conserver les données géométriques.
+	 * @param cachePath Le chemin du fichier cache.
+	 * @return
+	 * @throws IOException
+	 */
+	public StaticMesh newMesh(StaticMeshData data, Matrix4f transform, boolean keepData, String cachePath)
+			throws IOException {
+		return meshes.newMesh(data, transform, keepData, cachePath);
+	}
+
 	/**
 	 * Construit un nouveau maillage de collision statique � partir des donn�es
 	 * g�om�triques initiales d'un maillage existant.
@@ -261,6 +403,34 @@ public class PhysicsWorld implements GeometryQuery {
 		return meshes.copyMesh(transform, other, keepData);
 	}
 
+	/**
+	 * Construit une instance d'un maillage de collision statique. Les triangles ne
+	 * sont pas recopiés : toutes les instances des mêmes données partagent une
+	 * seule géométrie, les requêtes sont effectuées dans son repère local. <br>
+	 * Attention, le maillage ne sera placé dans la simulation qu'après un appel à
+	 * {@link #start()} ou {@link #update(int)}
+	 * 
+	 * @param data      Les données géométriques du maillage.
+	 * @param transform La transformation de l'instance, elle doit être inversible.
+	 * @return
+	 */
+	public StaticMesh newMeshInstance(StaticMeshData data, Matrix4f transform) {
+		return meshes.newMeshInstance(data, transform);
+	}
+
+	/**
+	 * Construit un terrain à partir d'une grille de hauteurs. Les triangles ne
+	 * sont pas stockés, ils sont construits à la demande lors des requêtes. <br>
+	 * Attention, le terrain ne sera placé dans la simulation qu'après un appel à
+	 * {@link #start()} ou {@link #update(int)}
+	 * 
+	 * @param heightfield Les hauteurs du terrain.
+	 * @return
+	 */
+	public StaticMesh newHeightfield(Heightfield heightfield) {
+		return meshes.newHeightfield(heightfield);
+	}
+
 	/**
 	 * Supprime un staticmesh.
 	 * 
@@ -271,6 +441,16 @@ public class PhysicsWorld implements GeometryQuery {
 		return meshes.removeElement(ID);
 	}
 
+	/**
+	 * Supprime plusieurs staticmesh en une seule fois.
+	 * 
+	 * @param IDs
+	 * @return Le nombre de meshes effectivement supprimés.
+	 */
+	public int deleteMeshes(long[] IDs) {
+		return meshes.removeAll(IDs);
+	}
+
 	/**
 	 * Teste la présence d'un staticmesh dans la simulation.
 	 * 
@@ -302,6 +482,25 @@ public class PhysicsWorld implements GeometryQuery {
 		}
 	}
 
+	/**
+	 * Ajoute un champ de forces local dans la simulation.
+	 * 
+	 * @param field
+	 */
+	public void addForceField(ForceField field) {
+		forceFields.add(field);
+	}
+
+	/**
+	 * Supprime un champ de forces.
+	 * 
+	 * @param field
+	 * @return true si le champ était dans la simulation.
+	 */
+	public boolean deleteForceField(ForceField field) {
+		return forceFields.remove(field);
+	}
+
 	/**
 	 * Ajoute une fonction appellée à chaque update de la simulation.
 	 * 
@@ -328,6 +527,7 @@ public class PhysicsWorld implements GeometryQuery {
 		bodies.cleanUp();
 		meshes.cleanUp();
 		constraints.clear();
+		forceFields.cleanUp();
 	}
 
 	public RigidBodyManager getBodyManager() {
@@ -343,6 +543,29 @@ public class PhysicsWorld implements GeometryQuery {
 		return bodies;
 	}
 
+	public ForceFieldManager getForceFields() {
+		return forceFields;
+	}
+
+	/**
+	 * @return Les évènements de contact des pas de temps simulés par le dernier
+	 *         appel à {@link #update(int)}. Aucun évènement n'est enregistré tant
+	 *         qu'aucun type n'est demandé via
+	 *         {@link ContactEventBuffer#subscribe(int)}.
+	 */
+	public ContactEventBuffer getContactEvents() {
+		return contactEvents;
+	}
+
+	/**
+	 * @return Les transformations des corps publiées à la fin de chaque pas de
+	 *         temps, désactivé par défaut.
+	 * @see TransformBuffer#setEnabled(boolean)
+	 */
+	public TransformBuffer getTransformBuffer() {
+		return transforms;
+	}
+
 	public StaticMeshManager getMeshManager() {
 		return meshes;
 	}
@@ -458,6 +681,52 @@ public class PhysicsWorld implements GeometryQuery {
 		}
 	}
 
+	/**
+	 * Performs the ray tests of a batch on the calling thread. Like
+	 * {@link #rayTest(RayTest)}, this method can be called from several threads
+	 * when the simulation is not being updated.
+	 * 
+	 * @param batch
+	 */
+	public void rayTest(RayBatch batch) {
+		if (!batch.isSorted()) {
+			batch.sort();
+		}
+		batch.run(this, new RayTest(), 0, batch.size());
+	}
+
+	/**
+	 * Performs the ray tests of a batch on the threads of a worker pool, each
+	 * thread testing a contiguous range of the sorted rays. The method returns
+	 * when all the rays have been tested. The simulation must not be updated in
+	 * the meantime.
+	 * 
+	 * @param batch
+	 * @param workers A pool which isn't running any other work.
+	 */
+	public void rayTest(RayBatch batch, PhysicsWorkerPool workers) {
+		if (!batch.isSorted()) {
+			batch.sort();
+		}
+		int threadCount = workers.getThreadCount();
+		List<PhysicsWork> tasks = new ArrayList<PhysicsWork>(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			final int from = (int) ((long) batch.size() * i / threadCount);
+			final int to = (int) ((long) batch.size() * (i + 1) / threadCount);
+			tasks.add(new PhysicsWork() {
+
+				@Override
+				public void run(PhysicsWorkerThread worker) {
+					batch.run(PhysicsWorld.this, new RayTest(), from, to);
+					worker.waitForTermination();
+				}
+
+			});
+		}
+		workers.scheduleWork(tasks, "rayTest", 1);
+		workers.waitForTaskTermination();
+	}
+
 	@Override
 	public void boxTriangleQuery(AABB box, Set<Triangle> set) {
 		meshes.boxTriangleQuery(box, set);
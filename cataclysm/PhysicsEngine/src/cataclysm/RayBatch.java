@@ -0,0 +1,261 @@
+package cataclysm;
+
+import java.util.Arrays;
+
+import cataclysm.RayTest.Mode;
+import math.vector.Vector3f;
+
+/**
+ * A set of rays tested together with {@link PhysicsWorld#rayTest(RayBatch)} or
+ * {@link PhysicsWorld#rayTest(RayBatch, cataclysm.parallel.PhysicsWorkerPool)}.
+ * The rays and their results are stored in flat arrays, one per component,
+ * instead of one {@link RayTest} object per ray. <br>
+ * <br>
+ * Rays are tested in the order given by {@link #sort()}, which groups rays
+ * starting close to each other and going in the same general direction: such
+ * rays walk through the same grid cells and hierarchy nodes, which are then
+ * still in the cache. The indices given by {@link #add} are not affected by the
+ * sort.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class RayBatch {
+
+	/**
+	 * The number of bits per axis of the position part of a sort key.
+	 */
+	private static final int SORT_BITS = 9;
+
+	private final Mode mode;
+	private final boolean backfaceCulling;
+
+	private int count = 0;
+
+	private float[] startX;
+	private float[] startY;
+	private float[] startZ;
+	private float[] dirX;
+	private float[] dirY;
+	private float[] dirZ;
+	private float[] maxDistance;
+
+	private float[] hitDistance;
+	private float[] normalX;
+	private float[] normalY;
+	private float[] normalZ;
+
+	/**
+	 * The order in which the rays are tested. A key is made of the sort key of the
+	 * ray in the upper 32 bits and of its index in the lower 32 bits.
+	 */
+	private long[] order;
+	private boolean sorted = false;
+
+	/**
+	 * Builds an empty batch.
+	 *
+	 * @param mode            The geometry tested by the rays.
+	 * @param backfaceCulling true to ignore triangles facing away from the rays.
+	 * @param capacity        The initial number of rays the batch can hold
+	 *                        without growing.
+	 */
+	public RayBatch(Mode mode, boolean backfaceCulling, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity, should be > 0, got " + capacity);
+		}
+		this.mode = mode;
+		this.backfaceCulling = backfaceCulling;
+		startX = new float[capacity];
+		startY = new float[capacity];
+		startZ = new float[capacity];
+		dirX = new float[capacity];
+		dirY = new float[capacity];
+		dirZ = new float[capacity];
+		maxDistance = new float[capacity];
+		hitDistance = new float[capacity];
+		normalX = new float[capacity];
+		normalY = new float[capacity];
+		normalZ = new float[capacity];
+		order = new long[capacity];
+	}
+
+	private void grow(int capacity) {
+		startX = Arrays.copyOf(startX, capacity);
+		startY = Arrays.copyOf(startY, capacity);
+		startZ = Arrays.copyOf(startZ, capacity);
+		dirX = Arrays.copyOf(dirX, capacity);
+		dirY = Arrays.copyOf(dirY, capacity);
+		dirZ = Arrays.copyOf(dirZ, capacity);
+		maxDistance = Arrays.copyOf(maxDistance, capacity);
+		hitDistance = Arrays.copyOf(hitDistance, capacity);
+		normalX = Arrays.copyOf(normalX, capacity);
+		normalY = Arrays.copyOf(normalY, capacity);
+		normalZ = Arrays.copyOf(normalZ, capacity);
+		order = Arrays.copyOf(order, capacity);
+	}
+
+	/**
+	 * Adds a ray to the batch.
+	 *
+	 * @param start       The starting point of the ray.
+	 * @param dir         The direction of the ray, must be a unit vector.
+	 * @param maxDistance The maximal length of the ray.
+	 * @return The index of the ray, to be used to read its result.
+	 */
+	public int add(Vector3f start, Vector3f dir, float maxDistance) {
+		return add(start.x, start.y, start.z, dir.x, dir.y, dir.z, maxDistance);
+	}
+
+	/**
+	 * Adds a ray to the batch.
+	 *
+	 * @return The index of the ray, to be used to read its result.
+	 */
+	public int add(float startX, float startY, float startZ, float dirX, float dirY, float dirZ, float maxDistance) {
+		if (count == this.startX.length) {
+			grow(2 * count);
+		}
+		int i = count++;
+		this.startX[i] = startX;
+		this.startY[i] = startY;
+		this.startZ[i] = startZ;
+		this.dirX[i] = dirX;
+		this.dirY[i] = dirY;
+		this.dirZ[i] = dirZ;
+		this.maxDistance[i] = maxDistance;
+		this.hitDistance[i] = Float.POSITIVE_INFINITY;
+		sorted = false;
+		return i;
+	}
+
+	/**
+	 * Removes all the rays, the capacity of the batch is kept.
+	 */
+	public void clear() {
+		count = 0;
+		sorted = false;
+	}
+
+	/**
+	 * Sorts the rays by direction octant, then along a Morton curve through their
+	 * starting points. The positions are quantized on a 512^3 grid spanning the
+	 * starting points of the batch. This method is called by the ray tests if
+	 * rays were added since the last sort.
+	 */
+	public void sort() {
+		if (count == 0) {
+			sorted = true;
+			return;
+		}
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, startX[i]);
+			minY = Math.min(minY, startY[i]);
+			minZ = Math.min(minZ, startZ[i]);
+			maxX = Math.max(maxX, startX[i]);
+			maxY = Math.max(maxY, startY[i]);
+			maxZ = Math.max(maxZ, startZ[i]);
+		}
+		float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+		float scale = extent > 0 ? ((1 << SORT_BITS) - 1) / extent : 0;
+
+		for (int i = 0; i < count; i++) {
+			int octant = (dirX[i] < 0 ? 1 : 0) | (dirY[i] < 0 ? 2 : 0) | (dirZ[i] < 0 ? 4 : 0);
+			int x = (int) ((startX[i] - minX) * scale);
+			int y = (int) ((startY[i] - minY) * scale);
+			int z = (int) ((startZ[i] - minZ) * scale);
+			long key = (octant << 3 * SORT_BITS) | spreadBits(x) | spreadBits(y) << 1 | spreadBits(z) << 2;
+			order[i] = key << 32 | i;
+		}
+		Arrays.sort(order, 0, count);
+		sorted = true;
+	}
+
+	/**
+	 * Inserts two zeros between each of the lower {@link #SORT_BITS} bits of v.
+	 */
+	private static int spreadBits(int v) {
+		v &= 0x1FF;
+		v = (v | v << 16) & 0x030000FF;
+		v = (v | v << 8) & 0x0300F00F;
+		v = (v | v << 4) & 0x030C30C3;
+		v = (v | v << 2) & 0x09249249;
+		return v;
+	}
+
+	/**
+	 * Tests the rays from position from to position to in the sorted order.
+	 *
+	 * @param world
+	 * @param test  A ray test used as a scratch object.
+	 * @param from
+	 * @param to
+	 */
+	void run(PhysicsWorld world, RayTest test, int from, int to) {
+		test.setMode(mode, backfaceCulling);
+		for (int k = from; k < to; k++) {
+			int i = (int) order[k];
+			test.reset(startX[i], startY[i], startZ[i], dirX[i], dirY[i], dirZ[i], maxDistance[i]);
+			world.rayTest(test);
+			hitDistance[i] = test.getHitDistance();
+			if (test.hit()) {
+				Vector3f normal = test.getHitNormal();
+				normalX[i] = normal.x;
+				normalY[i] = normal.y;
+				normalZ[i] = normal.z;
+			}
+		}
+	}
+
+	boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * @return The number of rays in the batch.
+	 */
+	public int size() {
+		return count;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public boolean isBackfaceCulling() {
+		return backfaceCulling;
+	}
+
+	/**
+	 * @param i The index of a ray.
+	 * @return true if the ray hit something during the last test.
+	 */
+	public boolean hit(int i) {
+		return hitDistance[i] < maxDistance[i];
+	}
+
+	/**
+	 * @param i The index of a ray.
+	 * @return The distance to the hit point, or {@link Float#POSITIVE_INFINITY}
+	 *         if the ray missed.
+	 */
+	public float getHitDistance(int i) {
+		return hitDistance[i];
+	}
+
+	/**
+	 * Reads the normal at the hit point, only meaningful if {@link #hit(int)}
+	 * returns true.
+	 *
+	 * @param i    The index of a ray.
+	 * @param dest
+	 * @return dest
+	 */
+	public Vector3f getHitNormal(int i, Vector3f dest) {
+		dest.set(normalX[i], normalY[i], normalZ[i]);
+		return dest;
+	}
+
+}
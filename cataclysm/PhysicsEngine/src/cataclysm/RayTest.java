@@ -1,6 +1,7 @@
 package cataclysm;
 
 import cataclysm.quickHull.Face;
+import cataclysm.wrappers.Wrapper;
 import math.vector.Vector3f;
 
 public class RayTest {
@@ -14,6 +15,7 @@ public class RayTest {
 	private boolean backfaceCulling;
 	private final Vector3f hitNormal = new Vector3f();
 	private float hitDistance = Float.POSITIVE_INFINITY;
+	private Wrapper hitWrapper;
 	private Mode mode;
 
 	public RayTest() {
@@ -34,6 +36,7 @@ public class RayTest {
 		dir.set(dirX, dirY, dirZ);
 		this.maxDistance = maxDistance;
 		this.hitDistance = Float.POSITIVE_INFINITY;
+		this.hitWrapper = null;
 	}
 
 	public void reset(Vector3f start, Vector3f dir, float maxDistance) {
@@ -41,6 +44,7 @@ public class RayTest {
 		this.dir.set(dir);
 		this.maxDistance = maxDistance;
 		this.hitDistance = Float.POSITIVE_INFINITY;
+		this.hitWrapper = null;
 	}
 
 	public boolean hit() {
@@ -82,4 +86,16 @@ public class RayTest {
 	public void setHitDistance(float hitDistance) {
 		this.hitDistance = hitDistance;
 	}
+
+	/**
+	 * @return The wrapper hit by the ray, or null if the closest hit is a triangle
+	 *         or if nothing was hit.
+	 */
+	public Wrapper getHitWrapper() {
+		return hitWrapper;
+	}
+
+	public void setHitWrapper(Wrapper hitWrapper) {
+		this.hitWrapper = hitWrapper;
+	}
 }
@@ -0,0 +1,138 @@
+package cataclysm;
+
+import java.util.List;
+
+import cataclysm.broadphase.staticmeshes.StaticMeshManager;
+import cataclysm.constraints.AbstractConstraint;
+import cataclysm.datastructures.StateBuffer;
+import cataclysm.wrappers.RigidBodyManager;
+
+/**
+ * The state of a {@link PhysicsWorld} between two frames, taken by
+ * {@link PhysicsWorld#snapshot(WorldSnapshot)} and restored by
+ * {@link PhysicsWorld#restore(WorldSnapshot)}. Simulating the same frames
+ * after a restore gives the same results as the first time, which allows to
+ * roll the simulation back and replay it with corrected inputs, or to try out
+ * several futures from the same state. <br>
+ * <br>
+ * A snapshot holds the transforms, the velocities and the sleep counters of the
+ * bodies, the contacts with the impulses accumulated to warm start the solver,
+ * the impulses of the constraints, the structure of the broadphase and the
+ * frame counter. The state is copied in the flat arrays of a
+ * {@link StateBuffer}, no memory is allocated when a snapshot is taken again
+ * once its arrays have grown. <br>
+ * The bodies, the static meshes and the constraints are referenced, not copied:
+ * a snapshot can only be restored in the world it has been taken from, as long
+ * as no body, mesh or constraint has been added or removed since. The settings
+ * of the bodies, the force fields, the actors and the contact events aren't
+ * part of a snapshot. Snapshots aren't supported when the bodies are updated
+ * by several threads.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class WorldSnapshot {
+
+	private final StateBuffer state = new StateBuffer();
+
+	private PhysicsWorld world;
+	private long frame = -1;
+	private double time;
+
+	void write(PhysicsWorld world, List<AbstractConstraint> constraints) {
+		RigidBodyManager bodies = world.getBodyManager();
+		StaticMeshManager meshes = world.getMeshManager();
+		if (!bodies.supportsSnapshots()) {
+			throw new IllegalStateException(
+					"Error, snapshots aren't supported when the bodies are updated by several threads");
+		}
+		checkPendingChanges(bodies, meshes);
+
+		state.clear();
+		this.world = world;
+		this.frame = world.getElapsedFrames();
+		this.time = world.getElapsedTime();
+
+		state.putInt(bodies.size());
+		for (Object body : bodies) {
+			state.putRef(body);
+		}
+		state.putInt(meshes.size());
+		for (Object mesh : meshes) {
+			state.putRef(mesh);
+		}
+		state.putInt(constraints.size());
+		for (int i = 0; i < constraints.size(); i++) {
+			state.putRef(constraints.get(i));
+		}
+
+		bodies.writeState(state);
+		for (int i = 0; i < constraints.size(); i++) {
+			constraints.get(i).writeState(state);
+		}
+	}
+
+	void read(PhysicsWorld world, List<AbstractConstraint> constraints) {
+		if (this.world != world) {
+			throw new IllegalStateException("Error, the snapshot hasn't been taken from this world");
+		}
+		RigidBodyManager bodies = world.getBodyManager();
+		StaticMeshManager meshes = world.getMeshManager();
+		checkPendingChanges(bodies, meshes);
+
+		// nothing is modified before the elements of the world have been checked
+		state.rewind();
+		if (!matches(bodies, bodies.size()) || !matches(meshes, meshes.size())
+				|| !matches(constraints, constraints.size())) {
+			throw new IllegalStateException(
+					"Error, bodies, meshes or constraints have been added or removed since the snapshot");
+		}
+
+		bodies.readState(state);
+		for (int i = 0; i < constraints.size(); i++) {
+			constraints.get(i).readState(state);
+		}
+		world.getUpdateStats().rewind(frame, time);
+	}
+
+	private boolean matches(Iterable<?> elements, int size) {
+		if (state.getInt() != size) {
+			return false;
+		}
+		for (Object element : elements) {
+			if (state.getRef() != element) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void checkPendingChanges(RigidBodyManager bodies, StaticMeshManager meshes) {
+		if (bodies.hasPendingChanges() || meshes.hasPendingChanges()) {
+			throw new IllegalStateException(
+					"Error, the bodies and meshes added or removed since the last update must be processed first");
+		}
+	}
+
+	/**
+	 * @return The frame at which the snapshot has been taken, -1 if it is empty.
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * @return The time of the simulation when the snapshot has been taken.
+	 */
+	public double getElapsedTime() {
+		return time;
+	}
+
+	/**
+	 * @return The size of the state held by the snapshot, in bytes.
+	 */
+	public int getSize() {
+		return state.getSize();
+	}
+
+}
@@ -85,6 +85,17 @@ public class AABB {
 		return false;
 	}
 
+	/**
+	 * Checks if this contains point, the sides being included.
+	 * 
+	 * @param point
+	 * @return true if point is inside this.
+	 */
+	public boolean contains(Vector3f point) {
+		return minX <= point.x && point.x <= maxX && minY <= point.y && point.y <= maxY && minZ <= point.z
+				&& point.z <= maxZ;
+	}
+
 	/**
 	 * Computes the union of two AABBs.
 	 * 
@@ -142,6 +153,50 @@ public class AABB {
 		return false;
 	}
 
+	/**
+	 * Computes the distance at which a ray enters this AABB.
+	 * 
+	 * @param start     The start of the ray
+	 * @param dir       The direction of the ray
+	 * @param maxLength The length of the ray
+	 * @return The distance at which the ray enters the box, 0 if start is inside
+	 *         the box, or {@link Float#POSITIVE_INFINITY} if the ray misses the
+	 *         box.
+	 */
+	public float rayEntry(Vector3f start, Vector3f dir, float maxLength) {
+		float tmin = 0;
+		float tmax = maxLength;
+
+		if (dir.x != 0) {
+			float t1 = (minX - start.x) / dir.x;
+			float t2 = (maxX - start.x) / dir.x;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		} else if (start.x < minX || start.x > maxX) {
+			return Float.POSITIVE_INFINITY;
+		}
+
+		if (dir.y != 0) {
+			float t1 = (minY - start.y) / dir.y;
+			float t2 = (maxY - start.y) / dir.y;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		} else if (start.y < minY || start.y > maxY) {
+			return Float.POSITIVE_INFINITY;
+		}
+
+		if (dir.z != 0) {
+			float t1 = (minZ - start.z) / dir.z;
+			float t2 = (maxZ - start.z) / dir.z;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		} else if (start.z < minZ || start.z > maxZ) {
+			return Float.POSITIVE_INFINITY;
+		}
+
+		return tmin <= tmax ? tmin : Float.POSITIVE_INFINITY;
+	}
+
 	/**
 	 * @return the surface area of this AABB
 	 */
@@ -1,8 +1,10 @@
 package cataclysm.broadphase;
 
+import java.util.List;
 import java.util.Set;
 
 import cataclysm.annotations.Parallelizable;
+import math.vector.Vector3f;
 
 /**
  * Defines a node of the {@link BroadPhaseTree}.
@@ -22,6 +24,13 @@ public class BroadPhaseNode<T> {
 
 	private final T handle;
 
+	/**
+	 * The collision filtering bits of a leaf, see
+	 * {@link #boxTest(AABB, int, int, Set)}.
+	 */
+	private int category = 0xFFFFFFFF;
+	private int mask = 0xFFFFFFFF;
+
 	/**
 	 * Builds a new node which can be placed in the {@link BroadPhaseTree} subsequently.
 	 * 
@@ -66,6 +75,73 @@ public class BroadPhaseNode<T> {
 		}
 	}
 
+	/**
+	 * Same as {@link #boxTest(AABB, Set)}, but the leaves are added to a list.
+	 * 
+	 * @param box
+	 * @param dest
+	 */
+	@Parallelizable
+	void boxTest(AABB box, List<T> dest) {
+
+		if (!AABB.intersect(this.box, box)) {
+			return;
+		}
+
+		if (isLeaf) {
+			dest.add(this.handle);
+		} else {
+			this.child1.boxTest(box, dest);
+			this.child2.boxTest(box, dest);
+		}
+	}
+
+	/**
+	 * Same as {@link #boxTest(AABB, Set)}, but the leaves which can't collide
+	 * according to their category and mask are rejected without being added to
+	 * dest.
+	 * 
+	 * @param box
+	 * @param category
+	 * @param mask
+	 * @param dest
+	 */
+	@Parallelizable
+	void boxTest(AABB box, int category, int mask, Set<T> dest) {
+
+		if (!AABB.intersect(this.box, box)) {
+			return;
+		}
+
+		if (isLeaf) {
+			if ((this.category & mask) != 0 && (this.mask & category) != 0) {
+				dest.add(this.handle);
+			}
+		} else {
+			this.child1.boxTest(box, category, mask, dest);
+			this.child2.boxTest(box, category, mask, dest);
+		}
+	}
+
+	/**
+	 * @param point
+	 * @param dest
+	 */
+	@Parallelizable
+	void pointTest(Vector3f point, List<T> dest) {
+
+		if (!this.box.contains(point)) {
+			return;
+		}
+
+		if (isLeaf) {
+			dest.add(this.handle);
+		} else {
+			this.child1.pointTest(point, dest);
+			this.child2.pointTest(point, dest);
+		}
+	}
+
 	public AABB getBox() {
 		return box;
 	}
@@ -74,6 +150,27 @@ public class BroadPhaseNode<T> {
 		return handle;
 	}
 
+	/**
+	 * Sets the filtering bits of a leaf. Two leaves A and B are only paired by a
+	 * filtered box test if: <br>
+	 * {@code (maskA & categoryB) != 0 && (maskB & categoryA) != 0}
+	 * 
+	 * @param category
+	 * @param mask
+	 */
+	public void setFilter(int category, int mask) {
+		this.category = category;
+		this.mask = mask;
+	}
+
+	public int getCategory() {
+		return category;
+	}
+
+	public int getMask() {
+		return mask;
+	}
+
 	@Override
 	public String toString() {
 		return (isLeaf ? "Leaf " + handle : "Node " + super.toString());
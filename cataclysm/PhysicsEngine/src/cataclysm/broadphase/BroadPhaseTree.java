@@ -1,6 +1,7 @@
 package cataclysm.broadphase;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -8,6 +9,9 @@ import java.util.Set;
 
 import cataclysm.RayTest;
 import cataclysm.annotations.Parallelizable;
+import cataclysm.datastructures.StateBuffer;
+import cataclysm.profiling.BroadPhaseRebalanceEvent;
+import math.vector.Vector3f;
 
 /**
  * Defines a binary tree whose nodes are {@link BroadPhaseNode}. The tree is a
@@ -22,6 +26,35 @@ public class BroadPhaseTree<T> {
 
 	private static final boolean DEBUG = false;
 
+	/**
+	 * The number of rotations from which the reinsertion of a leaf is reported as
+	 * a {@link BroadPhaseRebalanceEvent}.
+	 */
+	private static final int LARGE_REBALANCE_ROTATIONS = 8;
+
+	/**
+	 * Defines the exact ray test performed against the objects of the leaf nodes
+	 * whose box is hit by a ray.
+	 * 
+	 * @author Briac Toussaint
+	 *
+	 * @param <T>
+	 */
+	@FunctionalInterface
+	public interface LeafRayTest<T> {
+		/**
+		 * Tests a ray against the object of a leaf node. If the object is hit closer
+		 * than maxLength, the normal of the test should be set.
+		 * 
+		 * @param handle    The object of the leaf node
+		 * @param test      The ray test being performed
+		 * @param maxLength The distance to the closest hit found so far
+		 * @return The distance to the hit point, or maxLength if the object isn't
+		 *         hit closer than maxLength
+		 */
+		public float rayTest(T handle, RayTest test, float maxLength);
+	}
+
 	/**
 	 * The root node of the tree. It contains every other node of the tree.
 	 */
@@ -29,9 +62,16 @@ public class BroadPhaseTree<T> {
 	BroadPhaseNode<T> tempNode;
 
 	private final AABB tempBox = new AABB();
+	private int rotations = 0;
 	private final PriorityQueue<BroadPhaseNode<T>> queue = new PriorityQueue<BroadPhaseNode<T>>(
 			(left, right) -> Float.compare(left.cost, right.cost));
 
+	/**
+	 * The internal nodes left over by {@link #readState(StateBuffer)}, reused by
+	 * the next calls.
+	 */
+	private final ArrayList<BroadPhaseNode<T>> spareNodes = new ArrayList<BroadPhaseNode<T>>();
+
 	/**
 	 * Adds a node in the tree
 	 * 
@@ -168,10 +208,13 @@ public class BroadPhaseTree<T> {
 			return;
 		}
 
+		int rotationsBefore = rotations;
+
 		// check if the box is at least contained within the root box
 		if (!root.box.contains(box)) {
 			remove(node);
 			add(node);
+			reportRebalance(true, rotations - rotationsBefore);
 			return;
 		}
 
@@ -182,11 +225,67 @@ public class BroadPhaseTree<T> {
 
 		remove(node);
 		add(node, ancestor);
+		reportRebalance(false, rotations - rotationsBefore);
 
 	}
 
-	public void rayTest(RayTest test) {
-		throw new IllegalStateException("Not implemented");
+	private void reportRebalance(boolean fromRoot, int rotations) {
+		if (rotations >= LARGE_REBALANCE_ROTATIONS) {
+			BroadPhaseRebalanceEvent.emit(fromRoot, rotations);
+		}
+	}
+
+	/**
+	 * Performs a ray test against the objects of the tree. The children of a node
+	 * are visited front to back and the nodes whose box is farther than the
+	 * closest hit found so far are skipped. The hit distance of the test is only
+	 * updated if an object is hit closer than the current one. <br>
+	 * No memory is allocated, several ray tests can run at the same time.
+	 * 
+	 * @param test
+	 * @param leafTest The exact ray test against the objects of the leaf nodes
+	 */
+	@Parallelizable
+	public void rayTest(RayTest test, LeafRayTest<T> leafTest) {
+		if (root == null) {
+			return;
+		}
+		float maxLength = Math.min(test.getMaxDistance(), test.getHitDistance());
+		if (root.box.rayEntry(test.getStart(), test.getDir(), maxLength) < maxLength) {
+			float length = rayTest(root, test, leafTest, maxLength);
+			if (length < maxLength) {
+				test.setHitDistance(length);
+			}
+		}
+	}
+
+	@Parallelizable
+	private float rayTest(BroadPhaseNode<T> node, RayTest test, LeafRayTest<T> leafTest, float maxLength) {
+		if (node.isLeaf) {
+			return leafTest.rayTest(node.getHandle(), test, maxLength);
+		}
+
+		BroadPhaseNode<T> near = node.child1;
+		BroadPhaseNode<T> far = node.child2;
+		float tNear = near.box.rayEntry(test.getStart(), test.getDir(), maxLength);
+		float tFar = far.box.rayEntry(test.getStart(), test.getDir(), maxLength);
+		if (tFar < tNear) {
+			BroadPhaseNode<T> temp = near;
+			near = far;
+			far = temp;
+			float t = tNear;
+			tNear = tFar;
+			tFar = t;
+		}
+
+		if (tNear < maxLength) {
+			maxLength = rayTest(near, test, leafTest, maxLength);
+		}
+		// the far child is skipped if the hit in the near child is closer
+		if (tFar < maxLength) {
+			maxLength = rayTest(far, test, leafTest, maxLength);
+		}
+		return maxLength;
 	}
 
 	/**
@@ -202,6 +301,143 @@ public class BroadPhaseTree<T> {
 		}
 	}
 
+	/**
+	 * Retrieves all leaf nodes of the tree instersecting box. No memory is
+	 * allocated apart from the growth of dest.
+	 * 
+	 * @param box
+	 * @param dest
+	 */
+	@Parallelizable
+	public void boxTest(AABB box, List<T> dest) {
+		if (root != null) {
+			root.boxTest(box, dest);
+		}
+	}
+
+	/**
+	 * Retrieves the leaf nodes of the tree instersecting box whose filtering bits
+	 * match the given category and mask, see
+	 * {@link BroadPhaseNode#setFilter(int, int)}. The other leaves are discarded
+	 * during the traversal.
+	 * 
+	 * @param box
+	 * @param category
+	 * @param mask
+	 * @param dest
+	 */
+	@Parallelizable
+	public void boxTest(AABB box, int category, int mask, Set<T> dest) {
+		if (root != null) {
+			root.boxTest(box, category, mask, dest);
+		}
+	}
+
+	/**
+	 * Retrieves all leaf nodes of the tree whose box contains point. No memory is
+	 * allocated apart from the growth of dest.
+	 * 
+	 * @param point
+	 * @param dest
+	 */
+	@Parallelizable
+	public void pointTest(Vector3f point, List<T> dest) {
+		if (root != null) {
+			root.pointTest(point, dest);
+		}
+	}
+
+	/**
+	 * Writes the structure of the tree and the boxes of its nodes in preorder. The
+	 * leaf nodes are written as references, the order in which the queries visit
+	 * the leaves is kept.
+	 * 
+	 * @param dest
+	 */
+	public void writeState(StateBuffer dest) {
+		dest.putBoolean(root != null);
+		if (root != null) {
+			writeNode(root, dest);
+		}
+	}
+
+	private void writeNode(BroadPhaseNode<T> node, StateBuffer dest) {
+		AABB box = node.box;
+		dest.putFloat(box.minX);
+		dest.putFloat(box.minY);
+		dest.putFloat(box.minZ);
+		dest.putFloat(box.maxX);
+		dest.putFloat(box.maxY);
+		dest.putFloat(box.maxZ);
+		dest.putBoolean(node.isLeaf);
+		if (node.isLeaf) {
+			dest.putRef(node);
+		} else {
+			writeNode(node.child1, dest);
+			writeNode(node.child2, dest);
+		}
+	}
+
+	/**
+	 * Rebuilds the tree from a state written by {@link #writeState(StateBuffer)}.
+	 * The leaf nodes of the state must not have been inserted in another tree since,
+	 * the internal nodes of the current tree are reused.
+	 * 
+	 * @param src
+	 */
+	public void readState(StateBuffer src) {
+		if (root != null) {
+			collectInternalNodes(root);
+		}
+		root = src.getBoolean() ? readNode(null, src) : null;
+	}
+
+	private void collectInternalNodes(BroadPhaseNode<T> node) {
+		if (node.isLeaf) {
+			return;
+		}
+		collectInternalNodes(node.child1);
+		collectInternalNodes(node.child2);
+		node.parent = null;
+		node.child1 = null;
+		node.child2 = null;
+		spareNodes.add(node);
+	}
+
+	private BroadPhaseNode<T> readNode(BroadPhaseNode<T> parent, StateBuffer src) {
+		float minX = src.getFloat();
+		float minY = src.getFloat();
+		float minZ = src.getFloat();
+		float maxX = src.getFloat();
+		float maxY = src.getFloat();
+		float maxZ = src.getFloat();
+		BroadPhaseNode<T> node;
+		if (src.getBoolean()) {
+			node = src.getRef();
+		} else {
+			if (!spareNodes.isEmpty()) {
+				node = spareNodes.remove(spareNodes.size() - 1);
+			} else {
+				node = new BroadPhaseNode<T>(null, new AABB());
+			}
+			node.child1 = readNode(node, src);
+			node.child2 = readNode(node, src);
+		}
+		node.parent = parent;
+		AABB box = node.box;
+		box.minX = minX;
+		box.minY = minY;
+		box.minZ = minZ;
+		box.maxX = maxX;
+		box.maxY = maxY;
+		box.maxZ = maxZ;
+		if (!node.isLeaf) {
+			// the insertion heuristic reads the cached surface area of the internal nodes
+			box.computeSurfaceArea();
+		}
+		return node;
+	}
+
 	/**
 	 * Selects a node among the children of ancestor which will become a sibling of
 	 * nodeToInsert.
@@ -339,6 +575,7 @@ public class BroadPhaseTree<T> {
 		}
 
 		if (grandchild != null) {
+			rotations++;
 			BroadPhaseNode<T> grandChildParent = grandchild.parent;
 			grandchild.parent = current;
 			child.parent = grandChildParent;
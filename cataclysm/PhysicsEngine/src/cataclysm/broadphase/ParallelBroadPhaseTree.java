@@ -171,9 +171,14 @@ public class ParallelBroadPhaseTree<T> {
 		return tree;
 	}
 
+	/**
+	 * @see BroadPhaseTree#rayTest(RayTest, BroadPhaseTree.LeafRayTest)
+	 * @param test
+	 * @param leafTest
+	 */
 	@Parallelizable
-	public void rayTest(RayTest test) {
-		tree.rayTest(test);
+	public void rayTest(RayTest test, BroadPhaseTree.LeafRayTest<T> leafTest) {
+		tree.rayTest(test, leafTest);
 	}
 
 	/**
@@ -186,4 +191,17 @@ public class ParallelBroadPhaseTree<T> {
 	public void boxTest(AABB box, Set<T> dest) {
 		tree.boxTest(box, dest);
 	}
+
+	/**
+	 * @see BroadPhaseTree#boxTest(AABB, int, int, Set)
+	 * 
+	 * @param box
+	 * @param category
+	 * @param mask
+	 * @param dest
+	 */
+	@Parallelizable
+	public void boxTest(AABB box, int category, int mask, Set<T> dest) {
+		tree.boxTest(box, category, mask, dest);
+	}
 }
@@ -0,0 +1,32 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.io.IOException;
+
+/**
+ * Fournit les données géométriques des morceaux du monde chargés par un
+ * {@link StaticMeshStreamer}. Les appels ont lieu sur les threads du streamer,
+ * jamais sur celui de la simulation.
+ *
+ * @author Briac Toussaint
+ *
+ */
+@FunctionalInterface
+public interface ChunkLoader {
+
+	/**
+	 * Charge le maillage d'un morceau du monde. Le morceau (x, y, z) est la case
+	 * de même coordonnées dans la grille des maillages statiques, il recouvre
+	 * l'intervalle [(x - 1/2) * taille, (x + 1/2) * taille] sur chaque axe, où
+	 * taille vaut {@link cataclysm.DefaultParameters#getGridCellSize()}. Les
+	 * triangles peuvent dépasser de la case.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return Les données du maillage, exprimées dans le repère du monde, ou bien
+	 *         null si le morceau est vide.
+	 * @throws IOException
+	 */
+	StaticMeshData load(int x, int y, int z) throws IOException;
+
+}
@@ -0,0 +1,297 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.util.function.IntConsumer;
+
+import math.vector.Vector3f;
+
+/**
+ * Un terrain défini par une grille régulière de hauteurs, par exemple
+ * échantillonnée depuis un {@link math.noise.Noise2D}. Seules les hauteurs
+ * sont stockées, les triangles sont construits à la demande : chaque case de
+ * la grille est coupée en deux triangles le long de sa diagonale. <br>
+ * La case contenant un point est obtenue directement à partir de ses
+ * coordonnées, les requêtes ne parcourent donc que les cases concernées et les
+ * lancers de rayon avancent de case en case (DDA 2D).
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class Heightfield {
+
+	/**
+	 * Les hauteurs des sommets, celle du sommet (i, j) étant en i * countZ + j.
+	 */
+	private final float[] heights;
+
+	/**
+	 * Le nombre de sommets selon x et selon z.
+	 */
+	private final int countX;
+	private final int countZ;
+
+	private final float cellSize;
+	private final float ONE_OVER_CELL_SIZE;
+
+	/**
+	 * La position du sommet (0, 0) lorsque sa hauteur est nulle.
+	 */
+	private final Vector3f origin = new Vector3f();
+
+	final Vector3f min = new Vector3f();
+	final Vector3f max = new Vector3f();
+
+	/**
+	 * Construit un terrain. Le sommet (i, j) est placé en (origin.x + i *
+	 * cellSize, origin.y + heights[i * countZ + j], origin.z + j * cellSize). Le
+	 * tableau n'est pas recopié, il ne doit plus être modifié.
+	 *
+	 * @param heights  Les hauteurs des sommets.
+	 * @param countX   Le nombre de sommets selon x, au moins 2.
+	 * @param countZ   Le nombre de sommets selon z, au moins 2.
+	 * @param cellSize La distance entre deux sommets voisins.
+	 * @param origin   La position du sommet (0, 0) lorsque sa hauteur est nulle.
+	 */
+	public Heightfield(float[] heights, int countX, int countZ, float cellSize, Vector3f origin) {
+		if (countX < 2 || countZ < 2) {
+			throw new IllegalArgumentException(
+					"Invalid heightfield size, should be at least 2x2, got " + countX + "x" + countZ);
+		}
+		if (heights.length != countX * countZ) {
+			throw new IllegalArgumentException(
+					"Invalid heightfield, expected " + countX * countZ + " heights, got " + heights.length);
+		}
+		if (!(cellSize > 0)) {
+			throw new IllegalArgumentException("Invalid cell size, should be > 0, got " + cellSize);
+		}
+		this.heights = heights;
+		this.countX = countX;
+		this.countZ = countZ;
+		this.cellSize = cellSize;
+		this.ONE_OVER_CELL_SIZE = 1.0f / cellSize;
+		this.origin.set(origin);
+
+		float minY = Float.POSITIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < heights.length; i++) {
+			minY = Math.min(minY, heights[i]);
+			maxY = Math.max(maxY, heights[i]);
+		}
+		min.set(origin.x, origin.y + minY, origin.z);
+		max.set(origin.x + (countX - 1) * cellSize, origin.y + maxY, origin.z + (countZ - 1) * cellSize);
+	}
+
+	/**
+	 * @return Le nombre de triangles du terrain, deux par case.
+	 */
+	public int getTriangleCount() {
+		return 2 * (countX - 1) * (countZ - 1);
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return La hauteur du sommet (i, j) dans le repère du monde.
+	 */
+	public float getHeight(int i, int j) {
+		return origin.y + heights[i * countZ + j];
+	}
+
+	/**
+	 * Ecrit un triangle dans data. Le triangle 2k est (a, b, c) et le triangle 2k
+	 * + 1 est (b, d, c), avec a, b, c, d les sommets (i, j), (i, j + 1), (i + 1,
+	 * j), (i + 1, j + 1) de la case k = i * (countZ - 1) + j. Leurs normales sont
+	 * orientées vers le haut.
+	 *
+	 * @param index  L'indice du triangle.
+	 * @param data   Le tableau de destination, voir {@link TriangleStore#STRIDE}.
+	 * @param offset La position du triangle dans data.
+	 */
+	void writeTriangle(int index, float[] data, int offset) {
+		int cell = index >> 1;
+		int i = cell / (countZ - 1);
+		int j = cell - i * (countZ - 1);
+		float x0 = origin.x + i * cellSize;
+		float z0 = origin.z + j * cellSize;
+		float x1 = x0 + cellSize;
+		float z1 = z0 + cellSize;
+		float hb = getHeight(i, j + 1);
+		float hc = getHeight(i + 1, j);
+		if ((index & 1) == 0) {
+			TriangleStore.write(data, offset, x0, getHeight(i, j), z0, x0, hb, z1, x1, hc, z0);
+		} else {
+			TriangleStore.write(data, offset, x0, hb, z1, x1, getHeight(i + 1, j + 1), z1, x1, hc, z0);
+		}
+	}
+
+	/**
+	 * @param index L'indice d'un triangle.
+	 * @param edge  L'indice de l'arête, dans l'ordre de
+	 *              {@link Triangle#getEdge0(Vector3f)},
+	 *              {@link Triangle#getEdge1(Vector3f)} et
+	 *              {@link Triangle#getEdge2(Vector3f)}.
+	 * @return L'indice du triangle voisin, ou -1 si l'arête est un bord.
+	 */
+	int getAdjacentTriangle(int index, int edge) {
+		int cellsZ = countZ - 1;
+		int cell = index >> 1;
+		int i = cell / cellsZ;
+		int j = cell - i * cellsZ;
+		if ((index & 1) == 0) {
+			switch (edge) {
+			case 0: // a -> b, partagée avec la case (i - 1, j)
+				return i > 0 ? 2 * (cell - cellsZ) + 1 : -1;
+			case 1: // b -> c, la diagonale
+				return index + 1;
+			default: // c -> a, partagée avec la case (i, j - 1)
+				return j > 0 ? 2 * (cell - 1) + 1 : -1;
+			}
+		}
+		switch (edge) {
+		case 0: // b -> d, partagée avec la case (i, j + 1)
+			return j + 1 < cellsZ ? 2 * (cell + 1) : -1;
+		case 1: // d -> c, partagée avec la case (i + 1, j)
+			return i + 2 < countX ? 2 * (cell + cellsZ) : -1;
+		default: // c -> b, la diagonale
+			return index - 1;
+		}
+	}
+
+	/**
+	 * Parcourt les triangles dont la boîte englobante intersecte la boîte donnée.
+	 *
+	 * @param min
+	 * @param max
+	 * @param consumer Reçoit l'indice de chaque triangle trouvé.
+	 */
+	void boxQuery(Vector3f min, Vector3f max, IntConsumer consumer) {
+		int i0 = Math.max(0, toCell(min.x - origin.x));
+		int i1 = Math.min(countX - 2, toCell(max.x - origin.x));
+		int j0 = Math.max(0, toCell(min.z - origin.z));
+		int j1 = Math.min(countZ - 2, toCell(max.z - origin.z));
+		float minY = min.y - origin.y;
+		float maxY = max.y - origin.y;
+
+		for (int i = i0; i <= i1; i++) {
+			for (int j = j0; j <= j1; j++) {
+				float ha = heights[i * countZ + j];
+				float hb = heights[i * countZ + j + 1];
+				float hc = heights[(i + 1) * countZ + j];
+				float hd = heights[(i + 1) * countZ + j + 1];
+				int cell = i * (countZ - 1) + j;
+				float lo = Math.min(hb, hc);
+				float hi = Math.max(hb, hc);
+				if (Math.min(lo, ha) <= maxY && Math.max(hi, ha) >= minY) {
+					consumer.accept(2 * cell);
+				}
+				if (Math.min(lo, hd) <= maxY && Math.max(hi, hd) >= minY) {
+					consumer.accept(2 * cell + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Effectue un test de lancer de rayon. Les cases traversées par la projection
+	 * du rayon sur le plan xz sont visitées dans l'ordre, la première case
+	 * contenant un point d'intersection contient donc le plus proche.
+	 *
+	 * @param start           Le point de départ du rayon.
+	 * @param dir             La direction du rayon, le vecteur doit être unitaire.
+	 * @param maxLength       La distance maximale que le rayon est autorisé à
+	 *                        parcourir.
+	 * @param backfaceCulling true pour rejeter le triangle si N.dir > 0.
+	 * @param hit             Reçoit en hit[0] l'indice du triangle touché.
+	 * @param query           Les données temporaires du thread appelant.
+	 * @return La distance au point d'intersection ou bien maxLength si le test
+	 *         échoue.
+	 */
+	float rayTest(Vector3f start, Vector3f dir, float maxLength, boolean backfaceCulling, int[] hit,
+			HierarchyQuery query) {
+		// On restreint le rayon à la boîte englobante du terrain.
+		float tEnter = 0;
+		float tExit = maxLength;
+		for (int k = 0; k < 3; k++) {
+			float s = k == 0 ? start.x : k == 1 ? start.y : start.z;
+			float d = k == 0 ? dir.x : k == 1 ? dir.y : dir.z;
+			float lo = k == 0 ? min.x : k == 1 ? min.y : min.z;
+			float hi = k == 0 ? max.x : k == 1 ? max.y : max.z;
+			if (d == 0) {
+				if (s < lo || s > hi) {
+					return maxLength;
+				}
+				continue;
+			}
+			float t1 = (lo - s) / d;
+			float t2 = (hi - s) / d;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
+			if (tEnter > tExit) {
+				return maxLength;
+			}
+		}
+
+		float localX = start.x - origin.x;
+		float localZ = start.z - origin.z;
+		int i = Math.max(0, Math.min(countX - 2, toCell(localX + tEnter * dir.x)));
+		int j = Math.max(0, Math.min(countZ - 2, toCell(localZ + tEnter * dir.z)));
+		int stepI = dir.x > 0 ? 1 : -1;
+		int stepJ = dir.z > 0 ? 1 : -1;
+		float tNextX = dir.x == 0 ? Float.POSITIVE_INFINITY
+				: ((i + (dir.x > 0 ? 1 : 0)) * cellSize - localX) / dir.x;
+		float tNextZ = dir.z == 0 ? Float.POSITIVE_INFINITY
+				: ((j + (dir.z > 0 ? 1 : 0)) * cellSize - localZ) / dir.z;
+		float tDeltaX = dir.x == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dir.x);
+		float tDeltaZ = dir.z == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dir.z);
+
+		float[] data = query.cellTriangles;
+		Vector3f intersection = query.intersection;
+		while (true) {
+			int cell = i * (countZ - 1) + j;
+			writeTriangle(2 * cell, data, 0);
+			writeTriangle(2 * cell + 1, data, TriangleStore.STRIDE);
+			float d0 = TriangleStore.rayTest(data, 0, start, dir, maxLength, intersection, backfaceCulling);
+			float d1 = TriangleStore.rayTest(data, TriangleStore.STRIDE, start, dir, d0, intersection,
+					backfaceCulling);
+			if (d1 < d0) {
+				hit[0] = 2 * cell + 1;
+				return d1;
+			} else if (d0 < maxLength) {
+				hit[0] = 2 * cell;
+				return d0;
+			}
+
+			if (tNextX < tNextZ) {
+				if (tNextX > tExit) {
+					break;
+				}
+				i += stepI;
+				tNextX += tDeltaX;
+				if (i < 0 || i > countX - 2) {
+					break;
+				}
+			} else {
+				if (tNextZ > tExit) {
+					break;
+				}
+				j += stepJ;
+				tNextZ += tDeltaZ;
+				if (j < 0 || j > countZ - 2) {
+					break;
+				}
+			}
+		}
+		return maxLength;
+	}
+
+	/**
+	 * @return La place occupée en mémoire par les hauteurs, en octets.
+	 */
+	long getMemoryFootprint() {
+		return 4L * heights.length;
+	}
+
+	private int toCell(float localPos) {
+		return (int) Math.floor(localPos * ONE_OVER_CELL_SIZE);
+	}
+
+}
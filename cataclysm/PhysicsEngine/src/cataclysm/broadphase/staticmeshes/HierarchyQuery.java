@@ -0,0 +1,95 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import math.vector.Vector3f;
+
+/**
+ * Les données temporaires des requêtes sur les hiérarchies des maillages. Chaque
+ * thread effectuant des requêtes possède la sienne, voir {@link MapGrid}, et la
+ * réutilise d'une requête à l'autre : aucune allocation n'est faite pendant une
+ * requête.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class HierarchyQuery {
+
+	/**
+	 * La boîte de la requête, éventuellement ramenée dans le repère local d'une
+	 * instance.
+	 */
+	final Vector3f min = new Vector3f();
+	final Vector3f max = new Vector3f();
+	final Vector3f center = new Vector3f();
+	final Vector3f extent = new Vector3f();
+
+	/**
+	 * Le rayon ramené dans le repère local d'une instance.
+	 */
+	final Vector3f localStart = new Vector3f();
+	final Vector3f localDir = new Vector3f();
+	final Vector3f intersection = new Vector3f();
+
+	/**
+	 * Reçoit l'indice du triangle touché par un rayon.
+	 */
+	final int[] hit = new int[1];
+
+	/**
+	 * Les deux triangles d'une case d'un terrain, recalculés pour chaque case
+	 * traversée par un rayon.
+	 */
+	final float[] cellTriangles = new float[2 * TriangleStore.STRIDE];
+
+	/**
+	 * La vue remplie avec le triangle touché par un rayon.
+	 */
+	final Triangle triangle = new Triangle();
+
+	/**
+	 * La pile de boîtes décodées d'une {@link TriangleBVH}, agrandie à la
+	 * demande.
+	 */
+	private float[] stack = new float[0];
+
+	private StaticMesh mesh;
+	private Set<Triangle> set;
+
+	/**
+	 * Ajoute les triangles trouvés dans l'ensemble donné à
+	 * {@link #begin(StaticMesh, Set)}.
+	 */
+	final IntConsumer addTriangle = index -> set.add(mesh.getTriangle(index));
+
+	/**
+	 * Prépare {@link #addTriangle} pour une requête.
+	 *
+	 * @param mesh Le maillage interrogé.
+	 * @param set  L'ensemble recevant les triangles trouvés.
+	 */
+	void begin(StaticMesh mesh, Set<Triangle> set) {
+		this.mesh = mesh;
+		this.set = set;
+	}
+
+	/**
+	 * Oublie le maillage et l'ensemble de la dernière requête.
+	 */
+	void end() {
+		this.mesh = null;
+		this.set = null;
+	}
+
+	/**
+	 * @param length La taille nécessaire.
+	 * @return La pile, d'au moins length floats.
+	 */
+	float[] getStack(int length) {
+		if (stack.length < length) {
+			stack = new float[length];
+		}
+		return stack;
+	}
+}
@@ -1,6 +1,8 @@
 package cataclysm.broadphase.staticmeshes;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,14 +28,34 @@ class MapGrid implements GeometryQuery{
 	private final float ONE_OVER_GRID_CELL_SIZE;
 	private final Map<Coord, OctreeBase> grid = new HashMap<Coord, OctreeBase>();
 
+	/**
+	 * Si true, chaque maillage reçoit sa propre hiérarchie de boîtes englobantes
+	 * lors de son insertion au lieu d'être inséré dans les octrees.
+	 */
+	private final boolean useBVH;
+
+	/**
+	 * Les maillages possédant leur propre hiérarchie (les instances, et tous les
+	 * maillages si {@link #useBVH}), rangés dans chaque case de la grille qu'ils
+	 * recouvrent. Leurs triangles ne sont pas insérés dans les octrees.
+	 */
+	private final Map<Coord, List<StaticMesh>> hierarchies = new HashMap<Coord, List<StaticMesh>>();
+
 	private final Vector3f min = new Vector3f();
 	private final Vector3f max = new Vector3f();
 	private final Vector3f axis = new Vector3f();
 	private final Vector3f[] edges = new Vector3f[3];
 
-	public MapGrid(float cellSize, int maxOctreeDepth) {
+	/**
+	 * Les requêtes sur les hiérarchies des maillages peuvent être faites par
+	 * plusieurs threads à la fois, chacun réutilise ses propres données.
+	 */
+	private final ThreadLocal<HierarchyQuery> hierarchyQueries = ThreadLocal.withInitial(HierarchyQuery::new);
+
+	public MapGrid(float cellSize, int maxOctreeDepth, boolean useBVH) {
 		this.GRID_CELL_SIZE = cellSize;
 		this.maxOctreeDepth = maxOctreeDepth;
+		this.useBVH = useBVH;
 		this.ONE_OVER_GRID_CELL_SIZE = 1.0f / GRID_CELL_SIZE;
 
 		edges[0] = new Vector3f();
@@ -53,6 +75,21 @@ class MapGrid implements GeometryQuery{
 		
 		getCoordRange(mesh, range);
 		range.startIteration();
+		if (useBVH) {
+			mesh.buildHierarchy();
+		}
+		if (mesh.hasHierarchy()) {
+			while (range.next()) {
+				List<StaticMesh> list = hierarchies.get(range.getIterator());
+				if (list == null) {
+					list = new ArrayList<StaticMesh>(2);
+					hierarchies.put(new Coord(range.getIterator().getX(), range.getIterator().getY(),
+							range.getIterator().getZ()), list);
+				}
+				list.add(mesh);
+			}
+			return;
+		}
 		while (range.next()) {
 			OctreeBase base = grid.get(range.getIterator());
 			if (base == null) {
@@ -60,15 +97,14 @@ class MapGrid implements GeometryQuery{
 				grid.put(base.coord, base);
 			}
 
-			for (Triangle triangle : mesh.triangles) {
+			TriangleStore triangles = mesh.triangles;
+			for (int i = 0; i < triangles.count; i++) {
 				min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
 				max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-				triangle.getMinMax(min, max);
+				triangles.getMinMax(i, min, max);
 
-				triangle.getEdge0(edges[0]);
-				triangle.getEdge1(edges[1]);
-				triangle.getEdge2(edges[2]);
-				base.rootCell.insertTriangle(triangle, min, max, edges, axis);
+				triangles.getEdges(i, edges);
+				base.rootCell.insertTriangle(mesh, i, min, max, edges, axis);
 
 			}
 
@@ -76,6 +112,53 @@ class MapGrid implements GeometryQuery{
 
 	}
 
+	/**
+	 * Ajoute les triangles du mesh dans les octrees de la grille à la place
+	 * indiquée par layout, sans tests d'intersection.
+	 * 
+	 * @param mesh
+	 * @param layout Le placement des triangles, obtenu par
+	 *               {@link #getLayout(StaticMesh)} avec les mêmes paramètres de
+	 *               grille.
+	 */
+	void add(StaticMesh mesh, OctreeLayout layout) {
+		Coord coord = new Coord(0, 0, 0);
+		int leaf = 0;
+		int index = 0;
+		for (int c = 0; c < layout.cellCount; c++) {
+			coord.set(layout.cells[4 * c], layout.cells[4 * c + 1], layout.cells[4 * c + 2]);
+			OctreeBase base = grid.get(coord);
+			if (base == null) {
+				base = new OctreeBase(GRID_CELL_SIZE, coord, maxOctreeDepth);
+				grid.put(base.coord, base);
+			}
+			int end = leaf + layout.cells[4 * c + 3];
+			for (; leaf < end; leaf++) {
+				base.rootCell.insertRun(mesh, layout.paths[leaf], layout.indices, index, layout.runLengths[leaf]);
+				index += layout.runLengths[leaf];
+			}
+		}
+	}
+
+	/**
+	 * @param mesh Un maillage inséré dans les octrees.
+	 * @return Le placement des triangles du mesh dans les octrees.
+	 */
+	OctreeLayout getLayout(StaticMesh mesh) {
+		OctreeLayout layout = new OctreeLayout();
+		CoordRange range = new CoordRange();
+		getCoordRange(mesh, range);
+		range.startIteration();
+		while (range.next()) {
+			OctreeBase base = grid.get(range.getIterator());
+			if (base != null) {
+				layout.addCell(base.coord);
+				base.rootCell.collectRuns(mesh, 0, layout);
+			}
+		}
+		return layout;
+	}
+
 	/**
 	 * Supprime les triangles du mesh dans la grille de l'octree.
 	 * 
@@ -85,24 +168,25 @@ class MapGrid implements GeometryQuery{
 		CoordRange range = new CoordRange();
 		getCoordRange(mesh, range);
 		range.startIteration();
+		if (mesh.hasHierarchy()) {
+			while (range.next()) {
+				List<StaticMesh> list = hierarchies.get(range.getIterator());
+				if (list != null) {
+					list.remove(mesh);
+					if (list.isEmpty()) {
+						hierarchies.remove(range.getIterator());
+					}
+				}
+			}
+			return;
+		}
 		while (range.next()) {
 			OctreeBase base = grid.get(range.getIterator());
 			if (base == null) {
 				continue;
 			}
 
-			for (Triangle triangle : mesh.triangles) {
-				min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
-				max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-				triangle.getMinMax(min, max);
-
-				triangle.getEdge0(edges[0]);
-				triangle.getEdge1(edges[1]);
-				triangle.getEdge2(edges[2]);
-				base.rootCell.removeTriangle(triangle, min, max, edges, axis);
-
-			}
-
+			base.rootCell.removeMesh(mesh);
 		}
 
 	}
@@ -118,22 +202,48 @@ class MapGrid implements GeometryQuery{
 		Coord iterator =  new Coord(0, 0, 0);
 		getCoord(test.getStart(), iterator);
 		OctreeBase.computeIntersectionTime(test.getStart(), test.getDir(), iterator, GRID_CELL_SIZE, intersectionTime);
+		Vector3f normal = new Vector3f();
+		Vector3f intersection = new Vector3f();
+		float best = test.getMaxDistance();
+		Set<StaticMesh> tested = null;
 		while (true) {
 			//System.out.println(iterator);
 			OctreeBase base = grid.get(iterator);
 			if (base != null) {
-				float length = base.rootCell.rayTest(test.getStart(), test.getDir(), test.getMaxDistance(), intersectionTime.x, intersectionTime.y, test.isBackfaceCulling(), test.getHitNormal());
-				if (length < test.getMaxDistance()) {
-					test.setHitDistance(length);
-					return;
+				best = base.rootCell.rayTest(test.getStart(), test.getDir(), best, intersectionTime.x, intersectionTime.y, test.isBackfaceCulling(), test.getHitNormal(), intersection);
+			}
+			List<StaticMesh> cellMeshes = hierarchies.isEmpty() ? null : hierarchies.get(iterator);
+			if (cellMeshes != null) {
+				for (StaticMesh mesh : cellMeshes) {
+					// La hiérarchie couvre tout le maillage, un seul test suffit.
+					if (tested == null) {
+						tested = new HashSet<StaticMesh>();
+					}
+					if (!tested.add(mesh)) {
+						continue;
+					}
+					float length = mesh.hierarchyRayTest(test.getStart(), test.getDir(), best, test.isBackfaceCulling(), normal, hierarchyQueries.get());
+					if (length < best) {
+						best = length;
+						test.getHitNormal().set(normal);
+					}
 				}
 			}
 			
-			if(!OctreeBase.nextCell(test.getStart(), test.getDir(), test.getMaxDistance(), this.GRID_CELL_SIZE, iterator, iterator, intersectionTime)) {
+			// Un point d'intersection situé au-delà de cette case peut encore être
+			// précédé par un triangle des cases suivantes.
+			if (best <= intersectionTime.y) {
+				break;
+			}
+			
+			if(!OctreeBase.nextCell(test.getStart(), test.getDir(), best, this.GRID_CELL_SIZE, iterator, iterator, intersectionTime)) {
 				break;
 			}
 			
 		}
+		if (best < test.getMaxDistance()) {
+			test.setHitDistance(best);
+		}
 	}
 	
 	@Override
@@ -142,12 +252,37 @@ class MapGrid implements GeometryQuery{
 		getCoordRange(box, range);
 		range.startIteration();
 		while (range.next()) {
-			OctreeBase base = grid.get(range.getIterator());
+			Coord coord = range.getIterator();
+			OctreeBase base = grid.get(coord);
 			if (base != null) {
 				base.rootCell.boxTest(box, set);
 			}
+
+			List<StaticMesh> cellMeshes = hierarchies.isEmpty() ? null : hierarchies.get(coord);
+			if (cellMeshes != null) {
+				for (StaticMesh mesh : cellMeshes) {
+					if (isFirstCommonCell(mesh, box, coord) && intersects(mesh, box)) {
+						mesh.hierarchyBoxQuery(box, set, hierarchyQueries.get());
+					}
+				}
+			}
 		}
 	}
+
+	/**
+	 * Un maillage recouvrant plusieurs cases de la grille n'est testé que dans la
+	 * première case commune au maillage et à la boite.
+	 */
+	private boolean isFirstCommonCell(StaticMesh mesh, AABB box, Coord coord) {
+		return coord.getX() == Math.max(toGridCoord(mesh.min.x), toGridCoord(box.minX))
+				&& coord.getY() == Math.max(toGridCoord(mesh.min.y), toGridCoord(box.minY))
+				&& coord.getZ() == Math.max(toGridCoord(mesh.min.z), toGridCoord(box.minZ));
+	}
+
+	private static boolean intersects(StaticMesh mesh, AABB box) {
+		return mesh.min.x <= box.maxX && mesh.max.x >= box.minX && mesh.min.y <= box.maxY && mesh.max.y >= box.minY
+				&& mesh.min.z <= box.maxZ && mesh.max.z >= box.minZ;
+	}
 	
 	@Override
 	public void boxWrapperQuery(AABB box, Set<Wrapper> set) {
@@ -156,6 +291,7 @@ class MapGrid implements GeometryQuery{
 
 	void cleanUp() {
 		grid.clear();
+		hierarchies.clear();
 	}
 
 	/**
@@ -220,7 +356,19 @@ class MapGrid implements GeometryQuery{
 	}
 
 	private int toGridCoord(float pos) {
-		return (int) (pos * ONE_OVER_GRID_CELL_SIZE + 0.5f * Math.signum(pos));
+		return toGridCoord(pos, ONE_OVER_GRID_CELL_SIZE);
+	}
+
+	/**
+	 * La case d'indice x recouvre l'intervalle [(x - 1/2) * taille, (x + 1/2) *
+	 * taille].
+	 * 
+	 * @param pos
+	 * @param oneOverCellSize L'inverse de la taille d'une case.
+	 * @return La coordonnée de la case contenant pos.
+	 */
+	static int toGridCoord(float pos, float oneOverCellSize) {
+		return (int) (pos * oneOverCellSize + 0.5f * Math.signum(pos));
 	}
 
 }
@@ -1,6 +1,6 @@
 package cataclysm.broadphase.staticmeshes;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -26,7 +26,17 @@ public class OctreeCell {
 	private final int depth;
 
 	private OctreeCell[] children;
-	private List<Triangle> triangles;
+
+	/**
+	 * Les indices des triangles d'une feuille. Les triangles d'un même maillage
+	 * sont insérés ensemble, ils forment donc un intervalle contigu : le k-ième
+	 * intervalle se termine en runEnds[k] et appartient à runMeshes[k].
+	 */
+	private int[] indices;
+	private int count = 0;
+	private StaticMesh[] runMeshes;
+	private int[] runEnds;
+	private int runCount = 0;
 
 	OctreeCell(Vector3f center, float size, int depth) {
 		this.center = center;
@@ -65,21 +75,20 @@ public class OctreeCell {
 	/**
 	 * Effectue l'insertion du triangle dans l'octree.
 	 * 
-	 * @param triangle
+	 * @param mesh     Le maillage du triangle.
+	 * @param triangle L'indice du triangle dans le maillage.
 	 * @param min
 	 * @param max
 	 */
-	void insertTriangle(Triangle triangle, Vector3f min, Vector3f max, Vector3f[] edges, Vector3f axis) {
+	void insertTriangle(StaticMesh mesh, int triangle, Vector3f min, Vector3f max, Vector3f[] edges,
+			Vector3f axis) {
 
-		if (!intersectsTriangle(triangle, min, max, edges, axis)) {
+		if (!intersectsTriangle(mesh.triangles, triangle, min, max, edges, axis)) {
 			return;
 		}
 
 		if (depth == 0) {
-			if (triangles == null) {
-				triangles = new ArrayList<Triangle>(5);
-			}
-			triangles.add(triangle);
+			append(mesh, triangle);
 			return;
 		}
 
@@ -88,35 +97,161 @@ public class OctreeCell {
 		}
 
 		for (int i = 0; i < children.length; i++) {
-			children[i].insertTriangle(triangle, min, max, edges, axis);
+			children[i].insertTriangle(mesh, triangle, min, max, edges, axis);
 		}
 
 	}
 
 	/**
-	 * Retire un triangle de l'octree.
+	 * Range dans la feuille désignée par path des triangles d'un maillage, sans
+	 * les tests d'intersection de
+	 * {@link #insertTriangle(StaticMesh, int, Vector3f, Vector3f, Vector3f[], Vector3f)}.
 	 * 
-	 * @param triangle
-	 * @param min
-	 * @param max
+	 * @param mesh   Le maillage des triangles.
+	 * @param path   Le chemin de la feuille depuis la racine, voir
+	 *               {@link OctreeLayout}.
+	 * @param src    Les indices des triangles.
+	 * @param from
+	 * @param length
+	 */
+	void insertRun(StaticMesh mesh, long path, int[] src, int from, int length) {
+		if (depth == 0) {
+			reserve(length);
+			System.arraycopy(src, from, indices, count, length);
+			count += length;
+			extendRun(mesh);
+			return;
+		}
+
+		if (children == null) {
+			buildChildren();
+		}
+		children[(int) (path >>> 3 * (depth - 1)) & 7].insertRun(mesh, path, src, from, length);
+	}
+
+	/**
+	 * Ajoute à layout les triangles du maillage rangés dans les feuilles de cette
+	 * cellule.
+	 * 
+	 * @param mesh
+	 * @param path   Le chemin de cette cellule depuis la racine.
+	 * @param layout
+	 */
+	void collectRuns(StaticMesh mesh, long path, OctreeLayout layout) {
+		if (isOutside(mesh)) {
+			return;
+		}
+
+		if (depth == 0) {
+			int start = 0;
+			for (int k = 0; k < runCount; k++) {
+				if (runMeshes[k] == mesh) {
+					layout.addLeaf(path, indices, start, runEnds[k]);
+					break;
+				}
+				start = runEnds[k];
+			}
+			return;
+		}
+
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				children[i].collectRuns(mesh, path << 3 | i, layout);
+			}
+		}
+	}
+
+	private void append(StaticMesh mesh, int triangle) {
+		reserve(1);
+		indices[count++] = triangle;
+		extendRun(mesh);
+	}
+
+	/**
+	 * Fait de la place pour length indices dans la feuille.
 	 */
-	void removeTriangle(Triangle triangle, Vector3f min, Vector3f max, Vector3f[] edges, Vector3f axis) {
+	private void reserve(int length) {
+		if (indices == null) {
+			indices = new int[Math.max(4, length)];
+			runMeshes = new StaticMesh[1];
+			runEnds = new int[1];
+		} else if (count + length > indices.length) {
+			indices = Arrays.copyOf(indices, Math.max(2 * indices.length, count + length));
+		}
+	}
 
-		if (!intersectsTriangle(triangle, min, max, edges, axis)) {
+	/**
+	 * Etend l'intervalle du maillage jusqu'au dernier indice ajouté, ou en
+	 * commence un nouveau.
+	 */
+	private void extendRun(StaticMesh mesh) {
+		if (runCount != 0 && runMeshes[runCount - 1] == mesh) {
+			runEnds[runCount - 1] = count;
+			return;
+		}
+		if (runCount == runMeshes.length) {
+			runMeshes = Arrays.copyOf(runMeshes, 2 * runCount);
+			runEnds = Arrays.copyOf(runEnds, 2 * runCount);
+		}
+		runMeshes[runCount] = mesh;
+		runEnds[runCount] = count;
+		runCount++;
+	}
+
+	/**
+	 * Retire tous les triangles d'un maillage de l'octree.
+	 * 
+	 * @param mesh
+	 */
+	void removeMesh(StaticMesh mesh) {
+
+		if (isOutside(mesh)) {
 			return;
 		}
 
 		if (depth == 0) {
-			if (triangles != null) {
-				triangles.remove(triangle);
+			if (indices != null) {
+				removeRun(mesh);
 			}
 			return;
 		}
 
 		if (children != null) {
 			for (int i = 0; i < children.length; i++) {
-				children[i].removeTriangle(triangle, min, max, edges, axis);
+				children[i].removeMesh(mesh);
+			}
+		}
+	}
+
+	private boolean isOutside(StaticMesh mesh) {
+		return mesh.max.x < center.x - half_size || mesh.min.x > center.x + half_size
+				|| mesh.max.y < center.y - half_size || mesh.min.y > center.y + half_size
+				|| mesh.max.z < center.z - half_size || mesh.min.z > center.z + half_size;
+	}
+
+	private void removeRun(StaticMesh mesh) {
+		for (int k = 0; k < runCount; k++) {
+			if (runMeshes[k] != mesh) {
+				continue;
 			}
+			int start = k == 0 ? 0 : runEnds[k - 1];
+			int length = runEnds[k] - start;
+			System.arraycopy(indices, runEnds[k], indices, start, count - runEnds[k]);
+			count -= length;
+			for (int j = k; j < runCount - 1; j++) {
+				runMeshes[j] = runMeshes[j + 1];
+				runEnds[j] = runEnds[j + 1] - length;
+			}
+			runCount--;
+			runMeshes[runCount] = null;
+			break;
+		}
+
+		if (count == 0) {
+			indices = null;
+			runMeshes = null;
+			runEnds = null;
+			runCount = 0;
 		}
 	}
 
@@ -129,8 +264,15 @@ public class OctreeCell {
 	void boxTest(AABB box, Set<Triangle> dest) {
 
 		if (depth == 0) {
-			if (triangles != null) {
-				dest.addAll(triangles);
+			if (indices != null) {
+				int start = 0;
+				for (int k = 0; k < runCount; k++) {
+					StaticMesh mesh = runMeshes[k];
+					for (int i = start; i < runEnds[k]; i++) {
+						dest.add(mesh.getTriangle(indices[i]));
+					}
+					start = runEnds[k];
+				}
 				return;
 			}
 		}
@@ -160,19 +302,25 @@ public class OctreeCell {
 	 *                        cellule
 	 * @param backfaceCulling true pour rejeter le triangle si N.dir > 0.
 	 * @param normalDest      Permet de stocker la normale du point d'intersection.
+	 * @param intersection    Un vecteur temporaire.
 	 * @return La distance au point d'intersection ou bien maxLength si le test
 	 *         �choue.
 	 */
 	float rayTest(Vector3f start, Vector3f dir, float maxLength, float t0, float t1, boolean backfaceCulling,
-			Vector3f normalDest) {
-
-		if (depth == 0 && triangles != null) {
-			for (Triangle triangle : triangles) {
-				float d = triangle.rayTest(start, dir, maxLength, normalDest, backfaceCulling);
-				if (d < maxLength) {
-					triangle.getNormal(normalDest);
-					maxLength = d;
+			Vector3f normalDest, Vector3f intersection) {
+
+		if (depth == 0 && indices != null) {
+			int first = 0;
+			for (int k = 0; k < runCount; k++) {
+				TriangleStore store = runMeshes[k].triangles;
+				for (int i = first; i < runEnds[k]; i++) {
+					float d = store.rayTest(indices[i], start, dir, maxLength, intersection, backfaceCulling);
+					if (d < maxLength) {
+						store.getNormal(indices[i], normalDest);
+						maxLength = d;
+					}
 				}
+				first = runEnds[k];
 			}
 
 		} else if (children != null) {
@@ -181,7 +329,8 @@ public class OctreeCell {
 			int quadrant1 = getQuadrant(start, dir, t1);
 
 			if (quadrant0 == quadrant1) {
-				float d = children[quadrant0].rayTest(start, dir, maxLength, t0, t1, backfaceCulling, normalDest);
+				float d = children[quadrant0].rayTest(start, dir, maxLength, t0, t1, backfaceCulling, normalDest,
+						intersection);
 				maxLength = Math.min(d, maxLength);
 				return maxLength;
 			}
@@ -209,7 +358,7 @@ public class OctreeCell {
 
 				if (t0 < maxLength && tmin > 0) {
 					float d = children[current_index].rayTest(start, dir, maxLength, t0, tmin, backfaceCulling,
-							normalDest);
+							normalDest, intersection);
 					if(d < maxLength) {
 						return d;
 					}
@@ -283,12 +432,14 @@ public class OctreeCell {
 	/**
 	 * Teste si le triangle est en intersection avec la cellule.
 	 * 
+	 * @param store
 	 * @param triangle
 	 * @param min
 	 * @param max
 	 * @return false si le triangle est � l'ext�rieur.
 	 */
-	private boolean intersectsTriangle(Triangle triangle, Vector3f min, Vector3f max, Vector3f[] edges, Vector3f axis) {
+	private boolean intersectsTriangle(TriangleStore store, int triangle, Vector3f min, Vector3f max,
+			Vector3f[] edges, Vector3f axis) {
 
 		// On utilise le SAT (separating axis theorem)
 
@@ -304,10 +455,12 @@ public class OctreeCell {
 		}
 
 		// On projette la cellule sur la normale du triangle.
-		Vector3f n = new Vector3f(triangle.getNormal(0), triangle.getNormal(1), triangle.getNormal(2));
+		Vector3f n = new Vector3f(store.getNormal(triangle, 0), store.getNormal(triangle, 1),
+				store.getNormal(triangle, 2));
 		Vector3f toCenter = new Vector3f();
 		
-		Vector3f.sub(center, triangle.getV0(toCenter), toCenter);
+		getVertex(store, triangle, 0, toCenter);
+		Vector3f.sub(center, toCenter, toCenter);
 		if (normalTest(n, toCenter)) {
 			return false;
 		}
@@ -326,7 +479,8 @@ public class OctreeCell {
 			return false;
 		}
 
-		Vector3f.sub(center, triangle.getV1(toCenter), toCenter);
+		getVertex(store, triangle, 1, toCenter);
+		Vector3f.sub(center, toCenter, toCenter);
 		// edge23 ^ n
 		Vector3f.cross(edges[1], n, axis);
 		if (axisTest(axis, toCenter)) {
@@ -336,7 +490,8 @@ public class OctreeCell {
 			return false;
 		}
 
-		Vector3f.sub(center, triangle.getV2(toCenter), toCenter);
+		getVertex(store, triangle, 2, toCenter);
+		Vector3f.sub(center, toCenter, toCenter);
 		// edge31 ^ n
 		Vector3f.cross(edges[2], n, axis);
 		if (axisTest(axis, toCenter)) {
@@ -351,6 +506,11 @@ public class OctreeCell {
 		return true;
 	}
 
+	private static void getVertex(TriangleStore store, int triangle, int vertex, Vector3f dest) {
+		dest.set(store.getVertex(triangle, vertex, 0), store.getVertex(triangle, vertex, 1),
+				store.getVertex(triangle, vertex, 2));
+	}
+
 	/**
 	 * Teste si le sommet est � l'int�rieur de la cellule.
 	 * 
@@ -461,7 +621,7 @@ public class OctreeCell {
 				}
 			}
 
-		} else if (maxDepth == 0 && (triangles != null || !nonVoidBoxes)) {
+		} else if (maxDepth == 0 && (indices != null || !nonVoidBoxes)) {
 			OctreeCellRenderable box = new OctreeCellRenderable(center, half_size, depth);
 			boxes.add(box);
 		}
@@ -0,0 +1,132 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * La place des triangles d'un maillage dans les octrees de la grille. Pour
+ * chaque case recouverte par le maillage, chaque feuille contenant des
+ * triangles du maillage est repérée par son chemin depuis la racine de
+ * l'octree, 3 bits par niveau, et associée aux indices de ces triangles. <br>
+ * Les triangles peuvent ainsi être replacés dans les octrees sans refaire les
+ * tests d'intersection entre triangles et cellules.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class OctreeLayout {
+
+	/**
+	 * Le nombre maximal de niveaux d'un octree pour que le chemin d'une feuille
+	 * tienne dans un long.
+	 */
+	static final int MAX_DEPTH = 21;
+
+	/**
+	 * Pour chaque case, ses coordonnées x, y, z puis son nombre de feuilles.
+	 */
+	int[] cells;
+	int cellCount;
+
+	/**
+	 * Le chemin de chaque feuille et le nombre de triangles du maillage qu'elle
+	 * contient, les feuilles d'une même case étant consécutives.
+	 */
+	long[] paths;
+	int[] runLengths;
+	int leafCount;
+
+	/**
+	 * Les indices des triangles, feuille après feuille.
+	 */
+	int[] indices;
+	int indexCount;
+
+	OctreeLayout() {
+		cells = new int[4 * 4];
+		paths = new long[16];
+		runLengths = new int[16];
+		indices = new int[64];
+	}
+
+	/**
+	 * Lit un placement écrit par {@link #write(ByteBuffer)}.
+	 */
+	OctreeLayout(ByteBuffer buffer) {
+		cellCount = buffer.getInt();
+		leafCount = buffer.getInt();
+		indexCount = buffer.getInt();
+		if (cellCount < 0 || leafCount < 0 || indexCount < 0
+				|| 16L * cellCount + 12L * leafCount + 4L * indexCount > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		cells = new int[4 * cellCount];
+		paths = new long[leafCount];
+		runLengths = new int[leafCount];
+		indices = new int[indexCount];
+		StaticMeshCache.getInts(buffer, cells);
+		StaticMeshCache.getLongs(buffer, paths);
+		StaticMeshCache.getInts(buffer, runLengths);
+		StaticMeshCache.getInts(buffer, indices);
+	}
+
+	/**
+	 * Commence une nouvelle case, les feuilles ajoutées ensuite lui appartiennent.
+	 *
+	 * @param coord
+	 */
+	void addCell(Coord coord) {
+		if (4 * cellCount == cells.length) {
+			cells = Arrays.copyOf(cells, 2 * cells.length);
+		}
+		cells[4 * cellCount + 0] = coord.getX();
+		cells[4 * cellCount + 1] = coord.getY();
+		cells[4 * cellCount + 2] = coord.getZ();
+		cells[4 * cellCount + 3] = 0;
+		cellCount++;
+	}
+
+	/**
+	 * Ajoute une feuille à la dernière case.
+	 *
+	 * @param path Le chemin de la feuille.
+	 * @param src  Les indices des triangles de la feuille.
+	 * @param from
+	 * @param to
+	 */
+	void addLeaf(long path, int[] src, int from, int to) {
+		if (leafCount == paths.length) {
+			paths = Arrays.copyOf(paths, 2 * leafCount);
+			runLengths = Arrays.copyOf(runLengths, 2 * leafCount);
+		}
+		int length = to - from;
+		if (indexCount + length > indices.length) {
+			indices = Arrays.copyOf(indices, Math.max(2 * indices.length, indexCount + length));
+		}
+		paths[leafCount] = path;
+		runLengths[leafCount] = length;
+		leafCount++;
+		System.arraycopy(src, from, indices, indexCount, length);
+		indexCount += length;
+		cells[4 * cellCount - 1]++;
+	}
+
+	/**
+	 * @return La taille en octets du placement dans un fichier.
+	 */
+	int getSerializedSize() {
+		return 3 * 4 + 4 * 4 * cellCount + 8 * leafCount + 4 * leafCount + 4 * indexCount;
+	}
+
+	void write(ByteBuffer buffer) {
+		buffer.putInt(cellCount);
+		buffer.putInt(leafCount);
+		buffer.putInt(indexCount);
+		StaticMeshCache.putInts(buffer, cells, 4 * cellCount);
+		StaticMeshCache.putLongs(buffer, paths, leafCount);
+		StaticMeshCache.putInts(buffer, runLengths, leafCount);
+		StaticMeshCache.putInts(buffer, indices, indexCount);
+	}
+
+}
@@ -6,6 +6,7 @@ import java.util.Set;
 import java.util.HashSet;
 
 import cataclysm.DefaultParameters;
+import cataclysm.broadphase.AABB;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
 import cataclysm.contact_creation.ContactProperties;
 import cataclysm.datastructures.Identifier;
@@ -36,9 +37,39 @@ public class StaticMesh extends Identifier {
 	protected final Set<AbstractSingleBodyContact> bodyContacts = new HashSet<AbstractSingleBodyContact>(1);
 
 	/**
-	 * Les triangles constituant le maillage.
+	 * Les triangles constituant le maillage, null pour une instance.
 	 */
-	final Triangle[] triangles;
+	final TriangleStore triangles;
+
+	/**
+	 * La géométrie partagée dans le repère local lorsque le maillage est une
+	 * instance, null sinon.
+	 */
+	private final StaticMeshGeometry geometry;
+
+	/**
+	 * Le terrain dont les triangles sont construits à la demande, null si le
+	 * maillage n'est pas un terrain.
+	 */
+	private final Heightfield heightfield;
+
+	/**
+	 * La hiérarchie de boîtes englobantes des triangles d'un maillage qui n'est
+	 * pas une instance, construite lors de son insertion si
+	 * {@link DefaultParameters#useStaticMeshBVH()}. null sinon.
+	 */
+	private TriangleBVH bvh;
+
+	/**
+	 * L'inverse de {@link #transform} pour une instance, null sinon.
+	 */
+	private final Matrix4f inverseTransform;
+
+	/**
+	 * Indique si la transformation d'une instance inverse l'orientation des
+	 * triangles.
+	 */
+	private final boolean mirrored;
 
 	/**
 	 * La matrice de transformation appliqu�es aux donn�es originelles pour
@@ -75,17 +106,53 @@ public class StaticMesh extends Identifier {
 	 */
 	StaticMesh(StaticMeshData data, Matrix4f transform, DefaultParameters params, boolean keepData, long ID) {
 		super(ID);
-		triangles = data.buildTriangles(this, transform, min, max);
+		triangles = data.buildTriangles(transform, min, max);
 		if (keepData) {
 			this.data = data;
 			this.transform.load(transform);
 		} else {
 			this.data = null;
 		}
+		this.geometry = null;
+		this.heightfield = null;
+		this.inverseTransform = null;
+		this.mirrored = false;
 
 		contactProperties = new ContactProperties(params.getContactProperties());
 	}
 
+	/**
+	 * Construit une instance d'un maillage. Les triangles ne sont pas recopiés,
+	 * l'instance référence la géométrie partagée des données et sa transformation.
+	 * 
+	 * @param data              Les données géométriques du maillage.
+	 * @param transform         La transformation de l'instance, elle doit être
+	 *                          inversible.
+	 * @param contactProperties La friction et l'élasticité de l'instance.
+	 * @param ID                Un identifiant unique.
+	 */
+	StaticMesh(StaticMeshData data, Matrix4f transform, ContactProperties contactProperties, long ID) {
+		super(ID);
+		this.data = data;
+		this.geometry = data.getGeometry();
+		this.heightfield = null;
+		this.triangles = null;
+		this.transform.load(transform);
+		this.inverseTransform = Matrix4f.invert(transform, new Matrix4f());
+		if (inverseTransform == null) {
+			throw new IllegalArgumentException("Erreur, la transformation d'une instance doit être inversible.");
+		}
+		this.mirrored = transform.determinant() < 0;
+		this.contactProperties = new ContactProperties(contactProperties);
+
+		// The box of the instance bounds the transformed box of the geometry.
+		Vector3f center = Vector3f.add(geometry.min, geometry.max);
+		center.scale(0.5f);
+		Vector3f extent = Vector3f.sub(geometry.max, geometry.min);
+		extent.scale(0.5f);
+		transformBox(transform, center, extent, min, max);
+	}
+
 	/**
 	 * Construit un nouveau maillage de collision statique � partir des donn�es
 	 * g�om�triques initiales d'un maillage existant.
@@ -105,13 +172,17 @@ public class StaticMesh extends Identifier {
 			throw new NullPointerException(
 					"Erreur, le static mesh � recopier n'a pas conserv� ses donn�es g�om�triques.");
 		}
-		triangles = other.data.buildTriangles(this, transform, min, max);
+		triangles = other.data.buildTriangles(transform, min, max);
 		if (keepData) {
 			this.data = other.data;
 			this.transform.load(transform);
 		} else {
 			this.data = null;
 		}
+		this.geometry = null;
+		this.heightfield = null;
+		this.inverseTransform = null;
+		this.mirrored = false;
 		this.contactProperties = new ContactProperties(other.contactProperties);
 	}
 
@@ -120,13 +191,295 @@ public class StaticMesh extends Identifier {
 		this.min.set(m.min);
 		this.max.set(m.max);
 		this.contactProperties = new ContactProperties(m.contactProperties);
-		this.triangles = new Triangle[m.triangles.getElementCount()];
+		this.triangles = new TriangleStore(m.triangles.getElementCount());
 		for (int i = 0; i < m.triangles.getElementCount(); i++) {
 			TriangleRepr t = m.triangles.get(i);
-			triangles[i] = new Triangle(this, new Vector3f(t.v1), new Vector3f(t.v2), new Vector3f(t.v3));
+			triangles.set(i, t.v1, t.v2, t.v3);
+		}
+		triangles.computeAdjacency();
+
+		this.data = null;
+		this.geometry = null;
+		this.heightfield = null;
+		this.inverseTransform = null;
+		this.mirrored = false;
+	}
+
+	/**
+	 * Construit un maillage à partir de triangles déjà construits, lus dans un
+	 * {@link StaticMeshCache}.
+	 * 
+	 * @param triangles         Les triangles et leurs voisins.
+	 * @param bvh               La hiérarchie des triangles, ou null.
+	 * @param min
+	 * @param max
+	 * @param data              Les données géométriques à conserver, ou null.
+	 * @param transform         La transformation conservée avec les données.
+	 * @param contactProperties La friction et l'élasticité du maillage.
+	 * @param ID                Un identifiant unique.
+	 */
+	StaticMesh(TriangleStore triangles, TriangleBVH bvh, Vector3f min, Vector3f max, StaticMeshData data,
+			Matrix4f transform, ContactProperties contactProperties, long ID) {
+		super(ID);
+		this.triangles = triangles;
+		this.bvh = bvh;
+		this.min.set(min);
+		this.max.set(max);
+		this.data = data;
+		if (data != null) {
+			this.transform.load(transform);
 		}
+		this.geometry = null;
+		this.heightfield = null;
+		this.inverseTransform = null;
+		this.mirrored = false;
+		this.contactProperties = new ContactProperties(contactProperties);
+	}
 
+	/**
+	 * Construit un terrain. Ses triangles ne sont pas stockés, ils sont
+	 * construits à partir des hauteurs à chaque requête.
+	 * 
+	 * @param heightfield       Les hauteurs du terrain.
+	 * @param contactProperties La friction et l'élasticité du terrain.
+	 * @param ID                Un identifiant unique.
+	 */
+	StaticMesh(Heightfield heightfield, ContactProperties contactProperties, long ID) {
+		super(ID);
+		this.heightfield = heightfield;
+		this.triangles = null;
 		this.data = null;
+		this.geometry = null;
+		this.inverseTransform = null;
+		this.mirrored = false;
+		this.min.set(heightfield.min);
+		this.max.set(heightfield.max);
+		this.contactProperties = new ContactProperties(contactProperties);
+	}
+
+	/**
+	 * @return Le terrain si le maillage en est un, null sinon.
+	 */
+	public Heightfield getHeightfield() {
+		return heightfield;
+	}
+
+	/**
+	 * @return true si le maillage est une instance, ses triangles sont alors
+	 *         construits à la demande à partir d'une géométrie partagée.
+	 */
+	public boolean isInstance() {
+		return geometry != null;
+	}
+
+	/**
+	 * @return Le nombre de triangles du maillage.
+	 */
+	public int getTriangleCount() {
+		if (heightfield != null) {
+			return heightfield.getTriangleCount();
+		}
+		return geometry != null ? geometry.triangles.count : triangles.count;
+	}
+
+	/**
+	 * @param i
+	 * @return Le i-ème triangle du maillage, dans une nouvelle vue qui peut être
+	 *         conservée.
+	 * @see #getTriangle(int, Triangle)
+	 */
+	public Triangle getTriangle(int i) {
+		return getTriangle(i, new Triangle());
+	}
+
+	/**
+	 * Remplit une vue avec le i-ème triangle du maillage. Pour une instance le
+	 * triangle est recopié dans le repère du monde et pour un terrain il est
+	 * calculé à partir des hauteurs, dans le tableau propre à la vue.
+	 * 
+	 * @param i
+	 * @param dest La vue à remplir.
+	 * @return dest
+	 */
+	public Triangle getTriangle(int i, Triangle dest) {
+		if (heightfield != null) {
+			if (i < 0 || i >= heightfield.getTriangleCount()) {
+				throw new IndexOutOfBoundsException(i);
+			}
+			float[] data = dest.getBuffer();
+			heightfield.writeTriangle(i, data, 0);
+			dest.set(this, i, data, 0);
+			return dest;
+		}
+		if (geometry != null) {
+			if (i < 0 || i >= geometry.triangles.count) {
+				throw new IndexOutOfBoundsException(i);
+			}
+			dest.transform(this, i, geometry.triangles, transform);
+			return dest;
+		}
+		if (i < 0 || i >= triangles.count) {
+			throw new IndexOutOfBoundsException(i);
+		}
+		dest.set(this, i, triangles.data, TriangleStore.STRIDE * i);
+		return dest;
+	}
+
+	/**
+	 * @param index L'indice d'un triangle du maillage.
+	 * @param edge  L'indice de l'arête.
+	 * @param dest  La vue à remplir avec le triangle voisin.
+	 * @return dest, ou null si l'arête est un bord.
+	 */
+	Triangle getAdjacentTriangle(int index, int edge, Triangle dest) {
+		if (heightfield != null) {
+			int other = heightfield.getAdjacentTriangle(index, edge);
+			return other == -1 ? null : getTriangle(other, dest);
+		}
+		TriangleStore store = geometry != null ? geometry.triangles : triangles;
+		int other = store.adjacency[3 * index + edge];
+		return other == -1 ? null : getTriangle(other, dest);
+	}
+
+	/**
+	 * Construit la hiérarchie de boîtes englobantes des triangles, si le maillage
+	 * n'en a pas déjà une.
+	 */
+	void buildHierarchy() {
+		if (geometry == null && heightfield == null && bvh == null) {
+			bvh = new TriangleBVH(triangles);
+		}
+	}
+
+	/**
+	 * @return Une estimation de la place occupée en mémoire par les triangles du
+	 *         maillage et sa hiérarchie, en octets. La géométrie partagée d'une
+	 *         instance n'est pas comptée.
+	 */
+	long getMemoryFootprint() {
+		if (heightfield != null) {
+			return heightfield.getMemoryFootprint();
+		}
+		long bytes = triangles == null ? 0 : triangles.getMemoryFootprint();
+		return bvh == null ? bytes : bytes + bvh.getMemoryFootprint();
+	}
+
+	/**
+	 * @return La hiérarchie propre à ce maillage s'il n'est pas une instance, ou
+	 *         null.
+	 */
+	TriangleBVH getHierarchy() {
+		return bvh;
+	}
+
+	/**
+	 * @return true si les requêtes sur ce maillage passent par sa propre
+	 *         hiérarchie de boîtes englobantes plutôt que par les octrees.
+	 */
+	boolean hasHierarchy() {
+		return geometry != null || heightfield != null || bvh != null;
+	}
+
+	/**
+	 * Ajoute dans set les triangles susceptibles d'intersecter la boite, à l'aide
+	 * de la hiérarchie du maillage. Pour une instance, la boite est ramenée dans
+	 * le repère local de la géométrie.
+	 * 
+	 * @param box
+	 * @param set
+	 * @param query Les données temporaires du thread appelant.
+	 */
+	void hierarchyBoxQuery(AABB box, Set<Triangle> set, HierarchyQuery query) {
+		query.begin(this, set);
+		if (heightfield != null || bvh != null) {
+			query.min.set(box.minX, box.minY, box.minZ);
+			query.max.set(box.maxX, box.maxY, box.maxZ);
+			if (heightfield != null) {
+				heightfield.boxQuery(query.min, query.max, query.addTriangle);
+			} else {
+				bvh.boxQuery(query.min, query.max, query.addTriangle, query);
+			}
+		} else {
+			query.center.set(0.5f * (box.minX + box.maxX), 0.5f * (box.minY + box.maxY),
+					0.5f * (box.minZ + box.maxZ));
+			query.extent.set(0.5f * (box.maxX - box.minX), 0.5f * (box.maxY - box.minY),
+					0.5f * (box.maxZ - box.minZ));
+			transformBox(inverseTransform, query.center, query.extent, query.min, query.max);
+			geometry.bvh.boxQuery(query.min, query.max, query.addTriangle, query);
+		}
+		query.end();
+	}
+
+	/**
+	 * Effectue un test de lancer de rayon à l'aide de la hiérarchie du maillage.
+	 * Pour une instance, le test est effectué dans le repère local de la
+	 * géométrie.
+	 * 
+	 * @param start           Le point de départ du rayon.
+	 * @param dir             La direction du rayon, le vecteur doit être unitaire.
+	 * @param maxLength       La distance maximale que le rayon est autorisé à
+	 *                        parcourir.
+	 * @param backfaceCulling true pour rejeter le triangle si N.dir > 0.
+	 * @param normalDest      Permet de stocker la normale du point d'intersection.
+	 * @param query           Les données temporaires du thread appelant.
+	 * @return La distance au point d'intersection ou bien maxLength si le test
+	 *         échoue.
+	 */
+	float hierarchyRayTest(Vector3f start, Vector3f dir, float maxLength, boolean backfaceCulling,
+			Vector3f normalDest, HierarchyQuery query) {
+		int[] hit = query.hit;
+		hit[0] = -1;
+		if (heightfield != null) {
+			float d = heightfield.rayTest(start, dir, maxLength, backfaceCulling, hit, query);
+			if (hit[0] != -1) {
+				getTriangle(hit[0], query.triangle).getNormal(normalDest);
+			}
+			return d;
+		}
+		if (bvh != null) {
+			float d = bvh.rayTest(start, dir, maxLength, backfaceCulling, false, hit, query);
+			if (hit[0] != -1) {
+				triangles.getNormal(hit[0], normalDest);
+			}
+			return d;
+		}
+
+		Matrix4f m = inverseTransform;
+		Vector3f localStart = query.localStart.set(//
+				m.m00 * start.x + m.m10 * start.y + m.m20 * start.z + m.m30,
+				m.m01 * start.x + m.m11 * start.y + m.m21 * start.z + m.m31,
+				m.m02 * start.x + m.m12 * start.y + m.m22 * start.z + m.m32);
+		// The local direction isn't normalized, so that distances are unchanged.
+		Vector3f localDir = query.localDir.set(//
+				m.m00 * dir.x + m.m10 * dir.y + m.m20 * dir.z,
+				m.m01 * dir.x + m.m11 * dir.y + m.m21 * dir.z,
+				m.m02 * dir.x + m.m12 * dir.y + m.m22 * dir.z);
+
+		float d = geometry.bvh.rayTest(localStart, localDir, maxLength, backfaceCulling, mirrored, hit, query);
+		if (hit[0] != -1) {
+			getTriangle(hit[0], query.triangle).getNormal(normalDest);
+		}
+		return d;
+	}
+
+	/**
+	 * Calcule la boîte alignée sur les axes englobant une boîte transformée.
+	 */
+	private static void transformBox(Matrix4f m, Vector3f center, Vector3f extent, Vector3f min, Vector3f max) {
+		float cx = m.m00 * center.x + m.m10 * center.y + m.m20 * center.z + m.m30;
+		float cy = m.m01 * center.x + m.m11 * center.y + m.m21 * center.z + m.m31;
+		float cz = m.m02 * center.x + m.m12 * center.y + m.m22 * center.z + m.m32;
+
+		float ex = Math.abs(m.m00) * extent.x + Math.abs(m.m10) * extent.y + Math.abs(m.m20) * extent.z;
+		float ey = Math.abs(m.m01) * extent.x + Math.abs(m.m11) * extent.y + Math.abs(m.m21) * extent.z;
+		float ez = Math.abs(m.m02) * extent.x + Math.abs(m.m12) * extent.y + Math.abs(m.m22) * extent.z;
+
+		min.set(cx - ex, cy - ey, cz - ez);
+		max.set(cx + ex, cy + ey, cz + ez);
+	}
+
+	StaticMeshData getData() {
+		return data;
 	}
 
 	public Matrix4f getTransform() {
@@ -143,7 +496,9 @@ public class StaticMesh extends Identifier {
 		m.max.set(max);
 		m.contactProperties.set(contactProperties);
 		m.triangles.rewind();
-		for (Triangle t : triangles) {
+		Triangle t = new Triangle();
+		for (int i = 0; i < getTriangleCount(); i++) {
+			getTriangle(i, t);
 			TriangleRepr tRepr = m.triangles.getNext();
 			t.getV0(tRepr.v1);
 			t.getV1(tRepr.v2);
@@ -177,7 +532,9 @@ public class StaticMesh extends Identifier {
 		indices.clear();
 		vertices.clear();
 		int faceIndex = 0;
-		for (Triangle t : triangles) {
+		Triangle t = new Triangle();
+		for (int i = 0; i < getTriangleCount(); i++) {
+			getTriangle(i, t);
 			vertices.add(t.getV0(new Vector3f()));
 			vertices.add(t.getV1(new Vector3f()));
 			vertices.add(t.getV2(new Vector3f()));
@@ -0,0 +1,287 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import cataclysm.DefaultParameters;
+import cataclysm.contact_creation.ContactProperties;
+import cataclysm.record.RecordFileDecodeError;
+import math.vector.Matrix4f;
+import math.vector.Vector3f;
+
+/**
+ * Un fichier contenant un maillage statique déjà construit : ses triangles,
+ * leurs voisins et la structure dans laquelle ils sont rangés, soit sa
+ * {@link TriangleBVH}, soit leur place dans les octrees de la grille. Charger
+ * un maillage depuis ce fichier évite les tests d'intersection entre triangles
+ * et cellules ainsi que la construction de la hiérarchie. <br>
+ * Le fichier est projeté en mémoire puis copié par blocs dans les tableaux des
+ * structures, aucun objet n'est construit par triangle. Il porte une empreinte
+ * des données géométriques, de la transformation et des paramètres de la
+ * grille, un fichier dont l'empreinte diffère est reconstruit.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class StaticMeshCache {
+
+	private static final int MAGIC = 0x434D5343;
+	private static final int VERSION = 1;
+
+	/**
+	 * magic, version, empreinte, structure, nombre de triangles, min, max.
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 6 * 4;
+
+	private static final int OCTREE = 0;
+	private static final int BVH = 1;
+
+	private final String path;
+	private final long hash;
+
+	/**
+	 * Le placement des triangles lu dans le fichier, null si le maillage utilise
+	 * une hiérarchie ou n'a pas été lu dans le fichier.
+	 */
+	private OctreeLayout layout;
+
+	private boolean loaded = false;
+
+	/**
+	 * @param path Le chemin du fichier.
+	 * @param hash L'empreinte attendue, voir
+	 *             {@link #hash(StaticMeshData, Matrix4f, DefaultParameters)}.
+	 */
+	StaticMeshCache(String path, long hash) {
+		this.path = path;
+		this.hash = hash;
+	}
+
+	/**
+	 * Calcule l'empreinte d'un maillage et des paramètres qui déterminent sa
+	 * structure.
+	 *
+	 * @param data
+	 * @param transform
+	 * @param params
+	 * @return
+	 */
+	static long hash(StaticMeshData data, Matrix4f transform, DefaultParameters params) {
+		long h = 0xcbf29ce484222325L;
+		h = mix(h, VERSION);
+		int[] indices = data.getIndices();
+		h = mix(h, indices.length);
+		for (int i = 0; i < indices.length; i++) {
+			h = mix(h, indices[i]);
+		}
+		Vector3f[] vertices = data.getVertices();
+		h = mix(h, vertices.length);
+		for (int i = 0; i < vertices.length; i++) {
+			h = mix(h, Float.floatToIntBits(vertices[i].x));
+			h = mix(h, Float.floatToIntBits(vertices[i].y));
+			h = mix(h, Float.floatToIntBits(vertices[i].z));
+		}
+		float[] m = { transform.m00, transform.m01, transform.m02, transform.m03, transform.m10, transform.m11,
+				transform.m12, transform.m13, transform.m20, transform.m21, transform.m22, transform.m23,
+				transform.m30, transform.m31, transform.m32, transform.m33 };
+		for (int i = 0; i < m.length; i++) {
+			h = mix(h, Float.floatToIntBits(m[i]));
+		}
+		h = mix(h, Float.floatToIntBits(params.getGridCellSize()));
+		h = mix(h, params.getMaxOctreeDepth());
+		h = mix(h, params.useStaticMeshBVH() ? BVH : OCTREE);
+		return h;
+	}
+
+	private static long mix(long h, int value) {
+		h ^= value;
+		h *= 0x100000001b3L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * Lit le maillage enregistré dans le fichier.
+	 *
+	 * @param data              Les données géométriques à conserver dans le
+	 *                          maillage, ou null.
+	 * @param transform         La transformation à conserver avec les données.
+	 * @param contactProperties
+	 * @param ID
+	 * @return Le maillage, ou null si le fichier n'existe pas, est incomplet ou
+	 *         ne correspond pas à l'empreinte attendue.
+	 * @throws IOException
+	 * @throws RecordFileDecodeError si le fichier n'est pas un cache de maillage.
+	 */
+	StaticMesh read(StaticMeshData data, Matrix4f transform, ContactProperties contactProperties, long ID)
+			throws IOException {
+		Path file = Paths.get(path);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE) {
+				return null;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Error the file size is bigger than Integer.MAX_VALUE");
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) != -1)
+				;
+			header.flip();
+			if (header.getInt() != MAGIC) {
+				throw new RecordFileDecodeError("Error, " + path + " is not a static mesh cache file");
+			}
+			if (header.getInt() != VERSION || header.getLong() != hash) {
+				return null;
+			}
+			int structure = header.getInt();
+			int count = header.getInt();
+			Vector3f min = new Vector3f(header.getFloat(), header.getFloat(), header.getFloat());
+			Vector3f max = new Vector3f(header.getFloat(), header.getFloat(), header.getFloat());
+			if (count < 0 || 4L * TriangleStore.STRIDE * count > size - HEADER_SIZE) {
+				return null;
+			}
+
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, HEADER_SIZE, size - HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			try {
+				TriangleStore triangles = new TriangleStore(count, buffer);
+				TriangleBVH bvh = null;
+				if (structure == BVH) {
+					bvh = new TriangleBVH(triangles, buffer);
+				} else {
+					layout = new OctreeLayout(buffer);
+				}
+				loaded = true;
+				return new StaticMesh(triangles, bvh, min, max, data, transform, contactProperties, ID);
+			} catch (BufferUnderflowException e) {
+				// Le fichier est incomplet, il sera reconstruit.
+				layout = null;
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Enregistre un maillage inséré dans la grille. Le fichier est d'abord écrit
+	 * à côté puis renommé, un fichier interrompu en cours d'écriture n'est donc
+	 * jamais lu.
+	 *
+	 * @param mesh
+	 * @param layout Le placement des triangles dans les octrees, ou null si le
+	 *               maillage a sa propre hiérarchie.
+	 * @return La taille du fichier en octets.
+	 * @throws IOException
+	 */
+	long write(StaticMesh mesh, OctreeLayout layout) throws IOException {
+		TriangleStore triangles = mesh.triangles;
+		TriangleBVH bvh = mesh.getHierarchy();
+		long size = HEADER_SIZE + triangles.getSerializedSize()
+				+ (bvh != null ? bvh.getSerializedSize() : layout.getSerializedSize());
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Error the file size is bigger than Integer.MAX_VALUE");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(hash);
+		buffer.putInt(bvh != null ? BVH : OCTREE);
+		buffer.putInt(triangles.count);
+		buffer.putFloat(mesh.min.x).putFloat(mesh.min.y).putFloat(mesh.min.z);
+		buffer.putFloat(mesh.max.x).putFloat(mesh.max.y).putFloat(mesh.max.z);
+		triangles.write(buffer);
+		if (bvh != null) {
+			bvh.write(buffer);
+		} else {
+			layout.write(buffer);
+		}
+		buffer.flip();
+
+		Path file = Paths.get(path);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		return size;
+	}
+
+	/**
+	 * @return Le chemin du fichier.
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return true si le maillage a été lu dans le fichier, false s'il doit y
+	 *         être enregistré après son insertion.
+	 */
+	boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @return Le placement des triangles lu dans le fichier, ou null.
+	 */
+	OctreeLayout getLayout() {
+		return layout;
+	}
+
+	static void putFloats(ByteBuffer buffer, float[] src, int length) {
+		buffer.asFloatBuffer().put(src, 0, length);
+		buffer.position(buffer.position() + 4 * length);
+	}
+
+	static void getFloats(ByteBuffer buffer, float[] dest) {
+		buffer.asFloatBuffer().get(dest);
+		buffer.position(buffer.position() + 4 * dest.length);
+	}
+
+	static void putInts(ByteBuffer buffer, int[] src, int length) {
+		buffer.asIntBuffer().put(src, 0, length);
+		buffer.position(buffer.position() + 4 * length);
+	}
+
+	static void getInts(ByteBuffer buffer, int[] dest) {
+		buffer.asIntBuffer().get(dest);
+		buffer.position(buffer.position() + 4 * dest.length);
+	}
+
+	static void putLongs(ByteBuffer buffer, long[] src, int length) {
+		buffer.asLongBuffer().put(src, 0, length);
+		buffer.position(buffer.position() + 8 * length);
+	}
+
+	static void getLongs(ByteBuffer buffer, long[] dest) {
+		buffer.asLongBuffer().get(dest);
+		buffer.position(buffer.position() + 8 * dest.length);
+	}
+
+	static void putChars(ByteBuffer buffer, char[] src, int length) {
+		buffer.asCharBuffer().put(src, 0, length);
+		buffer.position(buffer.position() + 2 * length);
+	}
+
+	static void getChars(ByteBuffer buffer, char[] dest) {
+		buffer.asCharBuffer().get(dest);
+		buffer.position(buffer.position() + 2 * dest.length);
+	}
+
+}
@@ -13,6 +13,12 @@ public class StaticMeshData {
 	private int[] indices;
 	private Vector3f[] vertices;
 	
+	/**
+	 * La géométrie partagée par les instances de ce maillage, construite lors de
+	 * la première instanciation.
+	 */
+	private StaticMeshGeometry geometry;
+	
 	/**
 	 * Permet de construire un {@link StaticMesh}.
 	 * Les donn�es g�om�triques doivent �tre celles d'un maillage triangulaire.
@@ -32,7 +38,7 @@ public class StaticMeshData {
 	 * @param transformation Une matrice de transformation appliquée aux sommets.
 	 * @return
 	 */
-	Triangle[] buildTriangles(StaticMesh mesh, Matrix4f transform, Vector3f min, Vector3f max) {
+	TriangleStore buildTriangles(Matrix4f transform, Vector3f min, Vector3f max) {
 		min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
 		max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
 		
@@ -49,13 +55,32 @@ public class StaticMeshData {
 			copy[i] = v;
 		}
 		
-		Triangle[] triangles = new Triangle[indices.length / 3];
-		for(int i=0; i<triangles.length; i++) {
-			triangles[i] = new Triangle(mesh, copy[indices[3*i]], copy[indices[3*i+1]], copy[indices[3*i+2]]);
+		TriangleStore triangles = new TriangleStore(indices.length / 3);
+		for(int i=0; i<triangles.count; i++) {
+			triangles.set(i, copy[indices[3*i]], copy[indices[3*i+1]], copy[indices[3*i+2]]);
 		}
+		triangles.computeAdjacency();
 		return triangles;
 	}
 	
+	/**
+	 * @return La géométrie partagée par toutes les instances de ce maillage.
+	 */
+	synchronized StaticMeshGeometry getGeometry() {
+		if (geometry == null) {
+			geometry = new StaticMeshGeometry(this);
+		}
+		return geometry;
+	}
+	
+	int[] getIndices() {
+		return indices;
+	}
+	
+	Vector3f[] getVertices() {
+		return vertices;
+	}
+	
 	private Vector3f transformVertex(Vector3f vertex, Matrix4f transform) {
 		float x = transform.m00 * vertex.x + transform.m10 * vertex.y + transform.m20 * vertex.z + transform.m30;
 		float y = transform.m01 * vertex.x + transform.m11 * vertex.y + transform.m21 * vertex.z + transform.m31;
@@ -0,0 +1,37 @@
+package cataclysm.broadphase.staticmeshes;
+
+import math.vector.Matrix4f;
+import math.vector.Vector3f;
+
+/**
+ * Les triangles d'un maillage exprimés dans son repère local, partagés par
+ * toutes les instances construites à partir des mêmes {@link StaticMeshData}.
+ * Les requêtes sur une instance sont ramenées dans ce repère, la mémoire occupée
+ * ne dépend donc pas du nombre d'instances.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class StaticMeshGeometry {
+
+	/**
+	 * Les triangles et leurs voisins, dans le repère local.
+	 */
+	final TriangleStore triangles;
+
+	/**
+	 * La hiérarchie de boîtes englobantes des triangles, dans le repère local.
+	 */
+	final TriangleBVH bvh;
+
+	final Vector3f min = new Vector3f();
+	final Vector3f max = new Vector3f();
+
+	StaticMeshGeometry(StaticMeshData data) {
+		Matrix4f identity = new Matrix4f();
+		identity.setIdentity();
+		triangles = data.buildTriangles(identity, min, max);
+		bvh = new TriangleBVH(triangles);
+	}
+
+}
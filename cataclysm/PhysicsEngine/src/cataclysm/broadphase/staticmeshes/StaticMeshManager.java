@@ -1,6 +1,9 @@
 package cataclysm.broadphase.staticmeshes;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -11,6 +14,8 @@ import cataclysm.RayTest;
 import cataclysm.broadphase.AABB;
 import cataclysm.datastructures.BufferedManager;
 import cataclysm.parallel.PhysicsWorkerPool;
+import cataclysm.profiling.StaticMeshCacheEvent;
+import cataclysm.profiling.StaticMeshUpdateEvent;
 import cataclysm.record.StaticMeshRepr;
 import cataclysm.wrappers.Wrapper;
 import math.vector.Matrix4f;
@@ -28,19 +33,24 @@ public final class StaticMeshManager extends BufferedManager<StaticMesh> impleme
 	private final PhysicsWorld world;
 	private final DefaultParameters params;
 
+	/**
+	 * Les maillages associés à un fichier cache, en attente d'insertion.
+	 */
+	private final Map<StaticMesh, StaticMeshCache> pendingCaches = new HashMap<StaticMesh, StaticMeshCache>();
+
 	private Consumer<StaticMesh> callbackOnAdd;
 	private Consumer<StaticMesh> callbackOnRemove;
 
 	public StaticMeshManager(PhysicsWorld world) {
 		this.world = world;
 		this.params = world.getParameters();
-		this.mapGrid = new MapGrid(params.getGridCellSize(), params.getMaxOctreeDepth());
+		this.mapGrid = new MapGrid(params.getGridCellSize(), params.getMaxOctreeDepth(), params.useStaticMeshBVH());
 	}
 
 	public StaticMeshManager(DefaultParameters params) {
 		this.world = null;
 		this.params = params;
-		this.mapGrid = new MapGrid(params.getGridCellSize(), params.getMaxOctreeDepth());
+		this.mapGrid = new MapGrid(params.getGridCellSize(), params.getMaxOctreeDepth(), params.useStaticMeshBVH());
 	}
 
 	/**
@@ -60,6 +70,38 @@ public final class StaticMeshManager extends BufferedManager<StaticMesh> impleme
 		return mesh;
 	}
 
+	/**
+	 * Construit un nouveau maillage de collision statique en passant par un
+	 * fichier cache. Si le fichier correspond aux données, à la transformation et
+	 * aux paramètres de la grille, les triangles et leur structure y sont lus
+	 * directement. Sinon le maillage est construit normalement puis enregistré
+	 * dans le fichier lors de son insertion.
+	 * 
+	 * @param data      Les données géométriques du maillage.
+	 * @param transform Une transformation à appliquer aux données géométriques pour
+	 *                  construire les triangles du maillage.
+	 * @param keepData  Indique s'il faut conserver les données géométriques.
+	 * @param cachePath Le chemin du fichier cache.
+	 * @return
+	 * @throws IOException
+	 */
+	public StaticMesh newMesh(StaticMeshData data, Matrix4f transform, boolean keepData, String cachePath)
+			throws IOException {
+		if (!params.useStaticMeshBVH() && params.getMaxOctreeDepth() > OctreeLayout.MAX_DEPTH) {
+			throw new IllegalArgumentException("Error, octrees deeper than " + OctreeLayout.MAX_DEPTH
+					+ " levels cannot be cached, got " + params.getMaxOctreeDepth());
+		}
+		StaticMeshCache cache = new StaticMeshCache(cachePath, StaticMeshCache.hash(data, transform, params));
+		long ID = nextID();
+		StaticMesh mesh = cache.read(keepData ? data : null, transform, params.getContactProperties(), ID);
+		if (mesh == null) {
+			mesh = new StaticMesh(data, transform, params, keepData, ID);
+		}
+		pendingCaches.put(mesh, cache);
+		addElement(mesh);
+		return mesh;
+	}
+
 	/**
 	 * Construit un nouveau maillage de collision statique � partir des donn�es
 	 * g�om�triques initiales d'un maillage existant.
@@ -74,7 +116,40 @@ public final class StaticMeshManager extends BufferedManager<StaticMesh> impleme
 	 * @return
 	 */
 	public StaticMesh copyMesh(Matrix4f transform, StaticMesh other, boolean keepData) {
-		StaticMesh mesh = new StaticMesh(transform, other, keepData, nextID());
+		StaticMesh mesh;
+		if (other.isInstance()) {
+			mesh = new StaticMesh(other.getData(), transform, other.getContactProperties(), nextID());
+		} else {
+			mesh = new StaticMesh(transform, other, keepData, nextID());
+		}
+		addElement(mesh);
+		return mesh;
+	}
+
+	/**
+	 * Construit une instance d'un maillage de collision statique. La géométrie
+	 * est construite une seule fois par {@link StaticMeshData} et partagée par
+	 * toutes ses instances, seule la transformation est propre à chaque instance.
+	 * 
+	 * @param data      Les données géométriques du maillage.
+	 * @param transform La transformation de l'instance, elle doit être inversible.
+	 * @return
+	 */
+	public StaticMesh newMeshInstance(StaticMeshData data, Matrix4f transform) {
+		StaticMesh mesh = new StaticMesh(data, transform, params.getContactProperties(), nextID());
+		addElement(mesh);
+		return mesh;
+	}
+
+	/**
+	 * Construit un terrain à partir d'une grille de hauteurs. Seules les hauteurs
+	 * sont conservées, les triangles sont construits à la demande.
+	 * 
+	 * @param heightfield Les hauteurs du terrain.
+	 * @return
+	 */
+	public StaticMesh newHeightfield(Heightfield heightfield) {
+		StaticMesh mesh = new StaticMesh(heightfield, params.getContactProperties(), nextID());
 		addElement(mesh);
 		return mesh;
 	}
@@ -98,25 +173,41 @@ public final class StaticMeshManager extends BufferedManager<StaticMesh> impleme
 			added.forEach(callbackOnAdd);
 
 		if(removed.size() > 0) {
-			long t1 = System.currentTimeMillis();
+			StaticMeshUpdateEvent event = new StaticMeshUpdateEvent();
+			event.begin();
 			for (StaticMesh mesh : removed) {
 				
 				mesh.getBodyContacts().forEach(c -> c.getWrapper().getMeshContacts().remove(c));
 				
 				mapGrid.remove(mesh);
 			}
-			long t2 = System.currentTimeMillis();
-			System.out.println("Removed " + removed.size() + " meshes in " + (t2 - t1) + " ms");
+			event.end();
+			if (event.shouldCommit()) {
+				event.set(false, removed.size(), countTriangles(removed));
+				event.commit();
+			}
 		}
 
 
 		if(added.size() > 0) {
-			long t1 = System.currentTimeMillis();
+			StaticMeshUpdateEvent event = new StaticMeshUpdateEvent();
+			event.begin();
 			for (StaticMesh mesh : added) {
-				mapGrid.add(mesh);
+				StaticMeshCache cache = pendingCaches.isEmpty() ? null : pendingCaches.remove(mesh);
+				if (cache != null && cache.getLayout() != null) {
+					mapGrid.add(mesh, cache.getLayout());
+				} else {
+					mapGrid.add(mesh);
+				}
+				if (cache != null && !cache.isLoaded()) {
+					writeCache(cache, mesh);
+				}
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.set(true, added.size(), countTriangles(added));
+				event.commit();
 			}
-			long t2 = System.currentTimeMillis();
-			System.out.println("Added " + added.size() + " meshes in " + (t2 - t1) + " ms");
 		}
 
 		if (world != null && world.getActiveRecord() != null) {
@@ -126,10 +217,44 @@ public final class StaticMeshManager extends BufferedManager<StaticMesh> impleme
 		}
 	}
 
+	/**
+	 * Enregistre un maillage dans son fichier cache. Le fichier n'est qu'une
+	 * optimisation du chargement : un échec est signalé par un
+	 * {@link StaticMeshCacheEvent} et n'empêche pas l'insertion du maillage.
+	 * 
+	 * @param cache
+	 * @param mesh
+	 */
+	private void writeCache(StaticMeshCache cache, StaticMesh mesh) {
+		StaticMeshCacheEvent event = new StaticMeshCacheEvent();
+		event.begin();
+		long bytes = 0;
+		String error = null;
+		try {
+			bytes = cache.write(mesh, mesh.hasHierarchy() ? null : mapGrid.getLayout(mesh));
+		} catch (IOException e) {
+			error = e.toString();
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.set(cache.getPath(), bytes, error);
+			event.commit();
+		}
+	}
+
+	private static int countTriangles(List<StaticMesh> meshes) {
+		int triangles = 0;
+		for (StaticMesh mesh : meshes) {
+			triangles += mesh.getTriangleCount();
+		}
+		return triangles;
+	}
+
 	@Override
 	public void cleanUp() {
 		super.cleanUp();
 		mapGrid.cleanUp();
+		pendingCaches.clear();
 	}
 
 	/**
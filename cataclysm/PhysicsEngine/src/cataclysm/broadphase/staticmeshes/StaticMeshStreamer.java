@@ -0,0 +1,322 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cataclysm.Actor;
+import cataclysm.DefaultParameters;
+import cataclysm.PhysicsWorld;
+import cataclysm.wrappers.RigidBody;
+import math.vector.Matrix4f;
+import math.vector.Vector3f;
+
+/**
+ * Charge et décharge les maillages statiques d'un monde trop grand pour tenir
+ * en mémoire. Le monde est découpé en morceaux, un par case de la grille des
+ * maillages statiques, identifiés par leurs coordonnées dans cette grille. <br>
+ * <br>
+ * Les morceaux proches d'un corps rigide sont demandés au {@link ChunkLoader}
+ * sur des threads séparés, qui construisent aussi les triangles et la
+ * hiérarchie de boîtes englobantes de chaque maillage. Un maillage prêt est
+ * inséré dans la simulation au début de la frame suivante. <br>
+ * Un morceau éloigné de tous les corps reste chargé tant que la mémoire occupée
+ * par les morceaux ne dépasse pas le budget, les moins récemment utilisés étant
+ * déchargés en premier. Un morceau proche d'un corps n'est jamais déchargé, le
+ * budget peut donc être dépassé si les corps sont trop dispersés.
+ * <br>
+ * <br>
+ * Le streamer est un {@link Actor}, il doit être ajouté à la simulation avec
+ * {@link PhysicsWorld#addActor(Actor)}. Les maillages qu'il charge ne doivent
+ * pas être supprimés par ailleurs.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class StaticMeshStreamer implements Actor {
+
+	private enum State {
+		LOADING, LOADED, EMPTY
+	}
+
+	/**
+	 * Un morceau du monde, chargé ou en cours de chargement.
+	 */
+	private static final class Chunk {
+
+		private final Coord coord;
+
+		/**
+		 * L'identifiant réservé pour le maillage du morceau.
+		 */
+		private final long ID;
+
+		private State state = State.LOADING;
+
+		/**
+		 * Le maillage, construit par un thread du streamer. null si le morceau est
+		 * vide.
+		 */
+		private StaticMesh mesh;
+
+		/**
+		 * La place occupée en mémoire par le maillage, en octets.
+		 */
+		private long bytes;
+
+		/**
+		 * L'erreur survenue pendant le chargement, null sinon.
+		 */
+		private Exception error;
+
+		/**
+		 * La dernière frame pendant laquelle un corps était proche du morceau.
+		 */
+		private long lastUsedFrame;
+
+		private Chunk(Coord coord, long ID, long frame) {
+			this.coord = coord;
+			this.ID = ID;
+			this.lastUsedFrame = frame;
+		}
+	}
+
+	private final ChunkLoader loader;
+	private final DefaultParameters params;
+	private final float ONE_OVER_CHUNK_SIZE;
+
+	/**
+	 * La distance à partir de laquelle un morceau est considéré loin d'un corps.
+	 */
+	private final float loadDistance;
+
+	/**
+	 * La place maximale occupée par les maillages des morceaux, en octets.
+	 */
+	private final long memoryBudget;
+
+	private final ExecutorService executor;
+
+	private final Map<Coord, Chunk> chunks = new HashMap<Coord, Chunk>();
+
+	/**
+	 * Les morceaux chargés éloignés de tous les corps, du moins récemment utilisé
+	 * au plus récemment utilisé.
+	 */
+	private final LinkedHashMap<Coord, Chunk> unused = new LinkedHashMap<Coord, Chunk>();
+
+	/**
+	 * Les morceaux dont le chargement est terminé, en attente d'insertion dans la
+	 * simulation.
+	 */
+	private final ConcurrentLinkedQueue<Chunk> loaded = new ConcurrentLinkedQueue<Chunk>();
+
+	private final Matrix4f identity = new Matrix4f();
+	private final Coord iterator = new Coord(0, 0, 0);
+
+	private long frame = 0;
+	private long memoryUsage = 0;
+	private int pendingCount = 0;
+	private boolean running = true;
+
+	/**
+	 * Construit un nouveau streamer.
+	 *
+	 * @param params       Les paramètres de la simulation, la taille d'un morceau
+	 *                     est celle d'une case de la grille.
+	 * @param loader       La source des données géométriques des morceaux.
+	 * @param loadDistance La distance maximale entre un corps et un morceau pour
+	 *                     que celui-ci soit chargé.
+	 * @param memoryBudget La place maximale en octets occupée par les maillages
+	 *                     des morceaux chargés.
+	 * @param threadCount  Le nombre de threads chargeant les morceaux.
+	 */
+	public StaticMeshStreamer(DefaultParameters params, ChunkLoader loader, float loadDistance, long memoryBudget,
+			int threadCount) {
+		if (threadCount <= 0)
+			throw new IllegalArgumentException("Invalid thread count, should be > 0, got " + threadCount);
+		if (loadDistance < 0)
+			throw new IllegalArgumentException("Invalid load distance, should be >= 0, got " + loadDistance);
+		this.params = params;
+		this.loader = loader;
+		this.ONE_OVER_CHUNK_SIZE = 1.0f / params.getGridCellSize();
+		this.loadDistance = loadDistance;
+		this.memoryBudget = memoryBudget;
+		this.identity.setIdentity();
+		this.executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread thread = new Thread(r, "StaticMeshStreamer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public boolean update(PhysicsWorld simu) {
+		if (!running) {
+			for (Chunk chunk : chunks.values()) {
+				if (chunk.state == State.LOADED) {
+					simu.deleteMesh(chunk.ID);
+				}
+			}
+			chunks.clear();
+			unused.clear();
+			memoryUsage = 0;
+			return false;
+		}
+
+		frame++;
+		insertLoadedChunks(simu);
+
+		for (RigidBody body : simu.getBodies()) {
+			useChunksAround(body.getPosition(), simu);
+		}
+
+		for (Iterator<Chunk> it = chunks.values().iterator(); it.hasNext();) {
+			Chunk chunk = it.next();
+			if (chunk.lastUsedFrame == frame) {
+				continue;
+			}
+			if (chunk.state == State.EMPTY) {
+				it.remove();
+			} else if (chunk.state == State.LOADED && chunk.lastUsedFrame == frame - 1) {
+				unused.put(chunk.coord, chunk);
+			}
+		}
+
+		Iterator<Chunk> lru = unused.values().iterator();
+		while (memoryUsage > memoryBudget && lru.hasNext()) {
+			Chunk chunk = lru.next();
+			if (!simu.containsMesh(chunk.ID)) {
+				// Le maillage n'a pas encore été inséré, il ne peut pas encore être retiré.
+				continue;
+			}
+			lru.remove();
+			chunks.remove(chunk.coord);
+			simu.deleteMesh(chunk.ID);
+			memoryUsage -= chunk.bytes;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Insère dans la simulation les maillages construits depuis la frame
+	 * précédente.
+	 */
+	private void insertLoadedChunks(PhysicsWorld simu) {
+		Chunk chunk;
+		while ((chunk = loaded.poll()) != null) {
+			pendingCount--;
+			if (chunk.error != null) {
+				chunks.remove(chunk.coord);
+				throw new IllegalStateException("Error while loading chunk " + chunk.coord, chunk.error);
+			}
+			if (chunk.mesh == null) {
+				chunk.state = State.EMPTY;
+				continue;
+			}
+			chunk.state = State.LOADED;
+			simu.getMeshManager().addElement(chunk.mesh);
+			memoryUsage += chunk.bytes;
+			chunk.mesh = null;
+			if (chunk.lastUsedFrame != frame - 1) {
+				// Plus aucun corps n'était proche du morceau pendant son chargement.
+				unused.put(chunk.coord, chunk);
+			}
+		}
+	}
+
+	/**
+	 * Marque comme utilisés les morceaux proches d'une position et demande le
+	 * chargement de ceux qui ne sont pas encore connus.
+	 */
+	private void useChunksAround(Vector3f position, PhysicsWorld simu) {
+		int minX = MapGrid.toGridCoord(position.x - loadDistance, ONE_OVER_CHUNK_SIZE);
+		int minY = MapGrid.toGridCoord(position.y - loadDistance, ONE_OVER_CHUNK_SIZE);
+		int minZ = MapGrid.toGridCoord(position.z - loadDistance, ONE_OVER_CHUNK_SIZE);
+		int maxX = MapGrid.toGridCoord(position.x + loadDistance, ONE_OVER_CHUNK_SIZE);
+		int maxY = MapGrid.toGridCoord(position.y + loadDistance, ONE_OVER_CHUNK_SIZE);
+		int maxZ = MapGrid.toGridCoord(position.z + loadDistance, ONE_OVER_CHUNK_SIZE);
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					iterator.set(x, y, z);
+					Chunk chunk = chunks.get(iterator);
+					if (chunk == null) {
+						chunk = new Chunk(new Coord(x, y, z), simu.getMeshManager().nextID(), frame);
+						chunks.put(chunk.coord, chunk);
+						requestLoad(chunk);
+					} else if (chunk.lastUsedFrame != frame) {
+						chunk.lastUsedFrame = frame;
+						unused.remove(chunk.coord);
+					}
+				}
+			}
+		}
+	}
+
+	private void requestLoad(Chunk chunk) {
+		pendingCount++;
+		executor.execute(() -> {
+			try {
+				StaticMeshData data = loader.load(chunk.coord.getX(), chunk.coord.getY(), chunk.coord.getZ());
+				if (data != null) {
+					StaticMesh mesh = new StaticMesh(data, identity, params, false, chunk.ID);
+					// La hiérarchie du maillage est construite ici, son insertion dans la
+					// grille se limite alors à l'enregistrer dans les cases qu'il recouvre.
+					mesh.buildHierarchy();
+					chunk.bytes = mesh.getMemoryFootprint();
+					chunk.mesh = mesh;
+				}
+			} catch (Exception e) {
+				chunk.error = e;
+			}
+			loaded.add(chunk);
+		});
+	}
+
+	/**
+	 * Arrête les threads du streamer. Les maillages chargés sont supprimés de la
+	 * simulation lors de la frame suivante, puis le streamer est retiré des
+	 * acteurs de la simulation.
+	 */
+	public void shutdown() {
+		running = false;
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return Le nombre de morceaux dont le maillage est présent dans la
+	 *         simulation.
+	 */
+	public int getLoadedChunkCount() {
+		int count = 0;
+		for (Chunk chunk : chunks.values()) {
+			if (chunk.state == State.LOADED) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return Le nombre de morceaux en cours de chargement.
+	 */
+	public int getPendingChunkCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * @return Une estimation de la place occupée en mémoire par les maillages des
+	 *         morceaux chargés, en octets.
+	 */
+	public long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+}
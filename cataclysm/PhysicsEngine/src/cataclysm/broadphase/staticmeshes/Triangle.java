@@ -1,158 +1,131 @@
 package cataclysm.broadphase.staticmeshes;
 
+import math.vector.Matrix4f;
 import math.vector.Vector3f;
 
 /**
- * A triangle whose data is 'flattened'
+ * A triangle whose data is 'flattened'. <br>
+ * The triangles of a {@link StaticMesh} are packed in a {@link TriangleStore},
+ * a Triangle is only a lightweight view over one of them and is built on
+ * demand. <br>
+ * A view can be refilled with {@link StaticMesh#getTriangle(int, Triangle)} to
+ * read several triangles without allocating, the triangles of the instances and
+ * of the heightfields are then computed in a buffer owned by the view. A view
+ * referenced by a contact or stored in a set must never be refilled.
  * 
  * @author Briac
  *
  */
 public final class Triangle {
 
-	private final float v0_x;
-	private final float v0_y;
-	private final float v0_z;
-	private final float v1_x;
-	private final float v1_y;
-	private final float v1_z;
-	private final float v2_x;
-	private final float v2_y;
-	private final float v2_z;
-	private final float n_x;
-	private final float n_y;
-	private final float n_z;
-	private final float plane_offset;
+	/**
+	 * Le tableau contenant les données du triangle, voir
+	 * {@link TriangleStore#STRIDE}.
+	 */
+	private float[] data;
+
+	/**
+	 * La position du triangle dans {@link #data}.
+	 */
+	private int offset;
 
 	/**
 	 * Le maillage auquel appartient ce triangle.
 	 */
-	public final StaticMesh mesh;
+	private StaticMesh mesh;
 
-	public Triangle(StaticMesh mesh, Vector3f p1, Vector3f p2, Vector3f p3) {
-		v0_x = p1.x;
-		v0_y = p1.y;
-		v0_z = p1.z;
-		
-		v1_x = p2.x;
-		v1_y = p2.y;
-		v1_z = p2.z;
-		
-		v2_x = p3.x;
-		v2_y = p3.y;
-		v2_z = p3.z;
-		
-		float e0_x = v1_x - v0_x;
-		float e0_y = v1_y - v0_y;
-		float e0_z = v1_z - v0_z;
-
-		float e2_x = v2_x - v0_x;
-		float e2_y = v2_y - v0_y;
-		float e2_z = v2_z - v0_z;
-
-		// e2 ^ e0
-		float n_x = e0_y * e2_z - e0_z * e2_y;
-		float n_y = e2_x * e0_z - e2_z * e0_x;
-		float n_z = e0_x * e2_y - e0_y * e2_x;
-
-		float length = (float) Math.sqrt(n_x * n_x + n_y * n_y + n_z * n_z);
-		if (length < 1E-6f) {
-			throw new ArithmeticException("Error, degenerate triangle. Normal length is zero.");
-		}
-		float inv_l = 1.0f / length;
-		this.n_x = n_x * inv_l;
-		this.n_y = n_y * inv_l;
-		this.n_z = n_z * inv_l;
-		plane_offset = v0_x * this.n_x + v0_y * this.n_y + v0_z * this.n_z;
+	/**
+	 * L'indice du triangle dans son maillage, -1 pour un triangle isolé.
+	 */
+	private int index;
 
-		this.mesh = mesh;
-	}
+	/**
+	 * Les données d'un triangle calculé à la demande, réutilisées à chaque fois
+	 * que la vue est remplie.
+	 */
+	private float[] buffer;
 
-	public void getMinMax(Vector3f min, Vector3f max) {
-		getMinMaxX(min, max);
-		getMinMaxY(min, max);
-		getMinMaxZ(min, max);
+	public Triangle(StaticMesh mesh, Vector3f p1, Vector3f p2, Vector3f p3) {
+		this(mesh, -1, new float[TriangleStore.STRIDE], 0);
+		TriangleStore.write(data, 0, p1.x, p1.y, p1.z, p2.x, p2.y, p2.z, p3.x, p3.y, p3.z);
 	}
 
-	private void getMinMaxX(Vector3f min, Vector3f max) {
-		float a = v0_x;
-		float b = v1_x;
-		float c = v2_x;
-
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
-		}
-
-		if (b > c) {
-			float temp = b;
-			b = c;
-			c = temp;
-		}
-
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
-		}
-
-		min.x = Math.min(min.x, a);
-		max.x = Math.max(max.x, c);
+	/**
+	 * Construit une vue vide, à remplir avec
+	 * {@link StaticMesh#getTriangle(int, Triangle)}.
+	 */
+	public Triangle() {
+		this.index = -1;
 	}
 
-	private void getMinMaxY(Vector3f min, Vector3f max) {
-		float a = v0_y;
-		float b = v1_y;
-		float c = v2_y;
-
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
-		}
-
-		if (b > c) {
-			float temp = b;
-			b = c;
-			c = temp;
-		}
-
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
-		}
-
-		min.y = Math.min(min.y, a);
-		max.y = Math.max(max.y, c);
+	/**
+	 * Construit une vue sur un triangle déjà rangé dans un tableau.
+	 * 
+	 * @param mesh   Le maillage auquel appartient le triangle.
+	 * @param index  L'indice du triangle dans le maillage.
+	 * @param data   Les données du triangle.
+	 * @param offset La position du triangle dans data.
+	 */
+	Triangle(StaticMesh mesh, int index, float[] data, int offset) {
+		set(mesh, index, data, offset);
 	}
 
-	private void getMinMaxZ(Vector3f min, Vector3f max) {
-		float a = v0_z;
-		float b = v1_z;
-		float c = v2_z;
+	/**
+	 * Fait pointer la vue sur un autre triangle.
+	 */
+	void set(StaticMesh mesh, int index, float[] data, int offset) {
+		this.mesh = mesh;
+		this.index = index;
+		this.data = data;
+		this.offset = offset;
+	}
 
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
+	/**
+	 * @return Le tableau propre à cette vue, dans lequel un triangle calculé à la
+	 *         demande peut être écrit à la position 0.
+	 */
+	float[] getBuffer() {
+		if (buffer == null) {
+			buffer = new float[TriangleStore.STRIDE];
 		}
+		return buffer;
+	}
 
-		if (b > c) {
-			float temp = b;
-			b = c;
-			c = temp;
-		}
+	/**
+	 * Remplit la vue avec un triangle d'une instance, dans le repère du monde.
+	 * 
+	 * @param instance  Le maillage instancié.
+	 * @param index     L'indice du triangle dans la géométrie partagée.
+	 * @param local     Les triangles dans le repère local de la géométrie.
+	 * @param transform La transformation de l'instance.
+	 */
+	void transform(StaticMesh instance, int index, TriangleStore local, Matrix4f transform) {
+		Matrix4f m = transform;
+		float[] l = local.data;
+		int o = TriangleStore.STRIDE * index;
+		float[] data = getBuffer();
+		TriangleStore.write(data, 0, //
+				m.m00 * l[o + 0] + m.m10 * l[o + 1] + m.m20 * l[o + 2] + m.m30,
+				m.m01 * l[o + 0] + m.m11 * l[o + 1] + m.m21 * l[o + 2] + m.m31,
+				m.m02 * l[o + 0] + m.m12 * l[o + 1] + m.m22 * l[o + 2] + m.m32,
+				m.m00 * l[o + 3] + m.m10 * l[o + 4] + m.m20 * l[o + 5] + m.m30,
+				m.m01 * l[o + 3] + m.m11 * l[o + 4] + m.m21 * l[o + 5] + m.m31,
+				m.m02 * l[o + 3] + m.m12 * l[o + 4] + m.m22 * l[o + 5] + m.m32,
+				m.m00 * l[o + 6] + m.m10 * l[o + 7] + m.m20 * l[o + 8] + m.m30,
+				m.m01 * l[o + 6] + m.m11 * l[o + 7] + m.m21 * l[o + 8] + m.m31,
+				m.m02 * l[o + 6] + m.m12 * l[o + 7] + m.m22 * l[o + 8] + m.m32);
+		set(instance, index, data, 0);
+	}
 
-		if (a > b) {
-			float temp = a;
-			a = b;
-			b = temp;
-		}
+	/**
+	 * @return Le maillage auquel appartient ce triangle.
+	 */
+	public StaticMesh getMesh() {
+		return mesh;
+	}
 
-		min.z = Math.min(min.z, a);
-		max.z = Math.max(max.z, c);
+	public void getMinMax(Vector3f min, Vector3f max) {
+		TriangleStore.getMinMax(data, offset, min, max);
 	}
 
 	/**
@@ -170,153 +143,125 @@ public final class Triangle {
 	 */
 	public float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f intersectionDest,
 			boolean backfaceCulling) {
-
-		float dot = dir.x * n_x + dir.y * n_y + dir.z * n_z;
-		if (backfaceCulling) {
-			if (dot > 0) {
-				return maxLength;
-			}
-		}
-
-		if (Math.abs(dot) < 1E-6f) {
-			return maxLength;
-		}
-
-		float d = (plane_offset - (start.x * n_x + start.y * n_y + start.z * n_z)) / dot;
-		if (d > maxLength || d < 0) {
-			return maxLength;
-		}
-
-		intersectionDest.set(start.x + dir.x * d, start.y + dir.y * d, start.z + dir.z * d);
-		if (checkPointInsideTriangle(intersectionDest)) {
-			return d;
-		}
-		return maxLength;
+		return TriangleStore.rayTest(data, offset, start, dir, maxLength, intersectionDest, backfaceCulling);
 	}
 
 	public boolean checkPointInsideTriangle(Vector3f point) {
-
-		float e10x = v1_x - v0_x;
-		float e10y = v1_y - v0_y;
-		float e10z = v1_z - v0_z;
-
-		float e20x = v2_x - v0_x;
-		float e20y = v2_y - v0_y;
-		float e20z = v2_z - v0_z;
-
-		float a = e10x * e10x + e10y * e10y + e10z * e10z;
-		float b = e10x * e20x + e10y * e20y + e10z * e20z;
-		float c = e20x * e20x + e20y * e20y + e20z * e20z;
-		float ac_bb = a * c - b * b;
-
-		float vpx = point.x - v0_x;
-		float vpy = point.y - v0_y;
-		float vpz = point.z - v0_z;
-
-		float d = vpx * e10x + vpy * e10y + vpz * e10z;
-		float e = vpx * e20x + vpy * e20y + vpz * e20z;
-		float x = d * c - e * b;
-		float y = e * a - d * b;
-		float z = x + y - ac_bb;
-
-		return z < 0 && x >= 0 && y >= 0;
+		return TriangleStore.checkPointInsideTriangle(data, offset, point);
 	}
 
 	public void getEdge0(Vector3f dest) {
-		dest.x = v1_x - v0_x;
-		dest.y = v1_y - v0_y;
-		dest.z = v1_z - v0_z;
+		getEdge(TriangleStore.V0, TriangleStore.V1, dest);
 	}
 
 	public void getEdge1(Vector3f dest) {
-		dest.x = v2_x - v1_x;
-		dest.y = v2_y - v1_y;
-		dest.z = v2_z - v1_z;
+		getEdge(TriangleStore.V1, TriangleStore.V2, dest);
 	}
 
 	public void getEdge2(Vector3f dest) {
-		dest.x = v0_x - v2_x;
-		dest.y = v0_y - v2_y;
-		dest.z = v0_z - v2_z;
+		getEdge(TriangleStore.V2, TriangleStore.V0, dest);
+	}
+
+	private void getEdge(int from, int to, Vector3f dest) {
+		dest.x = data[offset + to + 0] - data[offset + from + 0];
+		dest.y = data[offset + to + 1] - data[offset + from + 1];
+		dest.z = data[offset + to + 2] - data[offset + from + 2];
 	}
 
 	public Vector3f getNormal(Vector3f dest) {
-		dest.x = n_x;
-		dest.y = n_y;
-		dest.z = n_z;
-		return dest;
+		return get(TriangleStore.NORMAL, dest);
 	}
 	
 	public Vector3f getV0(Vector3f dest) {
-		dest.x = v0_x;
-		dest.y = v0_y;
-		dest.z = v0_z;
-		return dest;
+		return get(TriangleStore.V0, dest);
 	}
 	
 	public Vector3f getV1(Vector3f dest) {
-		dest.x = v1_x;
-		dest.y = v1_y;
-		dest.z = v1_z;
-		return dest;
+		return get(TriangleStore.V1, dest);
 	}
 	
 	public Vector3f getV2(Vector3f dest) {
-		dest.x = v2_x;
-		dest.y = v2_y;
-		dest.z = v2_z;
+		return get(TriangleStore.V2, dest);
+	}
+
+	private Vector3f get(int field, Vector3f dest) {
+		dest.x = data[offset + field + 0];
+		dest.y = data[offset + field + 1];
+		dest.z = data[offset + field + 2];
 		return dest;
 	}
 
 	public float getNormal(int i) {
-		switch (i) {
-		case 0:
-			return n_x;
-		case 1:
-			return n_y;
-		case 2:
-			return n_z;
-		}
-		throw new IllegalArgumentException();
+		return get(TriangleStore.NORMAL, i);
 	}
 
 	public float getV0(int i) {
-		switch (i) {
-		case 0:
-			return v0_x;
-		case 1:
-			return v0_y;
-		case 2:
-			return v0_z;
-		}
-		throw new IllegalArgumentException();
+		return get(TriangleStore.V0, i);
 	}
 
 	public float getV1(int i) {
-		switch (i) {
-		case 0:
-			return v1_x;
-		case 1:
-			return v1_y;
-		case 2:
-			return v1_z;
-		}
-		throw new IllegalArgumentException();
+		return get(TriangleStore.V1, i);
 	}
 
 	public float getV2(int i) {
-		switch (i) {
-		case 0:
-			return v2_x;
-		case 1:
-			return v2_y;
-		case 2:
-			return v2_z;
+		return get(TriangleStore.V2, i);
+	}
+
+	private float get(int field, int i) {
+		if (i < 0 || i > 2) {
+			throw new IllegalArgumentException();
 		}
-		throw new IllegalArgumentException();
+		return data[offset + field + i];
 	}
 	
 	public float getPlaneOffset() {
-		return plane_offset;
+		return data[offset + TriangleStore.PLANE_OFFSET];
+	}
+
+	/**
+	 * @return L'indice du triangle dans son maillage, -1 pour un triangle isolé.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @param edge L'index de l'arête, dans l'ordre de {@link #getEdge0(Vector3f)},
+	 *             {@link #getEdge1(Vector3f)} et {@link #getEdge2(Vector3f)}.
+	 * @param dest La vue à remplir avec le triangle voisin, différente de ce
+	 *             triangle.
+	 * @return dest, ou null si l'arête est au bord du maillage.
+	 */
+	public Triangle getAdjacent(int edge, Triangle dest) {
+		if (index == -1) {
+			return null;
+		}
+		return mesh.getAdjacentTriangle(index, edge, dest);
+	}
+
+	/**
+	 * Les triangles d'un maillage sont construits à la demande, deux triangles du
+	 * même maillage et de même indice sont donc égaux. Un triangle isolé n'est
+	 * égal qu'à lui-même.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (index == -1 || !(obj instanceof Triangle)) {
+			return false;
+		}
+		Triangle other = (Triangle) obj;
+		return other.index == index && other.mesh == mesh;
+	}
+
+	@Override
+	public int hashCode() {
+		if (index == -1) {
+			return super.hashCode();
+		}
+		return 31 * mesh.hashCode() + index;
 	}
+
 }
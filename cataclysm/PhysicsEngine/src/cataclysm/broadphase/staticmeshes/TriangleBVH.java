@@ -0,0 +1,648 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+import math.vector.Vector3f;
+
+/**
+ * Une hiérarchie de boîtes englobantes construite une fois pour toutes sur un
+ * ensemble de triangles immobiles. Les coupes sont choisies selon l'heuristique
+ * des surfaces (SAH) : le coût estimé d'une coupe est la somme des aires des
+ * deux fils pondérées par leur nombre de triangles. <br>
+ * Les noeuds sont rangés en profondeur d'abord dans des tableaux : le premier
+ * fils d'un noeud interne le suit directement, seul l'indice du second fils est
+ * stocké. Les feuilles référencent un intervalle de {@link #order}. <br>
+ * Seule la boîte de la racine est stockée en floats. Celle de chaque autre
+ * noeud est quantifiée sur 16 bits par axe relativement à la boîte de son père,
+ * en arrondissant vers l'extérieur pour qu'elle reste englobante.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class TriangleBVH {
+
+	/**
+	 * Le nombre maximal de triangles dans une feuille.
+	 */
+	private static final int MAX_LEAF_SIZE = 8;
+
+	/**
+	 * Le nombre d'intervalles utilisés par axe pour évaluer les coupes.
+	 */
+	private static final int BINS = 12;
+
+	/**
+	 * Le coût de la traversée d'un noeud, relativement au test d'un triangle.
+	 */
+	private static final float TRAVERSAL_COST = 1.0f;
+
+	private static final int QUANTIZATION_STEPS = 0xFFFF;
+
+	private final TriangleStore triangles;
+
+	/**
+	 * La boîte englobante de la racine, minX minY minZ maxX maxY maxZ.
+	 */
+	private final float[] rootBounds = new float[6];
+
+	/**
+	 * Les boîtes des noeuds quantifiées relativement à celle de leur père, 6
+	 * valeurs non signées par noeud. Celle de la racine est inutilisée.
+	 */
+	private final char[] bounds;
+
+	/**
+	 * Pour un noeud interne, l'indice de son second fils. Pour une feuille, le
+	 * complément à un de (premier << 4 | nombre), avec premier l'indice de son
+	 * premier triangle dans {@link #order}.
+	 */
+	private final int[] nodes;
+
+	/**
+	 * Les indices des triangles, regroupés par feuille.
+	 */
+	private final int[] order;
+
+	private int nodeCount = 0;
+
+	/**
+	 * La profondeur de la feuille la plus profonde, la racine étant à la
+	 * profondeur 0.
+	 */
+	private int maxDepth = 0;
+
+	TriangleBVH(TriangleStore triangles) {
+		this.triangles = triangles;
+		int maxNodes = Math.max(1, 2 * triangles.count - 1);
+		bounds = new char[6 * maxNodes];
+		nodes = new int[maxNodes];
+		order = new int[triangles.count];
+
+		if (triangles.count == 0) {
+			return;
+		}
+
+		Builder builder = new Builder(triangles);
+		for (int i = 0; i < triangles.count; i++) {
+			order[i] = i;
+		}
+		computeBounds(0, triangles.count, builder.boxes, rootBounds, 0);
+		build(0, triangles.count, rootBounds, 0, builder);
+	}
+
+	/**
+	 * Lit une hiérarchie écrite par {@link #write(ByteBuffer)}.
+	 *
+	 * @param triangles Les triangles de la hiérarchie.
+	 * @param buffer
+	 */
+	TriangleBVH(TriangleStore triangles, ByteBuffer buffer) {
+		this.triangles = triangles;
+		nodeCount = buffer.getInt();
+		maxDepth = buffer.getInt();
+		if (nodeCount < 0 || 16L * nodeCount > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		bounds = new char[6 * nodeCount];
+		nodes = new int[nodeCount];
+		order = new int[triangles.count];
+		StaticMeshCache.getFloats(buffer, rootBounds);
+		StaticMeshCache.getChars(buffer, bounds);
+		StaticMeshCache.getInts(buffer, nodes);
+		StaticMeshCache.getInts(buffer, order);
+	}
+
+	/**
+	 * @return La taille en octets de la hiérarchie dans un fichier.
+	 */
+	int getSerializedSize() {
+		return 2 * 4 + 4 * rootBounds.length + 2 * 6 * nodeCount + 4 * nodeCount + 4 * order.length;
+	}
+
+	void write(ByteBuffer buffer) {
+		buffer.putInt(nodeCount);
+		buffer.putInt(maxDepth);
+		StaticMeshCache.putFloats(buffer, rootBounds, rootBounds.length);
+		StaticMeshCache.putChars(buffer, bounds, 6 * nodeCount);
+		StaticMeshCache.putInts(buffer, nodes, nodeCount);
+		StaticMeshCache.putInts(buffer, order, order.length);
+	}
+
+	/**
+	 * Les données temporaires utilisées pendant la construction.
+	 */
+	private static final class Builder {
+
+		/**
+		 * Les boîtes exactes des triangles.
+		 */
+		final float[] boxes;
+
+		/**
+		 * Les centres des boîtes des triangles.
+		 */
+		final float[] centroids;
+
+		final int[] binCounts = new int[BINS];
+		final float[] binBounds = new float[6 * BINS];
+		final float[] rightAreas = new float[BINS];
+		final int[] rightCounts = new int[BINS];
+		final float[] accumulator = new float[6];
+		final float[] exact = new float[6];
+
+		Builder(TriangleStore triangles) {
+			boxes = new float[6 * triangles.count];
+			centroids = new float[3 * triangles.count];
+			Vector3f min = new Vector3f();
+			Vector3f max = new Vector3f();
+			for (int i = 0; i < triangles.count; i++) {
+				min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+				max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+				triangles.getMinMax(i, min, max);
+				boxes[6 * i + 0] = min.x;
+				boxes[6 * i + 1] = min.y;
+				boxes[6 * i + 2] = min.z;
+				boxes[6 * i + 3] = max.x;
+				boxes[6 * i + 4] = max.y;
+				boxes[6 * i + 5] = max.z;
+				for (int k = 0; k < 3; k++) {
+					centroids[3 * i + k] = 0.5f * (boxes[6 * i + k] + boxes[6 * i + 3 + k]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Construit le noeud regroupant order[from..to[.
+	 *
+	 * @param box   La boîte du noeud telle qu'elle sera décodée lors des requêtes,
+	 *              elle englobe toujours la boîte exacte.
+	 * @param depth La profondeur du noeud.
+	 * @return L'indice du noeud.
+	 */
+	private int build(int from, int to, float[] box, int depth, Builder builder) {
+		int node = nodeCount++;
+		int count = to - from;
+		maxDepth = Math.max(maxDepth, depth);
+
+		int mid = -1;
+		if (count > 1) {
+			mid = findSahSplit(from, to, box, builder);
+			if (mid == -1 && count > MAX_LEAF_SIZE) {
+				// Les centres sont confondus, on coupe au milieu.
+				mid = (from + to) >>> 1;
+				select(from, to - 1, mid, longestCentroidAxis(from, to, builder.centroids), builder.centroids);
+			}
+		}
+
+		if (mid == -1) {
+			nodes[node] = ~(from << 4 | count);
+			return node;
+		}
+
+		float[] child = new float[6];
+		computeBounds(from, mid, builder.boxes, builder.exact, 0);
+		quantize(node + 1, box, builder.exact, child);
+		build(from, mid, child, depth + 1, builder);
+
+		int second = nodeCount;
+		computeBounds(mid, to, builder.boxes, builder.exact, 0);
+		quantize(second, box, builder.exact, child);
+		build(mid, to, child, depth + 1, builder);
+		nodes[node] = second;
+		return node;
+	}
+
+	/**
+	 * Cherche la meilleure coupe selon la SAH parmi {@link #BINS} intervalles sur
+	 * chaque axe et réordonne order[from..to[ en conséquence.
+	 *
+	 * @return L'indice du premier triangle du second fils, ou -1 si une feuille
+	 *         est moins coûteuse.
+	 */
+	private int findSahSplit(int from, int to, float[] box, Builder builder) {
+		int count = to - from;
+		float[] centroids = builder.centroids;
+		float[] boxes = builder.boxes;
+		float bestCost = count <= MAX_LEAF_SIZE ? count : Float.POSITIVE_INFINITY;
+		int bestAxis = -1;
+		int bestBin = -1;
+		float bestLo = 0;
+		float bestScale = 0;
+		float invArea = 1.0f / Math.max(area(box, 0), Float.MIN_NORMAL);
+
+		for (int axis = 0; axis < 3; axis++) {
+			float lo = Float.POSITIVE_INFINITY;
+			float hi = Float.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				float c = centroids[3 * order[i] + axis];
+				lo = Math.min(lo, c);
+				hi = Math.max(hi, c);
+			}
+			if (!(hi > lo)) {
+				continue;
+			}
+			float scale = BINS / (hi - lo);
+
+			int[] binCounts = builder.binCounts;
+			float[] binBounds = builder.binBounds;
+			for (int b = 0; b < BINS; b++) {
+				binCounts[b] = 0;
+				setEmpty(binBounds, 6 * b);
+			}
+			for (int i = from; i < to; i++) {
+				int t = order[i];
+				int b = bin(centroids[3 * t + axis], lo, scale);
+				binCounts[b]++;
+				grow(binBounds, 6 * b, boxes, 6 * t);
+			}
+
+			// On accumule les intervalles de droite à gauche, puis de gauche à droite en
+			// évaluant chaque coupe.
+			float[] acc = builder.accumulator;
+			setEmpty(acc, 0);
+			int accCount = 0;
+			for (int b = BINS - 1; b > 0; b--) {
+				grow(acc, 0, binBounds, 6 * b);
+				accCount += binCounts[b];
+				builder.rightAreas[b] = area(acc, 0);
+				builder.rightCounts[b] = accCount;
+			}
+			setEmpty(acc, 0);
+			accCount = 0;
+			for (int b = 1; b < BINS; b++) {
+				grow(acc, 0, binBounds, 6 * (b - 1));
+				accCount += binCounts[b - 1];
+				int rightCount = builder.rightCounts[b];
+				if (accCount == 0 || rightCount == 0) {
+					continue;
+				}
+				float cost = TRAVERSAL_COST
+						+ (area(acc, 0) * accCount + builder.rightAreas[b] * rightCount) * invArea;
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestAxis = axis;
+					bestBin = b;
+					bestLo = lo;
+					bestScale = scale;
+				}
+			}
+		}
+
+		if (bestAxis == -1) {
+			return -1;
+		}
+
+		int i = from;
+		int j = to - 1;
+		while (i <= j) {
+			if (bin(centroids[3 * order[i] + bestAxis], bestLo, bestScale) < bestBin) {
+				i++;
+			} else {
+				int temp = order[i];
+				order[i] = order[j];
+				order[j] = temp;
+				j--;
+			}
+		}
+		return i;
+	}
+
+	private static int bin(float centroid, float lo, float scale) {
+		return Math.min(BINS - 1, (int) ((centroid - lo) * scale));
+	}
+
+	private static void setEmpty(float[] box, int offset) {
+		for (int k = 0; k < 3; k++) {
+			box[offset + k] = Float.POSITIVE_INFINITY;
+			box[offset + 3 + k] = Float.NEGATIVE_INFINITY;
+		}
+	}
+
+	private static void grow(float[] box, int offset, float[] other, int otherOffset) {
+		for (int k = 0; k < 3; k++) {
+			box[offset + k] = Math.min(box[offset + k], other[otherOffset + k]);
+			box[offset + 3 + k] = Math.max(box[offset + 3 + k], other[otherOffset + 3 + k]);
+		}
+	}
+
+	/**
+	 * @return La demi-surface de la boîte, 0 si elle est vide.
+	 */
+	private static float area(float[] box, int offset) {
+		float dx = box[offset + 3] - box[offset];
+		float dy = box[offset + 4] - box[offset + 1];
+		float dz = box[offset + 5] - box[offset + 2];
+		if (dx < 0 || dy < 0 || dz < 0) {
+			return 0;
+		}
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	private void computeBounds(int from, int to, float[] boxes, float[] dest, int offset) {
+		setEmpty(dest, offset);
+		for (int i = from; i < to; i++) {
+			grow(dest, offset, boxes, 6 * order[i]);
+		}
+	}
+
+	private int longestCentroidAxis(int from, int to, float[] centroids) {
+		int axis = 0;
+		float longest = -1;
+		for (int k = 0; k < 3; k++) {
+			float lo = Float.POSITIVE_INFINITY;
+			float hi = Float.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				float c = centroids[3 * order[i] + k];
+				lo = Math.min(lo, c);
+				hi = Math.max(hi, c);
+			}
+			if (hi - lo > longest) {
+				longest = hi - lo;
+				axis = k;
+			}
+		}
+		return axis;
+	}
+
+	/**
+	 * Réordonne order[left..right] de sorte que l'élément d'indice n soit à sa
+	 * place, les éléments plus petits avant lui et les plus grands après.
+	 */
+	private void select(int left, int right, int n, int axis, float[] centroids) {
+		while (left < right) {
+			float pivot = centroids[3 * order[(left + right) >>> 1] + axis];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (centroids[3 * order[i] + axis] < pivot) {
+					i++;
+				}
+				while (centroids[3 * order[j] + axis] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int temp = order[i];
+					order[i] = order[j];
+					order[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				right = j;
+			} else if (n >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Quantifie la boîte d'un noeud relativement à celle de son père.
+	 *
+	 * @param node    Le noeud.
+	 * @param parent  La boîte décodée du père.
+	 * @param exact   La boîte exacte du noeud.
+	 * @param decoded Reçoit la boîte décodée du noeud, qui contient la boîte
+	 *                exacte.
+	 */
+	private void quantize(int node, float[] parent, float[] exact, float[] decoded) {
+		for (int k = 0; k < 3; k++) {
+			float lo = parent[k];
+			float step = step(parent, 0, k);
+			int qmin = 0;
+			int qmax = QUANTIZATION_STEPS;
+			if (step > 0) {
+				qmin = clamp((int) Math.floor((exact[k] - lo) / step));
+				while (qmin > 0 && decode(lo, step, qmin) > exact[k]) {
+					qmin--;
+				}
+				qmax = clamp((int) Math.ceil((exact[3 + k] - lo) / step));
+				while (qmax < QUANTIZATION_STEPS && decode(lo, step, qmax) < exact[3 + k]) {
+					qmax++;
+				}
+			}
+			bounds[6 * node + k] = (char) qmin;
+			bounds[6 * node + 3 + k] = (char) qmax;
+		}
+		decode(node, parent, 0, decoded, 0);
+	}
+
+	private static int clamp(int q) {
+		return Math.max(0, Math.min(QUANTIZATION_STEPS, q));
+	}
+
+	private static float step(float[] box, int offset, int k) {
+		return (box[offset + 3 + k] - box[offset + k]) * (1.0f / QUANTIZATION_STEPS);
+	}
+
+	private static float decode(float lo, float step, int q) {
+		return lo + q * step;
+	}
+
+	/**
+	 * Décode la boîte d'un noeud. Les bornes extrêmes redonnent exactement celles
+	 * du père.
+	 *
+	 * @param node         Le noeud.
+	 * @param parent       La boîte décodée de son père.
+	 * @param parentOffset La position de la boîte du père dans parent.
+	 * @param dest         Reçoit la boîte décodée du noeud.
+	 * @param destOffset   La position de la boîte dans dest.
+	 */
+	private void decode(int node, float[] parent, int parentOffset, float[] dest, int destOffset) {
+		for (int k = 0; k < 3; k++) {
+			float lo = parent[parentOffset + k];
+			float hi = parent[parentOffset + 3 + k];
+			float step = step(parent, parentOffset, k);
+			int qmin = bounds[6 * node + k];
+			int qmax = bounds[6 * node + 3 + k];
+			dest[destOffset + k] = qmin == 0 ? lo : decode(lo, step, qmin);
+			dest[destOffset + 3 + k] = qmax == QUANTIZATION_STEPS ? hi : decode(lo, step, qmax);
+		}
+	}
+
+	/**
+	 * @return La pile de boîtes décodées de la requête, suffisante pour parcourir
+	 *         la hiérarchie à raison de 12 floats par niveau, commençant par la
+	 *         boîte de la racine.
+	 */
+	private float[] prepareStack(HierarchyQuery query) {
+		float[] stack = query.getStack(12 * (maxDepth + 1));
+		System.arraycopy(rootBounds, 0, stack, 0, 6);
+		return stack;
+	}
+
+	/**
+	 * @return La place occupée en mémoire par les noeuds de la hiérarchie, en
+	 *         octets.
+	 */
+	long getMemoryFootprint() {
+		return 2L * bounds.length + 4L * nodes.length + 4L * order.length + 4L * rootBounds.length;
+	}
+
+	/**
+	 * Parcourt les triangles dont la boîte englobante intersecte la boîte donnée.
+	 *
+	 * @param min
+	 * @param max
+	 * @param consumer Reçoit l'indice de chaque triangle trouvé.
+	 * @param query    Les données temporaires du thread appelant.
+	 */
+	void boxQuery(Vector3f min, Vector3f max, IntConsumer consumer, HierarchyQuery query) {
+		if (nodeCount != 0 && overlaps(rootBounds, 0, min, max)) {
+			boxQuery(0, prepareStack(query), 0, 0, min, max, consumer);
+		}
+	}
+
+	private void boxQuery(int node, float[] stack, int boxOffset, int depth, Vector3f min, Vector3f max,
+			IntConsumer consumer) {
+		int info = nodes[node];
+		if (info < 0) {
+			int first = ~info >>> 4;
+			int last = first + (~info & 0xF);
+			for (int i = first; i < last; i++) {
+				consumer.accept(order[i]);
+			}
+			return;
+		}
+
+		int childOffset = 12 * (depth + 1);
+		decode(node + 1, stack, boxOffset, stack, childOffset);
+		decode(info, stack, boxOffset, stack, childOffset + 6);
+		if (overlaps(stack, childOffset, min, max)) {
+			boxQuery(node + 1, stack, childOffset, depth + 1, min, max, consumer);
+		}
+		if (overlaps(stack, childOffset + 6, min, max)) {
+			boxQuery(info, stack, childOffset + 6, depth + 1, min, max, consumer);
+		}
+	}
+
+	private static boolean overlaps(float[] box, int o, Vector3f min, Vector3f max) {
+		return !(max.x < box[o] || max.y < box[o + 1] || max.z < box[o + 2] || min.x > box[o + 3]
+				|| min.y > box[o + 4] || min.z > box[o + 5]);
+	}
+
+	/**
+	 * Effectue un test de lancer de rayon.
+	 *
+	 * @param start           Le point de départ du rayon.
+	 * @param dir             La direction du rayon, pas forcément unitaire. Les
+	 *                        distances sont exprimées en multiples de dir.
+	 * @param maxLength       La distance maximale que le rayon est autorisé à
+	 *                        parcourir.
+	 * @param backfaceCulling true pour rejeter les triangles si N.dir > 0.
+	 * @param mirrored        true pour inverser le sens des triangles lors du
+	 *                        backface culling.
+	 * @param hit             Permet de stocker l'indice du triangle touché.
+	 * @param query           Les données temporaires du thread appelant.
+	 * @return La distance au point d'intersection ou bien maxLength si le test
+	 *         échoue.
+	 */
+	float rayTest(Vector3f start, Vector3f dir, float maxLength, boolean backfaceCulling, boolean mirrored,
+			int[] hit, HierarchyQuery query) {
+		if (nodeCount == 0 || intersectsBox(rootBounds, 0, start, dir, maxLength) > maxLength) {
+			return maxLength;
+		}
+		return rayTest(0, prepareStack(query), 0, 0, start, dir, maxLength, backfaceCulling, mirrored, hit,
+				query.intersection);
+	}
+
+	private float rayTest(int node, float[] stack, int boxOffset, int depth, Vector3f start, Vector3f dir,
+			float maxLength, boolean backfaceCulling, boolean mirrored, int[] hit, Vector3f intersection) {
+		int info = nodes[node];
+		if (info < 0) {
+			int first = ~info >>> 4;
+			int last = first + (~info & 0xF);
+			for (int i = first; i < last; i++) {
+				int triangle = order[i];
+				if (backfaceCulling) {
+					float dot = dir.x * triangles.getNormal(triangle, 0) + dir.y * triangles.getNormal(triangle, 1)
+							+ dir.z * triangles.getNormal(triangle, 2);
+					if (mirrored ? dot < 0 : dot > 0) {
+						continue;
+					}
+				}
+				float d = triangles.rayTest(triangle, start, dir, maxLength, intersection, false);
+				if (d < maxLength) {
+					maxLength = d;
+					hit[0] = triangle;
+				}
+			}
+			return maxLength;
+		}
+
+		int childOffset = 12 * (depth + 1);
+		decode(node + 1, stack, boxOffset, stack, childOffset);
+		decode(info, stack, boxOffset, stack, childOffset + 6);
+		float t1 = intersectsBox(stack, childOffset, start, dir, maxLength);
+		float t2 = intersectsBox(stack, childOffset + 6, start, dir, maxLength);
+
+		// Le fils le plus proche est visité en premier pour raccourcir le rayon au
+		// plus tôt.
+		int nearNode = node + 1;
+		int farNode = info;
+		int nearOffset = childOffset;
+		int farOffset = childOffset + 6;
+		if (t2 < t1) {
+			float temp = t1;
+			t1 = t2;
+			t2 = temp;
+			nearNode = info;
+			farNode = node + 1;
+			nearOffset = childOffset + 6;
+			farOffset = childOffset;
+		}
+
+		if (t1 <= maxLength) {
+			maxLength = rayTest(nearNode, stack, nearOffset, depth + 1, start, dir, maxLength, backfaceCulling,
+					mirrored, hit, intersection);
+		}
+		if (t2 <= maxLength) {
+			maxLength = rayTest(farNode, stack, farOffset, depth + 1, start, dir, maxLength, backfaceCulling,
+					mirrored, hit, intersection);
+		}
+		return maxLength;
+	}
+
+	/**
+	 * @return La distance d'entrée du rayon dans la boîte, ou +infini si le rayon
+	 *         la manque avant maxLength.
+	 */
+	private static float intersectsBox(float[] box, int o, Vector3f start, Vector3f dir, float maxLength) {
+		float tmin = 0;
+		float tmax = maxLength;
+		for (int k = 0; k < 3; k++) {
+			float s = start.x;
+			float d = dir.x;
+			if (k == 1) {
+				s = start.y;
+				d = dir.y;
+			} else if (k == 2) {
+				s = start.z;
+				d = dir.z;
+			}
+			float lo = box[o + k];
+			float hi = box[o + 3 + k];
+			if (d == 0) {
+				if (s < lo || s > hi) {
+					return Float.POSITIVE_INFINITY;
+				}
+				continue;
+			}
+			float t1 = (lo - s) / d;
+			float t2 = (hi - s) / d;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+			if (tmin > tmax) {
+				return Float.POSITIVE_INFINITY;
+			}
+		}
+		return tmin;
+	}
+
+}
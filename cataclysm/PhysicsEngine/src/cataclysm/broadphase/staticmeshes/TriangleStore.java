@@ -0,0 +1,336 @@
+package cataclysm.broadphase.staticmeshes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import math.vector.Vector3f;
+
+/**
+ * Les triangles d'un maillage rangés les uns à la suite des autres dans un
+ * unique tableau de floats. Un triangle n'est plus qu'un indice dans ce
+ * tableau, les objets {@link Triangle} ne sont que des vues construites à la
+ * demande. <br>
+ * Chaque triangle occupe {@link #STRIDE} floats : les trois sommets, la normale
+ * unitaire puis la distance du plan à l'origine.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class TriangleStore {
+
+	static final int V0 = 0;
+	static final int V1 = 3;
+	static final int V2 = 6;
+	static final int NORMAL = 9;
+	static final int PLANE_OFFSET = 12;
+	static final int STRIDE = 13;
+
+	/**
+	 * Les données des triangles, voir {@link #STRIDE}.
+	 */
+	final float[] data;
+
+	/**
+	 * Le nombre de triangles.
+	 */
+	final int count;
+
+	/**
+	 * Pour chaque triangle i et chaque arête e, l'indice du triangle voisin en 3 *
+	 * i + e, ou -1 si l'arête est un bord. Calculé par
+	 * {@link #computeAdjacency()}.
+	 */
+	int[] adjacency;
+
+	TriangleStore(int count) {
+		this.count = count;
+		this.data = new float[STRIDE * count];
+	}
+
+	/**
+	 * Lit des triangles et leurs voisins écrits par {@link #write(ByteBuffer)}.
+	 *
+	 * @param count
+	 * @param buffer
+	 */
+	TriangleStore(int count, ByteBuffer buffer) {
+		this(count);
+		StaticMeshCache.getFloats(buffer, data);
+		adjacency = new int[3 * count];
+		StaticMeshCache.getInts(buffer, adjacency);
+	}
+
+	/**
+	 * @return La taille en octets des triangles et de leurs voisins dans un
+	 *         fichier.
+	 */
+	int getSerializedSize() {
+		return 4 * data.length + 4 * 3 * count;
+	}
+
+	void write(ByteBuffer buffer) {
+		StaticMeshCache.putFloats(buffer, data, data.length);
+		StaticMeshCache.putInts(buffer, adjacency, 3 * count);
+	}
+
+	/**
+	 * Remplit le triangle d'indice i.
+	 *
+	 * @param i
+	 * @param p1
+	 * @param p2
+	 * @param p3
+	 */
+	void set(int i, Vector3f p1, Vector3f p2, Vector3f p3) {
+		write(data, STRIDE * i, p1.x, p1.y, p1.z, p2.x, p2.y, p2.z, p3.x, p3.y, p3.z);
+	}
+
+	/**
+	 * Ecrit un triangle à partir de ses sommets, sa normale et son plan sont
+	 * calculés.
+	 *
+	 * @throws ArithmeticException si le triangle est dégénéré.
+	 */
+	static void write(float[] data, int offset, float v0_x, float v0_y, float v0_z, float v1_x, float v1_y,
+			float v1_z, float v2_x, float v2_y, float v2_z) {
+		float e0_x = v1_x - v0_x;
+		float e0_y = v1_y - v0_y;
+		float e0_z = v1_z - v0_z;
+
+		float e2_x = v2_x - v0_x;
+		float e2_y = v2_y - v0_y;
+		float e2_z = v2_z - v0_z;
+
+		// e2 ^ e0
+		float n_x = e0_y * e2_z - e0_z * e2_y;
+		float n_y = e2_x * e0_z - e2_z * e0_x;
+		float n_z = e0_x * e2_y - e0_y * e2_x;
+
+		float length = (float) Math.sqrt(n_x * n_x + n_y * n_y + n_z * n_z);
+		if (length < 1E-6f) {
+			throw new ArithmeticException("Error, degenerate triangle. Normal length is zero.");
+		}
+		float inv_l = 1.0f / length;
+		n_x *= inv_l;
+		n_y *= inv_l;
+		n_z *= inv_l;
+
+		data[offset + V0 + 0] = v0_x;
+		data[offset + V0 + 1] = v0_y;
+		data[offset + V0 + 2] = v0_z;
+		data[offset + V1 + 0] = v1_x;
+		data[offset + V1 + 1] = v1_y;
+		data[offset + V1 + 2] = v1_z;
+		data[offset + V2 + 0] = v2_x;
+		data[offset + V2 + 1] = v2_y;
+		data[offset + V2 + 2] = v2_z;
+		data[offset + NORMAL + 0] = n_x;
+		data[offset + NORMAL + 1] = n_y;
+		data[offset + NORMAL + 2] = n_z;
+		data[offset + PLANE_OFFSET] = v0_x * n_x + v0_y * n_y + v0_z * n_z;
+	}
+
+	/**
+	 * @return La place occupée en mémoire par les triangles et leurs voisins, en
+	 *         octets.
+	 */
+	long getMemoryFootprint() {
+		return 4L * data.length + (adjacency == null ? 0 : 4L * adjacency.length);
+	}
+
+	float getVertex(int i, int vertex, int k) {
+		return data[STRIDE * i + 3 * vertex + k];
+	}
+
+	float getNormal(int i, int k) {
+		return data[STRIDE * i + NORMAL + k];
+	}
+
+	void getNormal(int i, Vector3f dest) {
+		int o = STRIDE * i + NORMAL;
+		dest.set(data[o], data[o + 1], data[o + 2]);
+	}
+
+	void getMinMax(int i, Vector3f min, Vector3f max) {
+		getMinMax(data, STRIDE * i, min, max);
+	}
+
+	/**
+	 * Calcule les arêtes du triangle i, dans l'ordre de
+	 * {@link Triangle#getEdge0(Vector3f)}, {@link Triangle#getEdge1(Vector3f)} et
+	 * {@link Triangle#getEdge2(Vector3f)}.
+	 *
+	 * @param i
+	 * @param edges
+	 */
+	void getEdges(int i, Vector3f[] edges) {
+		int o = STRIDE * i;
+		for (int e = 0; e < 3; e++) {
+			int a = o + 3 * e;
+			int b = o + 3 * ((e + 1) % 3);
+			edges[e].set(data[b] - data[a], data[b + 1] - data[a + 1], data[b + 2] - data[a + 2]);
+		}
+	}
+
+	float rayTest(int i, Vector3f start, Vector3f dir, float maxLength, Vector3f intersectionDest,
+			boolean backfaceCulling) {
+		return rayTest(data, STRIDE * i, start, dir, maxLength, intersectionDest, backfaceCulling);
+	}
+
+	static void getMinMax(float[] data, int offset, Vector3f min, Vector3f max) {
+		float x0 = data[offset + V0], x1 = data[offset + V1], x2 = data[offset + V2];
+		float y0 = data[offset + V0 + 1], y1 = data[offset + V1 + 1], y2 = data[offset + V2 + 1];
+		float z0 = data[offset + V0 + 2], z1 = data[offset + V1 + 2], z2 = data[offset + V2 + 2];
+		min.x = Math.min(min.x, Math.min(x0, Math.min(x1, x2)));
+		min.y = Math.min(min.y, Math.min(y0, Math.min(y1, y2)));
+		min.z = Math.min(min.z, Math.min(z0, Math.min(z1, z2)));
+		max.x = Math.max(max.x, Math.max(x0, Math.max(x1, x2)));
+		max.y = Math.max(max.y, Math.max(y0, Math.max(y1, y2)));
+		max.z = Math.max(max.z, Math.max(z0, Math.max(z1, z2)));
+	}
+
+	/**
+	 * Teste si un rayon intersecte un triangle.
+	 *
+	 * @param data             Les données du triangle.
+	 * @param offset           La position du triangle dans data.
+	 * @param start            Le point de départ du rayon.
+	 * @param dir              La direction du rayon.
+	 * @param maxLength        La distance maximale que le rayon est autorisé à
+	 *                         parcourir.
+	 * @param intersectionDest Le point d'intersection entre le rayon et le
+	 *                         triangle.
+	 * @param backfaceCulling  true pour rejeter le triangle si N.dir > 0.
+	 * @return La distance au point d'intersection ou bien maxLength si le test
+	 *         échoue.
+	 */
+	static float rayTest(float[] data, int offset, Vector3f start, Vector3f dir, float maxLength,
+			Vector3f intersectionDest, boolean backfaceCulling) {
+		float n_x = data[offset + NORMAL];
+		float n_y = data[offset + NORMAL + 1];
+		float n_z = data[offset + NORMAL + 2];
+
+		float dot = dir.x * n_x + dir.y * n_y + dir.z * n_z;
+		if (backfaceCulling) {
+			if (dot > 0) {
+				return maxLength;
+			}
+		}
+
+		if (Math.abs(dot) < 1E-6f) {
+			return maxLength;
+		}
+
+		float d = (data[offset + PLANE_OFFSET] - (start.x * n_x + start.y * n_y + start.z * n_z)) / dot;
+		if (d > maxLength || d < 0) {
+			return maxLength;
+		}
+
+		intersectionDest.set(start.x + dir.x * d, start.y + dir.y * d, start.z + dir.z * d);
+		if (checkPointInsideTriangle(data, offset, intersectionDest)) {
+			return d;
+		}
+		return maxLength;
+	}
+
+	static boolean checkPointInsideTriangle(float[] data, int offset, Vector3f point) {
+		float v0_x = data[offset + V0];
+		float v0_y = data[offset + V0 + 1];
+		float v0_z = data[offset + V0 + 2];
+
+		float e10x = data[offset + V1] - v0_x;
+		float e10y = data[offset + V1 + 1] - v0_y;
+		float e10z = data[offset + V1 + 2] - v0_z;
+
+		float e20x = data[offset + V2] - v0_x;
+		float e20y = data[offset + V2 + 1] - v0_y;
+		float e20z = data[offset + V2 + 2] - v0_z;
+
+		float a = e10x * e10x + e10y * e10y + e10z * e10z;
+		float b = e10x * e20x + e10y * e20y + e10z * e20z;
+		float c = e20x * e20x + e20y * e20y + e20z * e20z;
+		float ac_bb = a * c - b * b;
+
+		float vpx = point.x - v0_x;
+		float vpy = point.y - v0_y;
+		float vpz = point.z - v0_z;
+
+		float d = vpx * e10x + vpy * e10y + vpz * e10z;
+		float e = vpx * e20x + vpy * e20y + vpz * e20z;
+		float x = d * c - e * b;
+		float y = e * a - d * b;
+		float z = x + y - ac_bb;
+
+		return z < 0 && x >= 0 && y >= 0;
+	}
+
+	/**
+	 * Cherche les triangles partageant une arête et remplit {@link #adjacency}.
+	 * Les arêtes sont identifiées par la position de leurs sommets. Une arête
+	 * partagée par plus de deux triangles est laissée comme un bord.
+	 */
+	void computeAdjacency() {
+		adjacency = new int[3 * count];
+		Arrays.fill(adjacency, -1);
+		Map<Edge, int[]> edges = new HashMap<Edge, int[]>(3 * count);
+		for (int i = 0; i < count; i++) {
+			for (int e = 0; e < 3; e++) {
+				int[] owners = edges.computeIfAbsent(new Edge(this, i, e), k -> new int[] { 0, -1, -1 });
+				if (owners[0] < 2) {
+					owners[1 + owners[0]] = 3 * i + e;
+				}
+				owners[0]++;
+			}
+		}
+
+		for (int[] owners : edges.values()) {
+			if (owners[0] == 2) {
+				adjacency[owners[1]] = owners[2] / 3;
+				adjacency[owners[2]] = owners[1] / 3;
+			}
+		}
+	}
+
+	/**
+	 * Une arête non orientée, utilisée comme clé lors du calcul des voisins.
+	 */
+	private static final class Edge {
+
+		private final float[] v = new float[6];
+
+		private Edge(TriangleStore store, int triangle, int edge) {
+			int a = edge;
+			int b = (edge + 1) % 3;
+			// On ordonne les sommets pour que les deux triangles produisent la même clé.
+			for (int k = 0; k < 3; k++) {
+				float da = store.getVertex(triangle, a, k);
+				float db = store.getVertex(triangle, b, k);
+				if (da != db) {
+					if (da > db) {
+						int temp = a;
+						a = b;
+						b = temp;
+					}
+					break;
+				}
+			}
+			for (int k = 0; k < 3; k++) {
+				v[k] = store.getVertex(triangle, a, k);
+				v[3 + k] = store.getVertex(triangle, b, k);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(v);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Edge && Arrays.equals(v, ((Edge) obj).v);
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package cataclysm.constraints;
 
+import cataclysm.annotations.Internal;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.wrappers.RigidBody;
 import math.vector.Vector3f;
 
@@ -69,6 +71,39 @@ public abstract class AbstractConstraint{
 	 */
 	protected abstract boolean hasPositionCorrection();
 
+	/**
+	 * Copie les lignes de la matrice jacobienne construites lors de la première
+	 * itération de vitesse dans un cache partagé par toutes les contraintes. Les
+	 * itérations suivantes sont alors résolues directement depuis ce cache.
+	 * 
+	 * @param rows
+	 * @return true si toutes les lignes de la contrainte sont dans le cache et
+	 *         qu'aucune n'a de borne sur ses impulsions, la contrainte est alors
+	 *         une égalité pouvant être résolue de façon exacte.
+	 */
+	boolean cacheRows(ConstraintRows rows) {
+		return false;
+	}
+
+	/**
+	 * Écrit l'état de la contrainte conservé d'un pas de temps à l'autre, c'est à
+	 * dire les impulsions accumulées lors de la dernière résolution.
+	 * 
+	 * @param dest
+	 */
+	@Internal
+	public void writeState(StateBuffer dest) {
+	}
+
+	/**
+	 * Relit un état écrit par {@link #writeState(StateBuffer)}.
+	 * 
+	 * @param src
+	 */
+	@Internal
+	public void readState(StateBuffer src) {
+	}
+
 	/**
 	 * @return true si les solides connect�s par la contrainte peuvent entrer en
 	 *         collision.
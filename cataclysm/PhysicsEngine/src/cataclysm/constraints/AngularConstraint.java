@@ -1,5 +1,8 @@
 package cataclysm.constraints;
 
+import cataclysm.wrappers.RigidBody;
+import math.vector.Vector3f;
+
 /**
  * Reprsente une contraine sur les rotations d'un solide.
  * @author Briac
@@ -7,8 +10,19 @@ package cataclysm.constraints;
  */
 public abstract class AngularConstraint extends SimpleConstraint {
 
+	private final Vector3f minusN = new Vector3f();
+
 	public AngularConstraint(AnchorPoint pointA, AnchorPoint pointB) {
 		super(pointA, pointB);
 	}
 
+	@Override
+	int storeRow(ConstraintRows rows, Vector3f N, Vector3f RaxN, Vector3f RbxN, float inv_mass) {
+		// J = [ 0 N 0 -N ]
+		RigidBody A = pointA.isStatic() ? null : pointA.getBody();
+		RigidBody B = pointB.isStatic() ? null : pointB.getBody();
+		minusN.set(-N.x, -N.y, -N.z);
+		return rows.add(this, A, B, null, N, null, minusN, inv_mass);
+	}
+
 }
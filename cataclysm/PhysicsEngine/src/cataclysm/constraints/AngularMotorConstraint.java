@@ -109,6 +109,11 @@ public class AngularMotorConstraint extends AxisConstraint{
 	protected boolean hasPositionCorrection() {
 		return false;
 	}
+
+	@Override
+	protected boolean isRowCacheable() {
+		return false;
+	}
 	
 	private float computeAngle(Vector3f axis) {
 		super.computeRotationDelta(currentDelta);
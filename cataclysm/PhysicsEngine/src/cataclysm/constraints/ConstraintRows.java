@@ -0,0 +1,255 @@
+package cataclysm.constraints;
+
+import java.util.Arrays;
+
+import cataclysm.wrappers.RigidBody;
+import math.vector.Matrix3f;
+import math.vector.Vector3f;
+
+/**
+ * The jacobian rows of the {@link SimpleConstraint}s, cached in a single flat
+ * float array for the duration of a step. <br>
+ * A row is written once, right after the first velocity iteration has built
+ * the jacobian and the effective mass of its constraint. It also stores the
+ * angular velocity change per unit impulse of both bodies, so the following
+ * iterations no longer go through the inertia tensors nor through the virtual
+ * methods of the constraint.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class ConstraintRows {
+
+	// Layout of a row, J = [ LA AA LB AB ]
+	private static final int LA = 0;
+	private static final int AA = 3;
+	private static final int LB = 6;
+	private static final int AB = 9;
+	// inv_mass * inv_Iws * AA, inv_mass * inv_Iws * AB
+	private static final int IA = 12;
+	private static final int IB = 15;
+	private static final int INV_MASS_A = 18;
+	private static final int INV_MASS_B = 19;
+	private static final int MASS = 20;
+	private static final int ROW_STRIDE = 21;
+
+	private float[] data = new float[16 * ROW_STRIDE];
+	private RigidBody[] bodiesA = new RigidBody[16];
+	private RigidBody[] bodiesB = new RigidBody[16];
+	private SimpleConstraint[] constraints = new SimpleConstraint[16];
+	private int count = 0;
+
+	ConstraintRows() {
+
+	}
+
+	/**
+	 * Forgets all the rows, the bodies they reference are released.
+	 */
+	void clear() {
+		Arrays.fill(bodiesA, 0, count, null);
+		Arrays.fill(bodiesB, 0, count, null);
+		Arrays.fill(constraints, 0, count, null);
+		count = 0;
+	}
+
+	/**
+	 * Adds a row whose velocity error is J * [ va wa vb wb ]^T.
+	 *
+	 * @param owner    The constraint writing the row.
+	 * @param A        The first body, or null if the constraint is anchored to
+	 *                 the world.
+	 * @param B        The second body, or null if the constraint is anchored to
+	 *                 the world.
+	 * @param la       The linear part of the jacobian for A, may be null.
+	 * @param aa       The angular part of the jacobian for A.
+	 * @param lb       The linear part of the jacobian for B, may be null.
+	 * @param ab       The angular part of the jacobian for B.
+	 * @param inv_mass J * M^-1 * J^T
+	 * @return The index of the row.
+	 */
+	int add(SimpleConstraint owner, RigidBody A, RigidBody B, Vector3f la, Vector3f aa, Vector3f lb, Vector3f ab,
+			float inv_mass) {
+		if (count == bodiesA.length) {
+			int capacity = 2 * count;
+			data = Arrays.copyOf(data, capacity * ROW_STRIDE);
+			bodiesA = Arrays.copyOf(bodiesA, capacity);
+			bodiesB = Arrays.copyOf(bodiesB, capacity);
+			constraints = Arrays.copyOf(constraints, capacity);
+		}
+
+		int row = count++;
+		int o = row * ROW_STRIDE;
+		float[] r = data;
+		Arrays.fill(r, o, o + ROW_STRIDE, 0.0f);
+
+		bodiesA[row] = A;
+		bodiesB[row] = B;
+		constraints[row] = owner;
+		if (A != null) {
+			write(r, o + LA, la);
+			write(r, o + AA, aa);
+			writeResponse(r, o + IA, A, aa);
+			r[o + INV_MASS_A] = A.getInvMass();
+		}
+		if (B != null) {
+			write(r, o + LB, lb);
+			write(r, o + AB, ab);
+			writeResponse(r, o + IB, B, ab);
+			r[o + INV_MASS_B] = B.getInvMass();
+		}
+		r[o + MASS] = inv_mass != 0.0f ? 1.0f / inv_mass : 0.0f;
+
+		return row;
+	}
+
+	/**
+	 * Runs one iteration of the sequential impulses on a row.
+	 *
+	 * @param row     The index of the row.
+	 * @param impulse The impulse accumulated so far.
+	 * @param lower   The lower bound of the accumulated impulse.
+	 * @param upper   The upper bound of the accumulated impulse.
+	 * @return The new accumulated impulse.
+	 */
+	float solve(int row, float impulse, float lower, float upper) {
+		float newImpulse = impulse - computeVelocityError(row) * data[row * ROW_STRIDE + MASS];
+		if (newImpulse < lower) {
+			newImpulse = lower;
+		} else if (newImpulse > upper) {
+			newImpulse = upper;
+		}
+		applyImpulse(row, newImpulse - impulse);
+		return newImpulse;
+	}
+
+	/**
+	 * @param row
+	 * @return J * V for the current velocities of the bodies.
+	 */
+	float computeVelocityError(int row) {
+		final float[] r = data;
+		final int o = row * ROW_STRIDE;
+		final RigidBody A = bodiesA[row];
+		final RigidBody B = bodiesB[row];
+
+		float velocity_error = 0;
+		if (A != null) {
+			Vector3f v = A.getVelocity();
+			Vector3f w = A.getAngularVelocity();
+			velocity_error += r[o + LA] * v.x + r[o + LA + 1] * v.y + r[o + LA + 2] * v.z;
+			velocity_error += r[o + AA] * w.x + r[o + AA + 1] * w.y + r[o + AA + 2] * w.z;
+		}
+		if (B != null) {
+			Vector3f v = B.getVelocity();
+			Vector3f w = B.getAngularVelocity();
+			velocity_error += r[o + LB] * v.x + r[o + LB + 1] * v.y + r[o + LB + 2] * v.z;
+			velocity_error += r[o + AB] * w.x + r[o + AB + 1] * w.y + r[o + AB + 2] * w.z;
+		}
+		return velocity_error;
+	}
+
+	/**
+	 * V = V + M^-1 * J^T * applied_impulse
+	 *
+	 * @param row
+	 * @param applied_impulse
+	 */
+	void applyImpulse(int row, float applied_impulse) {
+		final float[] r = data;
+		final int o = row * ROW_STRIDE;
+		final RigidBody A = bodiesA[row];
+		final RigidBody B = bodiesB[row];
+
+		if (A != null) {
+			Vector3f v = A.getVelocity();
+			Vector3f w = A.getAngularVelocity();
+			float effect = applied_impulse * r[o + INV_MASS_A];
+			v.x += r[o + LA] * effect;
+			v.y += r[o + LA + 1] * effect;
+			v.z += r[o + LA + 2] * effect;
+			w.x += r[o + IA] * applied_impulse;
+			w.y += r[o + IA + 1] * applied_impulse;
+			w.z += r[o + IA + 2] * applied_impulse;
+		}
+		if (B != null) {
+			Vector3f v = B.getVelocity();
+			Vector3f w = B.getAngularVelocity();
+			float effect = applied_impulse * r[o + INV_MASS_B];
+			v.x += r[o + LB] * effect;
+			v.y += r[o + LB + 1] * effect;
+			v.z += r[o + LB + 2] * effect;
+			w.x += r[o + IB] * applied_impulse;
+			w.y += r[o + IB + 1] * applied_impulse;
+			w.z += r[o + IB + 2] * applied_impulse;
+		}
+	}
+
+	/**
+	 * Copies the part of the row acting on a body, [ linear angular ].
+	 *
+	 * @param row
+	 * @param body   One of the two bodies of the row.
+	 * @param dest
+	 * @param offset The index of the first of the 6 components in dest.
+	 */
+	void getJacobian(int row, RigidBody body, double[] dest, int offset) {
+		final float[] r = data;
+		final int o = row * ROW_STRIDE;
+		int l, a;
+		if (body == bodiesA[row]) {
+			l = o + LA;
+			a = o + AA;
+		} else if (body == bodiesB[row]) {
+			l = o + LB;
+			a = o + AB;
+		} else {
+			throw new IllegalArgumentException("The body isn't constrained by the row " + row);
+		}
+		for (int i = 0; i < 3; i++) {
+			dest[offset + i] = r[l + i];
+			dest[offset + 3 + i] = r[a + i];
+		}
+	}
+
+	/**
+	 * @param row
+	 * @return J * M^-1 * J^T
+	 */
+	float getInvMass(int row) {
+		float mass = data[row * ROW_STRIDE + MASS];
+		return mass != 0.0f ? 1.0f / mass : 0.0f;
+	}
+
+	/**
+	 * @param row
+	 * @return The constraint which has written the row.
+	 */
+	SimpleConstraint getConstraint(int row) {
+		return constraints[row];
+	}
+
+	/**
+	 * @return The number of rows.
+	 */
+	int size() {
+		return count;
+	}
+
+	private static void write(float[] r, int o, Vector3f v) {
+		if (v != null) {
+			r[o] = v.x;
+			r[o + 1] = v.y;
+			r[o + 2] = v.z;
+		}
+	}
+
+	private static void writeResponse(float[] r, int o, RigidBody body, Vector3f axis) {
+		Matrix3f inv_Iws = body.getInvIws();
+		float inv_mass = body.getInvMass();
+		r[o] = inv_mass * (inv_Iws.m00 * axis.x + inv_Iws.m10 * axis.y + inv_Iws.m20 * axis.z);
+		r[o + 1] = inv_mass * (inv_Iws.m01 * axis.x + inv_Iws.m11 * axis.y + inv_Iws.m21 * axis.z);
+		r[o + 2] = inv_mass * (inv_Iws.m02 * axis.x + inv_Iws.m12 * axis.y + inv_Iws.m22 * axis.z);
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.List;
 
 import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
+import cataclysm.profiling.Profiler;
 
 public interface ConstraintSolver {
 
@@ -21,4 +22,14 @@ public interface ConstraintSolver {
 			List<AbstractDoubleBodyContact> activeBodyContacts, List<AbstractConstraint> constraints, float timeStep,
 			int MAX_ITERATIONS_POSITION, int MAX_ITERATIONS_VELOCITY);
 
+	/**
+	 * Donne au solveur le profiler dans lequel mesurer la durée des itérations en
+	 * vitesse et en position. Les solveurs ne faisant pas de mesures ignorent cet
+	 * appel.
+	 * 
+	 * @param profiler
+	 */
+	public default void setProfiler(Profiler profiler) {
+	}
+
 }
@@ -0,0 +1,587 @@
+package cataclysm.constraints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import cataclysm.wrappers.RigidBody;
+import math.vector.Matrix3f;
+import math.vector.Vector3f;
+
+/**
+ * Solves exactly the velocity errors of the groups of constraints whose graph
+ * is a tree, such as chains and ropes. <br>
+ * The constraints and the bodies are the nodes of a tree, the system <br>
+ * [ M J^T ] [ y ] = [ 0 ] <br>
+ * [ J 0 ] [ lambda ] = [ J*V ] <br>
+ * is factored from the leaves to the root and solved in linear time, following
+ * D. Baraff, <i>Linear-Time Dynamics using Lagrange Multipliers</i>, 1996.
+ * <br>
+ * <br>
+ * Only the constraints which are equalities entirely described by their
+ * {@link ConstraintRows} are candidates, see
+ * {@link AbstractConstraint#cacheRows(ConstraintRows)}. A group is routed to
+ * this solver when its constraints don't form a cycle, counting the world as a
+ * single node: a rope hanging from two static anchors stays on the iterative
+ * solver. The factorization is computed once per step, each iteration then
+ * cancels the velocity error of the whole group at once. The position
+ * correction is left to the iterative solver.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class DirectChainSolver {
+
+	/**
+	 * The maximum number of rows of a constraint node.
+	 */
+	private static final int MAX_ROWS = 6;
+
+	/**
+	 * A small compliance added to the constraint nodes, relative to the inverse
+	 * mass of their rows, so that redundant or degenerate rows don't make the
+	 * factorization singular.
+	 */
+	private static final double REGULARIZATION = 1.0E-6;
+
+	private static final class Node {
+		boolean isBody;
+		int index;
+		RigidBody body;
+		int rowStart;
+		int dim;
+		Node parent;
+
+		/**
+		 * The diagonal block, after the elimination of the children.
+		 */
+		final double[] D = new double[MAX_ROWS * MAX_ROWS];
+		final double[] Dinv = new double[MAX_ROWS * MAX_ROWS];
+
+		/**
+		 * The off-diagonal block linking the node to its parent, dim x parent.dim.
+		 */
+		final double[] C = new double[MAX_ROWS * MAX_ROWS];
+
+		/**
+		 * Dinv * C
+		 */
+		final double[] L = new double[MAX_ROWS * MAX_ROWS];
+
+		final double[] z = new double[MAX_ROWS];
+		final double[] x = new double[MAX_ROWS];
+	}
+
+	private ConstraintRows rows;
+
+	private final List<AbstractConstraint> iterativeConstraints = new ArrayList<AbstractConstraint>();
+
+	private final List<AbstractConstraint> candidates = new ArrayList<AbstractConstraint>();
+	private int[] candidateRowStart = new int[16];
+	private int[] candidateRowCount = new int[16];
+	// The bodies of the candidates, two per candidate, -1 for the world.
+	private int[] candidateBodies = new int[32];
+	private boolean[] candidateVisited = new boolean[16];
+
+	private final IdentityHashMap<RigidBody, Integer> bodyIndices = new IdentityHashMap<RigidBody, Integer>();
+	private final List<RigidBody> bodies = new ArrayList<RigidBody>();
+	private int[] unionFind = new int[16];
+	private boolean[] cyclic = new boolean[16];
+	private int[] staticLinks = new int[16];
+	private boolean[] bodyVisited = new boolean[16];
+	private int[] adjacencyStart = new int[17];
+	private int[] adjacency = new int[32];
+
+	private final List<Node> nodes = new ArrayList<Node>();
+	private int nodeCount = 0;
+
+	private final double[] work = new double[18];
+	private final double[] augmented = new double[2 * MAX_ROWS * MAX_ROWS];
+
+	DirectChainSolver() {
+
+	}
+
+	/**
+	 * Runs the first velocity iteration of all the constraints and caches their
+	 * rows, then factors the groups which can be solved directly and solves them
+	 * a first time.
+	 *
+	 * @param constraints
+	 * @param rows        The cache where the rows are written, it must be empty.
+	 * @param timeStep
+	 * @param temp
+	 */
+	void prepare(List<AbstractConstraint> constraints, ConstraintRows rows, float timeStep, Vector3f temp) {
+		clear();
+		this.rows = rows;
+
+		for (AbstractConstraint constraint : constraints) {
+			constraint.solveVelocity(true, timeStep, temp);
+			int start = rows.size();
+			boolean exact = constraint.cacheRows(rows);
+			int count = rows.size() - start;
+
+			RigidBody A = getDynamicBody(constraint.getPointA());
+			RigidBody B = getDynamicBody(constraint.getPointB());
+			if (exact && count > 0 && count <= MAX_ROWS && (A != null || B != null)) {
+				addCandidate(constraint, start, count, A, B);
+			} else {
+				iterativeConstraints.add(constraint);
+			}
+		}
+
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		findTrees();
+		buildNodes();
+		factor();
+		solve();
+	}
+
+	/**
+	 * Cancels the velocity error of all the groups solved directly.
+	 */
+	void solve() {
+		for (int i = 0; i < nodeCount; i++) {
+			Node node = nodes.get(i);
+			if (node.isBody) {
+				Arrays.fill(node.z, 0, node.dim, 0.0);
+			} else {
+				for (int r = 0; r < node.dim; r++) {
+					node.z[r] = rows.computeVelocityError(node.rowStart + r);
+				}
+			}
+		}
+
+		// z_p = z_p - L_i^T * z_i, from the leaves to the roots
+		for (int i = nodeCount - 1; i >= 0; i--) {
+			Node node = nodes.get(i);
+			Node parent = node.parent;
+			if (parent != null) {
+				int n = node.dim;
+				int m = parent.dim;
+				for (int b = 0; b < m; b++) {
+					double sum = 0;
+					for (int a = 0; a < n; a++) {
+						sum += node.L[a * m + b] * node.z[a];
+					}
+					parent.z[b] -= sum;
+				}
+			}
+		}
+
+		// x_i = Dinv_i * z_i - L_i * x_p, from the roots to the leaves
+		for (int i = 0; i < nodeCount; i++) {
+			Node node = nodes.get(i);
+			Node parent = node.parent;
+			int n = node.dim;
+			for (int a = 0; a < n; a++) {
+				double sum = 0;
+				for (int b = 0; b < n; b++) {
+					sum += node.Dinv[a * n + b] * node.z[b];
+				}
+				if (parent != null) {
+					int m = parent.dim;
+					for (int b = 0; b < m; b++) {
+						sum -= node.L[a * m + b] * parent.x[b];
+					}
+				}
+				node.x[a] = sum;
+			}
+		}
+
+		for (int i = 0; i < nodeCount; i++) {
+			Node node = nodes.get(i);
+			if (!node.isBody) {
+				for (int r = 0; r < node.dim; r++) {
+					int row = node.rowStart + r;
+					float impulse = (float) node.x[r];
+					rows.applyImpulse(row, impulse);
+					rows.getConstraint(row).accumulateImpulse(impulse);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The constraints which must still be solved iteratively.
+	 */
+	List<AbstractConstraint> getIterativeConstraints() {
+		return iterativeConstraints;
+	}
+
+	/**
+	 * Releases the constraints and the bodies of the last step.
+	 */
+	void clear() {
+		rows = null;
+		iterativeConstraints.clear();
+		candidates.clear();
+		bodyIndices.clear();
+		bodies.clear();
+		for (int i = 0; i < nodeCount; i++) {
+			Node node = nodes.get(i);
+			node.body = null;
+			node.parent = null;
+		}
+		nodeCount = 0;
+	}
+
+	private static RigidBody getDynamicBody(AnchorPoint point) {
+		if (point.isStatic() || point.getBody().getInvMass() == 0.0f) {
+			return null;
+		}
+		return point.getBody();
+	}
+
+	private void addCandidate(AbstractConstraint constraint, int start, int count, RigidBody A, RigidBody B) {
+		int k = candidates.size();
+		if (k == candidateRowStart.length) {
+			candidateRowStart = Arrays.copyOf(candidateRowStart, 2 * k);
+			candidateRowCount = Arrays.copyOf(candidateRowCount, 2 * k);
+			candidateBodies = Arrays.copyOf(candidateBodies, 4 * k);
+			candidateVisited = new boolean[2 * k];
+		}
+		candidates.add(constraint);
+		candidateRowStart[k] = start;
+		candidateRowCount[k] = count;
+		candidateBodies[2 * k] = indexOf(A);
+		candidateBodies[2 * k + 1] = indexOf(B);
+	}
+
+	private int indexOf(RigidBody body) {
+		if (body == null) {
+			return -1;
+		}
+		Integer index = bodyIndices.get(body);
+		if (index == null) {
+			index = bodies.size();
+			bodyIndices.put(body, index);
+			bodies.add(body);
+		}
+		return index;
+	}
+
+	/**
+	 * Groups the candidates by connected components and sends the components
+	 * containing a cycle back to the iterative solver.
+	 */
+	private void findTrees() {
+		int bodyCount = bodies.size();
+		if (unionFind.length < bodyCount) {
+			int capacity = Math.max(bodyCount, 2 * unionFind.length);
+			unionFind = new int[capacity];
+			cyclic = new boolean[capacity];
+			staticLinks = new int[capacity];
+			bodyVisited = new boolean[capacity];
+			adjacencyStart = new int[capacity + 1];
+		}
+		for (int i = 0; i < bodyCount; i++) {
+			unionFind[i] = i;
+			cyclic[i] = false;
+			staticLinks[i] = 0;
+			bodyVisited[i] = false;
+		}
+
+		int candidateCount = candidates.size();
+		for (int k = 0; k < candidateCount; k++) {
+			int a = candidateBodies[2 * k];
+			int b = candidateBodies[2 * k + 1];
+			if (a != -1 && b != -1) {
+				int ra = find(a);
+				int rb = find(b);
+				if (ra == rb) {
+					cyclic[ra] = true;
+				} else {
+					unionFind[ra] = rb;
+					cyclic[rb] |= cyclic[ra];
+					staticLinks[rb] += staticLinks[ra];
+				}
+			} else {
+				staticLinks[find(a != -1 ? a : b)]++;
+			}
+		}
+
+		// Only the candidates of the trees remain, the others are iterative.
+		int kept = 0;
+		for (int k = 0; k < candidateCount; k++) {
+			int a = candidateBodies[2 * k];
+			int root = find(a != -1 ? a : candidateBodies[2 * k + 1]);
+			AbstractConstraint constraint = candidates.get(k);
+			if (cyclic[root] || staticLinks[root] > 1) {
+				iterativeConstraints.add(constraint);
+			} else {
+				candidates.set(kept, constraint);
+				candidateRowStart[kept] = candidateRowStart[k];
+				candidateRowCount[kept] = candidateRowCount[k];
+				candidateBodies[2 * kept] = a;
+				candidateBodies[2 * kept + 1] = candidateBodies[2 * k + 1];
+				candidateVisited[kept] = false;
+				kept++;
+			}
+		}
+		candidates.subList(kept, candidateCount).clear();
+
+		// Adjacency of the bodies, in compressed rows
+		Arrays.fill(adjacencyStart, 0, bodyCount + 1, 0);
+		for (int k = 0; k < kept; k++) {
+			for (int side = 0; side < 2; side++) {
+				int body = candidateBodies[2 * k + side];
+				if (body != -1) {
+					adjacencyStart[body + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < bodyCount; i++) {
+			adjacencyStart[i + 1] += adjacencyStart[i];
+		}
+		if (adjacency.length < adjacencyStart[bodyCount]) {
+			adjacency = new int[Math.max(adjacencyStart[bodyCount], 2 * adjacency.length)];
+		}
+		for (int k = 0; k < kept; k++) {
+			for (int side = 0; side < 2; side++) {
+				int body = candidateBodies[2 * k + side];
+				if (body != -1) {
+					adjacency[adjacencyStart[body]++] = k;
+				}
+			}
+		}
+		for (int i = bodyCount; i > 0; i--) {
+			adjacencyStart[i] = adjacencyStart[i - 1];
+		}
+		adjacencyStart[0] = 0;
+	}
+
+	private int find(int i) {
+		while (unionFind[i] != i) {
+			unionFind[i] = unionFind[unionFind[i]];
+			i = unionFind[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Lists the nodes of each tree in breadth-first order. A tree anchored to the
+	 * world is rooted at its anchoring constraint, this way every constraint node
+	 * has a body among its children and its diagonal block isn't zero.
+	 */
+	private void buildNodes() {
+		int candidateCount = candidates.size();
+		for (int k = 0; k < candidateCount; k++) {
+			if (!candidateVisited[k]
+					&& (candidateBodies[2 * k] == -1 || candidateBodies[2 * k + 1] == -1)) {
+				visitTree(newConstraintNode(k, null));
+			}
+		}
+		for (int k = 0; k < candidateCount; k++) {
+			if (!candidateVisited[k]) {
+				visitTree(newBodyNode(candidateBodies[2 * k], null));
+			}
+		}
+	}
+
+	private void visitTree(Node root) {
+		int head = nodeCount - 1;
+		while (head < nodeCount) {
+			Node node = nodes.get(head++);
+			if (node.isBody) {
+				for (int i = adjacencyStart[node.index]; i < adjacencyStart[node.index + 1]; i++) {
+					int k = adjacency[i];
+					if (!candidateVisited[k]) {
+						newConstraintNode(k, node);
+					}
+				}
+			} else {
+				for (int side = 0; side < 2; side++) {
+					int body = candidateBodies[2 * node.index + side];
+					if (body != -1 && !bodyVisited[body]) {
+						newBodyNode(body, node);
+					}
+				}
+			}
+		}
+	}
+
+	private Node nextNode() {
+		if (nodeCount == nodes.size()) {
+			nodes.add(new Node());
+		}
+		return nodes.get(nodeCount++);
+	}
+
+	private Node newBodyNode(int index, Node parent) {
+		bodyVisited[index] = true;
+		RigidBody body = bodies.get(index);
+
+		Node node = nextNode();
+		node.isBody = true;
+		node.index = index;
+		node.body = body;
+		node.dim = 6;
+		node.parent = parent;
+
+		// D = M = [ m*I 0 ; 0 Iws ]
+		double[] D = node.D;
+		Arrays.fill(D, 0, 36, 0.0);
+		float inv_mass = body.getInvMass();
+		D[0] = D[7] = D[14] = 1.0 / inv_mass;
+
+		Matrix3f inv_Iws = body.getInvIws();
+		double[] W = work;
+		W[0] = inv_mass * inv_Iws.m00;
+		W[1] = inv_mass * inv_Iws.m10;
+		W[2] = inv_mass * inv_Iws.m20;
+		W[3] = inv_mass * inv_Iws.m01;
+		W[4] = inv_mass * inv_Iws.m11;
+		W[5] = inv_mass * inv_Iws.m21;
+		W[6] = inv_mass * inv_Iws.m02;
+		W[7] = inv_mass * inv_Iws.m12;
+		W[8] = inv_mass * inv_Iws.m22;
+		invert(W, 0, W, 9, 3);
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				D[(3 + i) * 6 + 3 + j] = W[9 + i * 3 + j];
+			}
+		}
+
+		if (parent != null) {
+			// C = J_parent^T, 6 x k
+			int k = parent.dim;
+			for (int r = 0; r < k; r++) {
+				rows.getJacobian(parent.rowStart + r, body, work, 0);
+				for (int a = 0; a < 6; a++) {
+					node.C[a * k + r] = work[a];
+				}
+			}
+		}
+		return node;
+	}
+
+	private Node newConstraintNode(int k, Node parent) {
+		candidateVisited[k] = true;
+
+		Node node = nextNode();
+		node.isBody = false;
+		node.index = k;
+		node.body = null;
+		node.rowStart = candidateRowStart[k];
+		node.dim = candidateRowCount[k];
+		node.parent = parent;
+
+		int n = node.dim;
+		double[] D = node.D;
+		Arrays.fill(D, 0, n * n, 0.0);
+		for (int r = 0; r < n; r++) {
+			D[r * n + r] = -(REGULARIZATION * rows.getInvMass(node.rowStart + r) + 1.0E-12);
+		}
+
+		if (parent != null) {
+			// C = J wrt the parent body, k x 6
+			for (int r = 0; r < n; r++) {
+				rows.getJacobian(node.rowStart + r, parent.body, node.C, r * 6);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Eliminates the nodes from the leaves to the roots.
+	 */
+	private void factor() {
+		for (int i = nodeCount - 1; i >= 0; i--) {
+			Node node = nodes.get(i);
+			int n = node.dim;
+			invert(node.D, 0, node.Dinv, 0, n);
+
+			Node parent = node.parent;
+			if (parent == null) {
+				continue;
+			}
+			int m = parent.dim;
+
+			// L = Dinv * C
+			for (int a = 0; a < n; a++) {
+				for (int b = 0; b < m; b++) {
+					double sum = 0;
+					for (int c = 0; c < n; c++) {
+						sum += node.Dinv[a * n + c] * node.C[c * m + b];
+					}
+					node.L[a * m + b] = sum;
+				}
+			}
+
+			// D_parent = D_parent - C^T * L
+			for (int a = 0; a < m; a++) {
+				for (int b = 0; b < m; b++) {
+					double sum = 0;
+					for (int c = 0; c < n; c++) {
+						sum += node.C[c * m + a] * node.L[c * m + b];
+					}
+					parent.D[a * m + b] -= sum;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inverts a n x n matrix by Gauss-Jordan elimination with partial pivoting.
+	 * A singular matrix gives a zero inverse, the corresponding node then
+	 * receives no impulse.
+	 */
+	private void invert(double[] src, int srcOffset, double[] dest, int destOffset, int n) {
+		double[] m = augmented;
+		int w = 2 * n;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				m[i * w + j] = src[srcOffset + i * n + j];
+				m[i * w + n + j] = i == j ? 1.0 : 0.0;
+			}
+		}
+
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int i = col + 1; i < n; i++) {
+				if (Math.abs(m[i * w + col]) > Math.abs(m[pivot * w + col])) {
+					pivot = i;
+				}
+			}
+			double p = m[pivot * w + col];
+			if (Math.abs(p) < 1.0E-30) {
+				Arrays.fill(dest, destOffset, destOffset + n * n, 0.0);
+				return;
+			}
+			if (pivot != col) {
+				for (int j = 0; j < w; j++) {
+					double t = m[pivot * w + j];
+					m[pivot * w + j] = m[col * w + j];
+					m[col * w + j] = t;
+				}
+			}
+			double inv = 1.0 / p;
+			for (int j = 0; j < w; j++) {
+				m[col * w + j] *= inv;
+			}
+			for (int i = 0; i < n; i++) {
+				if (i != col) {
+					double f = m[i * w + col];
+					if (f != 0.0) {
+						for (int j = 0; j < w; j++) {
+							m[i * w + j] -= f * m[col * w + j];
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				dest[destOffset + i * n + j] = m[i * w + n + j];
+			}
+		}
+	}
+
+}
@@ -135,6 +135,11 @@ public class DistanceConstraint extends LinearConstraint {
 	protected boolean hasPositionCorrection() {
 		return true;
 	}
+
+	@Override
+	protected boolean isRowCacheable() {
+		return true;
+	}
 	
 	public float getLength() {
 		return this.length;
@@ -166,6 +166,11 @@ public class LineConstraint extends LinearConstraint {
 		return true;
 	}
 
+	@Override
+	protected boolean isRowCacheable() {
+		return true;
+	}
+
 	/**
 	 * Calcule la position du projet� orthogonal de point sur le segment form� par
 	 * base et axis. La position est ramen�e dans l'intervalle [minDistance,
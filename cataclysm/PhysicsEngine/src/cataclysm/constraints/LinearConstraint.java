@@ -1,5 +1,6 @@
 package cataclysm.constraints;
 
+import cataclysm.wrappers.RigidBody;
 import math.vector.Matrix3f;
 import math.vector.Vector3f;
 
@@ -11,6 +12,9 @@ import math.vector.Vector3f;
  */
 public abstract class LinearConstraint extends SimpleConstraint {
 
+	private final Vector3f minusN = new Vector3f();
+	private final Vector3f minusRbxN = new Vector3f();
+
 	public LinearConstraint(AnchorPoint pointA, AnchorPoint pointB) {
 		super(pointA, pointB);
 	}
@@ -39,6 +43,16 @@ public abstract class LinearConstraint extends SimpleConstraint {
 		}
 	}
 
+	@Override
+	int storeRow(ConstraintRows rows, Vector3f N, Vector3f RaxN, Vector3f RbxN, float inv_mass) {
+		// J = [ N RaxN -N -RbxN ]
+		RigidBody A = pointA.isStatic() ? null : pointA.getBody();
+		RigidBody B = pointB.isStatic() ? null : pointB.getBody();
+		minusN.set(-N.x, -N.y, -N.z);
+		minusRbxN.set(-RbxN.x, -RbxN.y, -RbxN.z);
+		return rows.add(this, A, B, N, RaxN, minusN, minusRbxN, inv_mass);
+	}
+
 	@Override
 	protected float computePositionInvMass(Vector3f N, Vector3f Ra, Vector3f Rb, Vector3f RaxN, Vector3f RbxN,
 			Vector3f temp) {
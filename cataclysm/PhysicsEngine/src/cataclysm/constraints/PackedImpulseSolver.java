@@ -0,0 +1,638 @@
+package cataclysm.constraints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cataclysm.Epsilons;
+import cataclysm.contact_creation.AbstractContact;
+import cataclysm.contact_creation.AbstractDoubleBodyContact;
+import cataclysm.contact_creation.AbstractSingleBodyContact;
+import cataclysm.contact_creation.ContactProperties;
+import cataclysm.contact_creation.ContactZone;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
+import cataclysm.wrappers.RigidBody;
+import math.Clamp;
+import math.MatrixOps;
+import math.vector.Matrix3f;
+import math.vector.Vector3f;
+
+/**
+ * A sequential impulse solver working on packed data. <br>
+ * At the beginning of each step, all the active contact points are turned into
+ * solver rows stored in a single flat float array, and the velocities of the
+ * bodies involved are copied into another flat array. The rows are then sorted
+ * in batches in which no two rows share a dynamic body: the rows of a batch are
+ * independent from each other and their inner loop carries no dependency. The
+ * velocities are written back to the bodies at the end of the step, or before
+ * solving the constraints which still work directly on the rigid bodies. <br>
+ * <br>
+ * The accumulated impulses are kept in the contacts like with
+ * {@link SequentialImpulseSolver}: when {@link Epsilons#WARM_START} is set, the
+ * rows start from the impulses of the previous step and these impulses are
+ * applied to the bodies before the first iteration.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class PackedImpulseSolver implements ConstraintSolver {
+
+	// Layout of a row in rowData
+	private static final int N = 0;
+	private static final int T = 3;
+	private static final int B = 6;
+	private static final int RaxN = 9;
+	private static final int RaxT = 12;
+	private static final int RaxB = 15;
+	private static final int RbxN = 18;
+	private static final int RbxT = 21;
+	private static final int RbxB = 24;
+	// inv_mass * inv_Iws * (R x axis), the angular velocity change per unit impulse
+	private static final int IaRaxN = 27;
+	private static final int IaRaxT = 30;
+	private static final int IaRaxB = 33;
+	private static final int IbRbxN = 36;
+	private static final int IbRbxT = 39;
+	private static final int IbRbxB = 42;
+	private static final int MASS_N = 45;
+	private static final int MASS_T = 46;
+	private static final int MASS_B = 47;
+	private static final int BIAS = 48;
+	private static final int PSEUDO_BIAS = 49;
+	private static final int FRICTION = 50;
+	private static final int IMPULSE_N = 51;
+	private static final int IMPULSE_T = 52;
+	private static final int IMPULSE_B = 53;
+	private static final int PSEUDO_IMPULSE = 54;
+	private static final int INV_MASS_A = 55;
+	private static final int INV_MASS_B = 56;
+	private static final int ROW_STRIDE = 57;
+
+	// Layout of a body in bodyData
+	private static final int V = 0;
+	private static final int W = 3;
+	private static final int PSEUDO_V = 6;
+	private static final int PSEUDO_W = 9;
+	private static final int BODY_STRIDE = 12;
+
+	/**
+	 * Rows whose bodies can't be put in one of the first batches end up in the
+	 * last one, which may contain rows sharing a body.
+	 */
+	private static final int MAX_BATCHES = 64;
+
+	private float[] rowData = new float[0];
+	private int[] rowBodies = new int[0];
+
+	private float[] bodyData = new float[0];
+	private RigidBody[] bodies = new RigidBody[0];
+	private long[] bodyBatches = new long[0];
+	private int bodyCount = 0;
+
+	private byte[] rowBatch = new byte[0];
+	// the place of each row in rowData, in the order of the contact points
+	private int[] rowSlot = new int[0];
+	private final int[] batchStart = new int[MAX_BATCHES + 1];
+	private final int[] batchFill = new int[MAX_BATCHES];
+
+	private final Vector3f normal = new Vector3f();
+	private final Vector3f tangent = new Vector3f();
+	private final Vector3f bitangent = new Vector3f();
+	private final Vector3f temp = new Vector3f();
+
+	private final ConstraintRows constraintRows = new ConstraintRows();
+	private final List<AbstractConstraint> positionConstraints = new ArrayList<AbstractConstraint>();
+
+	/**
+	 * Solves the trees of constraints directly, null if all the constraints are
+	 * solved iteratively.
+	 */
+	private final DirectChainSolver chains;
+
+	/**
+	 * Measures the iterations, disabled until the engine provides its own.
+	 */
+	private Profiler profiler = new Profiler(1);
+
+	public PackedImpulseSolver() {
+		this(false);
+	}
+
+	/**
+	 * @param directChains true if the groups of constraints forming a tree should
+	 *                     be solved by a {@link DirectChainSolver}.
+	 */
+	public PackedImpulseSolver(boolean directChains) {
+		this.chains = directChains ? new DirectChainSolver() : null;
+	}
+
+	@Override
+	public void solve(List<AbstractSingleBodyContact> activeMeshContacts,
+			List<AbstractDoubleBodyContact> activeBodyContacts, List<AbstractConstraint> constraints, float timeStep,
+			int MAX_ITERATIONS_POSITION, int MAX_ITERATIONS_VELOCITY) {
+
+		long start = profiler.start();
+		pack(activeMeshContacts, activeBodyContacts, timeStep);
+
+		boolean syncBodies = !constraints.isEmpty();
+		for (AbstractConstraint constraint : constraints) {
+			if (constraint.hasPositionCorrection()) {
+				positionConstraints.add(constraint);
+			}
+		}
+
+		for (int i = 0; i < MAX_ITERATIONS_VELOCITY; i++) {
+			for (int batch = 0; batch < MAX_BATCHES; batch++) {
+				solveVelocity(batchStart[batch], batchStart[batch + 1]);
+			}
+			if (syncBodies) {
+				storeBodies();
+				if (i == 0) {
+					constraintRows.clear();
+					if (chains != null) {
+						chains.prepare(constraints, constraintRows, timeStep, temp);
+					} else {
+						for (AbstractConstraint constraint : constraints) {
+							constraint.solveVelocity(true, timeStep, temp);
+							constraint.cacheRows(constraintRows);
+						}
+					}
+				} else if (chains != null) {
+					for (AbstractConstraint constraint : chains.getIterativeConstraints()) {
+						constraint.solveVelocity(false, timeStep, temp);
+					}
+					chains.solve();
+				} else {
+					for (AbstractConstraint constraint : constraints) {
+						constraint.solveVelocity(false, timeStep, temp);
+					}
+				}
+				loadBodies();
+			}
+		}
+		profiler.stop(Phase.SOLVER_VELOCITY, start);
+		start = profiler.start();
+
+		for (int i = 0; i < MAX_ITERATIONS_POSITION; i++) {
+			for (int batch = 0; batch < MAX_BATCHES; batch++) {
+				solvePosition(batchStart[batch], batchStart[batch + 1]);
+			}
+			if (!positionConstraints.isEmpty()) {
+				storeBodies();
+				for (AbstractConstraint constraint : positionConstraints) {
+					constraint.solvePosition(i == 0, timeStep, temp);
+				}
+				loadBodies();
+			}
+		}
+		storeImpulses(activeMeshContacts, activeBodyContacts);
+
+		positionConstraints.clear();
+		if (chains != null) {
+			chains.clear();
+		}
+		constraintRows.clear();
+
+		storeBodies();
+		for (int i = 0; i < bodyCount; i++) {
+			bodies[i].setSolverIndex(-1);
+			bodies[i] = null;
+		}
+		bodyCount = 0;
+		profiler.stop(Phase.SOLVER_POSITION, start);
+	}
+
+	@Override
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Builds the rows of all the active contact points and sorts them in batches.
+	 */
+	private void pack(List<AbstractSingleBodyContact> activeMeshContacts,
+			List<AbstractDoubleBodyContact> activeBodyContacts, float timeStep) {
+
+		int rows = 0;
+		for (AbstractDoubleBodyContact contact : activeBodyContacts) {
+			rows += contact.getContactArea().getContactCount();
+		}
+		for (AbstractSingleBodyContact contact : activeMeshContacts) {
+			rows += contact.getContactArea().getContactCount();
+		}
+		reserveRows(rows);
+
+		// First pass, assign the bodies and the batches
+		Arrays.fill(batchFill, 0);
+		int row = 0;
+		for (AbstractDoubleBodyContact contact : activeBodyContacts) {
+			int a = addBody(contact.getWrapperA().getBody());
+			int b = addBody(contact.getWrapperB().getBody());
+			for (int i = 0; i < contact.getContactArea().getContactCount(); i++) {
+				rowBatch[row++] = (byte) assignBatch(a, b);
+			}
+		}
+		for (AbstractSingleBodyContact contact : activeMeshContacts) {
+			int a = addBody(contact.getWrapper().getBody());
+			for (int i = 0; i < contact.getContactArea().getContactCount(); i++) {
+				rowBatch[row++] = (byte) assignBatch(a, -1);
+			}
+		}
+
+		batchStart[0] = 0;
+		for (int batch = 0; batch < MAX_BATCHES; batch++) {
+			batchStart[batch + 1] = batchStart[batch] + batchFill[batch];
+			batchFill[batch] = batchStart[batch];
+		}
+
+		// Second pass, build each row directly at its place in its batch
+		row = 0;
+		for (AbstractDoubleBodyContact contact : activeBodyContacts) {
+			RigidBody bodyA = contact.getWrapperA().getBody();
+			RigidBody bodyB = contact.getWrapperB().getBody();
+			float friction = mixFriction(bodyA.getContactProperties(), bodyB.getContactProperties());
+			float elasticity = mixElasticity(bodyA.getContactProperties(), bodyB.getContactProperties());
+			ContactZone area = contact.getContactArea();
+			for (int i = 0; i < area.getContactCount(); i++) {
+				int slot = batchFill[rowBatch[row]]++;
+				rowSlot[row++] = slot;
+				buildRow(slot, contact, i, bodyA, bodyB, friction, elasticity, timeStep);
+			}
+		}
+		for (AbstractSingleBodyContact contact : activeMeshContacts) {
+			RigidBody body = contact.getWrapper().getBody();
+			ContactProperties meshProperties = contact.getTriangle().getMesh().getContactProperties();
+			float friction = mixFriction(body.getContactProperties(), meshProperties);
+			float elasticity = mixElasticity(body.getContactProperties(), meshProperties);
+			ContactZone area = contact.getContactArea();
+			for (int i = 0; i < area.getContactCount(); i++) {
+				int slot = batchFill[rowBatch[row]]++;
+				rowSlot[row++] = slot;
+				buildRow(slot, contact, i, body, null, friction, elasticity, timeStep);
+			}
+		}
+
+		// The relative velocities of all the rows have been measured before the warm
+		// start, like in SequentialImpulseSolver
+		if (Epsilons.WARM_START) {
+			for (row = 0; row < rows; row++) {
+				int o = rowSlot[row] * ROW_STRIDE;
+				applyImpulse(rowSlot[row], rowData[o + IMPULSE_N], rowData[o + IMPULSE_T], rowData[o + IMPULSE_B]);
+			}
+		}
+	}
+
+	/**
+	 * Reports the accumulated impulses to the contacts.
+	 */
+	private void storeImpulses(List<AbstractSingleBodyContact> activeMeshContacts,
+			List<AbstractDoubleBodyContact> activeBodyContacts) {
+		int row = 0;
+		for (AbstractDoubleBodyContact contact : activeBodyContacts) {
+			row = storeImpulses(contact, row);
+		}
+		for (AbstractSingleBodyContact contact : activeMeshContacts) {
+			row = storeImpulses(contact, row);
+		}
+	}
+
+	private int storeImpulses(AbstractContact contact, int row) {
+		for (int i = 0; i < contact.getContactArea().getContactCount(); i++) {
+			int o = rowSlot[row++] * ROW_STRIDE;
+			contact.setImpulses(i, rowData[o + IMPULSE_N], rowData[o + IMPULSE_T], rowData[o + IMPULSE_B]);
+		}
+		return row;
+	}
+
+	private int addBody(RigidBody body) {
+		int index = body.getSolverIndex();
+		if (index >= 0) {
+			return index;
+		}
+		index = bodyCount++;
+		if (index == bodies.length) {
+			int capacity = 2 * bodies.length + 1;
+			bodies = Arrays.copyOf(bodies, capacity);
+			bodyBatches = Arrays.copyOf(bodyBatches, capacity);
+			bodyData = Arrays.copyOf(bodyData, capacity * BODY_STRIDE);
+		}
+		bodies[index] = body;
+		bodyBatches[index] = 0;
+		body.setSolverIndex(index);
+
+		int offset = index * BODY_STRIDE;
+		load(body.getVelocity(), bodyData, offset + V);
+		load(body.getAngularVelocity(), bodyData, offset + W);
+		load(body.getPseudoVelocity(), bodyData, offset + PSEUDO_V);
+		load(body.getPseudoAngularVelocity(), bodyData, offset + PSEUDO_W);
+		return index;
+	}
+
+	/**
+	 * Finds the first batch in which neither of the bodies appear. Bodies with an
+	 * infinite mass are never modified, they can appear in several rows of a
+	 * batch.
+	 */
+	private int assignBatch(int a, int b) {
+		long used = 0;
+		boolean dynamicA = bodies[a].getInvMass() != 0;
+		boolean dynamicB = b >= 0 && bodies[b].getInvMass() != 0;
+		if (dynamicA) {
+			used |= bodyBatches[a];
+		}
+		if (dynamicB) {
+			used |= bodyBatches[b];
+		}
+		int batch = Math.min(Long.numberOfTrailingZeros(~used), MAX_BATCHES - 1);
+		if (dynamicA) {
+			bodyBatches[a] |= 1L << batch;
+		}
+		if (dynamicB) {
+			bodyBatches[b] |= 1L << batch;
+		}
+		batchFill[batch]++;
+		return batch;
+	}
+
+	private void buildRow(int row, AbstractContact contact, int i, RigidBody bodyA, RigidBody bodyB,
+			float friction, float elasticity, float timeStep) {
+		float[] r = rowData;
+		int o = row * ROW_STRIDE;
+		ContactZone area = contact.getContactArea();
+
+		area.getNormal(normal);
+		normal.negate();
+		MatrixOps.computeOrthogonalComplement(normal, tangent, bitangent);
+		load(normal, r, o + N);
+		load(tangent, r, o + T);
+		load(bitangent, r, o + B);
+
+		float x = area.getContactPointX(i);
+		float y = area.getContactPointY(i);
+		float z = area.getContactPointZ(i);
+
+		Vector3f pos = bodyA.getPosition();
+		float inv_mass_A = bodyA.getInvMass();
+		armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + N, o + RaxN);
+		armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + T, o + RaxT);
+		armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + B, o + RaxB);
+		angularResponse(bodyA.getInvIws(), inv_mass_A, r, o + RaxN, o + IaRaxN);
+		angularResponse(bodyA.getInvIws(), inv_mass_A, r, o + RaxT, o + IaRaxT);
+		angularResponse(bodyA.getInvIws(), inv_mass_A, r, o + RaxB, o + IaRaxB);
+
+		float inv_mass_N = inv_mass_A + dot(r, o + RaxN, o + IaRaxN);
+		float inv_mass_T = inv_mass_A + dot(r, o + RaxT, o + IaRaxT);
+		float inv_mass_B = inv_mass_A + dot(r, o + RaxB, o + IaRaxB);
+
+		float inv_mass_B_body = 0;
+		if (bodyB != null) {
+			pos = bodyB.getPosition();
+			inv_mass_B_body = bodyB.getInvMass();
+			armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + N, o + RbxN);
+			armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + T, o + RbxT);
+			armCrossAxis(x - pos.x, y - pos.y, z - pos.z, r, o + B, o + RbxB);
+			angularResponse(bodyB.getInvIws(), inv_mass_B_body, r, o + RbxN, o + IbRbxN);
+			angularResponse(bodyB.getInvIws(), inv_mass_B_body, r, o + RbxT, o + IbRbxT);
+			angularResponse(bodyB.getInvIws(), inv_mass_B_body, r, o + RbxB, o + IbRbxB);
+
+			inv_mass_N += inv_mass_B_body + dot(r, o + RbxN, o + IbRbxN);
+			inv_mass_T += inv_mass_B_body + dot(r, o + RbxT, o + IbRbxT);
+			inv_mass_B += inv_mass_B_body + dot(r, o + RbxB, o + IbRbxB);
+
+			rowBodies[2 * row + 1] = bodyB.getSolverIndex();
+		} else {
+			Arrays.fill(r, o + RbxN, o + RbxB + 3, 0.0f);
+			Arrays.fill(r, o + IbRbxN, o + IbRbxB + 3, 0.0f);
+			rowBodies[2 * row + 1] = -1;
+		}
+		rowBodies[2 * row] = bodyA.getSolverIndex();
+
+		r[o + MASS_N] = inv_mass_N > 0 ? 1.0f / inv_mass_N : 0.0f;
+		r[o + MASS_T] = inv_mass_T > 0 ? 1.0f / inv_mass_T : 0.0f;
+		r[o + MASS_B] = inv_mass_B > 0 ? 1.0f / inv_mass_B : 0.0f;
+		r[o + INV_MASS_A] = inv_mass_A;
+		r[o + INV_MASS_B] = inv_mass_B_body;
+		r[o + FRICTION] = friction;
+
+		float deltaV_N = relativeVelocity(row, o + N, o + RaxN, o + RbxN, V, W);
+		r[o + BIAS] = deltaV_N < -Epsilons.VELOCITY_ELASTICITY_LIMIT ? elasticity * deltaV_N : 0.0f;
+		r[o + PSEUDO_BIAS] = (Epsilons.PENETRATION_RECOVERY / timeStep)
+				* Math.min(0, (area.getPenetrationDepth(i) + Epsilons.ALLOWED_PENETRATION));
+
+		if (Epsilons.WARM_START) {
+			contact.getImpulses(i, r, o + IMPULSE_N);
+		} else {
+			r[o + IMPULSE_N] = 0;
+			r[o + IMPULSE_T] = 0;
+			r[o + IMPULSE_B] = 0;
+		}
+		r[o + PSEUDO_IMPULSE] = 0;
+	}
+
+	/**
+	 * Solves the velocity of the rows in [start, stop[, these rows don't share any
+	 * dynamic body.
+	 */
+	private void solveVelocity(int start, int stop) {
+		final float[] r = rowData;
+		for (int row = start; row < stop; row++) {
+			int o = row * ROW_STRIDE;
+
+			float deltaV_N = relativeVelocity(row, o + N, o + RaxN, o + RbxN, V, W);
+			float deltaV_T = relativeVelocity(row, o + T, o + RaxT, o + RbxT, V, W);
+			float deltaV_B = relativeVelocity(row, o + B, o + RaxB, o + RbxB, V, W);
+
+			float prev_impulse_N = r[o + IMPULSE_N];
+			float impulse_N = Math.max(0, prev_impulse_N - (deltaV_N + r[o + BIAS]) * r[o + MASS_N]);
+			r[o + IMPULSE_N] = impulse_N;
+
+			float maxFriction = r[o + FRICTION] * impulse_N;
+
+			float prev_impulse_T = r[o + IMPULSE_T];
+			float impulse_T = Clamp.clamp(prev_impulse_T - deltaV_T * r[o + MASS_T], -maxFriction, maxFriction);
+			r[o + IMPULSE_T] = impulse_T;
+
+			float prev_impulse_B = r[o + IMPULSE_B];
+			float impulse_B = Clamp.clamp(prev_impulse_B - deltaV_B * r[o + MASS_B], -maxFriction, maxFriction);
+			r[o + IMPULSE_B] = impulse_B;
+
+			applyImpulse(row, impulse_N - prev_impulse_N, impulse_T - prev_impulse_T, impulse_B - prev_impulse_B);
+		}
+	}
+
+	/**
+	 * Solves the position of the rows in [start, stop[, these rows don't share any
+	 * dynamic body.
+	 */
+	private void solvePosition(int start, int stop) {
+		final float[] r = rowData;
+		for (int row = start; row < stop; row++) {
+			int o = row * ROW_STRIDE;
+
+			float pseudo_deltaV = relativeVelocity(row, o + N, o + RaxN, o + RbxN, PSEUDO_V, PSEUDO_W);
+
+			float prev_impulse = r[o + PSEUDO_IMPULSE];
+			float impulse = Math.max(0, prev_impulse - (pseudo_deltaV + r[o + PSEUDO_BIAS]) * r[o + MASS_N]);
+			r[o + PSEUDO_IMPULSE] = impulse;
+
+			applyPseudoImpulse(row, impulse - prev_impulse);
+		}
+	}
+
+	/**
+	 * Computes (Va + Wa x Ra - Vb - Wb x Rb) . axis, which is also equal to Va .
+	 * axis + Wa . (Ra x axis) - Vb . axis - Wb . (Rb x axis).
+	 */
+	private float relativeVelocity(int row, int axis, int RaxAxis, int RbxAxis, int v, int w) {
+		final float[] r = rowData;
+		final float[] d = bodyData;
+		int a = rowBodies[2 * row] * BODY_STRIDE;
+		float deltaV = d[a + v] * r[axis] + d[a + v + 1] * r[axis + 1] + d[a + v + 2] * r[axis + 2];
+		deltaV += d[a + w] * r[RaxAxis] + d[a + w + 1] * r[RaxAxis + 1] + d[a + w + 2] * r[RaxAxis + 2];
+		int b = rowBodies[2 * row + 1];
+		if (b >= 0) {
+			b *= BODY_STRIDE;
+			deltaV -= d[b + v] * r[axis] + d[b + v + 1] * r[axis + 1] + d[b + v + 2] * r[axis + 2];
+			deltaV -= d[b + w] * r[RbxAxis] + d[b + w + 1] * r[RbxAxis + 1] + d[b + w + 2] * r[RbxAxis + 2];
+		}
+		return deltaV;
+	}
+
+	private void applyImpulse(int row, float jn, float jt, float jb) {
+		final float[] r = rowData;
+		final float[] d = bodyData;
+		int o = row * ROW_STRIDE;
+
+		float Jx = r[o + N] * jn + r[o + T] * jt + r[o + B] * jb;
+		float Jy = r[o + N + 1] * jn + r[o + T + 1] * jt + r[o + B + 1] * jb;
+		float Jz = r[o + N + 2] * jn + r[o + T + 2] * jt + r[o + B + 2] * jb;
+
+		int a = rowBodies[2 * row] * BODY_STRIDE;
+		float inv_mass = r[o + INV_MASS_A];
+		d[a + V] += Jx * inv_mass;
+		d[a + V + 1] += Jy * inv_mass;
+		d[a + V + 2] += Jz * inv_mass;
+		for (int k = 0; k < 3; k++) {
+			d[a + W + k] += r[o + IaRaxN + k] * jn + r[o + IaRaxT + k] * jt + r[o + IaRaxB + k] * jb;
+		}
+
+		int b = rowBodies[2 * row + 1];
+		if (b >= 0) {
+			b *= BODY_STRIDE;
+			inv_mass = r[o + INV_MASS_B];
+			d[b + V] -= Jx * inv_mass;
+			d[b + V + 1] -= Jy * inv_mass;
+			d[b + V + 2] -= Jz * inv_mass;
+			for (int k = 0; k < 3; k++) {
+				d[b + W + k] -= r[o + IbRbxN + k] * jn + r[o + IbRbxT + k] * jt + r[o + IbRbxB + k] * jb;
+			}
+		}
+	}
+
+	private void applyPseudoImpulse(int row, float impulse) {
+		final float[] r = rowData;
+		final float[] d = bodyData;
+		int o = row * ROW_STRIDE;
+
+		int a = rowBodies[2 * row] * BODY_STRIDE;
+		float effect = impulse * r[o + INV_MASS_A];
+		for (int k = 0; k < 3; k++) {
+			d[a + PSEUDO_V + k] += r[o + N + k] * effect;
+			d[a + PSEUDO_W + k] += r[o + IaRaxN + k] * impulse;
+		}
+
+		int b = rowBodies[2 * row + 1];
+		if (b >= 0) {
+			b *= BODY_STRIDE;
+			effect = impulse * r[o + INV_MASS_B];
+			for (int k = 0; k < 3; k++) {
+				d[b + PSEUDO_V + k] -= r[o + N + k] * effect;
+				d[b + PSEUDO_W + k] -= r[o + IbRbxN + k] * impulse;
+			}
+		}
+	}
+
+	/**
+	 * Copies the packed velocities back into the rigid bodies.
+	 */
+	private void storeBodies() {
+		for (int i = 0; i < bodyCount; i++) {
+			RigidBody body = bodies[i];
+			int offset = i * BODY_STRIDE;
+			body.getVelocity().set(bodyData[offset + V], bodyData[offset + V + 1], bodyData[offset + V + 2]);
+			body.getAngularVelocity().set(bodyData[offset + W], bodyData[offset + W + 1], bodyData[offset + W + 2]);
+			body.getPseudoVelocity().set(bodyData[offset + PSEUDO_V], bodyData[offset + PSEUDO_V + 1],
+					bodyData[offset + PSEUDO_V + 2]);
+			body.getPseudoAngularVelocity().set(bodyData[offset + PSEUDO_W], bodyData[offset + PSEUDO_W + 1],
+					bodyData[offset + PSEUDO_W + 2]);
+		}
+	}
+
+	/**
+	 * Copies the velocities of the rigid bodies into the packed array.
+	 */
+	private void loadBodies() {
+		for (int i = 0; i < bodyCount; i++) {
+			RigidBody body = bodies[i];
+			int offset = i * BODY_STRIDE;
+			load(body.getVelocity(), bodyData, offset + V);
+			load(body.getAngularVelocity(), bodyData, offset + W);
+			load(body.getPseudoVelocity(), bodyData, offset + PSEUDO_V);
+			load(body.getPseudoAngularVelocity(), bodyData, offset + PSEUDO_W);
+		}
+	}
+
+	private void reserveRows(int rows) {
+		if (rowBatch.length < rows) {
+			int capacity = Math.max(rows, 2 * rowBatch.length + 1);
+			rowBatch = new byte[capacity];
+			rowSlot = new int[capacity];
+			rowBodies = new int[2 * capacity];
+			rowData = new float[ROW_STRIDE * capacity];
+		}
+	}
+
+	/**
+	 * dest = (x, y, z) x axis
+	 */
+	private static void armCrossAxis(float x, float y, float z, float[] r, int axis, int dest) {
+		float ax = r[axis];
+		float ay = r[axis + 1];
+		float az = r[axis + 2];
+		r[dest] = y * az - z * ay;
+		r[dest + 1] = z * ax - x * az;
+		r[dest + 2] = x * ay - y * ax;
+	}
+
+	/**
+	 * dest = inv_mass * inv_Iws * src
+	 */
+	private static void angularResponse(Matrix3f inv_Iws, float inv_mass, float[] r, int src, int dest) {
+		float x = r[src];
+		float y = r[src + 1];
+		float z = r[src + 2];
+		r[dest] = inv_mass * (inv_Iws.m00 * x + inv_Iws.m10 * y + inv_Iws.m20 * z);
+		r[dest + 1] = inv_mass * (inv_Iws.m01 * x + inv_Iws.m11 * y + inv_Iws.m21 * z);
+		r[dest + 2] = inv_mass * (inv_Iws.m02 * x + inv_Iws.m12 * y + inv_Iws.m22 * z);
+	}
+
+	private static float dot(float[] r, int left, int right) {
+		return r[left] * r[right] + r[left + 1] * r[right + 1] + r[left + 2] * r[right + 2];
+	}
+
+	private static void load(Vector3f v, float[] dest, int offset) {
+		dest[offset] = v.x;
+		dest[offset + 1] = v.y;
+		dest[offset + 2] = v.z;
+	}
+
+	private static float mixFriction(ContactProperties A, ContactProperties B) {
+		return 0.5f * (A.getFriction() + B.getFriction());
+	}
+
+	private static float mixElasticity(ContactProperties A, ContactProperties B) {
+		return 0.5f * (A.getElasticity() + B.getElasticity());
+	}
+
+}
@@ -25,6 +25,21 @@ public class ParallelImpulseSolver implements ConstraintSolver {
 
 	private final PhysicsWorkerPool workers;
 
+	/**
+	 * Les lignes des contraintes, construites lors de la première itération de
+	 * vitesse. Seul le premier thread du groupe résout les contraintes : il est
+	 * le seul à accéder à ces lignes et à {@link #positionConstraints}, les
+	 * tâches étant exécutées après le retour de
+	 * {@link #solve(List, List, List, float, int, int)}.
+	 */
+	private final ConstraintRows rows = new ConstraintRows();
+
+	/**
+	 * Les contraintes pour lesquelles {@link AbstractConstraint#hasPositionCorrection()}
+	 * est vrai, les autres ne participent pas à la correction de position.
+	 */
+	private final List<AbstractConstraint> positionConstraints = new ArrayList<AbstractConstraint>();
+
 	public ParallelImpulseSolver(PhysicsWorkerPool workers) {
 		this.workers = workers;
 	}
@@ -34,16 +49,26 @@ public class ParallelImpulseSolver implements ConstraintSolver {
 			List<AbstractDoubleBodyContact> activeBodyContacts, List<AbstractConstraint> constraints, float timeStep,
 			int MAX_ITERATIONS_POSITION, int MAX_ITERATIONS_VELOCITY) {
 
+		// all the threads must wait for the group the same number of times.
+		boolean positionCorrection = !activeMeshContacts.isEmpty() || !activeBodyContacts.isEmpty();
+		for (int i = 0; i < constraints.size() && !positionCorrection; i++) {
+			positionCorrection = constraints.get(i).hasPositionCorrection();
+		}
+		final int positionIterations = positionCorrection ? MAX_ITERATIONS_POSITION : 0;
+
 		List<PhysicsWork> tasks = new ArrayList<>();
 		for (int i = 0; i < workers.getThreadCount(); i++) {
 			final List<AbstractSingleBodyContact> meshes = workers.buildSubList(activeMeshContacts, i);
 			final List<AbstractDoubleBodyContact> bodies = workers.buildSubList(activeBodyContacts, i);
 			final List<AbstractConstraint> constraintsSubList;
+			final List<AbstractConstraint> positionSubList;
 
 			if (i == 0) {
 				constraintsSubList = constraints;
+				positionSubList = positionConstraints;
 			} else {
 				constraintsSubList = Collections.emptyList();
+				positionSubList = Collections.emptyList();
 			}
 
 			tasks.add(new PhysicsWork() {
@@ -57,11 +82,22 @@ public class ParallelImpulseSolver implements ConstraintSolver {
 						worker.waitForGroup();
 					}
 
-					for (int iteration = 0; iteration < MAX_ITERATIONS_POSITION; iteration++) {
-						solvePosition(meshes, bodies, constraintsSubList, timeStep, iteration == 0);
+					for (AbstractConstraint constraint : constraintsSubList) {
+						if (constraint.hasPositionCorrection()) {
+							positionSubList.add(constraint);
+						}
+					}
+
+					for (int iteration = 0; iteration < positionIterations; iteration++) {
+						solvePosition(meshes, bodies, positionSubList, timeStep, iteration == 0);
 						worker.waitForGroup();
 					}
 
+					if (!constraintsSubList.isEmpty()) {
+						positionSubList.clear();
+						rows.clear();
+					}
+
 					if (DEBUG)
 						System.err.println(" ID: " + worker.getThreadIndex() + " DoubleBodies: "
 								+ activeBodyContacts.size() + " SingleBodies: " + activeMeshContacts.size()
@@ -72,7 +108,7 @@ public class ParallelImpulseSolver implements ConstraintSolver {
 
 		}
 
-		workers.scheduleWork(tasks, "solve constraints", MAX_ITERATIONS_VELOCITY + MAX_ITERATIONS_POSITION);
+		workers.scheduleWork(tasks, "solve constraints", MAX_ITERATIONS_VELOCITY + positionIterations);
 	}
 
 	/**
@@ -110,6 +146,7 @@ public class ParallelImpulseSolver implements ConstraintSolver {
 
 			for (AbstractConstraint constraint : constraints) {
 				constraint.solveVelocity(true, timeStep, temp);
+				constraint.cacheRows(rows);
 			}
 
 			for (AbstractSingleBodyContact contact : activeMeshContacts) {
@@ -164,6 +164,11 @@ public class PinRotationConstraint extends AngularConstraint {
 		return true;
 	}
 
+	@Override
+	protected boolean isRowCacheable() {
+		return true;
+	}
+
 	/**
 	 * Calcule la "diff�rence" d'orientation entre le solide A et le solide B.
 	 * 
@@ -1,6 +1,7 @@
 package cataclysm.constraints;
 
 import cataclysm.constraints.LinearMotorConstraint.MotionMode;
+import cataclysm.datastructures.StateBuffer;
 import math.vector.Vector3f;
 
 /**
@@ -65,6 +66,23 @@ public class PistonConstraint extends CompoundConstraint {
 		return true;
 	}
 
+	@Override
+	boolean cacheRows(ConstraintRows rows) {
+		return motor.cacheRows(rows) & line.cacheRows(rows);
+	}
+
+	@Override
+	public void writeState(StateBuffer dest) {
+		motor.writeState(dest);
+		line.writeState(dest);
+	}
+
+	@Override
+	public void readState(StateBuffer src) {
+		motor.readState(src);
+		line.readState(src);
+	}
+
 	public LinearMotorConstraint getMotor() {
 		return motor;
 	}
@@ -107,6 +107,11 @@ public class PlaneConstraint extends LinearConstraint {
 		return true;
 	}
 
+	@Override
+	protected boolean isRowCacheable() {
+		return true;
+	}
+
 	/**
 	 * Calcule le projet� orthogonal de point sur le plan d�fini par base et normal.
 	 * Le r�sultat est stock� dans dest.
@@ -1,10 +1,13 @@
 package cataclysm.constraints;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import cataclysm.Epsilons;
 import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
 import math.vector.Vector3f;
 
 /**
@@ -18,8 +21,40 @@ public class SequentialImpulseSolver implements ConstraintSolver{
 
 	private final Vector3f temp = new Vector3f();
 
+	/**
+	 * Les lignes des contraintes, construites lors de la première itération de
+	 * vitesse.
+	 */
+	private final ConstraintRows rows = new ConstraintRows();
+
+	/**
+	 * Les contraintes pour lesquelles {@link AbstractConstraint#hasPositionCorrection()}
+	 * est vrai, les autres ne participent pas à la correction de position.
+	 */
+	private final List<AbstractConstraint> positionConstraints = new ArrayList<AbstractConstraint>();
+
+	/**
+	 * Résout directement les chaînes de contraintes, null si toutes les
+	 * contraintes sont résolues itérativement.
+	 */
+	private final DirectChainSolver chains;
+
+	/**
+	 * Mesure la durée des itérations, désactivé tant que le moteur n'a pas fourni
+	 * le sien.
+	 */
+	private Profiler profiler = new Profiler(1);
+
 	public SequentialImpulseSolver() {
+		this(false);
+	}
 
+	/**
+	 * @param directChains true si les groupes de contraintes formant un arbre
+	 *                     doivent être résolus par un {@link DirectChainSolver}.
+	 */
+	public SequentialImpulseSolver(boolean directChains) {
+		this.chains = directChains ? new DirectChainSolver() : null;
 	}
 
 	@Override
@@ -28,15 +63,38 @@ public class SequentialImpulseSolver implements ConstraintSolver{
 			int MAX_ITERATIONS_POSITION, int MAX_ITERATIONS_VELOCITY) {
 		// the velocity must be solved first, since the position correction needs data
 		// computed during the velocity step.
+		long start = profiler.start();
 		for (int i = 0; i < MAX_ITERATIONS_VELOCITY; i++) {
 			// System.out.println("Iteration " + i);
 			solveVelocity(activeMeshContacts, activeBodyContacts, constraints, timeStep, i);
 		}
+		profiler.stop(Phase.SOLVER_VELOCITY, start);
+		start = profiler.start();
 
-		for (int i = 0; i < MAX_ITERATIONS_POSITION; i++) {
-			solvePosition(activeMeshContacts, activeBodyContacts, constraints, timeStep, i == 0);
+		for (AbstractConstraint constraint : constraints) {
+			if (constraint.hasPositionCorrection()) {
+				positionConstraints.add(constraint);
+			}
+		}
+
+		if (!activeMeshContacts.isEmpty() || !activeBodyContacts.isEmpty() || !positionConstraints.isEmpty()) {
+			for (int i = 0; i < MAX_ITERATIONS_POSITION; i++) {
+				solvePosition(activeMeshContacts, activeBodyContacts, positionConstraints, timeStep, i == 0);
+			}
 		}
 
+		positionConstraints.clear();
+		if (chains != null) {
+			chains.clear();
+		}
+		rows.clear();
+		profiler.stop(Phase.SOLVER_POSITION, start);
+
+	}
+
+	@Override
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
 	}
 
 	/**
@@ -69,8 +127,14 @@ public class SequentialImpulseSolver implements ConstraintSolver{
 					contact.solveVelocity();
 				}
 
-				for (AbstractConstraint constraint : constraints) {
-					constraint.solveVelocity(true, timeStep, temp);
+				rows.clear();
+				if (chains != null) {
+					chains.prepare(constraints, rows, timeStep, temp);
+				} else {
+					for (AbstractConstraint constraint : constraints) {
+						constraint.solveVelocity(true, timeStep, temp);
+						constraint.cacheRows(rows);
+					}
 				}
 
 				for (AbstractSingleBodyContact contact : activeMeshContacts) {
@@ -87,8 +151,15 @@ public class SequentialImpulseSolver implements ConstraintSolver{
 				contact.solveVelocity();
 			}
 
-			for (AbstractConstraint constraint : constraints) {
-				constraint.solveVelocity(false, timeStep, temp);
+			if (chains != null) {
+				for (AbstractConstraint constraint : chains.getIterativeConstraints()) {
+					constraint.solveVelocity(false, timeStep, temp);
+				}
+				chains.solve();
+			} else {
+				for (AbstractConstraint constraint : constraints) {
+					constraint.solveVelocity(false, timeStep, temp);
+				}
 			}
 
 			for (AbstractSingleBodyContact contact : activeMeshContacts) {
@@ -1,6 +1,7 @@
 package cataclysm.constraints;
 
 import cataclysm.Epsilons;
+import cataclysm.datastructures.StateBuffer;
 import math.Clamp;
 import math.vector.Vector3f;
 
@@ -111,6 +112,14 @@ public abstract class SimpleConstraint extends AbstractConstraint {
 	private float inv_mass;
 	private float velocity_error;
 
+	/**
+	 * Le cache dans lequel la ligne de la contrainte a été copiée, et l'indice de
+	 * cette ligne. -1 si la contrainte n'est pas dans le cache pour ce pas de
+	 * temps.
+	 */
+	private ConstraintRows rows;
+	private int row = -1;
+
 	public SimpleConstraint(AnchorPoint pointA, AnchorPoint pointB) {
 		super(pointA, pointB);
 	}
@@ -119,8 +128,12 @@ public abstract class SimpleConstraint extends AbstractConstraint {
 	protected void solveVelocity(boolean firstIteration, float timeStep, Vector3f temp) {
 		if (firstIteration) {
 			impulse = 0;
+			row = -1;
 			velocity_error = buildVelocityJacobian(N, Ra, Rb, RaxN, RbxN, temp);
 			inv_mass = computeVelocityInvMass(N, Ra, Rb, RaxN, RbxN, temp);
+		} else if (row != -1) {
+			impulse = rows.solve(row, impulse, getLowerForceLimit(), getUpperForceLimit());
+			return;
 		} else {
 			//the velocity may have changed due to other constraints, we need to recompute it.
 			velocity_error = computeVelocityError(N, RaxN, RbxN, temp);
@@ -160,6 +173,60 @@ public abstract class SimpleConstraint extends AbstractConstraint {
 		applyPseudoImpulse(N, RaxN, RbxN, temp, applied_impulse);
 	}
 
+	@Override
+	boolean cacheRows(ConstraintRows rows) {
+		if (!isRowCacheable()) {
+			return false;
+		}
+		this.rows = rows;
+		this.row = storeRow(rows, N, RaxN, RbxN, inv_mass);
+		return row != -1 && getLowerForceLimit() == Float.NEGATIVE_INFINITY
+				&& getUpperForceLimit() == Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Ajoute une impulsion calculée en dehors de la contrainte, par exemple par
+	 * {@link DirectChainSolver}.
+	 * 
+	 * @param applied_impulse
+	 */
+	void accumulateImpulse(float applied_impulse) {
+		impulse += applied_impulse;
+	}
+
+	@Override
+	public void writeState(StateBuffer dest) {
+		dest.putFloat(impulse);
+	}
+
+	@Override
+	public void readState(StateBuffer src) {
+		impulse = src.getFloat();
+	}
+
+	/**
+	 * Indique si la ligne de la contrainte peut être résolue depuis
+	 * {@link ConstraintRows}. C'est le cas lorsque l'erreur de vitesse est
+	 * exactement J * V, et que ni
+	 * {@link #computeVelocityError(Vector3f, Vector3f, Vector3f, Vector3f)} ni
+	 * {@link #computeVelocityImpulse(float, float, float)} n'ont d'effet de bord ou
+	 * de terme supplémentaire (comme la vitesse cible d'un moteur).
+	 * 
+	 * @return false par défaut.
+	 */
+	protected boolean isRowCacheable() {
+		return false;
+	}
+
+	/**
+	 * Ajoute la ligne de la matrice jacobienne dans le cache.
+	 * 
+	 * @return L'indice de la ligne, -1 si elle n'a pas été ajoutée.
+	 */
+	int storeRow(ConstraintRows rows, Vector3f N, Vector3f RaxN, Vector3f RbxN, float inv_mass) {
+		return -1;
+	}
+
 	/**
 	 * Calcule la i-�me ligne de la matrice jacobienne de la contrainte. Puisqu'il
 	 * est trop co�teux de calculer l'ensemble de la matrice et de l'inverser, on ne
@@ -1,5 +1,6 @@
 package cataclysm.constraints;
 
+import cataclysm.datastructures.StateBuffer;
 import math.vector.Vector3f;
 
 /**
@@ -44,4 +45,21 @@ public class WeldConstraint extends CompoundConstraint {
 		return true;
 	}
 
+	@Override
+	boolean cacheRows(ConstraintRows rows) {
+		return pinLocation.cacheRows(rows) & pinRotation.cacheRows(rows);
+	}
+
+	@Override
+	public void writeState(StateBuffer dest) {
+		pinLocation.writeState(dest);
+		pinRotation.writeState(dest);
+	}
+
+	@Override
+	public void readState(StateBuffer src) {
+		pinLocation.readState(src);
+		pinRotation.readState(src);
+	}
+
 }
@@ -1,5 +1,6 @@
 package cataclysm.constraints;
 
+import cataclysm.datastructures.StateBuffer;
 import math.MatrixOps;
 import math.vector.Matrix3f;
 import math.vector.Vector3f;
@@ -46,6 +47,27 @@ public class WheelConstraint extends CompoundConstraint {
 		return true;
 	}
 
+	@Override
+	boolean cacheRows(ConstraintRows rows) {
+		return line.cacheRows(rows) & spring.cacheRows(rows) & axis.cacheRows(rows) & motor.cacheRows(rows);
+	}
+
+	@Override
+	public void writeState(StateBuffer dest) {
+		line.writeState(dest);
+		spring.writeState(dest);
+		axis.writeState(dest);
+		motor.writeState(dest);
+	}
+
+	@Override
+	public void readState(StateBuffer src) {
+		line.readState(src);
+		spring.readState(src);
+		axis.readState(src);
+		motor.readState(src);
+	}
+
 	public LineConstraint getLine() {
 		return line;
 	}
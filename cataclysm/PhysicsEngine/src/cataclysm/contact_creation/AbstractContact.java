@@ -1,5 +1,7 @@
 package cataclysm.contact_creation;
 
+import cataclysm.annotations.Internal;
+import cataclysm.datastructures.StateBuffer;
 import math.vector.Matrix3f;
 import math.vector.Vector3f;
 
@@ -17,6 +19,12 @@ public abstract class AbstractContact {
 	protected float friction = 0;
 	protected float elasticity = 0;
 
+	/**
+	 * The index of the contact in the list of its first wrapper, only valid while
+	 * a snapshot is being written.
+	 */
+	private int stateIndex = -1;
+
 	public AbstractContact(int maxContacts) {
 		area = new ContactZone(maxContacts);
 	}
@@ -39,6 +47,34 @@ public abstract class AbstractContact {
 
 	public abstract void resetImpulses();
 
+	/**
+	 * @return The sum of the normal impulses applied at the contact points during
+	 *         the last solve.
+	 */
+	public abstract float getNormalImpulse();
+
+	/**
+	 * Copies the accumulated impulses of a contact point, along the normal, the
+	 * tangent and the bitangent. Used by the solvers which don't work directly on
+	 * the contact to warm start their own rows.
+	 * 
+	 * @param i      The index of the contact point
+	 * @param dest   Receives the three impulses
+	 * @param offset The index of the normal impulse in dest
+	 */
+	public abstract void getImpulses(int i, float[] dest, int offset);
+
+	/**
+	 * Sets the accumulated impulses of a contact point. Used by the solvers which
+	 * don't work directly on the contact to report their result.
+	 * 
+	 * @param i         The index of the contact point
+	 * @param normal
+	 * @param tangent
+	 * @param bitangent
+	 */
+	public abstract void setImpulses(int i, float normal, float tangent, float bitangent);
+
 	public abstract void solveVelocity();
 
 	public abstract void positionStart(float timeStep);
@@ -49,6 +85,35 @@ public abstract class AbstractContact {
 		return area;
 	}
 
+	/**
+	 * Writes the part of the state of the contact which is carried from one frame
+	 * to the next: the contact zone and the impulses accumulated to warm start the
+	 * solver.
+	 * 
+	 * @param dest
+	 */
+	@Internal
+	public void writeState(StateBuffer dest) {
+		area.writeState(dest);
+		writeImpulses(dest);
+	}
+
+	/**
+	 * Reads back a state written by {@link #writeState(StateBuffer)}, by a contact
+	 * with the same maximum number of contact points.
+	 * 
+	 * @param src
+	 */
+	@Internal
+	public void readState(StateBuffer src) {
+		area.readState(src);
+		readImpulses(src);
+	}
+
+	protected abstract void writeImpulses(StateBuffer dest);
+
+	protected abstract void readImpulses(StateBuffer src);
+
 	protected Vector3f[] initArray(int length) {
 		Vector3f[] array = new Vector3f[length];
 		for (int i = 0; i < array.length; i++) {
@@ -69,4 +134,14 @@ public abstract class AbstractContact {
 		return area.getMaxContacts();
 	}
 
+	@Internal
+	public int getStateIndex() {
+		return stateIndex;
+	}
+
+	@Internal
+	public void setStateIndex(int stateIndex) {
+		this.stateIndex = stateIndex;
+	}
+
 }
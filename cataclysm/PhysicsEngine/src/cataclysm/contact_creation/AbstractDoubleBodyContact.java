@@ -1,16 +1,12 @@
 package cataclysm.contact_creation;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.wrappers.Wrapper;
 
 public abstract class AbstractDoubleBodyContact extends AbstractContact {
 
 	protected Wrapper wrapperA;
 	protected Wrapper wrapperB;
-	
-	protected List<Wrapper> previousOwners = new ArrayList<>();
 
 	/**
 	 * Permet de déterminer si les deux wrappers ont été mis à jour avant de mettre
@@ -52,11 +48,10 @@ public abstract class AbstractDoubleBodyContact extends AbstractContact {
 	 * @param wrapperB
 	 */
 	public void refresh(Wrapper wrapperA, Wrapper wrapperB) {
-		previousOwners.add(this.wrapperA);
-		previousOwners.add(this.wrapperB);
-		
 		this.wrapperA = wrapperA;
 		this.wrapperB = wrapperB;
+		// a contact taken from the pool must not depend on its previous pair
+		this.updateFlag = false;
 		if (super.getContactArea() != null) {// we have to check in case this is a ContactProxy
 			super.getContactArea().resetState();
 			resetImpulses();
@@ -77,6 +72,18 @@ public abstract class AbstractDoubleBodyContact extends AbstractContact {
 		return prev;
 	}
 
+	@Override
+	public void writeState(StateBuffer dest) {
+		super.writeState(dest);
+		dest.putBoolean(updateFlag);
+	}
+
+	@Override
+	public void readState(StateBuffer src) {
+		super.readState(src);
+		updateFlag = src.getBoolean();
+	}
+
 	public void wakeUp() {
 		this.wrapperA.getBody().setSleeping(false);
 		this.wrapperA.getBody().setSleepCounter(0);
@@ -1,16 +1,28 @@
 package cataclysm.contact_creation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import cataclysm.CataclysmCallbacks;
+import cataclysm.Epsilons;
+import cataclysm.broadphase.staticmeshes.StaticMesh;
+import cataclysm.broadphase.staticmeshes.Triangle;
 import cataclysm.wrappers.CapsuleWrapper;
 import cataclysm.wrappers.ConvexHullWrapper;
 import cataclysm.wrappers.SphereWrapper;
 import cataclysm.wrappers.TriangleAsHull;
 import cataclysm.wrappers.Wrapper;
+import math.vector.Vector3f;
 
 /**
  * Permet de tester la collision entre un wrapper et un ensemble de triangles.
+ * <br>
+ * Les contacts obtenus sur les arêtes internes du maillage, qui feraient
+ * trébucher un objet glissant sur une surface plane, sont ramenés sur la normale
+ * du triangle. Les contacts d'un même wrapper dont les normales sont proches
+ * sont ensuite fusionnés en une seule surface de contact de 4 points au
+ * maximum.
  * 
  * @author Briac
  *
@@ -25,6 +37,39 @@ class CollideWrapperTriangle {
 	private final CollideSphereHull collideSphereHull = new CollideSphereHull();
 	private final CollideCapsuleHull collideCapsuleHull = new CollideCapsuleHull();
 	private final CollideHulls collideHulls = new CollideHulls();
+	private final ReduceManifold reduceManifold = new ReduceManifold();
+
+	/**
+	 * Les contacts actifs du wrapper en cours de traitement.
+	 */
+	private final List<AbstractSingleBodyContact> colliding = new ArrayList<AbstractSingleBodyContact>();
+
+	/**
+	 * L'index du premier contact du groupe auquel appartient chaque contact actif.
+	 */
+	private int[] groups = new int[16];
+
+	/**
+	 * Les points de contact d'un groupe de contacts à fusionner, ainsi que leurs
+	 * profondeurs de pénétration, échangées en même temps que les points.
+	 */
+	private final List<Vector3f> points = new ArrayList<Vector3f>();
+	private final List<Vector3f> pointPool = new ArrayList<Vector3f>();
+	private float[] depths = new float[16];
+
+	private final Vector3f normal = new Vector3f();
+	private final Vector3f otherNormal = new Vector3f();
+	private final Vector3f faceNormal = new Vector3f();
+	private final Vector3f point = new Vector3f();
+	private final Vector3f a = new Vector3f();
+	private final Vector3f b = new Vector3f();
+	private final Vector3f edge = new Vector3f();
+	private final Vector3f temp = new Vector3f();
+
+	/**
+	 * La vue remplie avec le voisin du triangle d'un contact.
+	 */
+	private final Triangle adjacentTriangle = new Triangle();
 
 	/**
 	 * Teste la collision entre une enveloppe convexe et un ensemble de triangles.
@@ -39,12 +84,22 @@ class CollideWrapperTriangle {
 
 		updateContacts(wrapper);
 
-		List<AbstractSingleBodyContact> contacts = wrapper.getMeshContacts();
-		// contacts.sort(Comparator.comparingDouble((c) ->
-		// c.area.getPenetrationDepth()));
+		for (AbstractSingleBodyContact contact : wrapper.getMeshContacts()) {
+			if (!contact.area.isCollisionOccuring()) {
+				contact.resetImpulses();
+				continue;
+			}
+			filterInternalEdge(contact);
+			colliding.add(contact);
+		}
+
+		if (colliding.size() > 1) {
+			mergeContacts();
+		}
 
-		for (AbstractSingleBodyContact contact : contacts) {
+		for (AbstractSingleBodyContact contact : colliding) {
 			if (!contact.area.isCollisionOccuring()) {
+				// merged into another contact
 				contact.resetImpulses();
 				continue;
 			}
@@ -55,7 +110,274 @@ class CollideWrapperTriangle {
 
 			meshContacts.add(contact);
 		}
+		colliding.clear();
+
+	}
+
+	/**
+	 * Remplace la normale d'un contact avec une arête ou un sommet du triangle par
+	 * la normale du triangle, lorsque ce contact ne peut pas exister sur la surface
+	 * formée par le triangle et ses voisins. C'est le cas des arêtes internes d'un
+	 * sol plat ou concave, sur lesquelles un objet glissant rebondirait sinon.
+	 * 
+	 * @param contact
+	 */
+	private void filterInternalEdge(AbstractSingleBodyContact contact) {
+		ContactZone area = contact.area;
+		Triangle triangle = contact.getTriangle();
+
+		// The area normal points from the wrapper towards the triangle.
+		area.getNormal(normal);
+		normal.negate();
+		triangle.getNormal(faceNormal);
+		if (Vector3f.dot(normal, faceNormal) >= Epsilons.PARALLEL_LIMIT) {
+			return;
+		}
+
+		int deepest = 0;
+		for (int i = 1; i < area.getContactCount(); i++) {
+			if (area.getPenetrationDepth(i) < area.getPenetrationDepth(deepest)) {
+				deepest = i;
+			}
+		}
+		area.getContactPoint(deepest, point);
+		float tolerance = Math.max(Epsilons.ALLOWED_PENETRATION, -area.getPenetrationDepth(deepest));
+
+		boolean onEdge = false;
+		for (int e = 0; e < 3; e++) {
+			getVertex(triangle, e, a);
+			getVertex(triangle, (e + 1) % 3, b);
+			Vector3f.sub(b, a, edge);
+			Vector3f.cross(faceNormal, edge, temp);// points inside the triangle
+			Vector3f.sub(point, a, b);
+			if (Vector3f.dot(temp, b) > tolerance * edge.length()) {
+				continue;
+			}
+			onEdge = true;
+
+			Triangle adjacent = triangle.getAdjacent(e, adjacentTriangle);
+			if (adjacent == null || isInsideEdgeCone(normal, adjacent)) {
+				// boundary of the mesh or convex edge: the contact is genuine.
+				return;
+			}
+		}
+
+		if (onEdge) {
+			faceNormal.negate();
+			area.rewrite(faceNormal, area.getPenetrationDepth(), area.getContactCount());
+		}
+	}
+
+	/**
+	 * @param surfaceNormal La normale du contact, pointant vers le wrapper.
+	 * @param adjacent      Le triangle voisin, partageant l'arête dont le sommet a
+	 *                      est dans {@link #a}.
+	 * @return true si l'arête est convexe et que la normale est comprise entre
+	 *         celles des deux triangles.
+	 */
+	private boolean isInsideEdgeCone(Vector3f surfaceNormal, Triangle adjacent) {
+		adjacent.getNormal(otherNormal);
+		Vector3f.cross(faceNormal, otherNormal, edge);
+		float length = edge.length();
+		if (length < Epsilons.ORTHOGONAL_LIMIT) {
+			// flat edge
+			return false;
+		}
+
+		// The edge is convex if the neighbour lies below the plane of the triangle.
+		adjacent.getV0(b);
+		b.translate(adjacent.getV1(temp));
+		b.translate(adjacent.getV2(temp));
+		b.scale(1.0f / 3.0f);
+		Vector3f.sub(b, a, b);
+		if (Vector3f.dot(faceNormal, b) >= 0) {
+			return false;
+		}
 
+		float slack = -Epsilons.ORTHOGONAL_LIMIT * length;
+		Vector3f.cross(faceNormal, surfaceNormal, temp);
+		if (Vector3f.dot(temp, edge) < slack) {
+			return false;
+		}
+		Vector3f.cross(surfaceNormal, otherNormal, temp);
+		return Vector3f.dot(temp, edge) >= slack;
+	}
+
+	/**
+	 * Fusionne les contacts actifs dont les normales sont proches. Chaque groupe
+	 * est réduit à une seule surface de contact, celle du contact qui était déjà
+	 * actif à la frame précédente si possible, afin de conserver les impulsions
+	 * accumulées. Les autres contacts du groupe sont désactivés. Seuls les
+	 * contacts avec un même maillage sont fusionnés, le contact restant gardant
+	 * les propriétés (friction, élasticité) de son maillage.
+	 */
+	private void mergeContacts() {
+		int count = colliding.size();
+		if (groups.length < count) {
+			groups = new int[2 * count];
+		}
+		Arrays.fill(groups, 0, count, -1);
+
+		for (int i = 0; i < count; i++) {
+			if (groups[i] != -1) {
+				continue;
+			}
+			ContactZone seed = colliding.get(i).area;
+			seed.getNormal(normal);
+			StaticMesh mesh = colliding.get(i).getTriangle().getMesh();
+
+			int reference = i;
+			int members = 0;
+			for (int j = i; j < count; j++) {
+				if (groups[j] != -1 || colliding.get(j).getTriangle().getMesh() != mesh) {
+					continue;
+				}
+				ContactZone area = colliding.get(j).area;
+				area.getNormal(otherNormal);
+				if (Vector3f.dot(normal, otherNormal) < Epsilons.MESH_CONTACT_MERGE_LIMIT) {
+					continue;
+				}
+				groups[j] = i;
+				members++;
+
+				ContactZone best = colliding.get(reference).area;
+				if (!best.wasCollisionOccuring() && (area.wasCollisionOccuring()
+						|| area.getPenetrationDepth() < best.getPenetrationDepth())) {
+					reference = j;
+				}
+			}
+
+			if (members > 1) {
+				mergeGroup(i, reference);
+			}
+		}
+	}
+
+	/**
+	 * Réduit les points de contact d'un groupe dans la surface de contact de
+	 * référence.
+	 * 
+	 * @param first     L'index du premier contact du groupe.
+	 * @param reference L'index du contact qui recevra les points.
+	 */
+	private void mergeGroup(int first, int reference) {
+		ContactZone target = colliding.get(reference).area;
+		target.getNormal(normal);
+
+		points.clear();
+		int deepest = 0;
+		float penetration = Float.POSITIVE_INFINITY;
+		for (int j = first; j < colliding.size(); j++) {
+			if (groups[j] != first) {
+				continue;
+			}
+			ContactZone area = colliding.get(j).area;
+			area.getNormal(otherNormal);
+			for (int k = 0; k < area.getContactCount(); k++) {
+				int index = points.size();
+				if (pointPool.size() == index) {
+					pointPool.add(new Vector3f());
+				}
+				if (depths.length == index) {
+					depths = Arrays.copyOf(depths, 2 * index);
+				}
+				Vector3f p = pointPool.get(index);
+				area.getContactPoint(k, p);
+				points.add(p);
+
+				float depth = area.getPenetrationDepth(k);
+				depths[index] = depth;
+				if (depth < depths[deepest]) {
+					deepest = index;
+				}
+			}
+			penetration = Math.min(penetration, area.getPenetrationDepth());
+			if (j != reference) {
+				area.rewrite(otherNormal, area.getPenetrationDepth(), 0);
+			}
+		}
+
+		// The deepest point is always kept by the reduction.
+		swapPoints(0, deepest);
+
+		// The reductions only copy the positions, the depths are taken from the
+		// points they have kept.
+		int contactCount;
+		if (target.getMaxContacts() < Epsilons.MAX_CONTACTS) {
+			contactCount = keepFarthestPoints(target);
+			for (int k = 0; k < contactCount; k++) {
+				setDepth(target, k, depths[k]);
+			}
+		} else {
+			contactCount = reduceManifold.reduceManifold(points, normal, target);
+			for (int k = 0; k < contactCount; k++) {
+				setDepth(target, k, depths[reduceManifold.getSelectedIndex(k)]);
+			}
+		}
+		target.rewrite(normal, penetration, contactCount);
+		points.clear();
+	}
+
+	/**
+	 * Réduction pour les wrappers n'acceptant que 1 ou 2 points de contact
+	 * (sphères et capsules). Le point le plus profond est conservé, puis les points
+	 * les plus éloignés de ceux déjà choisis.
+	 * 
+	 * @param target
+	 * @return le nombre de points de contact.
+	 */
+	private int keepFarthestPoints(ContactZone target) {
+		int contactCount = Math.min(points.size(), target.getMaxContacts());
+		for (int k = 0; k < contactCount; k++) {
+			if (k > 0) {
+				int farthest = k;
+				float max = -1;
+				for (int index = k; index < points.size(); index++) {
+					float min = Float.POSITIVE_INFINITY;
+					for (int chosen = 0; chosen < k; chosen++) {
+						Vector3f.sub(points.get(index), points.get(chosen), temp);
+						min = Math.min(min, temp.lengthSquared());
+					}
+					if (min > max) {
+						max = min;
+						farthest = index;
+					}
+				}
+				swapPoints(k, farthest);
+			}
+			target.setContactPoint(k, points.get(k));
+		}
+		return contactCount;
+	}
+
+	private void swapPoints(int i, int j) {
+		Vector3f p = points.get(i);
+		points.set(i, points.get(j));
+		points.set(j, p);
+		float depth = depths[i];
+		depths[i] = depths[j];
+		depths[j] = depth;
+	}
+
+	private void setDepth(ContactZone target, int k, float depth) {
+		target.setContactPointAndPenetrationDepth(k, target.getContactPointX(k), target.getContactPointY(k),
+				target.getContactPointZ(k), depth);
+	}
+
+	private static void getVertex(Triangle triangle, int vertex, Vector3f dest) {
+		switch (vertex) {
+		case 0:
+			triangle.getV0(dest);
+			break;
+		case 1:
+			triangle.getV1(dest);
+			break;
+		case 2:
+			triangle.getV2(dest);
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
 	}
 
 	/**
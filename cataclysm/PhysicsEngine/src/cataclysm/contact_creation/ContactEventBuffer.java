@@ -0,0 +1,433 @@
+package cataclysm.contact_creation;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cataclysm.PhysicsWorld;
+import cataclysm.annotations.Internal;
+import cataclysm.datastructures.LongIntHashMap;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.Wrapper;
+import math.vector.Vector3f;
+
+/**
+ * The contact events of the frames simulated by the last call to
+ * {@link PhysicsWorld#update(int)}. A pair of objects produces a
+ * {@link #BEGIN} event at the first frame it touches, a {@link #PERSIST}
+ * event at each of the following frames and an {@link #END} event at the
+ * first frame it doesn't touch anymore. A pair is either two wrappers or a
+ * wrapper and a static mesh, all the contacts between a wrapper and the
+ * triangles of a mesh being merged in a single event. <br>
+ * <br>
+ * The events are recorded after the solver, once per frame, and are stored in
+ * flat arrays. Only the subscribed event types are stored, no work is done if
+ * none is subscribed. The contacts of sleeping bodies aren't updated by the
+ * engine, they persist silently until the bodies wake up.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class ContactEventBuffer {
+
+	public static final int BEGIN = 1;
+	public static final int PERSIST = 2;
+	public static final int END = 4;
+
+	private final PhysicsWorld world;
+
+	private int subscribedTypes = 0;
+	private int categoryMask = 0xFFFFFFFF;
+
+	/**
+	 * The events, see the getters for the meaning of each array.
+	 */
+	private int eventCount = 0;
+	private byte[] type = new byte[16];
+	private long[] idA = new long[16];
+	private long[] idB = new long[16];
+	private long[] bodyA = new long[16];
+	private long[] bodyB = new long[16];
+	private float[] pointX = new float[16];
+	private float[] pointY = new float[16];
+	private float[] pointZ = new float[16];
+	private float[] normalX = new float[16];
+	private float[] normalY = new float[16];
+	private float[] normalZ = new float[16];
+	private float[] impulse = new float[16];
+
+	/**
+	 * The pairs touching at the current and previous frames.
+	 */
+	private PairSet current = new PairSet();
+	private PairSet previous = new PairSet();
+
+	private final Vector3f temp = new Vector3f();
+
+	/**
+	 * The pairs of objects in contact during a frame. The point, normal and
+	 * impulse of a pair are kept to report its end event. The pairs sharing a key
+	 * are chained, the map gives the last one added. <br>
+	 * The ids of the wrappers and of the static meshes are generated separately
+	 * and overlap, a pair with a static mesh is recognized by its null bodyB.
+	 */
+	private static final class PairSet {
+		final LongIntHashMap index = new LongIntHashMap();
+		int count = 0;
+		int[] next = new int[16];
+		long[] idA = new long[16];
+		long[] idB = new long[16];
+		RigidBody[] bodyA = new RigidBody[16];
+		RigidBody[] bodyB = new RigidBody[16];
+		int[] category = new int[16];
+		int[] pointCount = new int[16];
+		float[] point = new float[3 * 16];
+		float[] normal = new float[3 * 16];
+		float[] impulse = new float[16];
+		boolean[] matched = new boolean[16];
+
+		int add(long idA, long idB, RigidBody bodyA, RigidBody bodyB) {
+			if (count == this.idA.length) {
+				int capacity = 2 * count;
+				this.idA = Arrays.copyOf(this.idA, capacity);
+				this.idB = Arrays.copyOf(this.idB, capacity);
+				this.bodyA = Arrays.copyOf(this.bodyA, capacity);
+				this.bodyB = Arrays.copyOf(this.bodyB, capacity);
+				category = Arrays.copyOf(category, capacity);
+				pointCount = Arrays.copyOf(pointCount, capacity);
+				point = Arrays.copyOf(point, 3 * capacity);
+				normal = Arrays.copyOf(normal, 3 * capacity);
+				impulse = Arrays.copyOf(impulse, capacity);
+				matched = Arrays.copyOf(matched, capacity);
+				next = Arrays.copyOf(next, capacity);
+			}
+			int i = count++;
+			this.idA[i] = idA;
+			this.idB[i] = idB;
+			this.bodyA[i] = bodyA;
+			this.bodyB[i] = bodyB;
+			category[i] = bodyA.getCategory() | (bodyB != null ? bodyB.getCategory() : 0);
+			pointCount[i] = 0;
+			point[3 * i] = point[3 * i + 1] = point[3 * i + 2] = 0;
+			impulse[i] = 0;
+			matched[i] = false;
+			long key = key(idA, idB, bodyB == null);
+			next[i] = index.get(key, -1);
+			index.put(key, i);
+			return i;
+		}
+
+		/**
+		 * @return The index of the pair, or -1.
+		 */
+		int find(long idA, long idB, boolean mesh) {
+			int i = index.get(key(idA, idB, mesh), -1);
+			while (i >= 0 && (this.idA[i] != idA || this.idB[i] != idB || (bodyB[i] == null) != mesh)) {
+				i = next[i];
+			}
+			return i;
+		}
+
+		void clear() {
+			Arrays.fill(bodyA, 0, count, null);
+			Arrays.fill(bodyB, 0, count, null);
+			index.clear();
+			count = 0;
+		}
+
+		/**
+		 * The key of a pair in the hash map. Two pairs may share a key, in which
+		 * case they are told apart by their ids and their kind along the chain.
+		 */
+		private static long key(long idA, long idB, boolean mesh) {
+			long h = idA * 0x9E3779B97F4A7C15L;
+			return h ^ (h >>> 31) ^ idB ^ (mesh ? Long.MIN_VALUE : 0L);
+		}
+	}
+
+	/**
+	 * @param world The world whose contacts are reported.
+	 */
+	public ContactEventBuffer(PhysicsWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Chooses the event types to store. Subscribing to {@link #END} without
+	 * {@link #BEGIN} is possible, the pairs are tracked regardless of the stored
+	 * types.
+	 *
+	 * @param types A combination of {@link #BEGIN}, {@link #PERSIST} and
+	 *              {@link #END}, or 0 to stop recording the contacts.
+	 */
+	public void subscribe(int types) {
+		if ((types & ~(BEGIN | PERSIST | END)) != 0) {
+			throw new IllegalArgumentException("Invalid event types: " + types);
+		}
+		if (types == 0) {
+			current.clear();
+			previous.clear();
+			eventCount = 0;
+		}
+		subscribedTypes = types;
+	}
+
+	/**
+	 * @return The subscribed event types.
+	 */
+	public int getSubscribedTypes() {
+		return subscribedTypes;
+	}
+
+	/**
+	 * Only stores the events of the pairs in which a body has a category
+	 * intersecting the mask, see {@link RigidBody#setCategory(int)}. The static
+	 * meshes have no category.
+	 *
+	 * @param categoryMask
+	 */
+	public void setCategoryFilter(int categoryMask) {
+		this.categoryMask = categoryMask;
+	}
+
+	public int getCategoryFilter() {
+		return categoryMask;
+	}
+
+	/**
+	 * Removes the events, called at the beginning of
+	 * {@link PhysicsWorld#update(int)}.
+	 */
+	@Internal
+	public void clear() {
+		eventCount = 0;
+	}
+
+	/**
+	 * Records the events of the frame which has just been simulated.
+	 *
+	 * @param meshContacts The contacts between bodies and static meshes which
+	 *                     have been solved.
+	 * @param bodyContacts The contacts between bodies which have been solved.
+	 */
+	@Internal
+	public void record(List<AbstractSingleBodyContact> meshContacts, List<AbstractDoubleBodyContact> bodyContacts) {
+		if (subscribedTypes == 0) {
+			return;
+		}
+
+		PairSet pairs = previous;
+		previous = current;
+		current = pairs;
+		current.clear();
+
+		for (int k = 0; k < bodyContacts.size(); k++) {
+			AbstractDoubleBodyContact contact = bodyContacts.get(k);
+			Wrapper A = contact.getWrapperA();
+			Wrapper B = contact.getWrapperB();
+			int i = current.find(A.getID(), B.getID(), false);
+			if (i < 0) {
+				i = current.add(A.getID(), B.getID(), A.getBody(), B.getBody());
+			}
+			accumulate(i, contact);
+		}
+		for (int k = 0; k < meshContacts.size(); k++) {
+			AbstractSingleBodyContact contact = meshContacts.get(k);
+			Wrapper A = contact.getWrapper();
+			long meshID = contact.getTriangle().getMesh().getID();
+			int i = current.find(A.getID(), meshID, true);
+			if (i < 0) {
+				i = current.add(A.getID(), meshID, A.getBody(), null);
+			}
+			accumulate(i, contact);
+		}
+
+		for (int i = 0; i < current.count; i++) {
+			int j = previous.find(current.idA[i], current.idB[i], current.bodyB[i] == null);
+			if (j >= 0) {
+				previous.matched[j] = true;
+				emit(PERSIST, current, i);
+			} else {
+				emit(BEGIN, current, i);
+			}
+		}
+
+		for (int j = 0; j < previous.count; j++) {
+			if (previous.matched[j]) {
+				continue;
+			}
+			if (isAsleep(previous, j)) {
+				int i = current.add(previous.idA[j], previous.idB[j], previous.bodyA[j], previous.bodyB[j]);
+				copy(previous, j, current, i);
+			} else {
+				emit(END, previous, j);
+			}
+		}
+	}
+
+	/**
+	 * Adds the contact points of a contact to a pair. The point of the pair is the
+	 * average of its contact points and its normal is the one of its last contact.
+	 */
+	private void accumulate(int i, AbstractContact contact) {
+		ContactZone area = contact.getContactArea();
+		int n = area.getContactCount();
+		float[] point = current.point;
+		for (int k = 0; k < n; k++) {
+			point[3 * i] += area.getContactPointX(k);
+			point[3 * i + 1] += area.getContactPointY(k);
+			point[3 * i + 2] += area.getContactPointZ(k);
+		}
+		current.pointCount[i] += n;
+		area.getNormal(temp);
+		current.normal[3 * i] = temp.x;
+		current.normal[3 * i + 1] = temp.y;
+		current.normal[3 * i + 2] = temp.z;
+		current.impulse[i] += contact.getNormalImpulse();
+	}
+
+	/**
+	 * A pair which was touching at the previous frame isn't updated if its bodies
+	 * are sleeping, it is kept until they wake up or are removed.
+	 */
+	private boolean isAsleep(PairSet pairs, int j) {
+		RigidBody A = pairs.bodyA[j];
+		RigidBody B = pairs.bodyB[j];
+		if (!A.isSleeping() || !world.containsBody(A.getID())) {
+			return false;
+		}
+		if (B == null) {
+			return world.containsMesh(pairs.idB[j]);
+		}
+		return (B.isSleeping() || B.isKinematic()) && world.containsBody(B.getID());
+	}
+
+	private static void copy(PairSet src, int j, PairSet dest, int i) {
+		dest.category[i] = src.category[j];
+		dest.pointCount[i] = src.pointCount[j];
+		System.arraycopy(src.point, 3 * j, dest.point, 3 * i, 3);
+		System.arraycopy(src.normal, 3 * j, dest.normal, 3 * i, 3);
+		dest.impulse[i] = src.impulse[j];
+	}
+
+	private void emit(int eventType, PairSet pairs, int i) {
+		if ((subscribedTypes & eventType) == 0 || (pairs.category[i] & categoryMask) == 0) {
+			return;
+		}
+		if (eventCount == type.length) {
+			int capacity = 2 * eventCount;
+			type = Arrays.copyOf(type, capacity);
+			idA = Arrays.copyOf(idA, capacity);
+			idB = Arrays.copyOf(idB, capacity);
+			bodyA = Arrays.copyOf(bodyA, capacity);
+			bodyB = Arrays.copyOf(bodyB, capacity);
+			pointX = Arrays.copyOf(pointX, capacity);
+			pointY = Arrays.copyOf(pointY, capacity);
+			pointZ = Arrays.copyOf(pointZ, capacity);
+			normalX = Arrays.copyOf(normalX, capacity);
+			normalY = Arrays.copyOf(normalY, capacity);
+			normalZ = Arrays.copyOf(normalZ, capacity);
+			impulse = Arrays.copyOf(impulse, capacity);
+		}
+		int e = eventCount++;
+		float scale = pairs.pointCount[i] > 0 ? 1.0f / pairs.pointCount[i] : 0;
+		type[e] = (byte) eventType;
+		idA[e] = pairs.idA[i];
+		idB[e] = pairs.idB[i];
+		bodyA[e] = pairs.bodyA[i].getID();
+		bodyB[e] = pairs.bodyB[i] != null ? pairs.bodyB[i].getID() : -1;
+		pointX[e] = pairs.point[3 * i] * scale;
+		pointY[e] = pairs.point[3 * i + 1] * scale;
+		pointZ[e] = pairs.point[3 * i + 2] * scale;
+		normalX[e] = pairs.normal[3 * i];
+		normalY[e] = pairs.normal[3 * i + 1];
+		normalZ[e] = pairs.normal[3 * i + 2];
+		impulse[e] = eventType == END ? 0 : pairs.impulse[i];
+	}
+
+	/**
+	 * @return The number of events.
+	 */
+	public int size() {
+		return eventCount;
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return {@link #BEGIN}, {@link #PERSIST} or {@link #END}.
+	 */
+	public int getType(int e) {
+		return type[e];
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return true if the second object of the pair is a static mesh.
+	 */
+	public boolean isMeshContact(int e) {
+		return bodyB[e] == -1;
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return The ID of the first wrapper.
+	 */
+	public long getWrapperA(int e) {
+		return idA[e];
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return The ID of the second wrapper, or the ID of the static mesh.
+	 */
+	public long getWrapperOrMeshB(int e) {
+		return idB[e];
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return The ID of the body of the first wrapper.
+	 */
+	public long getBodyA(int e) {
+		return bodyA[e];
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return The ID of the body of the second wrapper, or -1 for a static mesh.
+	 */
+	public long getBodyB(int e) {
+		return bodyB[e];
+	}
+
+	/**
+	 * @param e    The index of an event.
+	 * @param dest The average of the contact points, in world-space. For an end
+	 *             event, the point of the last frame of contact.
+	 * @return dest
+	 */
+	public Vector3f getPoint(int e, Vector3f dest) {
+		dest.set(pointX[e], pointY[e], pointZ[e]);
+		return dest;
+	}
+
+	/**
+	 * @param e    The index of an event.
+	 * @param dest The contact normal, from the first object towards the second
+	 *             one.
+	 * @return dest
+	 */
+	public Vector3f getNormal(int e, Vector3f dest) {
+		dest.set(normalX[e], normalY[e], normalZ[e]);
+		return dest;
+	}
+
+	/**
+	 * @param e The index of an event.
+	 * @return The sum of the normal impulses applied between the two objects by
+	 *         the last solve of the frame, 0 for an end event.
+	 */
+	public float getNormalImpulse(int e) {
+		return impulse[e];
+	}
+
+}
@@ -1,5 +1,6 @@
 package cataclysm.contact_creation;
 
+import cataclysm.datastructures.StateBuffer;
 import math.vector.Vector3f;
 
 
@@ -18,6 +19,8 @@ class ContactFeature {
 		
 		None;
 	}
+
+	private static final FeatureType[] FEATURE_TYPES = FeatureType.values();
 	
 	private FeatureType type = FeatureType.None;
 	private int hullFeatureIndex;
@@ -124,4 +127,21 @@ class ContactFeature {
 		return v3;
 	}
 
+	/**
+	 * The vertices aren't written, they point to the temporary vectors of the
+	 * collision tests.
+	 * 
+	 * @param dest
+	 */
+	void writeState(StateBuffer dest) {
+		dest.putInt(type.ordinal());
+		dest.putInt(hullFeatureIndex);
+	}
+
+	void readState(StateBuffer src) {
+		clean();
+		type = FEATURE_TYPES[src.getInt()];
+		hullFeatureIndex = src.getInt();
+	}
+
 }
@@ -1,5 +1,6 @@
 package cataclysm.contact_creation;
 
+import cataclysm.datastructures.StateBuffer;
 import math.vector.Vector3f;
 
 /**
@@ -149,9 +150,48 @@ public class ContactZone {
 		this.featureOnB.setFrom(onB);
 	}
 
+	/**
+	 * Modifies a contact zone already built during this frame. The contact count
+	 * of the previous frame is left untouched.
+	 *
+	 * @param normal           The new contact normal, pointing towards body B.
+	 * @param penetrationDepth The new separation distance
+	 * @param contactCount     The new number of contact points, 0 to discard the
+	 *                         contact zone.
+	 */
+	void rewrite(Vector3f normal, float penetrationDepth, int contactCount) {
+		floatData[0] = normal.x;
+		floatData[1] = normal.y;
+		floatData[2] = normal.z;
+		this.penetrationDepth = penetrationDepth;
+		this.contactCount = contactCount;
+	}
+
 	void resetState() {
+		this.previousContactCount = 0;
 		this.contactCount = 0;
 		this.penetrationDepth = Float.NaN;
+		// the features of the previous pair would bias the next collision test
+		this.featureOnA.clean();
+		this.featureOnB.clean();
+	}
+
+	void writeState(StateBuffer dest) {
+		dest.putInt(previousContactCount);
+		dest.putInt(contactCount);
+		dest.putFloat(penetrationDepth);
+		dest.putFloats(floatData, 0, floatData.length);
+		featureOnA.writeState(dest);
+		featureOnB.writeState(dest);
+	}
+
+	void readState(StateBuffer src) {
+		previousContactCount = src.getInt();
+		contactCount = src.getInt();
+		penetrationDepth = src.getFloat();
+		src.getFloats(floatData, 0, floatData.length);
+		featureOnA.readState(src);
+		featureOnB.readState(src);
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package cataclysm.contact_creation;
 
 import cataclysm.Epsilons;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.Wrapper;
 import math.Clamp;
@@ -110,6 +111,47 @@ public class DoubleBodyContact extends AbstractDoubleBodyContact {
 			this.impulses_B[i] = 0;
 		}
 	}
+
+	@Override
+	protected void writeImpulses(StateBuffer dest) {
+		int count = super.getMaxContacts();
+		dest.putFloats(impulses_N, 0, count);
+		dest.putFloats(impulses_T, 0, count);
+		dest.putFloats(impulses_B, 0, count);
+		dest.putFloats(pseudo_impulses, 0, count);
+	}
+
+	@Override
+	protected void readImpulses(StateBuffer src) {
+		int count = super.getMaxContacts();
+		src.getFloats(impulses_N, 0, count);
+		src.getFloats(impulses_T, 0, count);
+		src.getFloats(impulses_B, 0, count);
+		src.getFloats(pseudo_impulses, 0, count);
+	}
+
+	@Override
+	public float getNormalImpulse() {
+		float impulse = 0;
+		for (int i = 0; i < super.area.getContactCount(); i++) {
+			impulse += impulses_N[i];
+		}
+		return impulse;
+	}
+
+	@Override
+	public void getImpulses(int i, float[] dest, int offset) {
+		dest[offset] = impulses_N[i];
+		dest[offset + 1] = impulses_T[i];
+		dest[offset + 2] = impulses_B[i];
+	}
+
+	@Override
+	public void setImpulses(int i, float normal, float tangent, float bitangent) {
+		impulses_N[i] = normal;
+		impulses_T[i] = tangent;
+		impulses_B[i] = bitangent;
+	}
 	
 	@Override
 	public void warmStart() {
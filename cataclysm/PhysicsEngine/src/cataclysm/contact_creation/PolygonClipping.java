@@ -24,7 +24,8 @@ class PolygonClipping {
 
 	/**
 	 * Clippe la face incidente contre les bords de la face de référence. C'est une
-	 * implémentation de l'algorithme de Sutherland-Hodgman.
+	 * implémentation de l'algorithme de Sutherland-Hodgman. Les sommets obtenus
+	 * sont exprimés dans le repère de l'enveloppe de référence.
 	 * 
 	 * @param incidentFace
 	 * @param referenceFace
@@ -40,6 +41,8 @@ class PolygonClipping {
 		int edge = edge0;
 		do {
 			incident.getConvexHullData().get(FloatLayout.Vertices, incident.getConvexHullData().getEdgeTail(edge), edgeTail);
+			incident.transformVertexWrapperSpaceToWorldSpace(edgeTail, edgeTail);
+			reference.transformVertexWorldSpaceToWrapperSpace(edgeTail, edgeTail);
 			inputListSize = addVertex(inputList, inputListSize, edgeTail);
 			edge = incident.getConvexHullData().getEdgeNext(edge);
 		} while (edge != edge0);
@@ -20,9 +20,15 @@ class ReduceManifold {
 
 	private final Vector3f temp = new Vector3f();
 
+	/**
+	 * Les indices dans la liste d'entrée des points conservés par le dernier appel
+	 * à {@link #reduceManifold(List, Vector3f, ContactZone)}.
+	 */
+	private final int[] selected = new int[4];
+
 	/**
 	 * Supprime des points pour obtenir une surface de contact avec 4 points au
-	 * maximum.
+	 * maximum. Les points de la liste ne sont pas modifiés.
 	 * 
 	 * @param inputList
 	 * @param planeNormal
@@ -34,66 +40,68 @@ class ReduceManifold {
 		if (inputList.size() <= 4) {
 
 			for (int i = 0; i < inputList.size(); i++) {
-				contact.setContactPoint(i, inputList.get(i));
+				select(inputList, contact, i, i);
 			}
 			return inputList.size();
 		}
 
-		Vector3f A = inputList.get(0);
-		Vector3f B = null, C = null, D = null;
+		int A = 0;
+		int B = -1, C = -1, D = -1;
+		Vector3f vA = inputList.get(A);
 
 		// On maximise la distance entre A et B.
 		float AB2 = 0;
 		for (int i = 1; i < inputList.size(); i++) {
 			Vector3f vertex = inputList.get(i);
-			Vector3f.sub(vertex, A, AB);
+			Vector3f.sub(vertex, vA, AB);
 			float d2 = AB.lengthSquared();
 			if (d2 > AB2) {
 				AB2 = d2;
-				B = vertex;
+				B = i;
 			}
 		}
 		if (AB2 < Epsilons.MIN_LENGTH_2) {
-			contact.setContactPoint(0, A);
+			select(inputList, contact, 0, A);
 			return 1;
 		}
-		Vector3f.sub(B, A, AB);
+		Vector3f.sub(inputList.get(B), vA, AB);
 
 		// On maximise l'aire de ABC en valeur absolue.
 		float areaABC = 0;
 		for (int i = 1; i < inputList.size(); i++) {
 			Vector3f vertex = inputList.get(i);
-			Vector3f.sub(vertex, A, AC);
+			Vector3f.sub(vertex, vA, AC);
 
 			Vector3f.cross(AB, AC, temp);
 			float area = Vector3f.dot(planeNormal, temp);
 			if (Math.abs(area) > Math.abs(areaABC)) {
 				areaABC = area;
-				C = vertex;
+				C = i;
 			}
 		}
 		if (Math.abs(areaABC) < Epsilons.MIN_LENGTH) {
-			contact.setContactPoint(0, A);
-			contact.setContactPoint(1, B);
+			select(inputList, contact, 0, A);
+			select(inputList, contact, 1, B);
 			return 2;
 		}
 
-		// On �change B et C pour garder une orientation CCW.
+		// On échange B et C pour garder une orientation CCW.
 		if (areaABC < 0) {
-
-			temp.set(C);
-			C.set(B);
-			B.set(temp);
-
+			int swap = C;
+			C = B;
+			B = swap;
 		}
+		Vector3f vB = inputList.get(B);
+		Vector3f vC = inputList.get(C);
 
 		// On cherche D tel que ABCD soit le plus grand possible.
 		float areaD = 0;
-		for (Vector3f Q : inputList) {
+		for (int i = 0; i < inputList.size(); i++) {
+			Vector3f Q = inputList.get(i);
 
-			Vector3f.sub(A, Q, QA);
-			Vector3f.sub(B, Q, QB);
-			Vector3f.sub(C, Q, QC);
+			Vector3f.sub(vA, Q, QA);
+			Vector3f.sub(vB, Q, QB);
+			Vector3f.sub(vC, Q, QC);
 
 			Vector3f.cross(QA, QB, QX_x_QY);
 			float area = Vector3f.dot(planeNormal, QX_x_QY);
@@ -101,7 +109,7 @@ class ReduceManifold {
 			// On a area < 0 !
 			if (area < areaD) {
 				areaD = area;
-				D = Q;
+				D = i;
 			}
 
 			Vector3f.cross(QB, QC, QX_x_QY);
@@ -110,7 +118,7 @@ class ReduceManifold {
 			// On a area < 0 !
 			if (area < areaD) {
 				areaD = area;
-				D = Q;
+				D = i;
 			}
 
 			Vector3f.cross(QC, QA, QX_x_QY);
@@ -119,23 +127,37 @@ class ReduceManifold {
 			// On a area < 0 !
 			if (area < areaD) {
 				areaD = area;
-				D = Q;
+				D = i;
 			}
 
 		}
 		if (Math.abs(areaD) < Epsilons.MIN_LENGTH) {
-			contact.setContactPoint(0, A);
-			contact.setContactPoint(1, B);
-			contact.setContactPoint(2, C);
+			select(inputList, contact, 0, A);
+			select(inputList, contact, 1, B);
+			select(inputList, contact, 2, C);
 			return 3;
 		}
 
-		contact.setContactPoint(0, A);
-		contact.setContactPoint(1, B);
-		contact.setContactPoint(2, C);
-		contact.setContactPoint(3, D);
+		select(inputList, contact, 0, A);
+		select(inputList, contact, 1, B);
+		select(inputList, contact, 2, C);
+		select(inputList, contact, 3, D);
 
 		return 4;
 	}
 
+	private void select(List<Vector3f> inputList, ContactZone contact, int point, int index) {
+		contact.setContactPoint(point, inputList.get(index));
+		selected[point] = index;
+	}
+
+	/**
+	 * @param point L'indice d'un point de contact écrit par le dernier appel à
+	 *              {@link #reduceManifold(List, Vector3f, ContactZone)}.
+	 * @return L'indice de ce point dans la liste d'entrée.
+	 */
+	int getSelectedIndex(int point) {
+		return selected[point];
+	}
+
 }
@@ -166,7 +166,9 @@ class SAT {
 			if (onA.getType() == FeatureType.HullFace) {
 				int face = onA.getHullFeatureIndex();
 				hullA.getConvexHullData().getNormal(face, normal);
+				hullA.transformNormalWrapperSpaceToWorldSpace(normal, normal);
 				hullB.getSupport(normal, true, supportPoint);
+				hullA.transformVertexWorldSpaceToWrapperSpace(supportPoint, supportPoint);
 				float distance = hullA.getConvexHullData().signedDistance(supportPoint, face);
 
 				if (DEBUG) {
@@ -181,7 +183,9 @@ class SAT {
 			} else if (onB.getType() == FeatureType.HullFace) {
 				int face = onB.getHullFeatureIndex();
 				hullB.getConvexHullData().getNormal(face, normal);
+				hullB.transformNormalWrapperSpaceToWorldSpace(normal, normal);
 				hullA.getSupport(normal, true, supportPoint);
+				hullB.transformVertexWorldSpaceToWrapperSpace(supportPoint, supportPoint);
 				float distance = hullB.getConvexHullData().signedDistance(supportPoint, face);
 
 				if (DEBUG) {
@@ -200,8 +204,12 @@ class SAT {
 				
 				int edgeA = onA.getHullFeatureIndex();
 				int edgeB = onB.getHullFeatureIndex();
-				hullA.getConvexHullData().getEdgeVec(edgeA, vecEdgeA);				
-				hullB.getConvexHullData().getEdgeVec(edgeB, vecEdgeB);
+				hullA.getConvexHullData().getEdgeVec(edgeA, worldEdgeA);
+				hullA.transformNormalWrapperSpaceToWorldSpace(worldEdgeA, worldEdgeA);
+				hullB.transformNormalWorldSpaceToWrapperSpace(worldEdgeA, vecEdgeA);
+				hullB.getConvexHullData().getEdgeVec(edgeB, worldEdgeB);
+				hullB.transformNormalWrapperSpaceToWorldSpace(worldEdgeB, worldEdgeB);
+				hullA.transformNormalWorldSpaceToWrapperSpace(worldEdgeB, vecEdgeB);
 
 				if (!isMinkowskiFace(hullA, edgeA, vecEdgeA, hullB, edgeB, vecEdgeB)) {
 					if (DEBUG) {
@@ -251,8 +259,12 @@ class SAT {
 			incident = hullA;
 		}
 
+		// The faces are clipped in the wrapper-space of the reference hull, the
+		// contact points and the normal are moved to world-space at the end.
 		reference.getConvexHullData().getNormal(referenceFace, normal);
-		int incidentFace = incident.getConvexHullData().getMostAntiParallelFace(normal);
+		reference.transformNormalWrapperSpaceToWorldSpace(normal, temp);
+		incident.transformNormalWorldSpaceToWrapperSpace(temp, temp);
+		int incidentFace = incident.getConvexHullData().getMostAntiParallelFace(temp);
 
 		List<Vector3f> inputList = new ArrayList<Vector3f>();
 		polygonClipping.clipIncidentFaceAgainstReferenceFace(incident, incidentFace, reference, referenceFace,
@@ -277,15 +289,26 @@ class SAT {
 				return;
 			}
 
+			if (edgeCheckDistance == Float.NEGATIVE_INFINITY) {
+				// no pair of edges forms a face of the Minkowski difference, the edges of the
+				// previous test would give a degenerate contact point
+				onA.clean();
+				onB.clean();
+				contact.rebuild(normal, penetrationDepth, 0, onA, onB);
+				contact.setNoCollision();
+				return;
+			}
+
 			penetrationDepth = edgeCheckDistance;
 			createEdgeContact(contact, hullA, hullB);
 			return;
 		}
 
 		// we delete the points above the face's plane
+		float scale = reference.getScale();
 		for (Iterator<Vector3f> it = inputList.iterator(); it.hasNext();) {
 			Vector3f vertex = it.next();
-			float distance = reference.getConvexHullData().signedDistance(vertex, referenceFace);
+			float distance = reference.getConvexHullData().signedDistance(vertex, referenceFace) * scale;
 			if (distance > 5 * Epsilons.ALLOWED_PENETRATION) {
 				it.remove();
 			}
@@ -302,9 +325,11 @@ class SAT {
 			contact.getContactPoint(i, temp);
 			float distance = reference.getConvexHullData().signedDistance(temp, referenceFace);
 			temp.translate(normal, -distance);
-			contact.setContactPointAndPenetrationDepth(i, temp.x, temp.y, temp.z, distance);
+			reference.transformVertexWrapperSpaceToWorldSpace(temp, temp);
+			contact.setContactPointAndPenetrationDepth(i, temp.x, temp.y, temp.z, distance * scale);
 		}
 
+		reference.transformNormalWrapperSpaceToWorldSpace(normal, normal);
 		if (!refFaceInHullA) {
 			normal.negate();
 			onA.clean();
@@ -349,6 +374,11 @@ class SAT {
 		hullB.getConvexHullData().get(FloatLayout.Vertices, hullB.getConvexHullData().getEdgeHead(contactEdgeB), C);
 		hullB.getConvexHullData().get(FloatLayout.Vertices, hullB.getConvexHullData().getEdgeTail(contactEdgeB), D);
 
+		hullA.transformVertexWrapperSpaceToWorldSpace(A, A);
+		hullA.transformVertexWrapperSpaceToWorldSpace(B, B);
+		hullB.transformVertexWrapperSpaceToWorldSpace(C, C);
+		hullB.transformVertexWrapperSpaceToWorldSpace(D, D);
+
 		Vector3f.sub(B, A, AB);
 		Vector3f.sub(D, C, CD);
 		Vector3f.sub(C, A, AC);
@@ -433,8 +463,11 @@ class SAT {
 	private final Vector3f centroidA = new Vector3f();
 	private int contactEdgeA;
 	private final Vector3f vecEdgeA = new Vector3f();
+	private final Vector3f worldEdgeA = new Vector3f();
 	private int contactEdgeB;
 	private final Vector3f vecEdgeB = new Vector3f();
+	private final Vector3f worldEdgeB = new Vector3f();
+	private final Vector3f tailA = new Vector3f();
 	private final Vector3f edgeAxEdgeB = new Vector3f();
 	private final Vector3f temp = new Vector3f();
 	private final Vector3f normal = new Vector3f();
@@ -452,14 +485,14 @@ class SAT {
 
 		for (int edgeA = 0; edgeA < hullA.getConvexHullData().edgeCount; edgeA += 2) {
 
-			hullA.getConvexHullData().getEdgeVec(edgeA, vecEdgeA);
-			hullA.transformNormalWrapperSpaceToWorldSpace(vecEdgeA, vecEdgeA);
-			hullB.transformNormalWorldSpaceToWrapperSpace(vecEdgeA, vecEdgeA);
+			hullA.getConvexHullData().getEdgeVec(edgeA, worldEdgeA);
+			hullA.transformNormalWrapperSpaceToWorldSpace(worldEdgeA, worldEdgeA);
+			hullB.transformNormalWorldSpaceToWrapperSpace(worldEdgeA, vecEdgeA);
 
 			for (int edgeB = 0; edgeB < hullB.getConvexHullData().edgeCount; edgeB += 2) {
-				hullB.getConvexHullData().getEdgeVec(edgeB, vecEdgeB);
-				hullB.transformNormalWrapperSpaceToWorldSpace(vecEdgeB, vecEdgeB);
-				hullA.transformNormalWorldSpaceToWrapperSpace(vecEdgeB, vecEdgeB);
+				hullB.getConvexHullData().getEdgeVec(edgeB, worldEdgeB);
+				hullB.transformNormalWrapperSpaceToWorldSpace(worldEdgeB, worldEdgeB);
+				hullA.transformNormalWorldSpaceToWrapperSpace(worldEdgeB, vecEdgeB);
 
 				if (!isMinkowskiFace(hullA, edgeA, vecEdgeA, hullB, edgeB, vecEdgeB)) {
 					continue;
@@ -483,9 +516,9 @@ class SAT {
 	}
 
 	/**
-	 * Computes the distance between the two edges
+	 * Computes the distance between the two edges, in world-space.
 	 * 
-	 * The following variables must be set: centroidA, vecEdgeA, vecEdgeB
+	 * The following variables must be set: centroidA, worldEdgeA, worldEdgeB
 	 * 
 	 * @param edgeA
 	 * @param edgeB
@@ -493,18 +526,19 @@ class SAT {
 	 */
 	private float edgeDistance(ConvexHullWrapper hullA, int edgeA, ConvexHullWrapper hullB,
 			int edgeB) {
-		Vector3f.cross(vecEdgeA, vecEdgeB, edgeAxEdgeB);
+		Vector3f.cross(worldEdgeA, worldEdgeB, edgeAxEdgeB);
 		float length2 = edgeAxEdgeB.lengthSquared();
 
-		if (length2 < (1.0f - Epsilons.PARALLEL_LIMIT_2) * vecEdgeA.lengthSquared() * vecEdgeB.lengthSquared()) {// skip
+		if (length2 < (1.0f - Epsilons.PARALLEL_LIMIT_2) * worldEdgeA.lengthSquared() * worldEdgeB.lengthSquared()) {// skip
 																													// parallel
 																													// edges.
 			return Float.NEGATIVE_INFINITY;
 		}
 		float one_over_length = 1.0f / (float) Math.sqrt(length2);
 
-		hullA.getConvexHullData().get(FloatLayout.Vertices, hullA.getConvexHullData().getEdgeTail(edgeA), temp);
-		Vector3f.sub(temp, centroidA, temp);
+		hullA.getConvexHullData().get(FloatLayout.Vertices, hullA.getConvexHullData().getEdgeTail(edgeA), tailA);
+		hullA.transformVertexWrapperSpaceToWorldSpace(tailA, tailA);
+		Vector3f.sub(tailA, centroidA, temp);
 		if (Vector3f.dot(edgeAxEdgeB, temp) < 0) {
 			one_over_length = -one_over_length;
 		}
@@ -513,8 +547,9 @@ class SAT {
 		edgeAxEdgeB.y *= one_over_length;
 		edgeAxEdgeB.z *= one_over_length;
 
-		hullA.getConvexHullData().get(FloatLayout.Vertices, hullA.getConvexHullData().getEdgeTail(edgeA), temp);
-		hullB.getConvexHullData().sub(FloatLayout.Vertices, hullB.getConvexHullData().getEdgeTail(edgeB), temp, temp);
+		hullB.getConvexHullData().get(FloatLayout.Vertices, hullB.getConvexHullData().getEdgeTail(edgeB), temp);
+		hullB.transformVertexWrapperSpaceToWorldSpace(temp, temp);
+		Vector3f.sub(temp, tailA, temp);
 		float distance = Vector3f.dot(edgeAxEdgeB, temp);
 
 		return distance;
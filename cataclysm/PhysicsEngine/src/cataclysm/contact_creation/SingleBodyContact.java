@@ -2,6 +2,7 @@ package cataclysm.contact_creation;
 
 import cataclysm.Epsilons;
 import cataclysm.broadphase.staticmeshes.Triangle;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.Wrapper;
 import math.Clamp;
@@ -75,7 +76,7 @@ public class SingleBodyContact extends AbstractSingleBodyContact {
 	@Override
 	public void velocityStart() {
 		super.mixContactProperties(wrapper.getBody().getContactProperties(),
-				triangle.mesh.getContactProperties());
+				triangle.getMesh().getContactProperties());
 		area.getNormal(N);
 		N.negate();
 		MatrixOps.computeOrthogonalComplement(N, T, B);
@@ -101,6 +102,47 @@ public class SingleBodyContact extends AbstractSingleBodyContact {
 			this.impulses_B[i] = 0;
 		}
 	}
+
+	@Override
+	protected void writeImpulses(StateBuffer dest) {
+		int count = super.getMaxContacts();
+		dest.putFloats(impulses_N, 0, count);
+		dest.putFloats(impulses_T, 0, count);
+		dest.putFloats(impulses_B, 0, count);
+		dest.putFloats(pseudo_impulses, 0, count);
+	}
+
+	@Override
+	protected void readImpulses(StateBuffer src) {
+		int count = super.getMaxContacts();
+		src.getFloats(impulses_N, 0, count);
+		src.getFloats(impulses_T, 0, count);
+		src.getFloats(impulses_B, 0, count);
+		src.getFloats(pseudo_impulses, 0, count);
+	}
+
+	@Override
+	public float getNormalImpulse() {
+		float impulse = 0;
+		for (int i = 0; i < super.area.getContactCount(); i++) {
+			impulse += impulses_N[i];
+		}
+		return impulse;
+	}
+
+	@Override
+	public void getImpulses(int i, float[] dest, int offset) {
+		dest[offset] = impulses_N[i];
+		dest[offset + 1] = impulses_T[i];
+		dest[offset + 2] = impulses_B[i];
+	}
+
+	@Override
+	public void setImpulses(int i, float normal, float tangent, float bitangent) {
+		impulses_N[i] = normal;
+		impulses_T[i] = tangent;
+		impulses_B[i] = bitangent;
+	}
 	
 	@Override
 	public void warmStart() {
@@ -2,6 +2,7 @@ package cataclysm.contact_creation;
 
 import cataclysm.Epsilons;
 import cataclysm.broadphase.staticmeshes.Triangle;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.wrappers.RigidBody;
 import cataclysm.wrappers.Wrapper;
 import math.Clamp;
@@ -27,6 +28,8 @@ public class SingleBodyContactArrayBased extends AbstractSingleBodyContact {
 		impulses_T, impulses_B, pseudo_impulses, END;
 	}
 
+	private static final int IMPULSE_COUNT = FloatData.END.ordinal() - FloatData.impulses_N.ordinal();
+
 	private final Vector3f N = new Vector3f();// normal vector
 	private final Vector3f T = new Vector3f();// tangent vector
 	private final Vector3f B = new Vector3f();// bitangent vector
@@ -42,7 +45,7 @@ public class SingleBodyContactArrayBased extends AbstractSingleBodyContact {
 
 	@Override
 	public void velocityStart() {
-		super.mixContactProperties(wrapper.getBody().getContactProperties(), triangle.mesh.getContactProperties());
+		super.mixContactProperties(wrapper.getBody().getContactProperties(), triangle.getMesh().getContactProperties());
 		area.getNormal(N);
 		N.negate();
 		MatrixOps.computeOrthogonalComplement(N, T, B);
@@ -69,6 +72,45 @@ public class SingleBodyContactArrayBased extends AbstractSingleBodyContact {
 		}
 	}
 
+	@Override
+	protected void writeImpulses(StateBuffer dest) {
+		// the impulses of a contact point are stored next to each other, after the
+		// data recomputed every frame
+		for (int i = 0; i < super.getMaxContacts(); i++) {
+			dest.putFloats(floatData, getFloatDataIndex(FloatData.impulses_N, i), IMPULSE_COUNT);
+		}
+	}
+
+	@Override
+	protected void readImpulses(StateBuffer src) {
+		for (int i = 0; i < super.getMaxContacts(); i++) {
+			src.getFloats(floatData, getFloatDataIndex(FloatData.impulses_N, i), IMPULSE_COUNT);
+		}
+	}
+
+	@Override
+	public float getNormalImpulse() {
+		float impulse = 0;
+		for (int i = 0; i < super.area.getContactCount(); i++) {
+			impulse += getFloat(FloatData.impulses_N, i);
+		}
+		return impulse;
+	}
+
+	@Override
+	public void getImpulses(int i, float[] dest, int offset) {
+		dest[offset] = getFloat(FloatData.impulses_N, i);
+		dest[offset + 1] = getFloat(FloatData.impulses_T, i);
+		dest[offset + 2] = getFloat(FloatData.impulses_B, i);
+	}
+
+	@Override
+	public void setImpulses(int i, float normal, float tangent, float bitangent) {
+		setFloat(FloatData.impulses_N, normal, i);
+		setFloat(FloatData.impulses_T, tangent, i);
+		setFloat(FloatData.impulses_B, bitangent, i);
+	}
+
 	@Override
 	public void warmStart() {
 		for (int i = 0; i < super.getMaxContacts(); i++) {
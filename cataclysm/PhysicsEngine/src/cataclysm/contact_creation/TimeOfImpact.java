@@ -0,0 +1,190 @@
+package cataclysm.contact_creation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import cataclysm.Epsilons;
+import cataclysm.GeometryQuery;
+import cataclysm.broadphase.AABB;
+import cataclysm.broadphase.staticmeshes.Triangle;
+import cataclysm.wrappers.CapsuleWrapper;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.SphereWrapper;
+import cataclysm.wrappers.TriangleAsHull;
+import cataclysm.wrappers.Wrapper;
+import math.vector.Vector3f;
+
+/**
+ * Computes the time of impact of a translating rigid body against the static
+ * meshes by conservative advancement. This is used by the bodies for which
+ * {@link RigidBody#isContinuousCollision()} is true, so that small and fast
+ * bodies don't tunnel through thin triangles. <br>
+ *
+ * The rotation of the body during the time step is ignored. Since the distance
+ * between two convex shapes is a convex function of their relative translation,
+ * each advancement step computed from the current separation distance and
+ * closing speed never overshoots the actual time of impact.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class TimeOfImpact {
+
+	private final GJK gjk = new GJK();
+	private final TriangleAsHull triangleHull = TriangleAsHull.buildNew();
+
+	private final AABB sweptBox = new AABB();
+	private final Set<Triangle> triangles = new HashSet<Triangle>();
+
+	private final Vector3f closestOnA = new Vector3f();
+	private final Vector3f closestOnB = new Vector3f();
+	private final Vector3f normal = new Vector3f();
+
+	/**
+	 * The normal of the first triangle hit, pointing from the body to the triangle.
+	 */
+	private final Vector3f hitNormal = new Vector3f();
+
+	public TimeOfImpact() {
+
+	}
+
+	/**
+	 * Computes the fraction of the displacement (dx, dy, dz) that the body can go
+	 * through before hitting a triangle of the static meshes.
+	 *
+	 * @param body   The rigid body, at the start of the time step
+	 * @param dx
+	 * @param dy
+	 * @param dz
+	 * @param meshes The static geometry
+	 * @return A value between 0 and 1, 1 means that no impact occurs before the end
+	 *         of the displacement. When a value below 1 is returned, the normal of
+	 *         the surface hit can be retrieved with {@link #getHitNormal()}.
+	 */
+	public float computeTimeOfImpact(RigidBody body, float dx, float dy, float dz, GeometryQuery meshes) {
+		float toi = 1.0f;
+		for (Wrapper wrapper : body.getWrappers()) {
+			toi = Math.min(toi, computeTimeOfImpact(wrapper, dx, dy, dz, meshes, toi));
+		}
+		return toi;
+	}
+
+	/**
+	 * @return The normal of the surface hit by the last call to
+	 *         {@link #computeTimeOfImpact(RigidBody, float, float, float, GeometryQuery)},
+	 *         pointing away from the body.
+	 */
+	public Vector3f getHitNormal() {
+		return hitNormal;
+	}
+
+	private float computeTimeOfImpact(Wrapper wrapper, float dx, float dy, float dz, GeometryQuery meshes,
+			float maxToi) {
+		Vector3f centroid = wrapper.getCentroid();
+		float radius = wrapper.getMaxRadius();
+		sweptBox.minX = Math.min(centroid.x, centroid.x + dx) - radius;
+		sweptBox.minY = Math.min(centroid.y, centroid.y + dy) - radius;
+		sweptBox.minZ = Math.min(centroid.z, centroid.z + dz) - radius;
+		sweptBox.maxX = Math.max(centroid.x, centroid.x + dx) + radius;
+		sweptBox.maxY = Math.max(centroid.y, centroid.y + dy) + radius;
+		sweptBox.maxZ = Math.max(centroid.z, centroid.z + dz) + radius;
+
+		triangles.clear();
+		meshes.boxTriangleQuery(sweptBox, triangles);
+
+		float margin = getMargin(wrapper);
+		float toi = maxToi;
+		for (Triangle triangle : triangles) {
+			float t = conservativeAdvancement(wrapper, margin, triangle, dx, dy, dz, toi);
+			if (t < toi) {
+				toi = t;
+				hitNormal.set(normal);
+			}
+		}
+		triangles.clear();
+
+		return toi;
+	}
+
+	/**
+	 * Advances the triangle towards the wrapper (the relative motion is the
+	 * opposite of the displacement) until their separation distance falls below
+	 * {@link Epsilons#TOI_TARGET_SEPARATION}.
+	 *
+	 * @return the time of impact, or 1 if the triangle isn't hit before maxToi.
+	 */
+	private float conservativeAdvancement(Wrapper wrapper, float margin, Triangle triangle, float dx, float dy,
+			float dz, float maxToi) {
+
+		float t = 0.0f;
+		for (int i = 0; i < Epsilons.TOI_MAX_ITERATIONS; i++) {
+			triangleHull.setFrom(triangle, -t * dx, -t * dy, -t * dz);
+			float distance = gjk.distance(wrapper, triangleHull, closestOnA, closestOnB);
+
+			if (distance == -Float.MAX_VALUE) {
+				// Already overlapping at the start of the step: the discrete contacts
+				// take care of it. Otherwise the previous iterate was the last safe one.
+				return t == 0.0f ? 1.0f : t;
+			}
+
+			if (distance <= Epsilons.MIN_LENGTH) {
+				// The core shapes touch, the closest points give no direction. Like an
+				// overlap, the discrete contacts take care of it at the start of the step,
+				// otherwise the triangle is hit along the displacement.
+				if (t == 0.0f) {
+					return 1.0f;
+				}
+				float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				normal.set(dx / length, dy / length, dz / length);
+				return t;
+			}
+
+			float gap = distance - margin;
+
+			Vector3f.sub(closestOnB, closestOnA, normal);
+			normal.scale(1.0f / distance);
+			float closing = normal.x * dx + normal.y * dy + normal.z * dz;
+
+			if (t == 0.0f && gap - closing > -Math.max(0.5f * margin, Epsilons.ALLOWED_PENETRATION)) {
+				// Even the linear lower bound of the distance stays above the allowed
+				// penetration: the discrete collision detection is enough.
+				return 1.0f;
+			}
+
+			if (gap <= Epsilons.TOI_TARGET_SEPARATION) {
+				return t;
+			}
+
+			if (closing <= 0.0f) {
+				return 1.0f;
+			}
+
+			t += (gap - Epsilons.TOI_TARGET_SEPARATION) / closing;
+			if (t >= maxToi) {
+				return 1.0f;
+			}
+		}
+
+		return t;
+	}
+
+	/**
+	 * @param wrapper
+	 * @return The radius of the wrapper around its core shape, the core shape is
+	 *         the one seen by GJK.
+	 */
+	private static float getMargin(Wrapper wrapper) {
+		switch (wrapper.getType()) {
+		case Sphere:
+			return ((SphereWrapper) wrapper).getRadius();
+		case Capsule:
+			return ((CapsuleWrapper) wrapper).getRadius();
+		case ConvexHull:
+			return 0.0f;
+		default:
+			throw new IllegalArgumentException("Unknown enum value: " + wrapper.getType());
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package cataclysm.datastructures;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import cataclysm.parallel.PhysicsWorkerPool;
@@ -26,6 +27,11 @@ public abstract class BufferedManager<T extends Identifier> extends Manager<T> {
 	 */
 	private List<T> removed = new ArrayList<T>();
 
+	/**
+	 * The IDs of the buffered removed elements
+	 */
+	private final LongHashSet removedIDs = new LongHashSet();
+
 	public BufferedManager() {
 
 	}
@@ -66,13 +72,7 @@ public abstract class BufferedManager<T extends Identifier> extends Manager<T> {
 	@Override
 	public void update() {
 		processAddedAndRemovedElements(added, removed);
-		removed.forEach(e -> {
-			super.removeElement(e.getID());
-		});
-		added.forEach(e -> super.addElement(e));
-
-		added.clear();
-		removed.clear();
+		flushBuffers();
 
 		internalUpdate();
 	}
@@ -80,15 +80,21 @@ public abstract class BufferedManager<T extends Identifier> extends Manager<T> {
 	@Override
 	public void parallelUpdate(PhysicsWorkerPool workers) {
 		processAddedAndRemovedElements(added, removed, workers);
+		flushBuffers();
+
+		internalUpdate(workers);
+	}
+
+	private void flushBuffers() {
 		removed.forEach(e -> {
-			super.removeElement(e.getID());
+			super.removeAndGet(e.getID());
 		});
+		reserve(size() + added.size());
 		added.forEach(e -> super.addElement(e));
 
 		added.clear();
 		removed.clear();
-
-		internalUpdate(workers);
+		removedIDs.clear();
 	}
 
 	@Override
@@ -96,20 +102,38 @@ public abstract class BufferedManager<T extends Identifier> extends Manager<T> {
 		added.add(element);
 	}
 
+	@Override
+	public void addAll(Collection<? extends T> elements) {
+		added.addAll(elements);
+	}
+
 	@Override
 	public boolean removeElement(long ID) {
 		T e = super.get(ID);
-		if (e != null && !removed.contains(e)) {
+		if (e != null && removedIDs.add(ID)) {
 			removed.add(e);
 			return true;
 		}
 		return false;
 	}
 
+	@Override
+	public int removeAll(long[] IDs) {
+		removedIDs.reserve(removed.size() + IDs.length);
+		return super.removeAll(IDs);
+	}
+
+	/**
+	 * @return true if some elements have been added or removed since the last
+	 *         update, they aren't part of the manager yet.
+	 */
+	public boolean hasPendingChanges() {
+		return !added.isEmpty() || !removed.isEmpty();
+	}
+
 	@Override
 	public boolean contains(long ID) {
-		T e = super.get(ID);
-		return e != null && !removed.contains(e);
+		return super.contains(ID) && !removedIDs.contains(ID);
 	}
 
 	@Override
@@ -117,6 +141,7 @@ public abstract class BufferedManager<T extends Identifier> extends Manager<T> {
 		super.cleanUp();
 		added.clear();
 		removed.clear();
+		removedIDs.clear();
 	}
 
 }
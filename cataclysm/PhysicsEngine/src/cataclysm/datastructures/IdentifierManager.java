@@ -1,5 +1,7 @@
 package cataclysm.datastructures;
 
+import java.util.Collection;
+
 import cataclysm.parallel.PhysicsWorkerPool;
 
 /**
@@ -56,6 +58,34 @@ public interface IdentifierManager<T extends Identifier> extends Iterable<T> {
 	 */
 	public T removeAndGet(long ID);
 
+	/**
+	 * Adds several elements to the data structure, see
+	 * {@link #addElement(Identifier)}.
+	 * 
+	 * @param elements
+	 */
+	public default void addAll(Collection<? extends T> elements) {
+		for (T element : elements) {
+			addElement(element);
+		}
+	}
+
+	/**
+	 * Deletes all the elements whose ID is in the array.
+	 * 
+	 * @param IDs
+	 * @return The number of elements deleted
+	 */
+	public default int removeAll(long[] IDs) {
+		int count = 0;
+		for (long ID : IDs) {
+			if (removeElement(ID)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * 
 	 * @param ID
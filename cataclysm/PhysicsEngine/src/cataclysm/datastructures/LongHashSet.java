@@ -0,0 +1,126 @@
+package cataclysm.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Defines a set of longs, without boxing. <br>
+ * The keys are stored in a flat array with open addressing and linear probing,
+ * like in {@link LongIntHashMap}. The keys can't be removed one by one, the set
+ * is only emptied at once.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class LongHashSet {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private boolean[] used;
+	private int mask;
+	private int size = 0;
+
+	/**
+	 * Creates a set with a default capacity of 16 keys.
+	 */
+	public LongHashSet() {
+		this(16);
+	}
+
+	public LongHashSet(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int n = Math.max(4, (int) Math.ceil(expectedSize / LOAD_FACTOR));
+		return Integer.highestOneBit(n - 1) << 1;
+	}
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		used = new boolean[tableSize];
+		mask = tableSize - 1;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * Makes room for at least expectedSize keys without rehashing.
+	 *
+	 * @param expectedSize
+	 */
+	public void reserve(int expectedSize) {
+		int tableSize = tableSizeFor(expectedSize);
+		if (tableSize > keys.length) {
+			rehash(tableSize);
+		}
+	}
+
+	private void rehash(int tableSize) {
+		long[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		allocate(tableSize);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				add(oldKeys[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key wasn't already in the set.
+	 */
+	public boolean add(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		size++;
+		if (size > LOAD_FACTOR * keys.length) {
+			rehash(2 * keys.length);
+		}
+		return true;
+	}
+
+	public boolean contains(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the keys, the capacity is kept.
+	 */
+	public void clear() {
+		if (size != 0) {
+			Arrays.fill(used, false);
+			size = 0;
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+package cataclysm.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Defines a hash map from longs to ints, without boxing. <br>
+ * The entries are stored in flat arrays with open addressing and linear
+ * probing. The removal shifts the following entries of the probe sequence
+ * back, so no tombstone is ever left behind.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class LongIntHashMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int mask;
+	private int size = 0;
+
+	/**
+	 * Creates a hash map with a default capacity of 16 entries.
+	 */
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int n = Math.max(4, (int) Math.ceil(expectedSize / LOAD_FACTOR));
+		return Integer.highestOneBit(n - 1) << 1;
+	}
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		values = new int[tableSize];
+		used = new boolean[tableSize];
+		mask = tableSize - 1;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private int indexOf(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes room for at least expectedSize entries without rehashing.
+	 *
+	 * @param expectedSize
+	 */
+	public void reserve(int expectedSize) {
+		int tableSize = tableSizeFor(expectedSize);
+		if (tableSize > keys.length) {
+			rehash(tableSize);
+		}
+	}
+
+	private void rehash(int tableSize) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(tableSize);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Associates a value to a key, replacing the previous value if any.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size > LOAD_FACTOR * keys.length) {
+			rehash(2 * keys.length);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param defaultValue
+	 * @return The value associated to the key, or defaultValue if there is none.
+	 */
+	public int get(long key, int defaultValue) {
+		int i = indexOf(key);
+		return i == -1 ? defaultValue : values[i];
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) != -1;
+	}
+
+	/**
+	 * Removes a key from the map.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return The value which was associated to the key, or defaultValue if there
+	 *         was none.
+	 */
+	public int remove(long key, int defaultValue) {
+		int i = indexOf(key);
+		if (i == -1) {
+			return defaultValue;
+		}
+		int value = values[i];
+
+		// Shifts back the entries which can't be reached anymore from their slot.
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (used[j]) {
+			int slot = hash(keys[j]) & mask;
+			if (((j - slot) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		used[hole] = false;
+		size--;
+
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the entries, the capacity is kept.
+	 */
+	public void clear() {
+		if (size != 0) {
+			Arrays.fill(used, false);
+			size = 0;
+		}
+	}
+
+}
@@ -1,13 +1,15 @@
 package cataclysm.datastructures;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
 
 /**
  * This class is an implementation of {@link IdentifierManager} based on an
- * ArrayList for fast iteration and a hashmap for fast lookup methods
+ * ArrayList for fast iteration and a {@link LongIntHashMap} from the IDs to the
+ * indices in that list for fast lookup methods. An element is removed by moving
+ * the last element of the list into its slot, so the iteration order isn't the
+ * insertion order.
  * 
  * @author Briac
  *
@@ -17,7 +19,7 @@ public abstract class Manager<T extends Identifier> implements IdentifierManager
 
 	protected IDGenerator generator = new IDGenerator();
 	protected ArrayList<T> elements = new ArrayList<T>();
-	private Map<Long, T> map = new HashMap<Long, T>();
+	private final LongIntHashMap indices = new LongIntHashMap();
 
 	public Manager() {
 
@@ -30,31 +32,51 @@ public abstract class Manager<T extends Identifier> implements IdentifierManager
 
 	@Override
 	public void addElement(T element) {
+		indices.put(element.getID(), elements.size());
 		elements.add(element);
-		map.put(element.getID(), element);
+	}
+
+	@Override
+	public void addAll(Collection<? extends T> elements) {
+		reserve(this.elements.size() + elements.size());
+		IdentifierManager.super.addAll(elements);
+	}
+
+	/**
+	 * Makes room for the given number of elements.
+	 * 
+	 * @param capacity
+	 */
+	protected void reserve(int capacity) {
+		elements.ensureCapacity(capacity);
+		indices.reserve(capacity);
 	}
 
 	@Override
 	public boolean contains(long ID) {
-		return map.containsKey(ID);
+		return indices.containsKey(ID);
 	}
 	
 	@Override
 	public T get(long ID) {
-		return map.get(ID);
+		int index = indices.get(ID, -1);
+		return index == -1 ? null : elements.get(index);
 	}
 	
 	@Override
 	public T removeAndGet(long ID) {
-		T e = map.remove(ID);
-		if(e != null) {
-			for(int i=0; i<elements.size(); i++) {
-				if(elements.get(i).getID() == ID) {
-					elements.remove(i);
-					break;
-				}
-			}
+		int index = indices.remove(ID, -1);
+		if (index == -1) {
+			return null;
+		}
+		T e = elements.get(index);
+		int last = elements.size() - 1;
+		if (index != last) {
+			T moved = elements.get(last);
+			elements.set(index, moved);
+			indices.put(moved.getID(), index);
 		}
+		elements.remove(last);
 		return e;
 	}
 	
@@ -69,7 +91,7 @@ public abstract class Manager<T extends Identifier> implements IdentifierManager
 	@Override
 	public void cleanUp() {
 		elements.clear();
-		map.clear();
+		indices.clear();
 		generator.reset();
 	}
 
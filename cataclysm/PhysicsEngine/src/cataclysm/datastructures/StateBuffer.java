@@ -0,0 +1,222 @@
+package cataclysm.datastructures;
+
+import java.util.Arrays;
+
+import math.vector.Matrix3f;
+import math.vector.Vector3f;
+
+/**
+ * A growable block of memory holding the state of a set of objects as three
+ * flat arrays: the floats, the ints and the references to other objects. The
+ * state is written sequentially with the put methods, then read back in the
+ * same order with the get methods after a call to {@link #rewind()}. <br>
+ * No memory is allocated once the arrays have grown to the size of the state,
+ * so that a buffer can be cleared and written again every frame.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class StateBuffer {
+
+	private float[] floats = new float[256];
+	private int[] ints = new int[64];
+	private Object[] refs = new Object[64];
+
+	private int floatCount = 0;
+	private int intCount = 0;
+	private int refCount = 0;
+
+	private int floatPosition = 0;
+	private int intPosition = 0;
+	private int refPosition = 0;
+
+	private int floatMark = 0;
+	private int intMark = 0;
+	private int refMark = 0;
+
+	/**
+	 * Empties the buffer, the references it holds are released.
+	 */
+	public void clear() {
+		Arrays.fill(refs, 0, refCount, null);
+		floatCount = intCount = refCount = 0;
+		rewind();
+	}
+
+	/**
+	 * Moves the reading position back to the start of the buffer.
+	 */
+	public void rewind() {
+		floatPosition = intPosition = refPosition = 0;
+		floatMark = intMark = refMark = 0;
+	}
+
+	/**
+	 * Remembers the current reading position, to read the same values again after
+	 * a call to {@link #reset()}.
+	 */
+	public void mark() {
+		floatMark = floatPosition;
+		intMark = intPosition;
+		refMark = refPosition;
+	}
+
+	/**
+	 * Moves the reading position back to the last call to {@link #mark()}.
+	 */
+	public void reset() {
+		floatPosition = floatMark;
+		intPosition = intMark;
+		refPosition = refMark;
+	}
+
+	public void putFloat(float value) {
+		if (floatCount == floats.length) {
+			floats = Arrays.copyOf(floats, 2 * floatCount);
+		}
+		floats[floatCount++] = value;
+	}
+
+	/**
+	 * Appends a range of an array of floats.
+	 *
+	 * @param src
+	 * @param offset The index of the first float to copy.
+	 * @param length The number of floats to copy.
+	 */
+	public void putFloats(float[] src, int offset, int length) {
+		if (floatCount + length > floats.length) {
+			floats = Arrays.copyOf(floats, Math.max(2 * floats.length, floatCount + length));
+		}
+		System.arraycopy(src, offset, floats, floatCount, length);
+		floatCount += length;
+	}
+
+	public void putVector(Vector3f v) {
+		if (floatCount + 3 > floats.length) {
+			floats = Arrays.copyOf(floats, 2 * floats.length);
+		}
+		floats[floatCount++] = v.x;
+		floats[floatCount++] = v.y;
+		floats[floatCount++] = v.z;
+	}
+
+	public void putMatrix(Matrix3f m) {
+		if (floatCount + 9 > floats.length) {
+			floats = Arrays.copyOf(floats, 2 * floats.length);
+		}
+		floats[floatCount++] = m.m00;
+		floats[floatCount++] = m.m01;
+		floats[floatCount++] = m.m02;
+		floats[floatCount++] = m.m10;
+		floats[floatCount++] = m.m11;
+		floats[floatCount++] = m.m12;
+		floats[floatCount++] = m.m20;
+		floats[floatCount++] = m.m21;
+		floats[floatCount++] = m.m22;
+	}
+
+	public void putInt(int value) {
+		if (intCount == ints.length) {
+			ints = Arrays.copyOf(ints, 2 * intCount);
+		}
+		ints[intCount++] = value;
+	}
+
+	public void putBoolean(boolean value) {
+		putInt(value ? 1 : 0);
+	}
+
+	/**
+	 * Appends a reference to an object, the object itself isn't copied.
+	 *
+	 * @param ref
+	 */
+	public void putRef(Object ref) {
+		if (refCount == refs.length) {
+			refs = Arrays.copyOf(refs, 2 * refCount);
+		}
+		refs[refCount++] = ref;
+	}
+
+	public float getFloat() {
+		check(floatPosition + 1, floatCount);
+		return floats[floatPosition++];
+	}
+
+	/**
+	 * Reads a range of floats.
+	 *
+	 * @param dest
+	 * @param offset The index of the first float written in dest.
+	 * @param length The number of floats to read.
+	 */
+	public void getFloats(float[] dest, int offset, int length) {
+		check(floatPosition + length, floatCount);
+		System.arraycopy(floats, floatPosition, dest, offset, length);
+		floatPosition += length;
+	}
+
+	public Vector3f getVector(Vector3f dest) {
+		check(floatPosition + 3, floatCount);
+		dest.x = floats[floatPosition++];
+		dest.y = floats[floatPosition++];
+		dest.z = floats[floatPosition++];
+		return dest;
+	}
+
+	public Matrix3f getMatrix(Matrix3f dest) {
+		check(floatPosition + 9, floatCount);
+		dest.m00 = floats[floatPosition++];
+		dest.m01 = floats[floatPosition++];
+		dest.m02 = floats[floatPosition++];
+		dest.m10 = floats[floatPosition++];
+		dest.m11 = floats[floatPosition++];
+		dest.m12 = floats[floatPosition++];
+		dest.m20 = floats[floatPosition++];
+		dest.m21 = floats[floatPosition++];
+		dest.m22 = floats[floatPosition++];
+		return dest;
+	}
+
+	public int getInt() {
+		check(intPosition + 1, intCount);
+		return ints[intPosition++];
+	}
+
+	public boolean getBoolean() {
+		return getInt() != 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T getRef() {
+		check(refPosition + 1, refCount);
+		return (T) refs[refPosition++];
+	}
+
+	private static void check(int end, int count) {
+		if (end > count) {
+			throw new IllegalStateException("Error, reading past the end of the state buffer");
+		}
+	}
+
+	public int getFloatCount() {
+		return floatCount;
+	}
+
+	public int getIntCount() {
+		return intCount;
+	}
+
+	public int getRefCount() {
+		return refCount;
+	}
+
+	/**
+	 * @return The size of the state in bytes, counting 4 bytes per reference.
+	 */
+	public int getSize() {
+		return 4 * (floatCount + intCount + refCount);
+	}
+
+}
@@ -0,0 +1,573 @@
+package cataclysm.integrators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cataclysm.parallel.PhysicsWork;
+import cataclysm.parallel.PhysicsWorkerPool;
+import cataclysm.parallel.PhysicsWorkerThread;
+import cataclysm.wrappers.RigidBody;
+import math.vector.Vector3f;
+
+/**
+ * Cet objet permet d'appliquer l'attraction gravitationnelle mutuelle des
+ * solides. Avant chaque pas de temps, les masses des solides sont rangées dans
+ * un octree : les solides sont triés selon leur code de Morton, chaque noeud
+ * correspondant alors à une suite de solides consécutifs. La force appliquée à
+ * un solide est calculée avec l'approximation de Barnes-Hut : un noeud
+ * suffisamment petit vu depuis le solide est remplacé par sa masse totale
+ * placée en son centre de masse, ce qui ramène le coût d'un pas de temps à
+ * O(n log n). <br>
+ * Lorsque la simulation est mise à jour par plusieurs threads, les codes de
+ * Morton et les sous-arbres sous les deux premiers niveaux de l'octree sont
+ * calculés en parallèle. <br>
+ * <br>
+ * Les solides de masse infinie ne sont pas attirants.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class BarnesHutGravityIntegrator implements ExternalForceIntegrator {
+
+	/**
+	 * Le nombre de bits par axe des codes de Morton, c'est aussi la profondeur
+	 * maximale de l'octree.
+	 */
+	private static final int LEVELS = 13;
+
+	/**
+	 * Le nombre de bits de l'indice d'un solide dans une clé de tri.
+	 */
+	private static final int INDEX_BITS = 24;
+	private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+	/**
+	 * Le nombre maximal de solides dans une feuille.
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Le niveau des racines des sous-arbres construits en parallèle.
+	 */
+	private static final int SUBTREE_LEVEL = 2;
+
+	/**
+	 * Un tableau de noeuds. Les fils d'un noeud sont consécutifs.
+	 */
+	private static final class NodeBuffer {
+
+		private int count = 0;
+
+		/**
+		 * Le centre de masse et la masse totale du noeud.
+		 */
+		private float[] x;
+		private float[] y;
+		private float[] z;
+		private float[] mass;
+
+		/**
+		 * Le carré du côté de la case du noeud.
+		 */
+		private float[] size2;
+
+		/**
+		 * L'indice du premier fils, ou du premier solide pour une feuille.
+		 */
+		private int[] first;
+
+		/**
+		 * Le nombre de fils, ou bien ~n pour une feuille de n solides.
+		 */
+		private int[] info;
+
+		private NodeBuffer(int capacity) {
+			x = new float[capacity];
+			y = new float[capacity];
+			z = new float[capacity];
+			mass = new float[capacity];
+			size2 = new float[capacity];
+			first = new int[capacity];
+			info = new int[capacity];
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > x.length) {
+				capacity = Math.max(capacity, 2 * x.length);
+				x = Arrays.copyOf(x, capacity);
+				y = Arrays.copyOf(y, capacity);
+				z = Arrays.copyOf(z, capacity);
+				mass = Arrays.copyOf(mass, capacity);
+				size2 = Arrays.copyOf(size2, capacity);
+				first = Arrays.copyOf(first, capacity);
+				info = Arrays.copyOf(info, capacity);
+			}
+		}
+
+		private int allocate(int n) {
+			ensureCapacity(count + n);
+			int index = count;
+			count += n;
+			return index;
+		}
+
+		/**
+		 * Recopie un noeud d'un autre tableau.
+		 *
+		 * @param src
+		 * @param srcNode
+		 * @param node
+		 * @param offset  Le décalage ajouté à l'indice des fils d'un noeud interne.
+		 */
+		private void copy(NodeBuffer src, int srcNode, int node, int offset) {
+			x[node] = src.x[srcNode];
+			y[node] = src.y[srcNode];
+			z[node] = src.z[srcNode];
+			mass[node] = src.mass[srcNode];
+			size2[node] = src.size2[srcNode];
+			info[node] = src.info[srcNode];
+			first[node] = src.first[srcNode] + (src.info[srcNode] < 0 ? 0 : offset);
+		}
+	}
+
+	/**
+	 * Une tâche exécutée par chacun des threads mettant à jour la simulation.
+	 */
+	private interface Task {
+		void run(int threadIndex, int threadCount);
+	}
+
+	private float G;
+	private final float theta2;
+	private final float softening2;
+
+	/**
+	 * Les positions et masses des solides dans l'ordre de la liste.
+	 */
+	private int bodyCount = 0;
+	private float[] srcX = new float[0];
+	private float[] srcY = new float[0];
+	private float[] srcZ = new float[0];
+	private float[] srcMass = new float[0];
+
+	/**
+	 * Le code de Morton de chaque solide suivi de son indice dans la liste.
+	 */
+	private long[] keys = new long[0];
+
+	/**
+	 * Les positions et masses des solides triés selon leur code de Morton.
+	 */
+	private float[] bodyX = new float[0];
+	private float[] bodyY = new float[0];
+	private float[] bodyZ = new float[0];
+	private float[] bodyMass = new float[0];
+
+	/**
+	 * Le coin de la case racine et le côté de cette case.
+	 */
+	private float minX, minY, minZ;
+	private float extent;
+
+	/**
+	 * L'octree, sa racine est le noeud 0.
+	 */
+	private final NodeBuffer tree = new NodeBuffer(64);
+
+	/**
+	 * Les sous-arbres construits en parallèle : la place de leur racine dans
+	 * l'octree, leurs solides et les noeuds construits.
+	 */
+	private int subtreeCount = 0;
+	private int[] subtreeRoot = new int[8];
+	private int[] subtreeFrom = new int[8];
+	private int[] subtreeTo = new int[8];
+	private int[] subtreeOffset = new int[8];
+	private final List<NodeBuffer> subtrees = new ArrayList<NodeBuffer>();
+
+	/**
+	 * La pile utilisée par chaque thread pour parcourir l'octree.
+	 */
+	private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[8 * (LEVELS + 2)]);
+
+	/**
+	 * Une attraction de constante 1, avec theta = 0.5 et une longueur
+	 * d'adoucissement de 0.1.
+	 */
+	public BarnesHutGravityIntegrator() {
+		this(1.0f, 0.5f, 0.1f);
+	}
+
+	/**
+	 * @param G         La constante de gravitation.
+	 * @param theta     Un noeud de côté s vu à une distance d est approché par son
+	 *                  centre de masse si s / d < theta. Une valeur nulle revient
+	 *                  au calcul exact, en O(n²).
+	 * @param softening La longueur d'adoucissement, ajoutée à la distance entre
+	 *                  deux solides pour borner la force lorsqu'ils sont proches.
+	 */
+	public BarnesHutGravityIntegrator(float G, float theta, float softening) {
+		if (theta < 0) {
+			throw new IllegalArgumentException("Invalid theta, should be >= 0, got " + theta);
+		}
+		if (softening < 0) {
+			throw new IllegalArgumentException("Invalid softening length, should be >= 0, got " + softening);
+		}
+		this.G = G;
+		this.theta2 = theta * theta;
+		this.softening2 = softening * softening;
+	}
+
+	/**
+	 * L'octree est construit par {@link #prepare(List, PhysicsWorkerPool)}, qui
+	 * reçoit les solides.
+	 */
+	@Override
+	public void prepare() {
+
+	}
+
+	@Override
+	public void prepare(List<RigidBody> bodies, PhysicsWorkerPool workers) {
+		gatherBodies(bodies);
+		tree.count = 0;
+		subtreeCount = 0;
+		if (bodyCount == 0) {
+			return;
+		}
+
+		runTasks(workers, "computeMortonCodes", (thread, threadCount) -> {
+			int from = (int) ((long) bodyCount * thread / threadCount);
+			int to = (int) ((long) bodyCount * (thread + 1) / threadCount);
+			computeKeys(from, to);
+		});
+		Arrays.sort(keys, 0, bodyCount);
+
+		// Les premiers niveaux sont construits ici, les sous-arbres en dessous
+		// sont seulement réservés.
+		build(tree, tree.allocate(1), 0, bodyCount, 0, true);
+		while (subtrees.size() < subtreeCount) {
+			subtrees.add(new NodeBuffer(64));
+		}
+
+		runTasks(workers, "buildSubtrees", (thread, threadCount) -> {
+			for (int k = thread; k < subtreeCount; k += threadCount) {
+				NodeBuffer buffer = subtrees.get(k);
+				buffer.count = 0;
+				build(buffer, buffer.allocate(1), subtreeFrom[k], subtreeTo[k], SUBTREE_LEVEL, false);
+				aggregate(buffer, 0, SUBTREE_LEVEL, false);
+			}
+		});
+
+		// La racine d'un sous-arbre prend la place réservée, ses autres noeuds
+		// sont placés à la suite des premiers niveaux.
+		int offset = tree.count;
+		for (int k = 0; k < subtreeCount; k++) {
+			subtreeOffset[k] = offset;
+			offset += subtrees.get(k).count - 1;
+		}
+		tree.ensureCapacity(offset);
+		tree.count = offset;
+
+		runTasks(workers, "mergeSubtrees", (thread, threadCount) -> {
+			for (int k = thread; k < subtreeCount; k += threadCount) {
+				NodeBuffer buffer = subtrees.get(k);
+				int shift = subtreeOffset[k] - 1;
+				tree.copy(buffer, 0, subtreeRoot[k], shift);
+				for (int i = 1; i < buffer.count; i++) {
+					tree.copy(buffer, i, shift + i, shift);
+				}
+			}
+		});
+
+		aggregate(tree, 0, 0, true);
+	}
+
+	/**
+	 * Recopie les positions et masses des solides et calcule la case racine.
+	 */
+	private void gatherBodies(List<RigidBody> bodies) {
+		if (bodies.size() > INDEX_MASK) {
+			throw new IllegalStateException("Too many bodies for the Barnes-Hut tree: " + bodies.size());
+		}
+		if (srcX.length < bodies.size()) {
+			int capacity = Math.max(bodies.size(), 2 * srcX.length);
+			srcX = new float[capacity];
+			srcY = new float[capacity];
+			srcZ = new float[capacity];
+			srcMass = new float[capacity];
+			keys = new long[capacity];
+			bodyX = new float[capacity];
+			bodyY = new float[capacity];
+			bodyZ = new float[capacity];
+			bodyMass = new float[capacity];
+		}
+
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		minX = minY = minZ = Float.POSITIVE_INFINITY;
+		bodyCount = 0;
+		for (RigidBody body : bodies) {
+			if (body.isKinematic()) {
+				continue;
+			}
+			Vector3f position = body.getPosition();
+			srcX[bodyCount] = position.x;
+			srcY[bodyCount] = position.y;
+			srcZ[bodyCount] = position.z;
+			srcMass[bodyCount] = 1.0f / body.getInvMass();
+			bodyCount++;
+			minX = Math.min(minX, position.x);
+			minY = Math.min(minY, position.y);
+			minZ = Math.min(minZ, position.z);
+			maxX = Math.max(maxX, position.x);
+			maxY = Math.max(maxY, position.y);
+			maxZ = Math.max(maxZ, position.z);
+		}
+		extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+		// La case est légèrement agrandie pour que les solides du bord soient
+		// strictement à l'intérieur.
+		extent = extent * 1.001f + 1E-3f;
+	}
+
+	private void computeKeys(int from, int to) {
+		float scale = (1 << LEVELS) / extent;
+		int max = (1 << LEVELS) - 1;
+		for (int i = from; i < to; i++) {
+			int qx = Math.min(max, (int) ((srcX[i] - minX) * scale));
+			int qy = Math.min(max, (int) ((srcY[i] - minY) * scale));
+			int qz = Math.min(max, (int) ((srcZ[i] - minZ) * scale));
+			long code = spreadBits(qx) | spreadBits(qy) << 1 | spreadBits(qz) << 2;
+			keys[i] = code << INDEX_BITS | i;
+		}
+	}
+
+	/**
+	 * Insère deux zéros entre chacun des bits de v.
+	 */
+	private static long spreadBits(int v) {
+		long x = v & 0x1FFFFF;
+		x = (x | x << 32) & 0x1F00000000FFFFL;
+		x = (x | x << 16) & 0x1F0000FF0000FFL;
+		x = (x | x << 8) & 0x100F00F00F00F00FL;
+		x = (x | x << 4) & 0x10C30C30C30C30C3L;
+		x = (x | x << 2) & 0x1249249249249249L;
+		return x;
+	}
+
+	/**
+	 * @return L'indice du fils contenant le solide trié i pour un noeud de niveau
+	 *         level.
+	 */
+	private int octant(int i, int level) {
+		return (int) (keys[i] >>> (INDEX_BITS + 3 * (LEVELS - 1 - level))) & 7;
+	}
+
+	/**
+	 * Construit le noeud contenant les solides triés [from, to).
+	 *
+	 * @param buffer
+	 * @param node     La place du noeud, déjà réservée.
+	 * @param from
+	 * @param to
+	 * @param level    Le niveau du noeud, 0 pour la racine.
+	 * @param topLevel true si les noeuds du niveau {@link #SUBTREE_LEVEL} doivent
+	 *                 seulement être réservés.
+	 */
+	private void build(NodeBuffer buffer, int node, int from, int to, int level, boolean topLevel) {
+		float side = extent / (1 << level);
+		buffer.size2[node] = side * side;
+
+		if (to - from <= LEAF_SIZE || level == LEVELS) {
+			buildLeaf(buffer, node, from, to);
+			return;
+		}
+
+		if (topLevel && level == SUBTREE_LEVEL) {
+			if (subtreeCount == subtreeRoot.length) {
+				subtreeRoot = Arrays.copyOf(subtreeRoot, 2 * subtreeCount);
+				subtreeFrom = Arrays.copyOf(subtreeFrom, 2 * subtreeCount);
+				subtreeTo = Arrays.copyOf(subtreeTo, 2 * subtreeCount);
+				subtreeOffset = Arrays.copyOf(subtreeOffset, 2 * subtreeCount);
+			}
+			subtreeRoot[subtreeCount] = node;
+			subtreeFrom[subtreeCount] = from;
+			subtreeTo[subtreeCount] = to;
+			subtreeCount++;
+			return;
+		}
+
+		int childCount = 1;
+		for (int i = from + 1; i < to; i++) {
+			if (octant(i, level) != octant(i - 1, level)) {
+				childCount++;
+			}
+		}
+
+		int first = buffer.allocate(childCount);
+		buffer.first[node] = first;
+		buffer.info[node] = childCount;
+
+		int start = from;
+		int child = first;
+		for (int i = from + 1; i <= to; i++) {
+			if (i == to || octant(i, level) != octant(start, level)) {
+				build(buffer, child++, start, i, level + 1, topLevel);
+				start = i;
+			}
+		}
+	}
+
+	/**
+	 * Range les solides triés [from, to) dans une feuille et calcule leur centre
+	 * de masse.
+	 */
+	private void buildLeaf(NodeBuffer buffer, int node, int from, int to) {
+		float mass = 0, x = 0, y = 0, z = 0;
+		for (int i = from; i < to; i++) {
+			int index = (int) (keys[i] & INDEX_MASK);
+			bodyX[i] = srcX[index];
+			bodyY[i] = srcY[index];
+			bodyZ[i] = srcZ[index];
+			bodyMass[i] = srcMass[index];
+			mass += bodyMass[i];
+			x += bodyMass[i] * bodyX[i];
+			y += bodyMass[i] * bodyY[i];
+			z += bodyMass[i] * bodyZ[i];
+		}
+		buffer.first[node] = from;
+		buffer.info[node] = ~(to - from);
+		setCenterOfMass(buffer, node, mass, x, y, z);
+	}
+
+	/**
+	 * Calcule la masse et le centre de masse des noeuds internes à partir de leurs
+	 * fils.
+	 *
+	 * @param buffer
+	 * @param node
+	 * @param level
+	 * @param topLevel true si les noeuds du niveau {@link #SUBTREE_LEVEL} sont des
+	 *                 sous-arbres déjà calculés.
+	 */
+	private void aggregate(NodeBuffer buffer, int node, int level, boolean topLevel) {
+		int info = buffer.info[node];
+		if (info < 0 || (topLevel && level == SUBTREE_LEVEL)) {
+			return;
+		}
+		float mass = 0, x = 0, y = 0, z = 0;
+		int first = buffer.first[node];
+		for (int child = first; child < first + info; child++) {
+			aggregate(buffer, child, level + 1, topLevel);
+			float m = buffer.mass[child];
+			mass += m;
+			x += m * buffer.x[child];
+			y += m * buffer.y[child];
+			z += m * buffer.z[child];
+		}
+		setCenterOfMass(buffer, node, mass, x, y, z);
+	}
+
+	private static void setCenterOfMass(NodeBuffer buffer, int node, float mass, float x, float y, float z) {
+		buffer.mass[node] = mass;
+		buffer.x[node] = x / mass;
+		buffer.y[node] = y / mass;
+		buffer.z[node] = z / mass;
+	}
+
+	/**
+	 * Exécute une tâche sur chacun des threads, ou bien sur le thread courant s'il
+	 * n'y en a pas.
+	 */
+	private static void runTasks(PhysicsWorkerPool workers, String name, Task task) {
+		if (workers == null) {
+			task.run(0, 1);
+			return;
+		}
+		int threadCount = workers.getThreadCount();
+		List<PhysicsWork> tasks = new ArrayList<PhysicsWork>(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			final int threadIndex = i;
+			tasks.add(new PhysicsWork() {
+
+				@Override
+				public void run(PhysicsWorkerThread worker) {
+					task.run(threadIndex, threadCount);
+					worker.waitForTermination();
+				}
+
+			});
+		}
+		workers.scheduleWork(tasks, name, 1);
+		workers.waitForTaskTermination();
+	}
+
+	@Override
+	public void applyExternalForces(RigidBody body, float timeStep) {
+		if (tree.count == 0) {
+			return;
+		}
+		Vector3f position = body.getPosition();
+		float px = position.x;
+		float py = position.y;
+		float pz = position.z;
+		float ax = 0, ay = 0, az = 0;
+
+		int[] stack = stacks.get();
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			int info = tree.info[node];
+			if (info < 0) {
+				// Dans une feuille, l'attraction de chaque solide est calculée. Le solide
+				// lui-même et ceux placés exactement au même endroit sont ignorés, leur
+				// attraction n'a pas de direction.
+				int first = tree.first[node];
+				for (int i = first; i < first + ~info; i++) {
+					float dx = bodyX[i] - px;
+					float dy = bodyY[i] - py;
+					float dz = bodyZ[i] - pz;
+					float d2 = dx * dx + dy * dy + dz * dz;
+					if (d2 == 0) {
+						continue;
+					}
+					d2 += softening2;
+					float f = bodyMass[i] / (d2 * (float) Math.sqrt(d2));
+					ax += f * dx;
+					ay += f * dy;
+					az += f * dz;
+				}
+				continue;
+			}
+
+			float dx = tree.x[node] - px;
+			float dy = tree.y[node] - py;
+			float dz = tree.z[node] - pz;
+			float d2 = dx * dx + dy * dy + dz * dz;
+			if (tree.size2[node] < theta2 * d2) {
+				d2 += softening2;
+				float f = tree.mass[node] / (d2 * (float) Math.sqrt(d2));
+				ax += f * dx;
+				ay += f * dy;
+				az += f * dz;
+			} else {
+				int first = tree.first[node];
+				for (int child = first; child < first + info; child++) {
+					stack[top++] = child;
+				}
+			}
+		}
+
+		Vector3f velocity = body.getVelocity();
+		velocity.x += G * ax * timeStep;
+		velocity.y += G * ay * timeStep;
+		velocity.z += G * az * timeStep;
+	}
+
+	@Override
+	public void setGravityStrength(float gravityStrength) {
+		this.G = gravityStrength;
+	}
+
+}
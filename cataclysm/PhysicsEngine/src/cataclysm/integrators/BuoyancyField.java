@@ -0,0 +1,151 @@
+package cataclysm.integrators;
+
+import cataclysm.broadphase.AABB;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.Wrapper;
+import math.vector.Vector3f;
+
+/**
+ * Un volume de liquide dont la surface est la face supérieure de sa boîte
+ * englobante. Chaque enveloppe d'un corps est assimilée à sa sphère englobante
+ * pour estimer la fraction immergée de son volume : la hauteur de la calotte
+ * comprise entre le fond et la surface, réduite par la part de la boîte de la
+ * sphère qui déborde sur les côtés du volume. La poussée d'Archimède est
+ * appliquée au centre de l'enveloppe, ce qui redresse les corps en partie
+ * immergés. Une traînée freine les corps dans le liquide. <br>
+ * Le champ agit sur tous les corps dont la boîte englobante touche le volume,
+ * un corps flottant a souvent son centre de masse hors du liquide.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class BuoyancyField extends ForceField {
+
+	private float fluidDensity;
+	private float gravity;
+	private float dragCoefficient;
+
+	/**
+	 * @param min             Le coin inférieur du volume de liquide.
+	 * @param max             Le coin supérieur du volume de liquide, max.y est
+	 *                        la hauteur de la surface.
+	 * @param fluidDensity    La masse volumique du liquide.
+	 * @param gravity         L'intensité de la pesanteur, la poussée est dirigée
+	 *                        selon [+Y].
+	 * @param dragCoefficient Le coefficient de traînée pour un corps entièrement
+	 *                        immergé, en N.s/m.
+	 */
+	public BuoyancyField(Vector3f min, Vector3f max, float fluidDensity, float gravity, float dragCoefficient) {
+		if (fluidDensity < 0) {
+			throw new IllegalArgumentException("Invalid fluid density, should be >= 0, got " + fluidDensity);
+		}
+		if (dragCoefficient < 0) {
+			throw new IllegalArgumentException("Invalid drag coefficient, should be >= 0, got " + dragCoefficient);
+		}
+		setBounds(min, max);
+		this.fluidDensity = fluidDensity;
+		this.gravity = gravity;
+		this.dragCoefficient = dragCoefficient;
+	}
+
+	@Override
+	public boolean actsOnBoundingBox() {
+		return true;
+	}
+
+	@Override
+	public void accumulateForces(RigidBody body, float timeStep, Vector3f force, Vector3f torque) {
+		AABB bounds = getBounds();
+		Vector3f position = body.getPosition();
+		float surface = bounds.maxY;
+		float totalVolume = 0;
+		float submergedVolume = 0;
+
+		for (Wrapper wrapper : body.getWrappers()) {
+			float volume = wrapper.getMassProperties().getVolume();
+			totalVolume += volume;
+
+			Vector3f centroid = wrapper.getCentroid();
+			float r = wrapper.getMaxRadius();
+			float bottom = centroid.y - r;
+			float fraction = capFraction(surface - bottom, r) - capFraction(bounds.minY - bottom, r);
+			fraction *= overlap(centroid.x, r, bounds.minX, bounds.maxX);
+			fraction *= overlap(centroid.z, r, bounds.minZ, bounds.maxZ);
+			if (fraction <= 0) {
+				continue;
+			}
+			submergedVolume += fraction * volume;
+
+			float lift = fluidDensity * gravity * fraction * volume;
+			force.y += lift;
+			// couple de la force (0, lift, 0) appliquée au centre de l'enveloppe
+			torque.x -= (centroid.z - position.z) * lift;
+			torque.z += (centroid.x - position.x) * lift;
+		}
+
+		if (totalVolume > 0 && submergedVolume > 0) {
+			Vector3f velocity = body.getVelocity();
+			float drag = dragCoefficient * submergedVolume / totalVolume;
+			force.x -= drag * velocity.x;
+			force.y -= drag * velocity.y;
+			force.z -= drag * velocity.z;
+		}
+	}
+
+	/**
+	 * @param h La hauteur de la calotte, mesurée depuis le bas de la sphère.
+	 * @param r Le rayon de la sphère.
+	 * @return Le volume de la calotte rapporté à celui de la sphère.
+	 */
+	private static float capFraction(float h, float r) {
+		h = Math.min(Math.max(h, 0), 2 * r);
+		return h * h * (3 * r - h) / (4 * r * r * r);
+	}
+
+	/**
+	 * @param center Le centre de la sphère selon un axe.
+	 * @param r      Le rayon de la sphère.
+	 * @param min    Le bord inférieur du volume selon cet axe.
+	 * @param max    Le bord supérieur du volume selon cet axe.
+	 * @return La part du diamètre de la sphère comprise dans le volume.
+	 */
+	private static float overlap(float center, float r, float min, float max) {
+		float length = Math.min(center + r, max) - Math.max(center - r, min);
+		return Math.min(Math.max(length / (2 * r), 0), 1);
+	}
+
+	/**
+	 * Déplace le volume de liquide.
+	 *
+	 * @param min
+	 * @param max
+	 */
+	public void setVolume(Vector3f min, Vector3f max) {
+		setBounds(min, max);
+	}
+
+	public float getFluidDensity() {
+		return fluidDensity;
+	}
+
+	public void setFluidDensity(float fluidDensity) {
+		this.fluidDensity = fluidDensity;
+	}
+
+	public float getGravity() {
+		return gravity;
+	}
+
+	public void setGravity(float gravity) {
+		this.gravity = gravity;
+	}
+
+	public float getDragCoefficient() {
+		return dragCoefficient;
+	}
+
+	public void setDragCoefficient(float dragCoefficient) {
+		this.dragCoefficient = dragCoefficient;
+	}
+
+}
@@ -1,6 +1,9 @@
 package cataclysm.integrators;
 
+import java.util.List;
+
 import cataclysm.annotations.Parallelizable;
+import cataclysm.parallel.PhysicsWorkerPool;
 import cataclysm.wrappers.RigidBody;
 
 /**
@@ -17,6 +20,20 @@ public interface ExternalForceIntegrator {
 	 */
 	public void prepare();
 
+	/**
+	 * This function is called as a setup operation before actually updating the
+	 * bodies, it gives access to all the bodies of the simulation. The default
+	 * implementation calls {@link #prepare()}.
+	 * 
+	 * @param bodies  The bodies of the simulation
+	 * @param workers The threads updating the simulation, or null if it is
+	 *                updated by the calling thread only. The threads are idle
+	 *                during this call and can be given some work.
+	 */
+	public default void prepare(List<RigidBody> bodies, PhysicsWorkerPool workers) {
+		prepare();
+	}
+
 	public void setGravityStrength(float gravityStrength);
 
 	/**
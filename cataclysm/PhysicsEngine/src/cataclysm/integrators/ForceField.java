@@ -0,0 +1,121 @@
+package cataclysm.integrators;
+
+import cataclysm.annotations.Parallelizable;
+import cataclysm.annotations.ReadOnly;
+import cataclysm.broadphase.AABB;
+import cataclysm.broadphase.BroadPhaseNode;
+import cataclysm.wrappers.RigidBody;
+import math.vector.Vector3f;
+
+/**
+ * Un champ de forces local : vent, poussée d'Archimède, explosion,
+ * attracteur... Un champ n'agit que sur les corps dont le centre de masse est
+ * dans sa boîte englobante, ou dont la boîte englobante touche la sienne si
+ * {@link #actsOnBoundingBox()} est vrai. Les champs sont enregistrés dans un
+ * {@link ForceFieldManager} qui les range dans une hiérarchie de boîtes, chaque
+ * corps n'est donc comparé qu'aux champs qui le contiennent.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public abstract class ForceField {
+
+	private final AABB bounds = new AABB();
+	final BroadPhaseNode<ForceField> node = new BroadPhaseNode<ForceField>(bounds, this);
+
+	/**
+	 * Le gestionnaire dans lequel le champ est enregistré, ou null.
+	 */
+	ForceFieldManager manager;
+
+	/**
+	 * true si la boîte englobante a changé depuis la dernière mise à jour du
+	 * gestionnaire.
+	 */
+	boolean boundsChanged = false;
+
+	/**
+	 * @return La boîte englobante du champ.
+	 */
+	@ReadOnly
+	public AABB getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Modifie la boîte englobante du champ. La hiérarchie du gestionnaire est
+	 * mise à jour au début du pas de temps suivant.
+	 *
+	 * @param min
+	 * @param max
+	 */
+	protected void setBounds(Vector3f min, Vector3f max) {
+		bounds.minX = min.x;
+		bounds.minY = min.y;
+		bounds.minZ = min.z;
+		bounds.maxX = max.x;
+		bounds.maxY = max.y;
+		bounds.maxZ = max.z;
+		bounds.computeSurfaceArea();
+		boundsChanged = true;
+	}
+
+	/**
+	 * Modifie la boîte englobante du champ pour qu'elle contienne la sphère
+	 * donnée.
+	 *
+	 * @param center
+	 * @param radius
+	 */
+	protected void setBounds(Vector3f center, float radius) {
+		bounds.set(center, radius);
+		bounds.computeSurfaceArea();
+		boundsChanged = true;
+	}
+
+	/**
+	 * Cette fonction est appelée une fois par pas de temps, avant l'application
+	 * des forces. Elle permet de déplacer le champ ou de faire varier son
+	 * intensité.
+	 *
+	 * @param timeStep La durée du pas de temps.
+	 * @return false si le champ doit être supprimé.
+	 */
+	public boolean update(float timeStep) {
+		return true;
+	}
+
+	/**
+	 * @return true si le champ agit sur les corps dont la boîte englobante touche
+	 *         la sienne, même si leur centre de masse est à l'extérieur. C'est le
+	 *         cas des champs estimant eux-mêmes la partie immergée d'un corps.
+	 *         false par défaut.
+	 */
+	public boolean actsOnBoundingBox() {
+		return false;
+	}
+
+	/**
+	 * Ajoute la force et le couple exercés par le champ sur un corps dont le
+	 * centre de masse est dans la boîte englobante, ou dont la boîte englobante
+	 * touche la sienne si {@link #actsOnBoundingBox()} est vrai. Le couple est exprimé au
+	 * centre de masse du corps. Le corps ne doit pas être modifié, les forces de
+	 * tous les champs sont appliquées ensemble par le gestionnaire. <br>
+	 * Cette fonction peut être appelée en parallèle par plusieurs threads.
+	 *
+	 * @param body     Le corps subissant le champ.
+	 * @param timeStep Le pas de temps.
+	 * @param force    La force totale, en N.
+	 * @param torque   Le couple total, en N.m.
+	 */
+	@Parallelizable
+	public abstract void accumulateForces(RigidBody body, float timeStep, Vector3f force, Vector3f torque);
+
+	/**
+	 * @return true si le champ est enregistré dans un gestionnaire.
+	 */
+	public boolean isRegistered() {
+		return manager != null;
+	}
+
+}
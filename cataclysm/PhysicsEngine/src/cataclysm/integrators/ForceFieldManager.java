@@ -0,0 +1,239 @@
+package cataclysm.integrators;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import cataclysm.GeometryQuery;
+import cataclysm.annotations.Internal;
+import cataclysm.annotations.Parallelizable;
+import cataclysm.broadphase.AABB;
+import cataclysm.broadphase.BroadPhaseTree;
+import cataclysm.wrappers.RigidBody;
+import cataclysm.wrappers.Wrapper;
+import math.vector.Vector3f;
+
+/**
+ * Le registre des champs de forces d'une simulation. Les champs sont rangés
+ * dans un {@link BroadPhaseTree} selon leur boîte englobante. A chaque pas de
+ * temps, chaque corps éveillé n'est comparé qu'aux champs contenant son centre
+ * de masse, ou touchant sa boîte englobante pour ceux dont
+ * {@link ForceField#actsOnBoundingBox()} est vrai. Les forces de ces champs sont additionnées puis appliquées en une
+ * seule fois, dans la même passe que l'{@link ExternalForceIntegrator} de la
+ * simulation. <br>
+ * Les corps endormis dans la boîte d'un champ sont réveillés lorsque le champ
+ * est ajouté ou que sa boîte change.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class ForceFieldManager {
+
+	/**
+	 * Les variables temporaires propres à chaque thread.
+	 */
+	private static final class Accumulator {
+		final List<ForceField> fields = new ArrayList<ForceField>();
+		final AABB box = new AABB();
+		final Vector3f force = new Vector3f();
+		final Vector3f torque = new Vector3f();
+	}
+
+	private final GeometryQuery world;
+	private final BroadPhaseTree<ForceField> tree = new BroadPhaseTree<ForceField>();
+	private final List<ForceField> fields = new ArrayList<ForceField>();
+
+	/**
+	 * Le nombre de champs enregistrés agissant sur les boîtes englobantes des
+	 * corps. Tant qu'il est nul, les corps sont réduits à leur centre de masse.
+	 */
+	private int boxFields = 0;
+
+	private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(Accumulator::new);
+	private final Set<Wrapper> wrappers = new HashSet<Wrapper>();
+
+	/**
+	 * @param world La simulation, utilisée pour trouver les corps à réveiller.
+	 */
+	public ForceFieldManager(GeometryQuery world) {
+		this.world = world;
+	}
+
+	/**
+	 * Enregistre un champ de forces, il agit dès le prochain pas de temps.
+	 *
+	 * @param field
+	 */
+	public void add(ForceField field) {
+		if (field.manager != null) {
+			throw new IllegalArgumentException("Error, the force field is already registered");
+		}
+		field.manager = this;
+		field.boundsChanged = false;
+		fields.add(field);
+		tree.add(field.node);
+		if (field.actsOnBoundingBox()) {
+			boxFields++;
+		}
+		wakeUpBodies(field);
+	}
+
+	/**
+	 * Supprime un champ de forces.
+	 *
+	 * @param field
+	 * @return true si le champ était enregistré dans ce gestionnaire.
+	 */
+	public boolean remove(ForceField field) {
+		if (field.manager != this) {
+			return false;
+		}
+		fields.remove(field);
+		tree.remove(field.node);
+		field.manager = null;
+		if (field.actsOnBoundingBox()) {
+			boxFields--;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Le nombre de champs enregistrés.
+	 */
+	public int size() {
+		return fields.size();
+	}
+
+	/**
+	 * @return Les champs enregistrés.
+	 */
+	public Iterable<ForceField> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Met à jour les champs avant l'application des forces. Les champs expirés
+	 * sont supprimés et ceux dont la boîte a changé sont replacés dans la
+	 * hiérarchie.
+	 *
+	 * @param timeStep La durée du pas de temps.
+	 */
+	@Internal
+	public void update(float timeStep) {
+		for (int i = 0; i < fields.size(); i++) {
+			ForceField field = fields.get(i);
+			if (!field.update(timeStep)) {
+				tree.remove(field.node);
+				field.manager = null;
+				fields.remove(i--);
+				if (field.actsOnBoundingBox()) {
+					boxFields--;
+				}
+				continue;
+			}
+			if (field.boundsChanged) {
+				field.boundsChanged = false;
+				tree.update(field.node);
+				wakeUpBodies(field);
+			}
+		}
+	}
+
+	/**
+	 * Applique à un corps les forces de tous les champs contenant son centre de
+	 * masse, ou touchant sa boîte englobante.
+	 *
+	 * @param body
+	 * @param timeStep
+	 */
+	@Internal
+	@Parallelizable
+	public void applyForces(RigidBody body, float timeStep) {
+		if (fields.isEmpty()) {
+			return;
+		}
+
+		Accumulator acc = accumulators.get();
+		if (boxFields == 0) {
+			tree.pointTest(body.getPosition(), acc.fields);
+		} else {
+			computeBoundingBox(body, acc.box);
+			tree.boxTest(acc.box, acc.fields);
+			// les autres champs ne voient que le centre de masse
+			Vector3f position = body.getPosition();
+			for (int i = acc.fields.size() - 1; i >= 0; i--) {
+				ForceField field = acc.fields.get(i);
+				if (!field.actsOnBoundingBox() && !field.getBounds().contains(position)) {
+					acc.fields.remove(i);
+				}
+			}
+		}
+		if (acc.fields.isEmpty()) {
+			return;
+		}
+
+		Vector3f force = acc.force;
+		Vector3f torque = acc.torque;
+		force.set(0, 0, 0);
+		torque.set(0, 0, 0);
+		for (int i = 0; i < acc.fields.size(); i++) {
+			acc.fields.get(i).accumulateForces(body, timeStep, force, torque);
+		}
+		acc.fields.clear();
+
+		force.set(force.x * timeStep, force.y * timeStep, force.z * timeStep);
+		body.applyImpulseLinear(force);
+		if (!body.isRotationBlocked()) {
+			torque.set(torque.x * timeStep, torque.y * timeStep, torque.z * timeStep);
+			body.applyImpulseTorque(torque);
+		}
+	}
+
+	/**
+	 * Calcule la boîte englobant les sphères englobantes des enveloppes d'un
+	 * corps.
+	 * 
+	 * @param body
+	 * @param dest
+	 */
+	private static void computeBoundingBox(RigidBody body, AABB dest) {
+		dest.minX = dest.minY = dest.minZ = Float.POSITIVE_INFINITY;
+		dest.maxX = dest.maxY = dest.maxZ = Float.NEGATIVE_INFINITY;
+		for (Wrapper wrapper : body.getWrappers()) {
+			Vector3f centroid = wrapper.getCentroid();
+			float r = wrapper.getMaxRadius();
+			dest.minX = Math.min(dest.minX, centroid.x - r);
+			dest.minY = Math.min(dest.minY, centroid.y - r);
+			dest.minZ = Math.min(dest.minZ, centroid.z - r);
+			dest.maxX = Math.max(dest.maxX, centroid.x + r);
+			dest.maxY = Math.max(dest.maxY, centroid.y + r);
+			dest.maxZ = Math.max(dest.maxZ, centroid.z + r);
+		}
+	}
+
+	private void wakeUpBodies(ForceField field) {
+		world.boxWrapperQuery(field.getBounds(), wrappers);
+		for (Wrapper wrapper : wrappers) {
+			RigidBody body = wrapper.getBody();
+			if (body.isSleeping()) {
+				body.setSleeping(false);
+				body.setSleepCounter(0);
+			}
+		}
+		wrappers.clear();
+	}
+
+	/**
+	 * Supprime tous les champs.
+	 */
+	public void cleanUp() {
+		for (ForceField field : fields) {
+			tree.remove(field.node);
+			field.manager = null;
+		}
+		fields.clear();
+		boxFields = 0;
+	}
+
+}
@@ -0,0 +1,126 @@
+package cataclysm.integrators;
+
+import cataclysm.wrappers.RigidBody;
+import math.vector.Vector3f;
+
+/**
+ * Une force radiale autour d'un point, dont l'intensité décroît linéairement
+ * jusqu'à s'annuler à une distance donnée. Une intensité positive repousse les
+ * corps (explosion, souffle), une intensité négative les attire (attracteur,
+ * tourbillon). <br>
+ * Le champ peut avoir une durée de vie limitée, il est alors supprimé de la
+ * simulation une fois écoulée : une explosion est un champ intense durant
+ * quelques pas de temps.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class RadialForceField extends ForceField {
+
+	private final Vector3f center = new Vector3f();
+	private float radius;
+	private float strength;
+	private float remainingTime;
+
+	/**
+	 * Construit un champ permanent.
+	 *
+	 * @param center   Le centre du champ, le vecteur est recopié.
+	 * @param radius   La distance à partir de laquelle le champ est nul.
+	 * @param strength L'intensité de la force au centre, en N.
+	 */
+	public RadialForceField(Vector3f center, float radius, float strength) {
+		this(center, radius, strength, Float.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param center   Le centre du champ, le vecteur est recopié.
+	 * @param radius   La distance à partir de laquelle le champ est nul.
+	 * @param strength L'intensité de la force au centre, en N.
+	 * @param duration La durée de vie du champ, en s.
+	 */
+	public RadialForceField(Vector3f center, float radius, float strength, float duration) {
+		if (!(radius > 0)) {
+			throw new IllegalArgumentException("Invalid radius, should be > 0, got " + radius);
+		}
+		if (!(duration > 0)) {
+			throw new IllegalArgumentException("Invalid duration, should be > 0, got " + duration);
+		}
+		this.center.set(center);
+		this.radius = radius;
+		this.strength = strength;
+		this.remainingTime = duration;
+		setBounds(center, radius);
+	}
+
+	@Override
+	public boolean update(float timeStep) {
+		if (remainingTime <= 0) {
+			return false;
+		}
+		remainingTime -= timeStep;
+		return true;
+	}
+
+	@Override
+	public void accumulateForces(RigidBody body, float timeStep, Vector3f force, Vector3f torque) {
+		Vector3f position = body.getPosition();
+		float dx = position.x - center.x;
+		float dy = position.y - center.y;
+		float dz = position.z - center.z;
+		float d2 = dx * dx + dy * dy + dz * dz;
+		if (d2 >= radius * radius || d2 == 0) {
+			return;
+		}
+		float d = (float) Math.sqrt(d2);
+		float f = strength * (1.0f - d / radius) / d;
+		force.x += f * dx;
+		force.y += f * dy;
+		force.z += f * dz;
+	}
+
+	/**
+	 * Déplace le centre du champ.
+	 *
+	 * @param center
+	 */
+	public void setCenter(Vector3f center) {
+		this.center.set(center);
+		setBounds(center, radius);
+	}
+
+	/**
+	 * @return Le centre du champ.
+	 */
+	public Vector3f getCenter() {
+		return center;
+	}
+
+	public void setRadius(float radius) {
+		if (!(radius > 0)) {
+			throw new IllegalArgumentException("Invalid radius, should be > 0, got " + radius);
+		}
+		this.radius = radius;
+		setBounds(center, radius);
+	}
+
+	public float getRadius() {
+		return radius;
+	}
+
+	public float getStrength() {
+		return strength;
+	}
+
+	public void setStrength(float strength) {
+		this.strength = strength;
+	}
+
+	/**
+	 * @return La durée de vie restante du champ, en s.
+	 */
+	public float getRemainingTime() {
+		return remainingTime;
+	}
+
+}
@@ -0,0 +1,67 @@
+package cataclysm.integrators;
+
+import cataclysm.wrappers.RigidBody;
+import math.vector.Vector3f;
+
+/**
+ * Un vent uniforme dans une boîte. La force exercée est une traînée
+ * proportionnelle à la vitesse du vent par rapport au corps, elle tend donc à
+ * entraîner les corps à la vitesse du vent.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public class WindField extends ForceField {
+
+	private final Vector3f windVelocity = new Vector3f();
+	private float dragCoefficient;
+
+	/**
+	 * @param min             Le coin inférieur de la zone de vent.
+	 * @param max             Le coin supérieur de la zone de vent.
+	 * @param windVelocity    La vitesse du vent, le vecteur est recopié.
+	 * @param dragCoefficient Le coefficient de traînée, en N.s/m.
+	 */
+	public WindField(Vector3f min, Vector3f max, Vector3f windVelocity, float dragCoefficient) {
+		if (dragCoefficient < 0) {
+			throw new IllegalArgumentException("Invalid drag coefficient, should be >= 0, got " + dragCoefficient);
+		}
+		setBounds(min, max);
+		this.windVelocity.set(windVelocity);
+		this.dragCoefficient = dragCoefficient;
+	}
+
+	@Override
+	public void accumulateForces(RigidBody body, float timeStep, Vector3f force, Vector3f torque) {
+		Vector3f velocity = body.getVelocity();
+		force.x += dragCoefficient * (windVelocity.x - velocity.x);
+		force.y += dragCoefficient * (windVelocity.y - velocity.y);
+		force.z += dragCoefficient * (windVelocity.z - velocity.z);
+	}
+
+	/**
+	 * Déplace la zone de vent.
+	 *
+	 * @param min
+	 * @param max
+	 */
+	public void setZone(Vector3f min, Vector3f max) {
+		setBounds(min, max);
+	}
+
+	/**
+	 * @return La vitesse du vent, le vecteur peut être modifié.
+	 */
+	public Vector3f getWindVelocity() {
+		return windVelocity;
+	}
+
+	public float getDragCoefficient() {
+		return dragCoefficient;
+	}
+
+	public void setDragCoefficient(float dragCoefficient) {
+		this.dragCoefficient = dragCoefficient;
+	}
+
+}
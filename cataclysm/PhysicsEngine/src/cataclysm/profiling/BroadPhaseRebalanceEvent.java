@@ -0,0 +1,47 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A large rebalance of a bounding volume tree while updating a leaf: the
+ * reinsertion of the leaf triggered many rotations of its new ancestors.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.BroadPhaseRebalance")
+@Label("Broadphase Rebalance")
+@Category({ "Cataclysm", "Physics" })
+@Description("A large rebalance of a bounding volume tree")
+@StackTrace(false)
+public final class BroadPhaseRebalanceEvent extends Event {
+
+	@Label("From Root")
+	@Description("true if the leaf has been reinserted from the root of the tree")
+	boolean fromRoot;
+
+	@Label("Rotations")
+	@Description("The number of rotations performed while refitting the ancestors")
+	int rotations;
+
+	/**
+	 * Emits an event if it is enabled.
+	 * 
+	 * @param fromRoot
+	 * @param rotations
+	 */
+	public static void emit(boolean fromRoot, int rotations) {
+		BroadPhaseRebalanceEvent event = new BroadPhaseRebalanceEvent();
+		if (event.shouldCommit()) {
+			event.fromRoot = fromRoot;
+			event.rotations = rotations;
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A contact allocated because the pool of free contacts was empty. The pools
+ * keep the contacts for reuse, these events should stop once the simulation
+ * has reached its steady state.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.ContactPoolGrowth")
+@Label("Contact Pool Growth")
+@Category({ "Cataclysm", "Physics" })
+@Description("A contact allocated because its pool was empty")
+@StackTrace(false)
+public final class ContactPoolGrowthEvent extends Event {
+
+	@Label("Mesh Contact")
+	@Description("true for a contact between a body and a static mesh")
+	boolean meshContact;
+
+	@Label("Max Contacts")
+	@Description("The number of contact points of the contact")
+	int maxContacts;
+
+	/**
+	 * Emits an event if it is enabled.
+	 * 
+	 * @param meshContact
+	 * @param maxContacts
+	 */
+	public static void emit(boolean meshContact, int maxContacts) {
+		ContactPoolGrowthEvent event = new ContactPoolGrowthEvent();
+		if (event.shouldCommit()) {
+			event.meshContact = meshContact;
+			event.maxContacts = maxContacts;
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package cataclysm.profiling;
+
+/**
+ * Emits a {@link PhaseTimingEvent} for each phase measured by each thread, so
+ * that the histograms of the {@link Profiler} appear in a Flight Recorder
+ * recording next to the {@link StepEvent}s. The samples of the ring buffer
+ * aren't exported, the step events already give the duration of each frame.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public class JfrProfileExporter implements ProfileExporter {
+
+	@Override
+	public void export(Profiler profiler) {
+		for (int t = 0; t < profiler.getThreadCount(); t++) {
+			for (Phase phase : Phase.values()) {
+				LatencyHistogram h = profiler.getHistogram(t, phase);
+				if (h.getCount() == 0) {
+					continue;
+				}
+				PhaseTimingEvent event = new PhaseTimingEvent();
+				if (!event.shouldCommit()) {
+					return;
+				}
+				event.thread = profiler.getThreadName(t);
+				event.phase = phase.name();
+				event.count = h.getCount();
+				event.mean = (long) h.getMean();
+				event.p50 = h.getValueAtPercentile(50);
+				event.p99 = h.getValueAtPercentile(99);
+				event.p999 = h.getValueAtPercentile(99.9);
+				event.max = h.getMax();
+				event.commit();
+			}
+		}
+	}
+
+}
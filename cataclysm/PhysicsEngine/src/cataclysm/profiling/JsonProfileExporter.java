@@ -0,0 +1,114 @@
+package cataclysm.profiling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Writes the timings of a {@link Profiler} in a JSON document: the count, mean,
+ * p50, p99, p99.9 and max of each phase of each thread, in nanoseconds,
+ * followed by the samples of the ring buffer pushed since the last export.
+ * 
+ * <pre>
+ * {
+ *   "frames": 600,
+ *   "threads": [
+ *     { "name": "main", "phases": { "STEP": { "count": 600, "mean": 151234.5, "p50": ..., "p99": ..., "p999": ..., "max": ... }, ... } }
+ *   ],
+ *   "samples": [ [frame, "STEP", thread, nanos], ... ]
+ * }
+ * </pre>
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public class JsonProfileExporter implements ProfileExporter {
+
+	private final Path path;
+
+	/**
+	 * @param path The file written by each export, it is replaced if it exists.
+	 */
+	public JsonProfileExporter(Path path) {
+		this.path = path;
+	}
+
+	@Override
+	public void export(Profiler profiler) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			write(profiler, writer);
+		}
+	}
+
+	/**
+	 * Writes the document, the writer isn't closed.
+	 * 
+	 * @param profiler
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void write(Profiler profiler, Writer writer) throws IOException {
+		BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+
+		out.write("{\n  \"frames\": " + profiler.getFrameCount() + ",\n  \"threads\": [");
+		for (int t = 0; t < profiler.getThreadCount(); t++) {
+			out.write(t == 0 ? "\n" : ",\n");
+			out.write("    { \"name\": \"" + escape(profiler.getThreadName(t)) + "\", \"phases\": {");
+			boolean first = true;
+			for (Phase phase : Phase.values()) {
+				LatencyHistogram h = profiler.getHistogram(t, phase);
+				if (h.getCount() == 0) {
+					continue;
+				}
+				out.write(first ? "\n" : ",\n");
+				first = false;
+				out.write("      \"" + phase + "\": { \"count\": " + h.getCount() + ", \"mean\": "
+						+ String.format(Locale.ROOT, "%.1f", h.getMean()) + ", \"p50\": "
+						+ h.getValueAtPercentile(50) + ", \"p99\": " + h.getValueAtPercentile(99) + ", \"p999\": "
+						+ h.getValueAtPercentile(99.9) + ", \"max\": " + h.getMax() + " }");
+			}
+			out.write(first ? "} }" : "\n    } }");
+		}
+		out.write("\n  ],\n  \"samples\": [");
+
+		IOException[] error = new IOException[1];
+		boolean[] first = { true };
+		profiler.getSamples().drain((frame, phase, thread, nanos) -> {
+			if (error[0] != null) {
+				return;
+			}
+			try {
+				out.write(first[0] ? "\n" : ",\n");
+				out.write("    [" + frame + ", \"" + phase + "\", " + thread + ", " + nanos + "]");
+			} catch (IOException e) {
+				error[0] = e;
+			}
+			first[0] = false;
+		});
+		if (error[0] != null) {
+			throw error[0];
+		}
+		out.write("\n  ]\n}\n");
+		out.flush();
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,139 @@
+package cataclysm.profiling;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in nanoseconds with a bounded relative error, in
+ * the manner of an HDR histogram. The values below 32 are counted exactly, the
+ * larger ones are placed in 32 linear sub-buckets for each power of two, which
+ * gives a precision of about 3% over the whole range of a long. Recording a
+ * value is a constant time operation which doesn't allocate. <br>
+ * <br>
+ * A histogram is not thread-safe, the {@link Profiler} keeps one per phase and
+ * per thread.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long totalCount;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * Records a duration.
+	 * 
+	 * @param nanos A positive duration, the negative values are clamped to 0.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[index(nanos)]++;
+		totalCount++;
+		sum += nanos;
+		min = Math.min(min, nanos);
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * Adds the values recorded in another histogram to this one.
+	 * 
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Removes all the recorded values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * @return The number of recorded values.
+	 */
+	public long getCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return The smallest recorded value, or 0 if the histogram is empty.
+	 */
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return The largest recorded value.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return The mean of the recorded values, computed exactly.
+	 */
+	public double getMean() {
+		return totalCount == 0 ? 0 : (double) sum / totalCount;
+	}
+
+	/**
+	 * @param percentile A percentile between 0 and 100, for example 99.9.
+	 * @return The smallest value such that the given percentage of the recorded
+	 *         values are lower or equal to it, up to the precision of the
+	 *         histogram.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		double p = Math.min(Math.max(percentile, 0.0), 100.0);
+		long rank = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += counts[i];
+			if (count >= rank) {
+				return Math.min(highestEquivalentValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,93 @@
+package cataclysm.profiling;
+
+import cataclysm.wrappers.Wrapper;
+
+/**
+ * The phases of a simulation step measured by the {@link Profiler}. The
+ * narrowphase is split by pair of wrapper types.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public enum Phase {
+
+	/**
+	 * A whole call to the simulation of one frame.
+	 */
+	STEP,
+	/**
+	 * The update of the actors.
+	 */
+	ACTORS,
+	/**
+	 * The update of the force fields and the application of the external forces.
+	 */
+	FORCES,
+	/**
+	 * The update of the boxes of the moving wrappers in the bvh.
+	 */
+	BROADPHASE_REFIT,
+	/**
+	 * The bvh and static mesh queries and the update of the contact lists.
+	 */
+	PAIR_UPDATE,
+	NARROWPHASE_SPHERE_SPHERE,
+	NARROWPHASE_SPHERE_CAPSULE,
+	NARROWPHASE_SPHERE_HULL,
+	NARROWPHASE_CAPSULE_CAPSULE,
+	NARROWPHASE_CAPSULE_HULL,
+	NARROWPHASE_HULL_HULL,
+	/**
+	 * The collision tests between the wrappers and the triangles of the static
+	 * meshes.
+	 */
+	NARROWPHASE_MESH,
+	/**
+	 * The velocity iterations of the constraint solver.
+	 */
+	SOLVER_VELOCITY,
+	/**
+	 * The position iterations of the constraint solver.
+	 */
+	SOLVER_POSITION,
+	/**
+	 * The integration of the velocities and positions of the bodies.
+	 */
+	INTEGRATION,
+	/**
+	 * The recording of the simulation.
+	 */
+	RECORDING;
+
+	private static final Phase[] VALUES = values();
+
+	/**
+	 * @param ordinal
+	 * @return The phase with the given ordinal.
+	 */
+	public static Phase get(int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	/**
+	 * @param A
+	 * @param B
+	 * @return The narrowphase of the collision test between two wrappers.
+	 */
+	public static Phase narrowphase(Wrapper.Type A, Wrapper.Type B) {
+		if (A.ordinal() > B.ordinal()) {
+			Wrapper.Type temp = A;
+			A = B;
+			B = temp;
+		}
+		switch (A) {
+		case Sphere:
+			return B == Wrapper.Type.Sphere ? NARROWPHASE_SPHERE_SPHERE
+					: B == Wrapper.Type.Capsule ? NARROWPHASE_SPHERE_CAPSULE : NARROWPHASE_SPHERE_HULL;
+		case Capsule:
+			return B == Wrapper.Type.Capsule ? NARROWPHASE_CAPSULE_CAPSULE : NARROWPHASE_CAPSULE_HULL;
+		default:
+			return NARROWPHASE_HULL_HULL;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The distribution of the time spent per frame by a thread in a {@link Phase},
+ * emitted by the {@link JfrProfileExporter}.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.PhaseTiming")
+@Label("Phase Timing")
+@Category({ "Cataclysm", "Physics" })
+@Description("The time spent per frame by a thread in a phase of the simulation")
+@StackTrace(false)
+public final class PhaseTimingEvent extends Event {
+
+	@Label("Thread")
+	String thread;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Frames")
+	long count;
+
+	@Label("Mean")
+	@Timespan
+	long mean;
+
+	@Label("P50")
+	@Timespan
+	long p50;
+
+	@Label("P99")
+	@Timespan
+	long p99;
+
+	@Label("P99.9")
+	@Timespan
+	long p999;
+
+	@Label("Max")
+	@Timespan
+	long max;
+
+}
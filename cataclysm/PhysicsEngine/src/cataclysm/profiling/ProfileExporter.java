@@ -0,0 +1,24 @@
+package cataclysm.profiling;
+
+import java.io.IOException;
+
+/**
+ * Exports the timings recorded by a {@link Profiler}.
+ * 
+ * @see JsonProfileExporter
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@FunctionalInterface
+public interface ProfileExporter {
+
+	/**
+	 * Called by {@link Profiler#export(ProfileExporter)}, between two frames.
+	 * 
+	 * @param profiler
+	 * @throws IOException
+	 */
+	public void export(Profiler profiler) throws IOException;
+
+}
@@ -0,0 +1,218 @@
+package cataclysm.profiling;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cataclysm.PhysicsWorld;
+
+/**
+ * Measures the time spent in each {@link Phase} of the simulation, for each
+ * thread taking part in it. The time spent by a thread in a phase is summed
+ * over a frame, then recorded at the end of the frame in a
+ * {@link LatencyHistogram} and pushed in a {@link SampleRingBuffer} holding the
+ * latest frames, so that the spikes can be traced back to a phase and a frame.
+ * <br>
+ * <br>
+ * The profiler is disabled by default, a disabled profiler costs a field read
+ * per measure. A measure is taken with:
+ * 
+ * <pre>
+ * long start = profiler.start();
+ * // ...
+ * profiler.stop(Phase.PAIR_UPDATE, start);
+ * </pre>
+ * 
+ * {@link #start()} and {@link #stop(Phase, long)} may be called by any thread.
+ * {@link #endFrame(long)} is called by {@link PhysicsWorld#update(int)} once
+ * all the workers of the frame are done.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public final class Profiler {
+
+	/**
+	 * The measures of one thread.
+	 */
+	private static final class ThreadProfile {
+		final String name;
+		final long[] frameNanos = new long[Phase.values().length];
+		final boolean[] measured = new boolean[Phase.values().length];
+		final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+
+		ThreadProfile(String name) {
+			this.name = name;
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+	}
+
+	private boolean enabled = false;
+
+	private final List<ThreadProfile> threads = new CopyOnWriteArrayList<ThreadProfile>();
+	private final ThreadLocal<ThreadProfile> profiles = ThreadLocal.withInitial(this::register);
+	private final SampleRingBuffer samples;
+
+	private long frames = 0;
+
+	/**
+	 * Builds a profiler keeping the timings of about the last 4096 samples.
+	 */
+	public Profiler() {
+		this(4096);
+	}
+
+	/**
+	 * @param capacity The capacity of the ring buffer of the latest samples.
+	 */
+	public Profiler(int capacity) {
+		this.samples = new SampleRingBuffer(capacity);
+	}
+
+	private ThreadProfile register() {
+		ThreadProfile profile = new ThreadProfile(Thread.currentThread().getName());
+		threads.add(profile);
+		return profile;
+	}
+
+	/**
+	 * @return A timestamp to pass to {@link #stop(Phase, long)}, or 0 if the
+	 *         profiler is disabled.
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time elapsed since start to the current frame of the calling
+	 * thread.
+	 * 
+	 * @param phase
+	 * @param start The value returned by {@link #start()}.
+	 */
+	public void stop(Phase phase, long start) {
+		if (start == 0) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		ThreadProfile profile = profiles.get();
+		profile.frameNanos[phase.ordinal()] += elapsed;
+		profile.measured[phase.ordinal()] = true;
+	}
+
+	/**
+	 * Records the timings of a frame in the histograms and in the ring buffer.
+	 * 
+	 * @param frame The index of the frame.
+	 */
+	public void endFrame(long frame) {
+		if (!enabled) {
+			return;
+		}
+		for (int t = 0; t < threads.size(); t++) {
+			ThreadProfile profile = threads.get(t);
+			for (int i = 0; i < profile.measured.length; i++) {
+				if (!profile.measured[i]) {
+					continue;
+				}
+				long nanos = profile.frameNanos[i];
+				profile.histograms[i].record(nanos);
+				samples.push(frame, Phase.get(i), t, nanos);
+				profile.frameNanos[i] = 0;
+				profile.measured[i] = false;
+			}
+		}
+		frames++;
+	}
+
+	/**
+	 * Enables or disables the measures. The profiler is disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The number of frames recorded since the last reset.
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @return The number of threads having taken a measure.
+	 */
+	public int getThreadCount() {
+		return threads.size();
+	}
+
+	/**
+	 * @param thread The index of a thread, in the order of their first measure.
+	 * @return The name of the thread.
+	 */
+	public String getThreadName(int thread) {
+		return threads.get(thread).name;
+	}
+
+	/**
+	 * @param thread The index of a thread, in the order of their first measure.
+	 * @param phase
+	 * @return The histogram of the time spent per frame by the thread in the
+	 *         phase. It must not be modified.
+	 */
+	public LatencyHistogram getHistogram(int thread, Phase phase) {
+		return threads.get(thread).histograms[phase.ordinal()];
+	}
+
+	/**
+	 * @param phase
+	 * @param dest  Receives the timings of the phase of all the threads.
+	 * @return dest
+	 */
+	public LatencyHistogram getMergedHistogram(Phase phase, LatencyHistogram dest) {
+		dest.reset();
+		for (ThreadProfile profile : threads) {
+			dest.add(profile.histograms[phase.ordinal()]);
+		}
+		return dest;
+	}
+
+	/**
+	 * @return The timings of the latest frames.
+	 */
+	public SampleRingBuffer getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Removes the recorded timings of all the threads. The samples still in the
+	 * ring buffer are kept.
+	 */
+	public void reset() {
+		for (ThreadProfile profile : threads) {
+			for (LatencyHistogram histogram : profile.histograms) {
+				histogram.reset();
+			}
+		}
+		frames = 0;
+	}
+
+	/**
+	 * Exports the recorded timings.
+	 * 
+	 * @param exporter
+	 * @throws IOException
+	 */
+	public void export(ProfileExporter exporter) throws IOException {
+		exporter.export(this);
+	}
+
+}
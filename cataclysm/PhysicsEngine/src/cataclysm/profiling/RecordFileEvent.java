@@ -0,0 +1,47 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An input/output operation on a record file, the duration of the event is the
+ * duration of the operation.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.RecordFile")
+@Label("Record File")
+@Category({ "Cataclysm", "Record" })
+@Description("An operation on a record file")
+@StackTrace(false)
+public final class RecordFileEvent extends Event {
+
+	@Label("Path")
+	String path;
+
+	@Label("Operation")
+	@Description("open, flush or close")
+	String operation;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	/**
+	 * @param path
+	 * @param operation
+	 * @param bytes     The size of the opened file or the number of bytes written.
+	 */
+	public void set(String path, String operation, long bytes) {
+		this.path = path;
+		this.operation = operation;
+		this.bytes = bytes;
+	}
+
+}
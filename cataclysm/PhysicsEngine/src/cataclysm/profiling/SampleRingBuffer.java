@@ -0,0 +1,130 @@
+package cataclysm.profiling;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free ring buffer keeping the latest timings of the {@link Profiler}.
+ * Each sample is the time spent by a thread in a phase during a frame. Several
+ * threads can push samples concurrently, the oldest samples are overwritten
+ * when the buffer is full: a slow reader never blocks the simulation. <br>
+ * <br>
+ * A writer claims a sequence number, fills the slot and publishes the sequence
+ * number of the slot. A reader ignores the slots being written or already
+ * overwritten by checking the sequence number before and after reading them.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+public final class SampleRingBuffer {
+
+	/**
+	 * Receives the samples read from the buffer.
+	 */
+	@FunctionalInterface
+	public interface SampleVisitor {
+		/**
+		 * @param frame  The frame during which the sample was measured.
+		 * @param phase
+		 * @param thread The index of the thread in the {@link Profiler}.
+		 * @param nanos  The time spent in the phase during the frame.
+		 */
+		public void visit(long frame, Phase phase, int thread, long nanos);
+	}
+
+	private final int mask;
+	private final long[] frames;
+	private final long[] nanos;
+	private final int[] phasesAndThreads;
+	private final AtomicLongArray published;
+
+	private final AtomicLong cursor = new AtomicLong();
+	private long readCursor = 0;
+
+	/**
+	 * @param capacity The number of samples kept, rounded up to a power of two.
+	 */
+	public SampleRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity, should be > 0, got " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.frames = new long[size];
+		this.nanos = new long[size];
+		this.phasesAndThreads = new int[size];
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+	}
+
+	/**
+	 * Pushes a sample in the buffer, may be called by any thread.
+	 * 
+	 * @param frame
+	 * @param phase
+	 * @param thread
+	 * @param duration
+	 */
+	public void push(long frame, Phase phase, int thread, long duration) {
+		long sequence = cursor.getAndIncrement();
+		int slot = (int) (sequence & mask);
+		published.set(slot, -1);
+		VarHandle.storeStoreFence();
+		frames[slot] = frame;
+		nanos[slot] = duration;
+		phasesAndThreads[slot] = (thread << 8) | phase.ordinal();
+		published.lazySet(slot, sequence);
+	}
+
+	/**
+	 * Visits the samples pushed since the last call, from the oldest to the
+	 * latest. The samples which have been overwritten in the meantime are lost.
+	 * Must not be called concurrently by several readers.
+	 * 
+	 * @param visitor
+	 * @return The number of visited samples.
+	 */
+	public int drain(SampleVisitor visitor) {
+		long end = cursor.get();
+		long start = Math.max(readCursor, end - (mask + 1));
+		int visited = 0;
+		for (long sequence = start; sequence < end; sequence++) {
+			int slot = (int) (sequence & mask);
+			if (published.get(slot) != sequence) {
+				continue;
+			}
+			long frame = frames[slot];
+			long duration = nanos[slot];
+			int phaseAndThread = phasesAndThreads[slot];
+			VarHandle.loadLoadFence();
+			if (published.get(slot) != sequence) {
+				continue;
+			}
+			visitor.visit(frame, Phase.get(phaseAndThread & 0xFF), phaseAndThread >>> 8, duration);
+			visited++;
+		}
+		readCursor = end;
+		return visited;
+	}
+
+	/**
+	 * @return The number of samples which can be kept in the buffer.
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return The number of samples pushed since the creation of the buffer.
+	 */
+	public long getPushedCount() {
+		return cursor.get();
+	}
+
+}
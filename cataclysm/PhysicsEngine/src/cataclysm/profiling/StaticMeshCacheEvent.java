@@ -0,0 +1,49 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The write of the cache file of a static mesh, the duration of the event is
+ * the duration of the write. A failed write doesn't prevent the insertion of
+ * the mesh, it is only reported by this event and the file is written again
+ * the next time the mesh is built.
+ *
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.StaticMeshCache")
+@Label("Static Mesh Cache")
+@Category({ "Cataclysm", "Physics" })
+@Description("The cache file of a static mesh has been written")
+@StackTrace(false)
+public final class StaticMeshCacheEvent extends Event {
+
+	@Label("Path")
+	String path;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Error")
+	@Description("The reason of the failure, null if the file has been written")
+	String error;
+
+	/**
+	 * @param path
+	 * @param bytes The size of the file, 0 if the write has failed.
+	 * @param error The reason of the failure, or null.
+	 */
+	public void set(String path, long bytes, String error) {
+		this.path = path;
+		this.bytes = bytes;
+		this.error = error;
+	}
+
+}
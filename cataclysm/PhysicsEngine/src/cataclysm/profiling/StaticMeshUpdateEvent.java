@@ -0,0 +1,45 @@
+package cataclysm.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The insertion or the removal of static meshes in the grid of the world, the
+ * duration of the event is the duration of the update.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.StaticMeshUpdate")
+@Label("Static Mesh Update")
+@Category({ "Cataclysm", "Physics" })
+@Description("Static meshes added to or removed from the world")
+@StackTrace(false)
+public final class StaticMeshUpdateEvent extends Event {
+
+	@Label("Added")
+	@Description("true if the meshes have been added, false if they have been removed")
+	boolean added;
+
+	@Label("Meshes")
+	int meshes;
+
+	@Label("Triangles")
+	int triangles;
+
+	/**
+	 * @param added
+	 * @param meshes
+	 * @param triangles
+	 */
+	public void set(boolean added, int meshes, int triangles) {
+		this.added = added;
+		this.meshes = meshes;
+		this.triangles = triangles;
+	}
+
+}
@@ -0,0 +1,83 @@
+package cataclysm.profiling;
+
+import cataclysm.PhysicsStats;
+import cataclysm.PhysicsWorld;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A frame simulated by {@link PhysicsWorld#update(int)}, the duration of the
+ * event is the duration of the frame.
+ * 
+ * @author Briac Toussaint
+ *
+ */
+@Name("cataclysm.Step")
+@Label("Physics Step")
+@Category({ "Cataclysm", "Physics" })
+@Description("A frame simulated by the physics world")
+@StackTrace(false)
+public final class StepEvent extends Event {
+
+	@Label("Frame")
+	long frame;
+
+	@Label("Rigid Bodies")
+	int rigidBodies;
+
+	@Label("Static Meshes")
+	int staticMeshes;
+
+	@Label("Constraints")
+	int constraints;
+
+	@Label("Body to Body Contacts")
+	int bodyToBodyContacts;
+
+	@Label("Active Body to Body Contacts")
+	int bodyToBodyActiveContacts;
+
+	@Label("Body to Mesh Contacts")
+	int bodyToMeshContacts;
+
+	@Label("Active Body to Mesh Contacts")
+	int bodyToMeshActiveContacts;
+
+	@Label("Broad & Narrow Phase")
+	@Timespan
+	long broadAndNarrowphase;
+
+	@Label("Constraint Solver")
+	@Timespan
+	long constraintSolver;
+
+	@Label("Velocity Integration")
+	@Timespan
+	long velocityIntegration;
+
+	/**
+	 * Copies the counters and the phase durations of the frame which has just been
+	 * simulated.
+	 * 
+	 * @param stats
+	 */
+	public void set(PhysicsStats stats) {
+		frame = stats.getFrameCount();
+		rigidBodies = stats.getRigidBodies();
+		staticMeshes = stats.getStaticMeshes();
+		constraints = stats.getConstraints();
+		bodyToBodyContacts = stats.bodyToBodyContacts;
+		bodyToBodyActiveContacts = stats.bodyToBodyActiveContacts;
+		bodyToMeshContacts = stats.bodyToMeshContacts;
+		bodyToMeshActiveContacts = stats.bodyToMeshActiveContacts;
+		broadAndNarrowphase = (long) stats.broadAndNarrowphase.getDeltaNanos();
+		constraintSolver = (long) stats.constraintSolver.getDeltaNanos();
+		velocityIntegration = (long) stats.velocityIntegration.getDeltaNanos();
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the instrumentation of the physics engine: per-phase
+ * and per-thread latency histograms, a ring buffer of the latest frame timings
+ * and exporters to dump them, as well as the Java Flight Recorder events
+ * emitted by the engine. The events are cheap enough to be left enabled in
+ * production, they can be recorded with {@code -XX:StartFlightRecording}.
+ */
+package cataclysm.profiling;
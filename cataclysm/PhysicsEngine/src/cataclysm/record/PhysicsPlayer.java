@@ -73,9 +73,12 @@ public class PhysicsPlayer {
 	 * @see PhysicsPlayer#getPlaybackSpeed()
 	 * @see PhysicsPlayer#setPlaybackSpeed(float)
 	 * @throws IOException
+	 * @throws RecordFileDecodeError if the file isn't a record file or has been
+	 *                               written with another version of the format.
 	 */
 	public PhysicsPlayer(String path, PlaybackMode mode, float playbackSpeed) throws IOException {
 		this.file = new RecordFile(path, true);
+		readVersion();
 		this.mode = mode;
 		setPlaybackSpeed(playbackSpeed);
 	}
@@ -91,6 +94,7 @@ public class PhysicsPlayer {
 	 */
 	private void init() {
 		file.seek(0);
+		readVersion();
 		String date = readDate();
 		readFrameCount();
 
@@ -252,6 +256,17 @@ public class PhysicsPlayer {
 		nextFrame = temp;
 	}
 
+	private void readVersion() {
+		if (file.readInt() != PhysicsRecorder.MAGIC) {
+			throw new RecordFileDecodeError("Error, " + file.getFilePath() + " is not a record file");
+		}
+		int version = file.readInt();
+		if (version != PhysicsRecorder.VERSION) {
+			throw new RecordFileDecodeError("Error, " + file.getFilePath() + " has been written with version "
+					+ version + " of the record format, expected " + PhysicsRecorder.VERSION);
+		}
+	}
+
 	private String readDate() {
 		StringBuilder str = new StringBuilder();
 		file.readLine(str);
@@ -25,6 +25,17 @@ import cataclysm.wrappers.RigidBody;
  */
 public class PhysicsRecorder {
 
+	/**
+	 * The first int of a record file.
+	 */
+	static final int MAGIC = 0x43524543;
+
+	/**
+	 * The version of the encoding of the frames. Version 2 writes the rotations of
+	 * the body states as quaternions, the files written before it have no header.
+	 */
+	static final int VERSION = 2;
+
 	private final RecordFile file;
 	private final Frame currentFrame;
 	private int totalFrameCount = 0;
@@ -47,6 +58,8 @@ public class PhysicsRecorder {
 		this.file = new RecordFile(path, false);
 		currentFrame = new Frame();
 
+		file.writeInt(MAGIC);
+		file.writeInt(VERSION);
 		writeDate();
 
 		// we write two 0, the actual values will be written when the flushAndClose
@@ -9,6 +9,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.function.Function;
 
+import cataclysm.profiling.RecordFileEvent;
 import math.vector.Matrix3f;
 import math.vector.Vector3f;
 
@@ -42,15 +43,16 @@ public class RecordFile {
 		this.filePath = path;
 		File f = new File(path);
 		if (reading) {
+			RecordFileEvent event = new RecordFileEvent();
+			event.begin();
 			raf = new RandomAccessFile(f, "r");
 			if (raf.length() > Integer.MAX_VALUE) {
 				throw new IllegalArgumentException("Error the file size is bigger than Integer.MAX_VALUE");
-			}else {
-				System.out.println("Opening record file of length " + raf.length() + " bytes");
 			}
 
 			this.out = null;
 			this.buffer = raf.getChannel().map(MapMode.READ_ONLY, position, raf.length());
+			commit(event, "open", raf.length());
 		} else {
 			this.raf = null;
 			this.buffer = ByteBuffer.allocate(BUFFER_LENGTH);
@@ -80,13 +82,16 @@ public class RecordFile {
 					"Cannot call flushAndClose() when reading, close() should be called instead.");
 		}
 		try {
-			System.out.println("flushAndClose ! writing " + buffer.position() + " bytes");
-			out.write(buffer.array(), 0, buffer.position());
-			position += buffer.position();
+			RecordFileEvent event = new RecordFileEvent();
+			event.begin();
+			int bytes = buffer.position();
+			out.write(buffer.array(), 0, bytes);
+			position += bytes;
 			buffer.rewind();
 			out.close();
 			closed = true;
 			buffer = null;
+			commit(event, "close", bytes);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -124,16 +129,27 @@ public class RecordFile {
 		int remaining = buffer.remaining();
 		if (remaining < size) {
 			try {
-				System.out.println("flushing to file " + buffer.position() + " bytes");
-				out.write(buffer.array(), 0, buffer.position());
-				position += buffer.position();
+				RecordFileEvent event = new RecordFileEvent();
+				event.begin();
+				int bytes = buffer.position();
+				out.write(buffer.array(), 0, bytes);
+				position += bytes;
 				buffer.rewind();
+				commit(event, "flush", bytes);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
+	private void commit(RecordFileEvent event, String operation, long bytes) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.set(filePath, operation, bytes);
+			event.commit();
+		}
+	}
+
 	public void writeByte(byte b) {
 		flushToFile(1);
 		buffer.put(b);
@@ -1,10 +1,12 @@
 package cataclysm.record;
 
 import cataclysm.wrappers.Transform;
+import math.vector.Quaternion;
 import math.vector.Vector3f;
 
 /**
- * Represents the state of a rigidbody
+ * Represents the state of a rigidbody. The rotations are written as
+ * quaternions.
  * 
  * @author Briac
  *
@@ -15,6 +17,8 @@ public final class RigidBodyState implements ReadWriteObject {
 	public final Transform barycentricToWorld = new Transform();
 	public final Vector3f velocity = new Vector3f();
 	public final Vector3f angularVelocity = new Vector3f();
+
+	private final Quaternion temp = new Quaternion();
 	
 	public RigidBodyState() {
 	}
@@ -26,8 +30,8 @@ public final class RigidBodyState implements ReadWriteObject {
 	@Override
 	public void read(RecordFile f) {
 		ID = f.readLong();
-		bodyToWorld.read(f);
-		barycentricToWorld.read(f);
+		bodyToWorld.readCompact(f, temp);
+		barycentricToWorld.readCompact(f, temp);
 		f.readVector3f(velocity);
 		f.readVector3f(angularVelocity);
 	}
@@ -35,14 +39,14 @@ public final class RigidBodyState implements ReadWriteObject {
 	@Override
 	public void write(RecordFile f) {
 		f.writeLong(ID);
-		bodyToWorld.write(f);
-		barycentricToWorld.write(f);
+		bodyToWorld.writeCompact(f, temp);
+		barycentricToWorld.writeCompact(f, temp);
 		f.writeVector3f(velocity);
 		f.writeVector3f(angularVelocity);
 	}
 
 	@Override
 	public int size() {
-		return 8 + bodyToWorld.size() + barycentricToWorld.size() + 3*4 + 3*4;
+		return 8 + 2 * Transform.compactSize() + 3*4 + 3*4;
 	}
 }
@@ -0,0 +1,177 @@
+package cataclysm.record;
+
+import cataclysm.datastructures.IntStack;
+import cataclysm.datastructures.LongIntHashMap;
+import math.vector.Vector3f;
+
+/**
+ * The replication state of a client on the server: the packets sent to it, the
+ * baseline acknowledged for each body and the priority accumulated by each body
+ * since it was last sent. <br>
+ * Every tick, the relevance of the bodies which differ from their baseline is
+ * added to their priority, the bodies with the highest priority are sent first
+ * and their priority is reset.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class SnapshotClient {
+
+	/**
+	 * Computes how much a client cares about a body.
+	 */
+	@FunctionalInterface
+	public interface Relevance {
+		/**
+		 * @param state The state of the body on the server.
+		 * @return A relevance >= 0, added every tick to the priority of the body.
+		 */
+		public float relevance(RigidBodyState state);
+	}
+
+	final SnapshotHistory history = new SnapshotHistory();
+	int nextSequence = 0;
+
+	private final LongIntHashMap slots = new LongIntHashMap();
+	private final IntStack freeSlots = new IntStack();
+	private int slotCount = 0;
+	private float[] priorities = new float[64];
+	private int[] baselines = new int[64];
+
+	private Relevance relevance;
+
+	/**
+	 * The relevance of a body decreases with its distance to a point of view of
+	 * the client.
+	 *
+	 * @param viewPoint The point of view, the vector is shared.
+	 * @param radius    The distance at which the relevance is halved.
+	 */
+	public SnapshotClient(Vector3f viewPoint, float radius) {
+		if (!(radius > 0)) {
+			throw new IllegalArgumentException("Invalid radius, should be > 0, got " + radius);
+		}
+		float r2 = radius * radius;
+		this.relevance = state -> {
+			Vector3f p = state.barycentricToWorld.getTranslation();
+			float dx = p.x - viewPoint.x;
+			float dy = p.y - viewPoint.y;
+			float dz = p.z - viewPoint.z;
+			return r2 / (r2 + dx * dx + dy * dy + dz * dz);
+		};
+	}
+
+	/**
+	 * @param relevance
+	 */
+	public SnapshotClient(Relevance relevance) {
+		this.relevance = relevance;
+	}
+
+	public Relevance getRelevance() {
+		return relevance;
+	}
+
+	public void setRelevance(Relevance relevance) {
+		this.relevance = relevance;
+	}
+
+	/**
+	 * Marks a packet as received by the client. The states of the bodies it
+	 * contains become their baseline, unless a more recent baseline is already
+	 * acknowledged. Acknowledging a packet older than
+	 * {@value SnapshotFormat#HISTORY} packets has no effect.
+	 *
+	 * @param sequence The sequence number of the received packet
+	 */
+	public void acknowledge(int sequence) {
+		SnapshotHistory.Packet packet = history.get(sequence);
+		if (packet == null || packet.acknowledged) {
+			return;
+		}
+		packet.acknowledged = true;
+		for (int i = 0; i < packet.size; i++) {
+			int slot = slots.get(packet.IDs[i], -1);
+			if (slot != -1 && (baselines[slot] == -1 || sequence - baselines[slot] > 0)) {
+				baselines[slot] = sequence;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the replication state of a body, should be called when the body is
+	 * removed from the simulation.
+	 *
+	 * @param ID
+	 */
+	public void forget(long ID) {
+		int slot = slots.remove(ID, -1);
+		if (slot != -1) {
+			freeSlots.push(slot);
+		}
+	}
+
+	/**
+	 * Forgets everything which has been sent, the next packets won't rely on any
+	 * baseline. Should be called when the client reconnects.
+	 */
+	public void reset() {
+		history.clear();
+		slots.clear();
+		while (!freeSlots.isEmpty()) {
+			freeSlots.pop();
+		}
+		slotCount = 0;
+	}
+
+	/**
+	 * @param ID
+	 * @return The slot of the body, allocated if the body is unknown.
+	 */
+	int slot(long ID) {
+		int slot = slots.get(ID, -1);
+		if (slot != -1) {
+			return slot;
+		}
+		if (!freeSlots.isEmpty()) {
+			slot = freeSlots.pop();
+		} else {
+			slot = slotCount++;
+			if (slot == priorities.length) {
+				float[] priorities = new float[2 * slot];
+				System.arraycopy(this.priorities, 0, priorities, 0, slot);
+				this.priorities = priorities;
+				int[] baselines = new int[2 * slot];
+				System.arraycopy(this.baselines, 0, baselines, 0, slot);
+				this.baselines = baselines;
+			}
+		}
+		slots.put(ID, slot);
+		priorities[slot] = 0;
+		baselines[slot] = -1;
+		return slot;
+	}
+
+	/**
+	 * @param slot
+	 * @param sequence The sequence number of the packet being written
+	 * @return The acknowledged packet holding the baseline of the body, or null
+	 *         if the body has no baseline or if it is too old.
+	 */
+	SnapshotHistory.Packet baseline(int slot, int sequence) {
+		int baseline = baselines[slot];
+		if (baseline == -1 || sequence - baseline >= SnapshotFormat.HISTORY) {
+			return null;
+		}
+		return history.get(baseline);
+	}
+
+	float addPriority(int slot, float amount) {
+		return priorities[slot] += amount;
+	}
+
+	void resetPriority(int slot) {
+		priorities[slot] = 0;
+	}
+
+}
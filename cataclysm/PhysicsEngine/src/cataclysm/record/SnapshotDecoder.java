@@ -0,0 +1,161 @@
+package cataclysm.record;
+
+import java.nio.ByteBuffer;
+
+import cataclysm.PhysicsWorld;
+import cataclysm.wrappers.RigidBody;
+import math.vector.Quaternion;
+
+/**
+ * Decodes on a client the packets written by a {@link SnapshotEncoder}. The
+ * sequence number of each decoded packet should be sent back to the server,
+ * which passes it to {@link SnapshotClient#acknowledge(int)}. <br>
+ * The packets older than the latest decoded one are ignored, they would bring
+ * outdated states.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class SnapshotDecoder {
+
+	private final SnapshotFormat format;
+	private final SnapshotHistory history = new SnapshotHistory();
+	private final ReadWriteList<RigidBodyState> states = new ReadWriteList<RigidBodyState>(RigidBodyState::new,
+			RigidBodyState::new);
+	private final int[] current = new int[SnapshotFormat.STRIDE];
+	private final Quaternion temp = new Quaternion();
+
+	private boolean received = false;
+	private int sequence;
+	private long frame;
+
+	public SnapshotDecoder(SnapshotFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * Decodes a packet, starting at the position of src.
+	 *
+	 * @param src The position of the buffer is moved after the packet, or after
+	 *            its header if the packet is outdated.
+	 * @return false if the packet is outdated and has been ignored.
+	 * @throws IllegalStateException if the baseline of a body is missing, the
+	 *                               packets must be decoded by the decoder which
+	 *                               has received the acknowledged ones.
+	 */
+	public boolean decode(ByteBuffer src) {
+		int sequence = src.getInt();
+		long frame = src.getLong();
+		int count = src.getShort() & 0xFFFF;
+		if (received && sequence - this.sequence <= 0) {
+			return false;
+		}
+
+		SnapshotHistory.Packet packet = history.begin(sequence);
+		states.rewind();
+		for (int i = 0; i < count; i++) {
+			long ID = SnapshotFormat.readVarLong(src);
+			int age = src.get() & 0xFF;
+			int flags = src.get();
+
+			int[] base = SnapshotFormat.ZERO;
+			int baseOffset = 0;
+			if (age != 0) {
+				SnapshotHistory.Packet baseline = history.get(sequence - age);
+				baseOffset = baseline == null ? -1 : baseline.offsetOf(ID);
+				if (baseOffset == -1) {
+					throw new IllegalStateException(
+							"Error, missing baseline " + (sequence - age) + " for body " + ID + " in packet " + sequence);
+				}
+				base = baseline.values;
+			}
+			System.arraycopy(base, baseOffset, current, 0, SnapshotFormat.STRIDE);
+
+			if ((flags & SnapshotFormat.POSITION_BIT) != 0) {
+				readDelta(src, SnapshotFormat.POSITION);
+			}
+			if ((flags & SnapshotFormat.ROTATION_BIT) != 0) {
+				current[SnapshotFormat.ROTATION] = src.getInt();
+			}
+			if ((flags & SnapshotFormat.VELOCITY_BIT) != 0) {
+				readDelta(src, SnapshotFormat.VELOCITY);
+			}
+			if ((flags & SnapshotFormat.ANGULAR_VELOCITY_BIT) != 0) {
+				readDelta(src, SnapshotFormat.ANGULAR_VELOCITY);
+			}
+
+			packet.add(ID, current, 0);
+			RigidBodyState state = states.getNext();
+			state.ID = ID;
+			format.dequantize(current, 0, temp, state);
+		}
+
+		this.received = true;
+		this.sequence = sequence;
+		this.frame = frame;
+		return true;
+	}
+
+	private void readDelta(ByteBuffer src, int field) {
+		for (int k = field; k < field + 3; k++) {
+			current[k] += SnapshotFormat.readZigZag(src);
+		}
+	}
+
+	/**
+	 * @return The sequence number of the latest decoded packet, to be acknowledged
+	 *         to the server.
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return The frame of the server when the latest decoded packet was written.
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * The states of the bodies of the latest decoded packet. Only the barycentric
+	 * transform and the velocities of the states are set.
+	 *
+	 * @return The states.
+	 */
+	public ReadWriteList<RigidBodyState> getStates() {
+		return states;
+	}
+
+	/**
+	 * Moves the bodies of a simulation to the states of the latest decoded packet.
+	 * The states of unknown bodies are ignored.
+	 *
+	 * @param world
+	 * @return The number of bodies moved.
+	 * @see RigidBody#loadState(RigidBodyState)
+	 */
+	public int apply(PhysicsWorld world) {
+		int applied = 0;
+		for (int i = 0; i < states.getElementCount(); i++) {
+			RigidBodyState state = states.get(i);
+			RigidBody body = world.getBodyManager().get(state.ID);
+			if (body != null) {
+				body.loadState(state);
+				applied++;
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Forgets the received packets, should be called when reconnecting to the
+	 * server.
+	 */
+	public void reset() {
+		history.clear();
+		states.rewind();
+		received = false;
+	}
+
+}
@@ -0,0 +1,193 @@
+package cataclysm.record;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import cataclysm.PhysicsWorld;
+import math.vector.Quaternion;
+
+/**
+ * Replicates the state of the bodies of a simulation to clients. The states of
+ * the bodies are captured once per tick with {@link #capture(PhysicsWorld)},
+ * then a packet is written for each client with
+ * {@link #encode(SnapshotClient, ByteBuffer, int)}. <br>
+ * <br>
+ * Each body is encoded as a delta against the last state of the body
+ * acknowledged by the client, the bodies which haven't changed since are
+ * skipped until their baseline gets old. The others are written by decreasing
+ * priority until the byte budget of the packet is exhausted, the bodies left
+ * out accumulate priority for the next ticks. <br>
+ * The creation and the removal of the bodies aren't replicated: the states of
+ * unknown bodies are ignored by the client. No memory is allocated once the
+ * internal arrays have grown to the number of bodies.
+ *
+ * @author Briac Toussaint
+ * @see SnapshotDecoder
+ */
+public final class SnapshotEncoder {
+
+	private final SnapshotFormat format;
+	private final Frame frame = new Frame();
+	private final Quaternion temp = new Quaternion();
+
+	private long frameCount;
+	private int size;
+	private int[] values = new int[64 * SnapshotFormat.STRIDE];
+	private long[] candidates = new long[64];
+
+	public SnapshotEncoder(SnapshotFormat format) {
+		this.format = format;
+	}
+
+	public SnapshotFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Captures and quantizes the states of the bodies, should be called once per
+	 * tick before encoding the packets of the clients.
+	 *
+	 * @param world
+	 */
+	public void capture(PhysicsWorld world) {
+		frame.fillBodiesStates(world);
+		ReadWriteList<RigidBodyState> states = frame.getBodyStates();
+		size = states.getElementCount();
+		if (values.length < size * SnapshotFormat.STRIDE) {
+			values = new int[2 * size * SnapshotFormat.STRIDE];
+			candidates = new long[2 * size];
+		}
+		for (int i = 0; i < size; i++) {
+			format.quantize(states.get(i), temp, values, i * SnapshotFormat.STRIDE);
+		}
+		frameCount = world.getElapsedFrames();
+	}
+
+	/**
+	 * Writes the next packet of a client, starting at the position of dest.
+	 *
+	 * @param client
+	 * @param dest   The position of the buffer is moved after the packet.
+	 * @param budget The maximum size of the packet, in bytes.
+	 * @return The number of bodies written in the packet.
+	 */
+	public int encode(SnapshotClient client, ByteBuffer dest, int budget) {
+		if (budget < SnapshotFormat.HEADER_SIZE) {
+			throw new IllegalArgumentException(
+					"Invalid budget, should be >= " + SnapshotFormat.HEADER_SIZE + ", got " + budget);
+		}
+		ReadWriteList<RigidBodyState> states = frame.getBodyStates();
+		int sequence = client.nextSequence++;
+		SnapshotHistory.Packet packet = client.history.begin(sequence);
+
+		int start = dest.position();
+		dest.putInt(sequence);
+		dest.putLong(frameCount);
+		int countPosition = dest.position();
+		dest.putShort((short) 0);
+
+		// the priority is stored in the high bits so that sorting the candidates
+		// sorts the bodies by priority
+		int candidateCount = 0;
+		for (int i = 0; i < size; i++) {
+			RigidBodyState state = states.get(i);
+			int slot = client.slot(state.ID);
+			SnapshotHistory.Packet baseline = client.baseline(slot, sequence);
+			if (baseline != null && sequence - baseline.sequence < SnapshotFormat.HISTORY / 2
+					&& unchanged(i, baseline, state.ID)) {
+				// an unchanged body is still sent, in a few bytes, before its baseline
+				// leaves the history
+				continue;
+			}
+			float priority = client.addPriority(slot, Math.max(0.0f, client.getRelevance().relevance(state)));
+			candidates[candidateCount++] = ((long) Float.floatToIntBits(priority) << 32) | i;
+		}
+		Arrays.sort(candidates, 0, candidateCount);
+
+		int count = 0;
+		for (int c = candidateCount - 1; c >= 0 && count < Short.MAX_VALUE; c--) {
+			if (dest.remaining() < SnapshotFormat.MAX_BODY_SIZE) {
+				break;
+			}
+			int i = (int) candidates[c];
+			long ID = states.get(i).ID;
+			int slot = client.slot(ID);
+			int mark = dest.position();
+			writeBody(dest, i, ID, client.baseline(slot, sequence), sequence);
+			if (dest.position() - start > budget) {
+				dest.position(mark);
+				break;
+			}
+			packet.add(ID, values, i * SnapshotFormat.STRIDE);
+			client.resetPriority(slot);
+			count++;
+		}
+
+		dest.putShort(countPosition, (short) count);
+		return count;
+	}
+
+	private boolean unchanged(int i, SnapshotHistory.Packet baseline, long ID) {
+		int offset = baseline.offsetOf(ID);
+		return Arrays.equals(values, i * SnapshotFormat.STRIDE, (i + 1) * SnapshotFormat.STRIDE, baseline.values,
+				offset, offset + SnapshotFormat.STRIDE);
+	}
+
+	private void writeBody(ByteBuffer dest, int i, long ID, SnapshotHistory.Packet baseline, int sequence) {
+		int[] base = SnapshotFormat.ZERO;
+		int baseOffset = 0;
+		int age = 0;
+		if (baseline != null) {
+			base = baseline.values;
+			baseOffset = baseline.offsetOf(ID);
+			age = sequence - baseline.sequence;
+		}
+		int offset = i * SnapshotFormat.STRIDE;
+
+		int flags = 0;
+		if (differs(offset, base, baseOffset, SnapshotFormat.POSITION, 3)) {
+			flags |= SnapshotFormat.POSITION_BIT;
+		}
+		if (differs(offset, base, baseOffset, SnapshotFormat.ROTATION, 1)) {
+			flags |= SnapshotFormat.ROTATION_BIT;
+		}
+		if (differs(offset, base, baseOffset, SnapshotFormat.VELOCITY, 3)) {
+			flags |= SnapshotFormat.VELOCITY_BIT;
+		}
+		if (differs(offset, base, baseOffset, SnapshotFormat.ANGULAR_VELOCITY, 3)) {
+			flags |= SnapshotFormat.ANGULAR_VELOCITY_BIT;
+		}
+
+		SnapshotFormat.writeVarLong(dest, ID);
+		dest.put((byte) age);
+		dest.put((byte) flags);
+		if ((flags & SnapshotFormat.POSITION_BIT) != 0) {
+			writeDelta(dest, offset, base, baseOffset, SnapshotFormat.POSITION);
+		}
+		if ((flags & SnapshotFormat.ROTATION_BIT) != 0) {
+			dest.putInt(values[offset + SnapshotFormat.ROTATION]);
+		}
+		if ((flags & SnapshotFormat.VELOCITY_BIT) != 0) {
+			writeDelta(dest, offset, base, baseOffset, SnapshotFormat.VELOCITY);
+		}
+		if ((flags & SnapshotFormat.ANGULAR_VELOCITY_BIT) != 0) {
+			writeDelta(dest, offset, base, baseOffset, SnapshotFormat.ANGULAR_VELOCITY);
+		}
+	}
+
+	private boolean differs(int offset, int[] base, int baseOffset, int field, int length) {
+		for (int k = field; k < field + length; k++) {
+			if (values[offset + k] != base[baseOffset + k]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeDelta(ByteBuffer dest, int offset, int[] base, int baseOffset, int field) {
+		for (int k = field; k < field + 3; k++) {
+			SnapshotFormat.writeZigZag(dest, values[offset + k] - base[baseOffset + k]);
+		}
+	}
+
+}
@@ -0,0 +1,267 @@
+package cataclysm.record;
+
+import java.nio.ByteBuffer;
+
+import math.vector.Quaternion;
+
+/**
+ * The quantization shared by a {@link SnapshotEncoder} and the
+ * {@link SnapshotDecoder}s receiving its packets. The state of a body is
+ * quantized as {@value #STRIDE} ints: the position of the center of mass, the
+ * rotation packed with the smallest-three encoding, the velocity and the
+ * angular velocity. <br>
+ * <br>
+ * The layout of a packet is:
+ * <ul>
+ * <li>the sequence number of the packet (int), the frame of the server (long)
+ * and the number of bodies (short),</li>
+ * <li>for each body: its ID (varint), how many packets ago its baseline was sent
+ * (byte, 0 if there is no baseline), a bitmask of the modified fields (byte)
+ * and the modified fields: zigzag varint deltas for the vectors, the packed
+ * rotation as an int.</li>
+ * </ul>
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class SnapshotFormat {
+
+	/**
+	 * The number of ints describing the quantized state of a body.
+	 */
+	public static final int STRIDE = 10;
+
+	/**
+	 * The number of packets kept by both sides to serve as baselines.
+	 */
+	public static final int HISTORY = 32;
+
+	static final int POSITION = 0;
+	static final int ROTATION = 3;
+	static final int VELOCITY = 4;
+	static final int ANGULAR_VELOCITY = 7;
+
+	static final int POSITION_BIT = 1;
+	static final int ROTATION_BIT = 2;
+	static final int VELOCITY_BIT = 4;
+	static final int ANGULAR_VELOCITY_BIT = 8;
+
+	static final int HEADER_SIZE = 4 + 8 + 2;
+
+	/**
+	 * An upper bound on the size of a body in a packet.
+	 */
+	static final int MAX_BODY_SIZE = 10 + 1 + 1 + 9 * 5 + 4;
+
+	private static final int COMPONENT_BITS = 10;
+	private static final int COMPONENT_MAX = (1 << COMPONENT_BITS) - 1;
+	private static final float COMPONENT_RANGE = (float) (1.0 / Math.sqrt(2.0));
+
+	/**
+	 * The quantized state of a body at rest at the origin, used as baseline when
+	 * the receiver has no baseline for a body.
+	 */
+	static final int[] ZERO = new int[STRIDE];
+
+	static {
+		ZERO[ROTATION] = packRotation(new Quaternion(0, 0, 0, 1));
+	}
+
+	private final float positionPrecision;
+	private final float velocityPrecision;
+
+	/**
+	 * @param positionPrecision The quantization step of the positions, in m.
+	 * @param velocityPrecision The quantization step of the velocities, in m/s and
+	 *                          rad/s.
+	 */
+	public SnapshotFormat(float positionPrecision, float velocityPrecision) {
+		if (!(positionPrecision > 0)) {
+			throw new IllegalArgumentException(
+					"Invalid position precision, should be > 0, got " + positionPrecision);
+		}
+		if (!(velocityPrecision > 0)) {
+			throw new IllegalArgumentException(
+					"Invalid velocity precision, should be > 0, got " + velocityPrecision);
+		}
+		this.positionPrecision = positionPrecision;
+		this.velocityPrecision = velocityPrecision;
+	}
+
+	/**
+	 * A precision of 1mm for the positions and 1cm/s for the velocities.
+	 */
+	public SnapshotFormat() {
+		this(1.0E-3f, 1.0E-2f);
+	}
+
+	public float getPositionPrecision() {
+		return positionPrecision;
+	}
+
+	public float getVelocityPrecision() {
+		return velocityPrecision;
+	}
+
+	/**
+	 * Quantizes the state of a body.
+	 *
+	 * @param state
+	 * @param temp   A temporary quaternion
+	 * @param dest
+	 * @param offset The index of the first int written in dest
+	 */
+	void quantize(RigidBodyState state, Quaternion temp, int[] dest, int offset) {
+		dest[offset + POSITION] = quantize(state.barycentricToWorld.getTranslation().x, positionPrecision);
+		dest[offset + POSITION + 1] = quantize(state.barycentricToWorld.getTranslation().y, positionPrecision);
+		dest[offset + POSITION + 2] = quantize(state.barycentricToWorld.getTranslation().z, positionPrecision);
+		dest[offset + ROTATION] = packRotation(state.barycentricToWorld.getRotation(temp));
+		dest[offset + VELOCITY] = quantize(state.velocity.x, velocityPrecision);
+		dest[offset + VELOCITY + 1] = quantize(state.velocity.y, velocityPrecision);
+		dest[offset + VELOCITY + 2] = quantize(state.velocity.z, velocityPrecision);
+		dest[offset + ANGULAR_VELOCITY] = quantize(state.angularVelocity.x, velocityPrecision);
+		dest[offset + ANGULAR_VELOCITY + 1] = quantize(state.angularVelocity.y, velocityPrecision);
+		dest[offset + ANGULAR_VELOCITY + 2] = quantize(state.angularVelocity.z, velocityPrecision);
+	}
+
+	/**
+	 * Restores the state of a body from its quantized form. Only the barycentric
+	 * transform and the velocities are set.
+	 *
+	 * @param src
+	 * @param offset The index of the first int read in src
+	 * @param temp   A temporary quaternion
+	 * @param dest
+	 */
+	void dequantize(int[] src, int offset, Quaternion temp, RigidBodyState dest) {
+		dest.barycentricToWorld.getTranslation().set(src[offset + POSITION] * positionPrecision,
+				src[offset + POSITION + 1] * positionPrecision, src[offset + POSITION + 2] * positionPrecision);
+		dest.barycentricToWorld.setRotation(unpackRotation(src[offset + ROTATION], temp));
+		dest.velocity.set(src[offset + VELOCITY] * velocityPrecision, src[offset + VELOCITY + 1] * velocityPrecision,
+				src[offset + VELOCITY + 2] * velocityPrecision);
+		dest.angularVelocity.set(src[offset + ANGULAR_VELOCITY] * velocityPrecision,
+				src[offset + ANGULAR_VELOCITY + 1] * velocityPrecision,
+				src[offset + ANGULAR_VELOCITY + 2] * velocityPrecision);
+	}
+
+	private static int quantize(float value, float precision) {
+		return Math.round(value / precision);
+	}
+
+	/**
+	 * Packs a unit quaternion with the smallest-three encoding: the index of the
+	 * largest component on 2 bits, then the three other components on
+	 * {@value #COMPONENT_BITS} bits each. The largest component is made positive
+	 * since q and -q are the same rotation, it is deduced from the other three.
+	 *
+	 * @param q
+	 * @return The packed rotation.
+	 */
+	static int packRotation(Quaternion q) {
+		float ax = Math.abs(q.x), ay = Math.abs(q.y), az = Math.abs(q.z), aw = Math.abs(q.w);
+		int largest = 0;
+		float max = ax;
+		if (ay > max) {
+			largest = 1;
+			max = ay;
+		}
+		if (az > max) {
+			largest = 2;
+			max = az;
+		}
+		if (aw > max) {
+			largest = 3;
+		}
+
+		float sign = component(q, largest) < 0 ? -1.0f : 1.0f;
+		int packed = largest;
+		for (int i = 0; i < 4; i++) {
+			if (i != largest) {
+				packed = (packed << COMPONENT_BITS) | packComponent(sign * component(q, i));
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * @param packed A rotation packed by {@link #packRotation(Quaternion)}
+	 * @param dest
+	 * @return dest
+	 */
+	static Quaternion unpackRotation(int packed, Quaternion dest) {
+		int largest = (packed >>> (3 * COMPONENT_BITS)) & 3;
+		float a = unpackComponent((packed >>> (2 * COMPONENT_BITS)) & COMPONENT_MAX);
+		float b = unpackComponent((packed >>> COMPONENT_BITS) & COMPONENT_MAX);
+		float c = unpackComponent(packed & COMPONENT_MAX);
+		float d = (float) Math.sqrt(Math.max(0.0f, 1.0f - a * a - b * b - c * c));
+		switch (largest) {
+		case 0:
+			dest.set(d, a, b, c);
+			break;
+		case 1:
+			dest.set(a, d, b, c);
+			break;
+		case 2:
+			dest.set(a, b, d, c);
+			break;
+		default:
+			dest.set(a, b, c, d);
+			break;
+		}
+		float invLength = 1.0f / dest.length();
+		dest.set(dest.x * invLength, dest.y * invLength, dest.z * invLength, dest.w * invLength);
+		return dest;
+	}
+
+	private static float component(Quaternion q, int i) {
+		switch (i) {
+		case 0:
+			return q.x;
+		case 1:
+			return q.y;
+		case 2:
+			return q.z;
+		default:
+			return q.w;
+		}
+	}
+
+	private static int packComponent(float c) {
+		float normalized = (c + COMPONENT_RANGE) / (2.0f * COMPONENT_RANGE);
+		return Math.max(0, Math.min(COMPONENT_MAX, Math.round(normalized * COMPONENT_MAX)));
+	}
+
+	private static float unpackComponent(int c) {
+		return c * (2.0f * COMPONENT_RANGE) / COMPONENT_MAX - COMPONENT_RANGE;
+	}
+
+	static void writeVarLong(ByteBuffer dest, long value) {
+		while ((value & ~0x7FL) != 0) {
+			dest.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		dest.put((byte) value);
+	}
+
+	static long readVarLong(ByteBuffer src) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = src.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Error, malformed varint in snapshot");
+	}
+
+	static void writeZigZag(ByteBuffer dest, int value) {
+		writeVarLong(dest, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+	}
+
+	static int readZigZag(ByteBuffer src) {
+		int value = (int) readVarLong(src);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
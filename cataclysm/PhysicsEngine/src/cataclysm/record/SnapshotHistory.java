@@ -0,0 +1,99 @@
+package cataclysm.record;
+
+import cataclysm.datastructures.LongIntHashMap;
+
+/**
+ * The quantized states of the bodies of the last {@value SnapshotFormat#HISTORY}
+ * packets, indexed by sequence number. The server keeps the packets it has
+ * sent, the client those it has received: the baseline of a body is looked up
+ * in the same packet on both sides.
+ *
+ * @author Briac Toussaint
+ *
+ */
+final class SnapshotHistory {
+
+	static final class Packet {
+		int sequence = -1;
+		boolean acknowledged;
+		int size;
+		long[] IDs = new long[16];
+		int[] values = new int[16 * SnapshotFormat.STRIDE];
+		final LongIntHashMap indices = new LongIntHashMap();
+
+		/**
+		 * @param ID
+		 * @return The offset of the state of the body in {@link #values}, or -1 if the
+		 *         body isn't part of the packet.
+		 */
+		int offsetOf(long ID) {
+			int index = indices.get(ID, -1);
+			return index == -1 ? -1 : index * SnapshotFormat.STRIDE;
+		}
+
+		/**
+		 * Appends a body to the packet.
+		 *
+		 * @param ID
+		 * @param src    The quantized state of the body
+		 * @param offset The offset of the state in src
+		 */
+		void add(long ID, int[] src, int offset) {
+			if (size == IDs.length) {
+				long[] IDs = new long[2 * size];
+				System.arraycopy(this.IDs, 0, IDs, 0, size);
+				this.IDs = IDs;
+				int[] values = new int[2 * size * SnapshotFormat.STRIDE];
+				System.arraycopy(this.values, 0, values, 0, size * SnapshotFormat.STRIDE);
+				this.values = values;
+			}
+			indices.put(ID, size);
+			IDs[size] = ID;
+			System.arraycopy(src, offset, values, size * SnapshotFormat.STRIDE, SnapshotFormat.STRIDE);
+			size++;
+		}
+	}
+
+	private final Packet[] packets = new Packet[SnapshotFormat.HISTORY];
+
+	SnapshotHistory() {
+		for (int i = 0; i < packets.length; i++) {
+			packets[i] = new Packet();
+		}
+	}
+
+	/**
+	 * Empties the packet with the given sequence number, overwriting the oldest
+	 * one.
+	 *
+	 * @param sequence
+	 * @return The packet
+	 */
+	Packet begin(int sequence) {
+		Packet packet = packets[Math.floorMod(sequence, packets.length)];
+		packet.sequence = sequence;
+		packet.acknowledged = false;
+		packet.size = 0;
+		packet.indices.clear();
+		return packet;
+	}
+
+	/**
+	 * @param sequence
+	 * @return The packet with the given sequence number, or null if it has been
+	 *         overwritten.
+	 */
+	Packet get(int sequence) {
+		Packet packet = packets[Math.floorMod(sequence, packets.length)];
+		return packet.sequence == sequence ? packet : null;
+	}
+
+	void clear() {
+		for (Packet packet : packets) {
+			packet.sequence = -1;
+			packet.size = 0;
+			packet.indices.clear();
+		}
+	}
+
+}
@@ -2,6 +2,9 @@
  * The purpose of the classes inside this package is to provide an easy way to
  * record and then replay object movements. It can also be used as way to save
  * the state of the world. Take note that information about contacts is NOT
- * stored.
+ * stored. <br>
+ * The {@link cataclysm.record.SnapshotEncoder} and the
+ * {@link cataclysm.record.SnapshotDecoder} reuse the states of the bodies to
+ * replicate a simulation from a server to its clients, in memory.
  */
 package cataclysm.record;
\ No newline at end of file
@@ -2,22 +2,32 @@ package cataclysm.wrappers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import cataclysm.CataclysmCallbacks;
 import cataclysm.CollisionFilter;
+import cataclysm.DefaultCollisionFilter;
+import cataclysm.DefaultParameters;
 import cataclysm.Epsilons;
 import cataclysm.GeometryQuery;
 import cataclysm.PhysicsStats;
+import cataclysm.RayTest;
+import cataclysm.broadphase.AABB;
 import cataclysm.broadphase.ArrayBasedBroadPhaseTree;
 import cataclysm.broadphase.BroadPhaseTree;
 import cataclysm.broadphase.staticmeshes.StaticMeshManager;
 import cataclysm.broadphase.staticmeshes.Triangle;
 import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
+import cataclysm.contact_creation.CollisionTest;
 import cataclysm.contact_creation.DoubleBodyContact;
 import cataclysm.contact_creation.DoubleBodyContactArrayBased;
 import cataclysm.contact_creation.SingleBodyContact;
 import cataclysm.contact_creation.SingleBodyContactArrayBased;
+import cataclysm.datastructures.StateBuffer;
+import cataclysm.profiling.ContactPoolGrowthEvent;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
 
 @SuppressWarnings("unchecked")
 abstract class BodyUpdator implements GeometryQuery {
@@ -28,8 +38,21 @@ abstract class BodyUpdator implements GeometryQuery {
 
 	private final CollisionFilter filter;
 
-	public BodyUpdator(CollisionFilter filter) {
-		this.filter = filter;
+	private final DefaultParameters params;
+
+	/**
+	 * true if the rule of the {@link DefaultCollisionFilter} can be applied on the
+	 * leaves of the bvh.
+	 */
+	private final boolean broadPhaseFiltering;
+
+	protected final Profiler profiler;
+
+	public BodyUpdator(DefaultParameters params, Profiler profiler) {
+		this.filter = params.getCollisionFilter();
+		this.params = params;
+		this.profiler = profiler;
+		this.broadPhaseFiltering = filter.getClass() == DefaultCollisionFilter.class;
 		for (int i = 1; i <= Epsilons.MAX_CONTACTS; i++) {
 			bodyContactPool[i] = new ArrayList<AbstractDoubleBodyContact>();
 			meshContactPool[i] = new ArrayList<AbstractSingleBodyContact>();
@@ -43,9 +66,62 @@ abstract class BodyUpdator implements GeometryQuery {
 			PhysicsStats stats, List<AbstractSingleBodyContact> meshContacts,
 			List<AbstractDoubleBodyContact> bodyContacts);
 
+	/**
+	 * @return true if {@link #writeState(RigidBodyManager, StateBuffer)} and
+	 *         {@link #readState(RigidBodyManager, StateBuffer)} are implemented.
+	 */
+	boolean supportsSnapshots() {
+		return false;
+	}
+
+	/**
+	 * Writes the state of the broadphase and the contacts of the wrappers of the
+	 * bodies.
+	 * 
+	 * @param bodies
+	 * @param dest
+	 */
+	void writeState(RigidBodyManager bodies, StateBuffer dest) {
+		throw new IllegalStateException("Error, " + getClass().getSimpleName() + " doesn't support snapshots");
+	}
+
+	/**
+	 * Reads back a state written by {@link #writeState(RigidBodyManager, StateBuffer)}
+	 * for the same bodies. The current contacts are returned to the pools first.
+	 * 
+	 * @param bodies
+	 * @param src
+	 */
+	void readState(RigidBodyManager bodies, StateBuffer src) {
+		throw new IllegalStateException("Error, " + getClass().getSimpleName() + " doesn't support snapshots");
+	}
+
+	/**
+	 * Returns all the contacts of a wrapper to the pools. The contacts with other
+	 * wrappers are only returned by their first wrapper, the lists of the other
+	 * wrappers and of the meshes are expected to be emptied as well.
+	 * 
+	 * @param wrapper
+	 */
+	protected void releaseContacts(Wrapper wrapper) {
+		for (AbstractSingleBodyContact contact : wrapper.getMeshContacts()) {
+			contact.getTriangle().getMesh().getBodyContacts().clear();
+			contact.refresh(null, null);
+			meshContactPool[contact.getMaxContacts()].add(contact);
+		}
+		wrapper.getMeshContacts().clear();
+		for (AbstractDoubleBodyContact contact : wrapper.getBodyContacts()) {
+			if (contact.getWrapperA() == wrapper) {
+				contact.refresh(null, null);
+				bodyContactPool[contact.getMaxContacts()].add(contact);
+			}
+		}
+		wrapper.getBodyContacts().clear();
+	}
+
 	protected void deleteMeshContacts(Wrapper wrapper) {
 		for (AbstractSingleBodyContact contact : wrapper.getMeshContacts()) {
-			contact.getTriangle().mesh.getBodyContacts().remove(contact);
+			contact.getTriangle().getMesh().getBodyContacts().remove(contact);
 			contact.refresh(null, null);
 			meshContactPool[contact.getMaxContacts()].add(contact);
 		}
@@ -62,6 +138,60 @@ abstract class BodyUpdator implements GeometryQuery {
 		wrapper.getBodyContacts().clear();
 	}
 
+	/**
+	 * Retrieves the wrappers whose box intersects box. With the
+	 * {@link DefaultCollisionFilter}, the masks and the collision groups are
+	 * checked during the traversal of the bvh so that the pairs which can't collide
+	 * never reach dest.
+	 * 
+	 * @param bvh
+	 * @param wrapper The wrapper looking for new contacts.
+	 * @param box     The box of wrapper.
+	 * @param dest
+	 */
+	protected void wrapperPairQuery(BroadPhaseTree<Wrapper> bvh, Wrapper wrapper, AABB box, Set<Wrapper> dest) {
+		if (broadPhaseFiltering) {
+			RigidBody body = wrapper.getBody();
+			int category = body.getCategory();
+			bvh.boxTest(box, category, body.getMask() & params.getGroupMask(category), dest);
+		} else {
+			bvh.boxTest(box, dest);
+		}
+	}
+
+	/**
+	 * Updates the contact zone of a pair of wrappers, the duration of the test is
+	 * measured by pair of wrapper types.
+	 * 
+	 * @param collisionTest
+	 * @param contact
+	 * @param callbacks
+	 * @param bodyContacts
+	 */
+	protected void bodyContactTest(CollisionTest collisionTest, AbstractDoubleBodyContact contact,
+			CataclysmCallbacks callbacks, List<AbstractDoubleBodyContact> bodyContacts) {
+		long start = profiler.start();
+		collisionTest.bodyContacts(contact, callbacks, bodyContacts);
+		if (start != 0) {
+			profiler.stop(Phase.narrowphase(contact.getWrapperA().getType(), contact.getWrapperB().getType()), start);
+		}
+	}
+
+	/**
+	 * Updates the contact zones of a wrapper with the static meshes.
+	 * 
+	 * @param collisionTest
+	 * @param wrapper
+	 * @param callbacks
+	 * @param meshContacts
+	 */
+	protected void meshContactTest(CollisionTest collisionTest, Wrapper wrapper, CataclysmCallbacks callbacks,
+			List<AbstractSingleBodyContact> meshContacts) {
+		long start = profiler.start();
+		collisionTest.meshContacts(wrapper, callbacks, meshContacts);
+		profiler.stop(Phase.NARROWPHASE_MESH, start);
+	}
+
 	protected AbstractDoubleBodyContact createBodyContact(Wrapper wrapperA, Wrapper wrapperB) {
 		if (!filter.canCollide(wrapperA.getBody(), wrapperB.getBody())) {
 			return null;
@@ -73,10 +203,24 @@ abstract class BodyUpdator implements GeometryQuery {
 			wrapperB = temp;
 		}
 
+		return newBodyContact(wrapperA, wrapperB);
+	}
+
+	/**
+	 * Takes a contact from the pools, or builds a new one if the pool is empty.
+	 * The contact isn't added to the lists of the wrappers.
+	 * 
+	 * @param wrapperA The wrapper with the smallest maximum number of contact
+	 *                 points
+	 * @param wrapperB
+	 * @return The contact
+	 */
+	protected AbstractDoubleBodyContact newBodyContact(Wrapper wrapperA, Wrapper wrapperB) {
 		int maxContacts = wrapperA.getType().maxContacts;
 		ArrayList<AbstractDoubleBodyContact> pool = bodyContactPool[maxContacts];
 		AbstractDoubleBodyContact contact = null;
 		if (pool.isEmpty()) {
+			ContactPoolGrowthEvent.emit(false, maxContacts);
 			switch (Epsilons.contactType) {
 			case ARRAY_BASED:
 				contact = new DoubleBodyContactArrayBased(maxContacts, wrapperA, wrapperB);
@@ -100,6 +244,7 @@ abstract class BodyUpdator implements GeometryQuery {
 		ArrayList<AbstractSingleBodyContact> pool = meshContactPool[maxContacts];
 		AbstractSingleBodyContact contact = null;
 		if (pool.isEmpty()) {
+			ContactPoolGrowthEvent.emit(true, maxContacts);
 			switch (Epsilons.contactType) {
 			case ARRAY_BASED:
 				contact = new SingleBodyContactArrayBased(maxContacts, wrapper, triangle);
@@ -115,7 +260,24 @@ abstract class BodyUpdator implements GeometryQuery {
 			contact.refresh(wrapper, triangle);
 		}
 		wrapper.getMeshContacts().add(contact);
-		triangle.mesh.getBodyContacts().add(contact);
+		triangle.getMesh().getBodyContacts().add(contact);
+	}
+
+	/**
+	 * The exact ray test performed against the wrappers whose box is hit by a ray.
+	 * The wrapper is recorded in the test when it is the closest hit so far.
+	 * 
+	 * @param wrapper
+	 * @param test
+	 * @param maxLength
+	 * @return The distance to the hit point, or maxLength
+	 */
+	static float wrapperRayTest(Wrapper wrapper, RayTest test, float maxLength) {
+		float length = wrapper.rayTest(test.getStart(), test.getDir(), maxLength, test.getHitNormal());
+		if (length < maxLength) {
+			test.setHitWrapper(wrapper);
+		}
+		return length;
 	}
 
 //	public abstract ArrayBasedBroadPhaseTree<Wrapper> getBVH();
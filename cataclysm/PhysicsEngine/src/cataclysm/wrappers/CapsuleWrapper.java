@@ -79,6 +79,82 @@ public final class CapsuleWrapper extends Wrapper {
 
 	}
 
+	@Override
+	public float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f normalDest) {
+		Vector3f c1 = getCenter1();
+		Vector3f c2 = getCenter2();
+		float bax = c2.x - c1.x;
+		float bay = c2.y - c1.y;
+		float baz = c2.z - c1.z;
+		float oax = start.x - c1.x;
+		float oay = start.y - c1.y;
+		float oaz = start.z - c1.z;
+		float baba = bax * bax + bay * bay + baz * baz;
+		float baoa = bax * oax + bay * oay + baz * oaz;
+
+		// the ray doesn't hit the capsule if it starts inside of it
+		float s = baba > 0 ? Math.max(0, Math.min(1, baoa / baba)) : 0;
+		float px = oax - s * bax;
+		float py = oay - s * bay;
+		float pz = oaz - s * baz;
+		if (px * px + py * py + pz * pz < radius * radius) {
+			return maxLength;
+		}
+
+		// the capsule is the union of a cylinder and of two spheres, the ray
+		// enters it at the first of their hit points.
+		float best = maxLength;
+		int hit = -1;
+
+		float bard = bax * dir.x + bay * dir.y + baz * dir.z;
+		float a = baba - bard * bard;
+		// a is baba * sin^2 of the angle between the ray and the axis, a ray parallel
+		// to the axis can only enter the capsule through a sphere.
+		if (a > 1E-6f * baba) {
+			float rdoa = dir.x * oax + dir.y * oay + dir.z * oaz;
+			float oaoa = oax * oax + oay * oay + oaz * oaz;
+			float b = baba * rdoa - baoa * bard;
+			float c = baba * oaoa - baoa * baoa - radius * radius * baba;
+			float h = b * b - a * c;
+			if (h >= 0) {
+				float length = (-b - (float) Math.sqrt(h)) / a;
+				float y = baoa + length * bard;
+				if (length >= 0 && length < best && y > 0 && y < baba) {
+					best = length;
+					hit = 0;
+				}
+			}
+		}
+
+		float length = SphereWrapper.rayTest(start, dir, best, c1, radius);
+		if (length < best) {
+			best = length;
+			hit = 1;
+		}
+		length = SphereWrapper.rayTest(start, dir, best, c2, radius);
+		if (length < best) {
+			best = length;
+			hit = 2;
+		}
+
+		if (hit == -1) {
+			return maxLength;
+		}
+
+		float x = start.x + best * dir.x;
+		float y = start.y + best * dir.y;
+		float z = start.z + best * dir.z;
+		if (hit == 0) {
+			float t = ((x - c1.x) * bax + (y - c1.y) * bay + (z - c1.z) * baz) / baba;
+			normalDest.set(x - c1.x - t * bax, y - c1.y - t * bay, z - c1.z - t * baz);
+		} else {
+			Vector3f center = hit == 1 ? c1 : c2;
+			normalDest.set(x - center.x, y - center.y, z - center.z);
+		}
+		normalDest.scale(1.0f / radius);
+		return best;
+	}
+
 	@Override
 	public void scale(float scaleFactor) {
 		this.radius *= scaleFactor;
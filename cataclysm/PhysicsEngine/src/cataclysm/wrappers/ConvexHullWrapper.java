@@ -117,6 +117,70 @@ public sealed class ConvexHullWrapper extends Wrapper permits TriangleAsHull {
 
 	}
 
+	@Override
+	public float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f normalDest) {
+		Matrix3f r = wrapperToWorld.getRotation();
+		Vector3f t = wrapperToWorld.getTranslation();
+		float invScale = 1.0f / scale;
+
+		// The ray is moved to wrapper-space, its direction is scaled so that
+		// distances along the ray are unchanged.
+		float px = start.x - t.x;
+		float py = start.y - t.y;
+		float pz = start.z - t.z;
+		float sx = (r.m00 * px + r.m01 * py + r.m02 * pz) * invScale;
+		float sy = (r.m10 * px + r.m11 * py + r.m12 * pz) * invScale;
+		float sz = (r.m20 * px + r.m21 * py + r.m22 * pz) * invScale;
+		float dx = (r.m00 * dir.x + r.m01 * dir.y + r.m02 * dir.z) * invScale;
+		float dy = (r.m10 * dir.x + r.m11 * dir.y + r.m12 * dir.z) * invScale;
+		float dz = (r.m20 * dir.x + r.m21 * dir.y + r.m22 * dir.z) * invScale;
+
+		// The ray is clipped by the plane of each face, it enters the hull at the
+		// farthest entry point and leaves it at the closest exit point.
+		int normals = FloatLayout.FaceNormals.startOf(0, data);
+		int offsets = FloatLayout.PlaneOffsets.startOf(0, data);
+		float tEnter = Float.NEGATIVE_INFINITY;
+		float tExit = maxLength;
+		int enterFace = -1;
+		for (int face = 0; face < data.faceCount; face++) {
+			float nx = data.floatData[normals + 3 * face + 0];
+			float ny = data.floatData[normals + 3 * face + 1];
+			float nz = data.floatData[normals + 3 * face + 2];
+			float distance = data.floatData[offsets + face] - (nx * sx + ny * sy + nz * sz);
+			float dot = nx * dx + ny * dy + nz * dz;
+			if (dot == 0) {
+				if (distance < 0) {
+					return maxLength;
+				}
+				continue;
+			}
+			float length = distance / dot;
+			if (dot < 0) {
+				if (length > tEnter) {
+					tEnter = length;
+					enterFace = face;
+				}
+			} else if (length < tExit) {
+				tExit = length;
+			}
+			if (tEnter > tExit) {
+				return maxLength;
+			}
+		}
+
+		if (enterFace == -1 || tEnter < 0) {
+			// start is inside the hull or the hull is behind the ray
+			return maxLength;
+		}
+
+		float nx = data.floatData[normals + 3 * enterFace + 0];
+		float ny = data.floatData[normals + 3 * enterFace + 1];
+		float nz = data.floatData[normals + 3 * enterFace + 2];
+		normalDest.set(r.m00 * nx + r.m10 * ny + r.m20 * nz, r.m01 * nx + r.m11 * ny + r.m21 * nz,
+				r.m02 * nx + r.m12 * ny + r.m22 * nz);
+		return tEnter;
+	}
+
 	/**
 	 * @return The scale factor between this wrapper and the vertices data.
 	 */
@@ -13,12 +13,14 @@ import cataclysm.constraints.AnchorPoint;
 import cataclysm.contact_creation.ContactProperties;
 import cataclysm.datastructures.IDGenerator;
 import cataclysm.datastructures.Identifier;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.record.RigidBodyRepr;
 import cataclysm.record.RigidBodyState;
 import cataclysm.record.WrapperRepr;
 import math.MatrixOps;
 import math.vector.Matrix3f;
 import math.vector.Matrix4f;
+import math.vector.Quaternion;
 import math.vector.Vector3f;
 
 /**
@@ -68,7 +70,14 @@ public class RigidBody extends Identifier {
 		 * Indicates if the velocity should be computed as the integral of the
 		 * acceleration or if it should be read from a recording.
 		 */
-		SKIP_INTEGRATION;
+		SKIP_INTEGRATION,
+
+		/**
+		 * Indicates if the displacement of this rigid body should be clamped at the
+		 * time of impact with the static meshes, to prevent fast bodies from tunneling
+		 * through thin triangles.
+		 */
+		CONTINUOUS_COLLISION;
 
 		byte setTrue(int flags) {
 			return (byte) (flags | (1 << this.ordinal()));
@@ -102,6 +111,13 @@ public class RigidBody extends Identifier {
 	 */
 	private final Transform barycentricToWorld = new Transform();
 
+	/**
+	 * The position and rotation of the body in the barycentric reference frame.
+	 * This transform only changes with the mass properties, bodyToWorld can be
+	 * derived from barycentricToWorld with it.
+	 */
+	private final Transform bodyToBarycentric = new Transform();
+
 	/**
 	 * The velocity of the center of mass in m/s (world-space).
 	 */
@@ -185,6 +201,12 @@ public class RigidBody extends Identifier {
 	 */
 	private byte flags;
 
+	/**
+	 * The index of this body in the packed arrays of a solver, -1 outside of a
+	 * call to the solver.
+	 */
+	private int solverIndex = -1;
+
 	RigidBody(Matrix4f transform, DefaultParameters params, IDGenerator bodyGenerator, IDGenerator wrapperGenerator,
 			PolyhedralMassProperties poly, WrapperBuilder... builders) {
 		super(bodyGenerator.nextID());
@@ -278,6 +300,7 @@ public class RigidBody extends Identifier {
 		MatrixOps.eigenValues(bodyInertia, inertia, this.barycentricToWorld.getRotation());
 		inertia.scale(inv_mass);
 		this.barycentricToWorld.getTranslation().set(bodyCenterOfMass);
+		Transform.invert(barycentricToWorld, bodyToBarycentric);
 		
 		//Compose with bodyToWorld to obtain barcentricToWorld
 		Transform.compose(bodyToWorld, barycentricToWorld, barycentricToWorld);
@@ -308,6 +331,7 @@ public class RigidBody extends Identifier {
 		v1.x = v0.x + (v1.x - v0.x) * scaleFactor;
 		v1.y = v0.y + (v1.y - v0.y) * scaleFactor;
 		v1.z = v0.z + (v1.z - v0.z) * scaleFactor;
+		bodyToBarycentric.getTranslation().scale(scaleFactor);
 
 		for (Wrapper wrapper : wrappers) {
 			wrapper.scale(scaleFactor);// On applique le changement d'échelle sur l'enveloppe.
@@ -393,6 +417,57 @@ public class RigidBody extends Identifier {
 		v1.z = v0.z + rotation.m02 * x + rotation.m12 * y + rotation.m22 * z;
 	}
 
+	/**
+	 * Integrates the angular velocity over a time step with the unit quaternion
+	 * of the barycentric rotation: q is multiplied by the rotation of angle
+	 * |omega| * dt about omega, then normalized. The rotation matrices are rebuilt
+	 * from q, the origin transform being derived from the barycentric one, so they
+	 * can't drift away from rotations.
+	 * 
+	 * @param omega    The angular velocity in world-space
+	 * @param timeStep
+	 * @param temp     A temporary quaternion
+	 */
+	@Internal
+	public void integrateOrientation(Vector3f omega, float timeStep, Quaternion temp) {
+		float length = omega.length();
+		if (length == 0) {
+			return;
+		}
+		float halfAngle = 0.5f * length * timeStep;
+		float s = (float) Math.sin(halfAngle) / length;
+		float hx = s * omega.x;
+		float hy = s * omega.y;
+		float hz = s * omega.z;
+		float hw = (float) Math.cos(halfAngle);
+
+		Quaternion q = barycentricToWorld.getRotation(temp);
+		float x = hw * q.x + hx * q.w + hy * q.z - hz * q.y;
+		float y = hw * q.y + hy * q.w + hz * q.x - hx * q.z;
+		float z = hw * q.z + hz * q.w + hx * q.y - hy * q.x;
+		float w = hw * q.w - hx * q.x - hy * q.y - hz * q.z;
+		float invLength = 1.0f / (float) Math.sqrt(x * x + y * y + z * z + w * w);
+		q.set(x * invLength, y * invLength, z * invLength, w * invLength);
+		barycentricToWorld.setRotation(q);
+		Transform.compose(barycentricToWorld, bodyToBarycentric, bodyToWorld);
+	}
+
+	/**
+	 * Removes the numerical drift accumulated by the rotation matrices: the
+	 * barycentric rotation is replaced by the closest rotation and the origin
+	 * transform is derived from it.
+	 * 
+	 * @param temp A temporary quaternion
+	 */
+	@Internal
+	public void orthonormalize(Quaternion temp) {
+		Quaternion q = barycentricToWorld.getRotation(temp);
+		float invLength = 1.0f / q.length();
+		q.set(q.x * invLength, q.y * invLength, q.z * invLength, q.w * invLength);
+		barycentricToWorld.setRotation(q);
+		Transform.compose(barycentricToWorld, bodyToBarycentric, bodyToWorld);
+	}
+
 	/**
 	 * Applies a compound rotation and translation at the center of mass of the
 	 * rigid body.
@@ -587,6 +662,7 @@ public class RigidBody extends Identifier {
 	 */
 	public void setMask(int mask) {
 		this.mask = mask;
+		updateBroadPhaseFilter();
 	}
 
 	/**
@@ -610,6 +686,17 @@ public class RigidBody extends Identifier {
 	 */
 	public void setCategory(int category) {
 		this.category = category;
+		updateBroadPhaseFilter();
+	}
+
+	/**
+	 * Copies the mask and category in the broadphase nodes of the wrappers, the
+	 * pairs which can't collide are then rejected by the broadphase.
+	 */
+	private void updateBroadPhaseFilter() {
+		for (int i = 0; i < wrappers.size(); i++) {
+			wrappers.get(i).getNode().setFilter(category, mask);
+		}
 	}
 
 	/**
@@ -691,6 +778,42 @@ public class RigidBody extends Identifier {
 		SpecialFlags.SKIP_INTEGRATION.set(this, skipIntegration);
 	}
 
+	/**
+	 * A rigid body with continuous collision detection enabled computes a time of
+	 * impact against the static meshes in its swept volume before being
+	 * translated. Only the bodies with this flag pay the extra cost.
+	 * 
+	 * @return true if continuous collision detection is enabled for this body.
+	 */
+	public boolean isContinuousCollision() {
+		return SpecialFlags.CONTINUOUS_COLLISION.get(flags);
+	}
+
+	/**
+	 * A rigid body with continuous collision detection enabled computes a time of
+	 * impact against the static meshes in its swept volume before being
+	 * translated. Only the bodies with this flag pay the extra cost.
+	 * 
+	 * @param continuousCollision
+	 */
+	public void setContinuousCollision(boolean continuousCollision) {
+		SpecialFlags.CONTINUOUS_COLLISION.set(this, continuousCollision);
+	}
+
+	/**
+	 * @return The index of this body in the packed arrays of the solver currently
+	 *         running, or -1.
+	 */
+	@Internal
+	public int getSolverIndex() {
+		return solverIndex;
+	}
+
+	@Internal
+	public void setSolverIndex(int solverIndex) {
+		this.solverIndex = solverIndex;
+	}
+
 	byte getFlags() {
 		return flags;
 	}
@@ -915,6 +1038,7 @@ public class RigidBody extends Identifier {
 
 	protected Wrapper addWrapper(WrapperBuilder builder, long ID) {
 		Wrapper wrapper = builder.build(this, ID);
+		wrapper.getNode().setFilter(category, mask);
 		wrappers.add(wrapper);
 		return wrapper;
 	}
@@ -975,6 +1099,7 @@ public class RigidBody extends Identifier {
 		super(bodyGenerator.nextID());
 		this.bodyToWorld = new Transform(b.bodyToWorld);
 		this.barycentricToWorld.loadFrom(b.barycentricToWorld);
+		Transform.compose(Transform.invert(barycentricToWorld, bodyToBarycentric), bodyToWorld, bodyToBarycentric);
 		this.velocity.set(b.velocity);
 		this.angularVelocity.set(b.angularVelocity);
 		this.contactProperties = new ContactProperties(b.contactProperties);
@@ -992,6 +1117,7 @@ public class RigidBody extends Identifier {
 
 		this.mask = b.mask;
 		this.category = b.category;
+		updateBroadPhaseFilter();
 		this.sleeping = false;
 		this.sleepCounter = 0;
 		this.flags = b.flags;
@@ -1012,6 +1138,66 @@ public class RigidBody extends Identifier {
 		state.angularVelocity.set(getAngularVelocity());
 	}
 
+	/**
+	 * Moves the body to a state received from another simulation, for example a
+	 * server. The barycentric transform and the velocities are copied, the origin
+	 * transform is derived from them. The body is woken up.
+	 * 
+	 * @param state
+	 */
+	public void loadState(RigidBodyState state) {
+		barycentricToWorld.loadFrom(state.barycentricToWorld);
+		Transform.compose(barycentricToWorld, bodyToBarycentric, bodyToWorld);
+		getVelocity().set(state.velocity);
+		getAngularVelocity().set(state.angularVelocity);
+		updateTransforms();
+		sleeping = false;
+		sleepCounter = 0;
+	}
+
+	/**
+	 * Writes the part of the state of the body which changes during a frame: the
+	 * transforms, the velocities, the pseudo-velocities and the sleep state. The
+	 * mass properties and the settings of the body aren't written.
+	 * 
+	 * @param dest
+	 */
+	@Internal
+	public void writeState(StateBuffer dest) {
+		dest.putMatrix(bodyToWorld.getRotation());
+		dest.putVector(bodyToWorld.getTranslation());
+		dest.putMatrix(barycentricToWorld.getRotation());
+		dest.putVector(barycentricToWorld.getTranslation());
+		dest.putVector(velocity);
+		dest.putVector(angularVelocity);
+		dest.putVector(pseudoVel);
+		dest.putVector(pseudoAngVel);
+		dest.putBoolean(sleeping);
+		dest.putInt(sleepCounter);
+	}
+
+	/**
+	 * Reads back a state written by {@link #writeState(StateBuffer)}. The
+	 * transforms of the wrappers and of the anchor points are recomputed from it,
+	 * the same way the engine does at the end of a frame.
+	 * 
+	 * @param src
+	 */
+	@Internal
+	public void readState(StateBuffer src) {
+		src.getMatrix(bodyToWorld.getRotation());
+		src.getVector(bodyToWorld.getTranslation());
+		src.getMatrix(barycentricToWorld.getRotation());
+		src.getVector(barycentricToWorld.getTranslation());
+		src.getVector(velocity);
+		src.getVector(angularVelocity);
+		src.getVector(pseudoVel);
+		src.getVector(pseudoAngVel);
+		sleeping = src.getBoolean();
+		sleepCounter = src.getInt();
+		updateTransforms();
+	}
+
 	/**
 	 * @return true if the mass of this body is infinite. A body with infinite mass
 	 *         cannot collide with meshes and isn't affected by collisions with
@@ -1,6 +1,7 @@
 package cataclysm.wrappers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -9,6 +10,7 @@ import cataclysm.GeometryQuery;
 import cataclysm.PhysicsStats;
 import cataclysm.PhysicsWorld;
 import cataclysm.RayTest;
+import cataclysm.annotations.Internal;
 import cataclysm.broadphase.AABB;
 import cataclysm.broadphase.ArrayBasedBroadPhaseTree;
 import cataclysm.broadphase.BroadPhaseTree;
@@ -20,6 +22,7 @@ import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
 import cataclysm.datastructures.BufferedManager;
 import cataclysm.datastructures.IDGenerator;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.parallel.PhysicsWorkerPool;
 import cataclysm.record.RigidBodyRepr;
 import math.vector.Matrix4f;
@@ -64,7 +67,7 @@ public class RigidBodyManager extends BufferedManager<RigidBody> implements Geom
 		this.world = world;
 		this.meshes = meshes;
 		this.stats = stats;
-		this.updator = new RigidBodyManagerUpdate(world.getParameters().getCollisionFilter(),
+		this.updator = new RigidBodyManagerUpdate(world.getParameters(), stats.profiler,
 				world.getParameters().getPadding());
 	}
 
@@ -73,7 +76,7 @@ public class RigidBodyManager extends BufferedManager<RigidBody> implements Geom
 		this.world = world;
 		this.meshes = meshes;
 		this.stats = stats;
-		this.updator = new RigidBodyManagerParallelUpdate(workers, world.getParameters().getCollisionFilter(),
+		this.updator = new RigidBodyManagerParallelUpdate(workers, world.getParameters(), stats.profiler,
 				world.getParameters().getPadding());
 	}
 
@@ -91,6 +94,16 @@ public class RigidBodyManager extends BufferedManager<RigidBody> implements Geom
 		return body;
 	}
 
+	public RigidBody[] newBodies(Matrix4f[] transforms, WrapperBuilder... builders) {
+		RigidBody[] bodies = new RigidBody[transforms.length];
+		for (int i = 0; i < transforms.length; i++) {
+			bodies[i] = new RigidBody(transforms[i], world.getParameters(), this.generator, wrapperGenerator, poly,
+					builders);
+		}
+		addAll(Arrays.asList(bodies));
+		return bodies;
+	}
+
 	public RigidBody newBody(RigidBodyRepr repr) {
 		RigidBody body = new RigidBody(world.getParameters(), this.generator, wrapperGenerator, repr);
 		addElement(body);
@@ -168,6 +181,70 @@ public class RigidBodyManager extends BufferedManager<RigidBody> implements Geom
 		return bodyContacts;
 	}
 
+	/**
+	 * @return false if the bodies are updated by several threads, in which case
+	 *         the state can't be written.
+	 */
+	@Internal
+	public boolean supportsSnapshots() {
+		return updator.supportsSnapshots();
+	}
+
+	/**
+	 * Writes the state of the bodies, of their contacts and of the broadphase. The
+	 * contacts active during the last frame are written as their index in the
+	 * lists of the wrappers, recorded on the contacts by the updator.
+	 * 
+	 * @param dest
+	 */
+	@Internal
+	public void writeState(StateBuffer dest) {
+		for (RigidBody body : this) {
+			body.writeState(dest);
+		}
+		updator.writeState(this, dest);
+
+		dest.putInt(bodyContacts.size());
+		for (int i = 0; i < bodyContacts.size(); i++) {
+			AbstractDoubleBodyContact contact = bodyContacts.get(i);
+			dest.putRef(contact.getWrapperA());
+			dest.putInt(contact.getStateIndex());
+		}
+		dest.putInt(meshContacts.size());
+		for (int i = 0; i < meshContacts.size(); i++) {
+			AbstractSingleBodyContact contact = meshContacts.get(i);
+			dest.putRef(contact.getWrapper());
+			dest.putInt(contact.getStateIndex());
+		}
+	}
+
+	/**
+	 * Reads back a state written by {@link #writeState(StateBuffer)}. The bodies
+	 * must be the same, in the same order.
+	 * 
+	 * @param src
+	 */
+	@Internal
+	public void readState(StateBuffer src) {
+		for (RigidBody body : this) {
+			body.readState(src);
+		}
+		updator.readState(this, src);
+
+		bodyContacts.clear();
+		int count = src.getInt();
+		for (int i = 0; i < count; i++) {
+			Wrapper wrapper = src.getRef();
+			bodyContacts.add(wrapper.getBodyContacts().get(src.getInt()));
+		}
+		meshContacts.clear();
+		count = src.getInt();
+		for (int i = 0; i < count; i++) {
+			Wrapper wrapper = src.getRef();
+			meshContacts.add(wrapper.getMeshContacts().get(src.getInt()));
+		}
+	}
+
 	@Override
 	public void cleanUp() {
 		super.cleanUp();
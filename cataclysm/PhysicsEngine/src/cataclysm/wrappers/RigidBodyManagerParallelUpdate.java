@@ -9,7 +9,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import cataclysm.CataclysmCallbacks;
-import cataclysm.CollisionFilter;
+import cataclysm.DefaultParameters;
 import cataclysm.Epsilons;
 import cataclysm.PhysicsStats;
 import cataclysm.RayTest;
@@ -24,9 +24,12 @@ import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
 import cataclysm.contact_creation.CollisionTest;
 import cataclysm.datastructures.Identifier;
+import cataclysm.datastructures.StateBuffer;
 import cataclysm.parallel.PhysicsWork;
 import cataclysm.parallel.PhysicsWorkerPool;
 import cataclysm.parallel.PhysicsWorkerThread;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
 import math.vector.Vector3f;
 
 /**
@@ -68,6 +71,19 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 		public void resetImpulses() {
 		}
 
+		@Override
+		public float getNormalImpulse() {
+			return 0;
+		}
+
+		@Override
+		public void getImpulses(int i, float[] dest, int offset) {
+		}
+
+		@Override
+		public void setImpulses(int i, float normal, float tangent, float bitangent) {
+		}
+
 		@Override
 		public void solveVelocity() {
 		}
@@ -80,6 +96,16 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 		public void solvePosition() {
 		}
 
+		@Override
+		protected void writeImpulses(StateBuffer dest) {
+			throw new IllegalStateException("Error, a contact proxy can't be part of a snapshot");
+		}
+
+		@Override
+		protected void readImpulses(StateBuffer src) {
+			throw new IllegalStateException("Error, a contact proxy can't be part of a snapshot");
+		}
+
 		public void setIndex(int index) {
 			this.index = index;
 		}
@@ -171,8 +197,8 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 
 		private final int updatorIndex;
 
-		public InternalUpdator(CollisionFilter filter, int updatorIndex) {
-			super(filter);
+		public InternalUpdator(DefaultParameters params, Profiler profiler, int updatorIndex) {
+			super(params, profiler);
 			this.updatorIndex = updatorIndex;
 			for (int i = 1; i <= Epsilons.MAX_CONTACTS; i++) {
 				storeContactPool[i] = new ArrayList<AbstractDoubleBodyContact>();
@@ -449,6 +475,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 		 * triangles
 		 */
 		private void recomputeContactLists(StaticMeshManager meshes) {
+			long start = profiler.start();
 
 			if (DEBUG) {
 				for (Wrapper wrapper : movedWrappers) {
@@ -463,7 +490,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 				BroadPhaseNode<Wrapper> node = wrapper.getNode();
 				AABB box = node.getBox();
 
-				bvh.boxTest(box, intersectedWrappers);
+				wrapperPairQuery(bvh.getTree(), wrapper, box, intersectedWrappers);
 				intersectedWrappers.remove(wrapper);
 
 				if (DEBUG && frame > 1) {
@@ -491,7 +518,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 
 				wrapper.getMeshContacts().removeIf(contact -> {
 					if (!intersectedTriangles.remove(contact.getTriangle())) {
-						contact.getTriangle().mesh.getBodyContacts().remove(contact);
+						contact.getTriangle().getMesh().getBodyContacts().remove(contact);
 						contact.refresh(null, null);
 						meshContactPool[contact.getMaxContacts()].add(contact);
 						return true;
@@ -510,6 +537,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 			// clear the list here
 			// because it will be filled when updating the bvh at the next update
 			this.movedWrappers.clear();
+			profiler.stop(Phase.PAIR_UPDATE, start);
 		}
 
 		/**
@@ -543,7 +571,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 				if (wrapper.getBody().isSleeping())
 					continue;
 				if (!wrapper.getBody().isKinematic())
-					collisionTest.meshContacts(wrapper, callbacks, meshContacts);
+					meshContactTest(collisionTest, wrapper, callbacks, meshContacts);
 
 				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
 				for (int j = 0; j < contacts.size(); j++) {
@@ -551,7 +579,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 					if (contact.getWrapperA() == wrapper || contact.getOther(wrapper).getBody().isSleeping()) {
 						// we make sure only one wrapper in the pair effectively
 						// calls the update
-						collisionTest.bodyContacts(contact, callbacks, bodyContacts);
+						bodyContactTest(collisionTest, contact, callbacks, bodyContacts);
 					}
 				}
 			}
@@ -593,13 +621,14 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 	private final HashSet<Wrapper> allNullWrappers = new HashSet<>();// we filter doubles
 	private final List<AbstractDoubleBodyContact> allContactsToInsert = new ArrayList<>();
 
-	RigidBodyManagerParallelUpdate(PhysicsWorkerPool workers, CollisionFilter filter, float padding) {
-		super(filter);
+	RigidBodyManagerParallelUpdate(PhysicsWorkerPool workers, DefaultParameters params, Profiler profiler,
+			float padding) {
+		super(params, profiler);
 		this.workers = workers;
 		this.PADDING = padding;
 		this.PADDING_SQUARED = padding * padding;
 		for (int i = 0; i < workers.getThreadCount(); i++) {
-			updators.add(new InternalUpdator(filter, i));
+			updators.add(new InternalUpdator(params, profiler, i));
 		}
 	}
 
@@ -677,7 +706,9 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 		stats.bodyToMeshContacts = 0;
 		stats.bodyToBodyContacts = 0;
 
+		long start = profiler.start();
 		bvh.updateLeafs(workers, this::shouldMoveAABB);
+		profiler.stop(Phase.BROADPHASE_REFIT, start);
 
 		// careful, takes forever
 		// if(DEBUG) {
@@ -810,7 +841,7 @@ class RigidBodyManagerParallelUpdate extends BodyUpdator {
 
 	@Override
 	public void rayTest(RayTest test) {
-		bvh.rayTest(test);
+		bvh.rayTest(test, BodyUpdator::wrapperRayTest);
 	}
 
 	@Override
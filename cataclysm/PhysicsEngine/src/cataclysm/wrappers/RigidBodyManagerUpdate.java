@@ -1,12 +1,12 @@
 package cataclysm.wrappers;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import cataclysm.CataclysmCallbacks;
-import cataclysm.CollisionFilter;
+import cataclysm.DefaultParameters;
 import cataclysm.PhysicsStats;
 import cataclysm.RayTest;
 import cataclysm.broadphase.AABB;
@@ -18,6 +18,9 @@ import cataclysm.broadphase.staticmeshes.Triangle;
 import cataclysm.contact_creation.AbstractDoubleBodyContact;
 import cataclysm.contact_creation.AbstractSingleBodyContact;
 import cataclysm.contact_creation.CollisionTest;
+import cataclysm.datastructures.StateBuffer;
+import cataclysm.profiling.Phase;
+import cataclysm.profiling.Profiler;
 import math.vector.Vector3f;
 
 /**
@@ -29,8 +32,13 @@ import math.vector.Vector3f;
  */
 class RigidBodyManagerUpdate extends BodyUpdator {
 
-	private final HashSet<Wrapper> intersectedWrappers = new HashSet<Wrapper>();
-	private final HashSet<Triangle> intersectedTriangles = new HashSet<Triangle>();
+	/**
+	 * The results of the queries are iterated in the order of the traversal of the
+	 * trees, the new contacts are then created in the same order whatever the
+	 * capacity the sets have grown to.
+	 */
+	private final LinkedHashSet<Wrapper> intersectedWrappers = new LinkedHashSet<Wrapper>();
+	private final LinkedHashSet<Triangle> intersectedTriangles = new LinkedHashSet<Triangle>();
 
 	private final BroadPhaseTree<Wrapper> bvh = new BroadPhaseTree<Wrapper>();
 //	private final ArrayBasedBroadPhaseTree<Wrapper> bvh = new ArrayBasedBroadPhaseTree<Wrapper>((i) -> new Wrapper[i]);
@@ -42,8 +50,8 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 	
 	private boolean firstUpdate = true;
 
-	RigidBodyManagerUpdate(CollisionFilter filter, float padding) {
-		super(filter);
+	RigidBodyManagerUpdate(DefaultParameters params, Profiler profiler, float padding) {
+		super(params, profiler);
 		this.PADDING = padding;
 		this.PADDING_SQUARED = padding * padding;
 	}
@@ -132,7 +140,7 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 		stats.bodyToMeshContacts += wrapper.getMeshContacts().size();
 
 		if (!isKinematic)
-			collisionTest.meshContacts(wrapper, callbacks, meshContacts);
+			meshContactTest(collisionTest, wrapper, callbacks, meshContacts);
 
 		ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
 		if (contacts.isEmpty()) {
@@ -145,12 +153,12 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 
 			if(contact.getOther(wrapper).getBody().isSleeping()) {
 				//we update the contact when one body is sleeping
-				collisionTest.bodyContacts(contact, callbacks, bodyContacts);
+				bodyContactTest(collisionTest, contact, callbacks, bodyContacts);
 			}else {
 				// we update the contact if both bodies are updated, which means the flag
 				// will be true the second time the function is called
 				if (contact.getUpdateFlagAndFlip()) {
-				collisionTest.bodyContacts(contact, callbacks, bodyContacts);
+				bodyContactTest(collisionTest, contact, callbacks, bodyContacts);
 				}
 			}
 		}
@@ -159,10 +167,13 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 	private void recomputeDoubleBodyContactList(Wrapper wrapper) {
 		intersectedWrappers.clear();
 
+		long start = profiler.start();
 		BroadPhaseNode<Wrapper> node = wrapper.getNode();
 		wrapper.placeBox(PADDING);
 		bvh.update(node);
-		bvh.boxTest(node.getBox(), intersectedWrappers);
+		profiler.stop(Phase.BROADPHASE_REFIT, start);
+		start = profiler.start();
+		wrapperPairQuery(bvh, wrapper, node.getBox(), intersectedWrappers);
 		
 //		final int node = wrapper.getNode();
 //		wrapper.placeBox(PADDING);
@@ -191,6 +202,7 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 				other.getBodyContacts().add(contact);
 			}
 		}
+		profiler.stop(Phase.PAIR_UPDATE, start);
 	}
 
 	private void recomputeSingleBodyContactList(Wrapper wrapper, StaticMeshManager meshes) {
@@ -199,6 +211,7 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 			return;
 		}
 
+		long start = profiler.start();
 		intersectedTriangles.clear();
 //		meshes.boxTriangleQuery(wrapper.getBox(), intersectedTriangles);
 		meshes.boxTriangleQuery(wrapper.getNode().getBox(), intersectedTriangles);
@@ -207,7 +220,7 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 
 		contacts.removeIf(contact -> {
 			if (!intersectedTriangles.remove(contact.getTriangle())) {
-				contact.getTriangle().mesh.getBodyContacts().remove(contact);
+				contact.getTriangle().getMesh().getBodyContacts().remove(contact);
 				contact.refresh(null, null);
 				meshContactPool[contact.getMaxContacts()].add(contact);
 				return true;
@@ -215,6 +228,143 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 			return false;
 		});
 		intersectedTriangles.forEach(triangle -> createMeshContact(wrapper, triangle));
+		profiler.stop(Phase.PAIR_UPDATE, start);
+	}
+
+	@Override
+	boolean supportsSnapshots() {
+		return true;
+	}
+
+	@Override
+	void writeState(RigidBodyManager bodies, StateBuffer dest) {
+		dest.putBoolean(firstUpdate);
+		bvh.writeState(dest);
+
+		// Each contact records its index in the list of its first wrapper, so that the
+		// lists don't have to be searched.
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				for (int j = 0; j < contacts.size(); j++) {
+					AbstractDoubleBodyContact contact = contacts.get(j);
+					if (contact.getWrapperA() == wrapper) {
+						contact.setStateIndex(j);
+					}
+				}
+				ArrayList<AbstractSingleBodyContact> meshContacts = wrapper.getMeshContacts();
+				for (int j = 0; j < meshContacts.size(); j++) {
+					meshContacts.get(j).setStateIndex(j);
+				}
+			}
+		}
+
+		// The order of the lists is written first. A contact between two wrappers is
+		// created by its first wrapper, the second one refers to its index in the list
+		// of the first one.
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				dest.putInt(contacts.size());
+				for (int j = 0; j < contacts.size(); j++) {
+					AbstractDoubleBodyContact contact = contacts.get(j);
+					Wrapper other = contact.getOther(wrapper);
+					dest.putRef(other);
+					dest.putInt(contact.getWrapperA() == wrapper ? -1 : contact.getStateIndex());
+				}
+			}
+		}
+
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				for (int j = 0; j < contacts.size(); j++) {
+					AbstractDoubleBodyContact contact = contacts.get(j);
+					if (contact.getWrapperA() == wrapper) {
+						contact.writeState(dest);
+					}
+				}
+				ArrayList<AbstractSingleBodyContact> meshContacts = wrapper.getMeshContacts();
+				dest.putInt(meshContacts.size());
+				for (int j = 0; j < meshContacts.size(); j++) {
+					AbstractSingleBodyContact contact = meshContacts.get(j);
+					dest.putRef(contact.getTriangle());
+					contact.writeState(dest);
+				}
+			}
+		}
+	}
+
+	@Override
+	void readState(RigidBodyManager bodies, StateBuffer src) {
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				releaseContacts(wrappers.get(i));
+			}
+		}
+
+		firstUpdate = src.getBoolean();
+		bvh.readState(src);
+
+		// The lists are read twice: the contacts are created from their first
+		// wrapper, then the second wrappers pick them from the complete lists.
+		src.mark();
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				int count = src.getInt();
+				for (int j = 0; j < count; j++) {
+					Wrapper other = src.getRef();
+					contacts.add(src.getInt() == -1 ? newBodyContact(wrapper, other) : null);
+				}
+			}
+		}
+		src.reset();
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				int count = src.getInt();
+				for (int j = 0; j < count; j++) {
+					Wrapper other = src.getRef();
+					int index = src.getInt();
+					if (index != -1) {
+						contacts.set(j, other.getBodyContacts().get(index));
+					}
+				}
+			}
+		}
+
+		for (RigidBody body : bodies) {
+			ArrayList<Wrapper> wrappers = body.getWrappers();
+			for (int i = 0; i < wrappers.size(); i++) {
+				Wrapper wrapper = wrappers.get(i);
+				ArrayList<AbstractDoubleBodyContact> contacts = wrapper.getBodyContacts();
+				for (int j = 0; j < contacts.size(); j++) {
+					AbstractDoubleBodyContact contact = contacts.get(j);
+					if (contact.getWrapperA() == wrapper) {
+						contact.readState(src);
+					}
+				}
+				ArrayList<AbstractSingleBodyContact> meshContacts = wrapper.getMeshContacts();
+				int count = src.getInt();
+				for (int j = 0; j < count; j++) {
+					Triangle triangle = src.getRef();
+					createMeshContact(wrapper, triangle);
+					meshContacts.get(j).readState(src);
+				}
+			}
+		}
 	}
 
 //	@Override
@@ -229,7 +379,7 @@ class RigidBodyManagerUpdate extends BodyUpdator {
 
 	@Override
 	public void rayTest(RayTest test) {
-		bvh.rayTest(test);
+		bvh.rayTest(test, BodyUpdator::wrapperRayTest);
 	}
 
 	@Override
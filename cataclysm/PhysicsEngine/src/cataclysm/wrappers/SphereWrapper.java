@@ -38,6 +38,46 @@ public final class SphereWrapper extends Wrapper {
 		dest.set(getCentroid());
 	}
 
+	@Override
+	public float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f normalDest) {
+		Vector3f center = getCentroid();
+		float length = rayTest(start, dir, maxLength, center, radius);
+		if (length < maxLength) {
+			normalDest.set((start.x + length * dir.x - center.x) / radius,
+					(start.y + length * dir.y - center.y) / radius, (start.z + length * dir.z - center.z) / radius);
+		}
+		return length;
+	}
+
+	/**
+	 * Computes the intersection of a ray with a sphere.
+	 * 
+	 * @param start     The start of the ray, must be outside the sphere.
+	 * @param dir       The direction of the ray, must have unit-length.
+	 * @param maxLength The length of the ray.
+	 * @param center    The center of the sphere.
+	 * @param radius    The radius of the sphere.
+	 * @return The distance to the hit point, or maxLength if the sphere isn't hit
+	 *         closer than maxLength or if start is inside the sphere.
+	 */
+	static float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f center, float radius) {
+		float ox = start.x - center.x;
+		float oy = start.y - center.y;
+		float oz = start.z - center.z;
+		float b = ox * dir.x + oy * dir.y + oz * dir.z;
+		float c = ox * ox + oy * oy + oz * oz - radius * radius;
+		if (c < 0 || b > 0) {
+			// start is inside the sphere or the ray is going away from it
+			return maxLength;
+		}
+		float h = b * b - c;
+		if (h < 0) {
+			return maxLength;
+		}
+		float length = -b - (float) Math.sqrt(h);
+		return length < maxLength ? length : maxLength;
+	}
+
 	@Override
 	public void scale(float scaleFactor) {
 		this.radius *= scaleFactor;
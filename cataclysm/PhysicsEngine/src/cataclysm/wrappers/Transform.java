@@ -5,6 +5,7 @@ import cataclysm.record.RecordFile;
 import math.MatrixOps;
 import math.vector.Matrix3f;
 import math.vector.Matrix4f;
+import math.vector.Quaternion;
 import math.vector.Vector3f;
 
 /**
@@ -218,6 +219,53 @@ public final class Transform implements ReadWriteObject {
 		return r;
 	}
 
+	/**
+	 * Converts the rotation to a unit quaternion.
+	 * 
+	 * @param dest
+	 * @return dest
+	 */
+	public Quaternion getRotation(Quaternion dest) {
+		// r.mij is the coefficient at column i and row j
+		float trace = r.m00 + r.m11 + r.m22;
+		if (trace > 0) {
+			float s = 0.5f / (float) Math.sqrt(trace + 1.0f);
+			dest.set((r.m12 - r.m21) * s, (r.m20 - r.m02) * s, (r.m01 - r.m10) * s, 0.25f / s);
+		} else if (r.m00 > r.m11 && r.m00 > r.m22) {
+			float s = 0.5f / (float) Math.sqrt(1.0f + r.m00 - r.m11 - r.m22);
+			dest.set(0.25f / s, (r.m10 + r.m01) * s, (r.m20 + r.m02) * s, (r.m12 - r.m21) * s);
+		} else if (r.m11 > r.m22) {
+			float s = 0.5f / (float) Math.sqrt(1.0f + r.m11 - r.m00 - r.m22);
+			dest.set((r.m10 + r.m01) * s, 0.25f / s, (r.m21 + r.m12) * s, (r.m20 - r.m02) * s);
+		} else {
+			float s = 0.5f / (float) Math.sqrt(1.0f + r.m22 - r.m00 - r.m11);
+			dest.set((r.m20 + r.m02) * s, (r.m21 + r.m12) * s, 0.25f / s, (r.m01 - r.m10) * s);
+		}
+		return dest;
+	}
+
+	/**
+	 * Sets the rotation from a quaternion.
+	 * 
+	 * @param q A unit quaternion
+	 * @return this
+	 */
+	public Transform setRotation(Quaternion q) {
+		float xx = q.x * q.x, yy = q.y * q.y, zz = q.z * q.z;
+		float xy = q.x * q.y, xz = q.x * q.z, yz = q.y * q.z;
+		float wx = q.w * q.x, wy = q.w * q.y, wz = q.w * q.z;
+		r.m00 = 1.0f - 2.0f * (yy + zz);
+		r.m01 = 2.0f * (xy + wz);
+		r.m02 = 2.0f * (xz - wy);
+		r.m10 = 2.0f * (xy - wz);
+		r.m11 = 1.0f - 2.0f * (xx + zz);
+		r.m12 = 2.0f * (yz + wx);
+		r.m20 = 2.0f * (xz + wy);
+		r.m21 = 2.0f * (yz - wx);
+		r.m22 = 1.0f - 2.0f * (xx + yy);
+		return this;
+	}
+
 	public Vector3f getTranslation() {
 		return t;
 	}
@@ -248,4 +296,39 @@ public final class Transform implements ReadWriteObject {
 		return 3 * 4 + 9 * 4;
 	}
 
+	/**
+	 * Reads a transform written by {@link #writeCompact(RecordFile, Quaternion)}.
+	 * 
+	 * @param f
+	 * @param temp A temporary quaternion
+	 */
+	public void readCompact(RecordFile f, Quaternion temp) {
+		temp.set(f.readFloat(), f.readFloat(), f.readFloat(), f.readFloat());
+		setRotation(temp);
+		f.readVector3f(t);
+	}
+
+	/**
+	 * Writes the rotation as a quaternion followed by the translation.
+	 * 
+	 * @param f
+	 * @param temp A temporary quaternion
+	 */
+	public void writeCompact(RecordFile f, Quaternion temp) {
+		getRotation(temp);
+		f.writeFloat(temp.x);
+		f.writeFloat(temp.y);
+		f.writeFloat(temp.z);
+		f.writeFloat(temp.w);
+		f.writeVector3f(t);
+	}
+
+	/**
+	 * @return The size of the transform written by
+	 *         {@link #writeCompact(RecordFile, Quaternion)}.
+	 */
+	public static int compactSize() {
+		return 4 * 4 + 3 * 4;
+	}
+
 }
@@ -0,0 +1,162 @@
+package cataclysm.wrappers;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cataclysm.annotations.Internal;
+import math.vector.Quaternion;
+import math.vector.Vector3f;
+
+/**
+ * Publishes the transforms of the bodies at the end of each frame, so that
+ * other threads (rendering, networking) can read them at their own rate while
+ * the simulation is running. Disabled by default. <br>
+ * <br>
+ * The buffer has three slots: the simulation writes the next snapshot while
+ * readers copy the latest two. A slot carries the sequence number of the
+ * snapshot it contains, a reader checks it before and after copying a slot and
+ * retries if the slot has been overwritten meanwhile. Readers never block the
+ * simulation and never see a partially written snapshot.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class TransformBuffer {
+
+	private static final int SLOTS = 3;
+
+	private final TransformSnapshot[] slots = new TransformSnapshot[SLOTS];
+	private final AtomicLongArray versions = new AtomicLongArray(SLOTS);
+	private final AtomicLong latest = new AtomicLong(-1);
+	private volatile boolean enabled = false;
+
+	private final Quaternion rotation = new Quaternion();
+
+	public TransformBuffer() {
+		for (int i = 0; i < SLOTS; i++) {
+			slots[i] = new TransformSnapshot();
+			versions.set(i, -1);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled true to publish a snapshot at the end of each frame.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Publishes the transforms of the bodies, called by the simulation at the end
+	 * of each frame.
+	 *
+	 * @param bodies
+	 * @param frame  The frame which has just been simulated.
+	 * @param time   The time in the simulation, in s.
+	 */
+	@Internal
+	public void publish(RigidBodyManager bodies, long frame, double time) {
+		long sequence = latest.get() + 1;
+		int slot = (int) (sequence % SLOTS);
+		versions.set(slot, -1);
+		VarHandle.storeStoreFence();
+
+		TransformSnapshot snapshot = slots[slot];
+		snapshot.reserve(bodies.size());
+		long[] IDs = snapshot.IDs;
+		float[] transforms = snapshot.transforms;
+		int offset = 0;
+		int size = 0;
+		for (RigidBody body : bodies) {
+			Transform transform = body.getOriginTransform();
+			Vector3f translation = transform.getTranslation();
+			transform.getRotation(rotation);
+			IDs[size++] = body.getID();
+			transforms[offset++] = translation.x;
+			transforms[offset++] = translation.y;
+			transforms[offset++] = translation.z;
+			transforms[offset++] = rotation.x;
+			transforms[offset++] = rotation.y;
+			transforms[offset++] = rotation.z;
+			transforms[offset++] = rotation.w;
+		}
+		snapshot.size = size;
+		snapshot.frame = frame;
+		snapshot.time = time;
+		snapshot.nanoTime = System.nanoTime();
+
+		versions.lazySet(slot, sequence);
+		latest.set(sequence);
+	}
+
+	/**
+	 * Copies the latest snapshot, may be called by any thread.
+	 *
+	 * @param dest
+	 * @return false if no snapshot has been published yet.
+	 */
+	public boolean read(TransformSnapshot dest) {
+		while (true) {
+			long sequence = latest.get();
+			if (sequence < 0) {
+				return false;
+			}
+			if (copy(sequence, dest)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Copies the latest two snapshots, may be called by any thread. They are
+	 * consecutive frames as long as the buffer stays enabled, and can be
+	 * interpolated with
+	 * {@link TransformSnapshot#interpolate(TransformSnapshot, TransformSnapshot, float)}.
+	 *
+	 * @param previous
+	 * @param latest
+	 * @return false if less than two snapshots have been published yet.
+	 */
+	public boolean read(TransformSnapshot previous, TransformSnapshot latest) {
+		while (true) {
+			long sequence = this.latest.get();
+			if (sequence < 1) {
+				return false;
+			}
+			if (copy(sequence - 1, previous) && copy(sequence, latest)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of snapshots published since the creation of the buffer.
+	 */
+	public long getPublishedCount() {
+		return latest.get() + 1;
+	}
+
+	private boolean copy(long sequence, TransformSnapshot dest) {
+		int slot = (int) (sequence % SLOTS);
+		if (versions.get(slot) != sequence) {
+			return false;
+		}
+		TransformSnapshot src = slots[slot];
+		int size = src.size;
+		long[] IDs = src.IDs;
+		float[] transforms = src.transforms;
+		if (size > IDs.length || size * TransformSnapshot.FLOATS_PER_BODY > transforms.length) {
+			// the slot is being overwritten
+			return false;
+		}
+		dest.copy(src, size, IDs, transforms);
+		VarHandle.loadLoadFence();
+		return versions.get(slot) == sequence;
+	}
+
+}
@@ -0,0 +1,232 @@
+package cataclysm.wrappers;
+
+import cataclysm.datastructures.LongIntHashMap;
+import math.Interpolation;
+import math.vector.Quaternion;
+import math.vector.Vector3f;
+
+/**
+ * A copy of the transforms of the bodies of a simulation at the end of a frame,
+ * read from a {@link TransformBuffer}. The transform of a body is the transform
+ * of its origin, see {@link RigidBody#getOriginTransform()}. It is packed as
+ * {@value #FLOATS_PER_BODY} consecutive floats: the translation (x, y, z)
+ * followed by the rotation as a unit quaternion (x, y, z, w). <br>
+ * A snapshot belongs to the thread reading it, it isn't modified by the
+ * simulation.
+ *
+ * @author Briac Toussaint
+ *
+ */
+public final class TransformSnapshot {
+
+	/**
+	 * The number of floats describing the transform of a body.
+	 */
+	public static final int FLOATS_PER_BODY = 7;
+
+	long frame;
+	double time;
+	long nanoTime;
+	int size;
+	long[] IDs = new long[0];
+	float[] transforms = new float[0];
+
+	private final LongIntHashMap indices = new LongIntHashMap();
+	private boolean indexed = false;
+
+	private final Quaternion q1 = new Quaternion();
+	private final Quaternion q2 = new Quaternion();
+
+	public TransformSnapshot() {
+
+	}
+
+	/**
+	 * @return The frame at the end of which the snapshot has been taken.
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * @return The time in the simulation at which the snapshot has been taken, in
+	 *         s.
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return The value of {@link System#nanoTime()} when the snapshot has been
+	 *         published.
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * @return The number of bodies in the snapshot.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getID(int index) {
+		return IDs[index];
+	}
+
+	/**
+	 * @param ID The ID of a body.
+	 * @return The index of the body in the snapshot, or -1 if the body isn't part
+	 *         of the snapshot.
+	 */
+	public int indexOf(long ID) {
+		if (!indexed) {
+			indices.clear();
+			indices.reserve(size);
+			for (int i = 0; i < size; i++) {
+				indices.put(IDs[i], i);
+			}
+			indexed = true;
+		}
+		return indices.get(ID, -1);
+	}
+
+	public Vector3f getPosition(int index, Vector3f dest) {
+		int offset = index * FLOATS_PER_BODY;
+		dest.set(transforms[offset], transforms[offset + 1], transforms[offset + 2]);
+		return dest;
+	}
+
+	public Quaternion getRotation(int index, Quaternion dest) {
+		int offset = index * FLOATS_PER_BODY + 3;
+		dest.set(transforms[offset], transforms[offset + 1], transforms[offset + 2], transforms[offset + 3]);
+		return dest;
+	}
+
+	/**
+	 * Loads the transform of a body.
+	 *
+	 * @param index
+	 * @param dest
+	 * @return dest
+	 */
+	public Transform getTransform(int index, Transform dest) {
+		getPosition(index, dest.getTranslation());
+		dest.setRotation(getRotation(index, q1));
+		return dest;
+	}
+
+	/**
+	 * The packed transforms of the bodies, the array may be longer than
+	 * {@link #size()} * {@value #FLOATS_PER_BODY}. It should be read only, for
+	 * example to upload the transforms to the GPU in bulk.
+	 *
+	 * @return The packed transforms.
+	 */
+	public float[] getTransforms() {
+		return transforms;
+	}
+
+	/**
+	 * Interpolates the transforms of the bodies between two consecutive snapshots.
+	 * The translations are interpolated linearly and the rotations spherically.
+	 * The bodies of latest which are missing from previous are copied as is, the
+	 * bodies removed in latest are dropped.
+	 *
+	 * @param previous
+	 * @param latest
+	 * @param amount   0 for the transforms of previous, 1 for those of latest.
+	 */
+	public void interpolate(TransformSnapshot previous, TransformSnapshot latest, float amount) {
+		if (previous == this || latest == this) {
+			throw new IllegalArgumentException("Error, a snapshot cannot be interpolated into itself");
+		}
+		reserve(latest.size);
+		frame = latest.frame;
+		time = Interpolation.linearInterpolation(previous.time, latest.time, amount);
+		nanoTime = previous.nanoTime + (long) ((latest.nanoTime - previous.nanoTime) * (double) amount);
+		size = latest.size;
+		indexed = false;
+		System.arraycopy(latest.IDs, 0, IDs, 0, size);
+
+		float[] a = previous.transforms;
+		float[] b = latest.transforms;
+		for (int i = 0; i < size; i++) {
+			int j = i < previous.size && previous.IDs[i] == IDs[i] ? i : previous.indexOf(IDs[i]);
+			int dest = i * FLOATS_PER_BODY;
+			if (j == -1) {
+				System.arraycopy(b, dest, transforms, dest, FLOATS_PER_BODY);
+				continue;
+			}
+			int src = j * FLOATS_PER_BODY;
+			for (int k = 0; k < 3; k++) {
+				transforms[dest + k] = Interpolation.linearInterpolation(a[src + k], b[dest + k], amount);
+			}
+			previous.getRotation(j, q1);
+			latest.getRotation(i, q2);
+			Interpolation.sphericalInterpolation(q1, q2, q1, amount);
+			transforms[dest + 3] = q1.x;
+			transforms[dest + 4] = q1.y;
+			transforms[dest + 5] = q1.z;
+			transforms[dest + 6] = q1.w;
+		}
+	}
+
+	/**
+	 * Interpolates the transforms of the bodies between two consecutive snapshots
+	 * at a given instant. A render thread should display the simulation one time
+	 * step in the past, so that there is always a snapshot after the displayed
+	 * instant.
+	 *
+	 * @param previous
+	 * @param latest
+	 * @param nanoTime The instant, as given by {@link System#nanoTime()}. It is
+	 *                 clamped between the publication of both snapshots.
+	 * @see #interpolate(TransformSnapshot, TransformSnapshot, float)
+	 */
+	public void interpolateAt(TransformSnapshot previous, TransformSnapshot latest, long nanoTime) {
+		long delta = latest.nanoTime - previous.nanoTime;
+		float amount = delta <= 0 ? 1.0f : (float) ((nanoTime - previous.nanoTime) / (double) delta);
+		interpolate(previous, latest, Math.max(0.0f, Math.min(amount, 1.0f)));
+	}
+
+	/**
+	 * Makes room for the given number of bodies, the content of the snapshot is
+	 * lost if the arrays are reallocated.
+	 *
+	 * @param capacity
+	 */
+	void reserve(int capacity) {
+		if (IDs.length < capacity) {
+			int length = Math.max(capacity, 2 * IDs.length);
+			IDs = new long[length];
+			transforms = new float[length * FLOATS_PER_BODY];
+		}
+	}
+
+	/**
+	 * Copies the given snapshot in this one.
+	 *
+	 * @param src
+	 * @param size   The number of bodies to copy.
+	 * @param IDs    The array of IDs of src.
+	 * @param values The array of transforms of src.
+	 */
+	void copy(TransformSnapshot src, int size, long[] IDs, float[] values) {
+		reserve(size);
+		this.frame = src.frame;
+		this.time = src.time;
+		this.nanoTime = src.nanoTime;
+		this.size = size;
+		this.indexed = false;
+		System.arraycopy(IDs, 0, this.IDs, 0, size);
+		System.arraycopy(values, 0, this.transforms, 0, size * FLOATS_PER_BODY);
+	}
+
+	@Override
+	public String toString() {
+		return "TransformSnapshot [frame=" + frame + ", time=" + time + ", size=" + size + "]";
+	}
+
+}
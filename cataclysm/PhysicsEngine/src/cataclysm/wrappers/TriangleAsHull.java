@@ -119,6 +119,36 @@ public final class TriangleAsHull extends ConvexHullWrapper {
 
 		super.getCentroid().set(cx, cy, cz);
 	}
+
+	/**
+	 * Same as {@link #setFrom(Triangle)} but the triangle is translated by
+	 * (dx, dy, dz).
+	 * 
+	 * @param triangle
+	 * @param dx
+	 * @param dy
+	 * @param dz
+	 */
+	public void setFrom(Triangle triangle, float dx, float dy, float dz) {
+		setFrom(triangle);
+
+		for (int i = 0; i < 9; i += 3) {
+			data.floatData[i + 0] += dx;
+			data.floatData[i + 1] += dy;
+			data.floatData[i + 2] += dz;
+		}
+		for (int i = 15; i < 21; i += 3) {
+			data.floatData[i + 0] += dx;
+			data.floatData[i + 1] += dy;
+			data.floatData[i + 2] += dz;
+		}
+
+		float shift = data.floatData[9] * dx + data.floatData[10] * dy + data.floatData[11] * dz;
+		data.floatData[21] += shift;
+		data.floatData[22] -= shift;
+
+		super.getCentroid().translate(dx, dy, dz);
+	}
 	
 
 	@Override
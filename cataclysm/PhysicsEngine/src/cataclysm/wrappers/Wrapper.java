@@ -256,6 +256,21 @@ public abstract sealed class Wrapper extends Identifier
 	 */
 	public abstract void getSupport(Vector3f direction, boolean negate, Vector3f dest);
 
+	/**
+	 * Computes the exact intersection of a ray with this wrapper. A ray starting
+	 * inside the wrapper doesn't hit it. No memory is allocated, the method can be
+	 * called from several threads when the simulation isn't being updated.
+	 * 
+	 * @param start      The start of the ray in world-space.
+	 * @param dir        The direction of the ray, must have unit-length.
+	 * @param maxLength  The length of the ray.
+	 * @param normalDest The normal of the wrapper at the hit point, only set if
+	 *                   the wrapper is hit.
+	 * @return The distance to the hit point, or maxLength if the wrapper isn't hit
+	 *         closer than maxLength.
+	 */
+	public abstract float rayTest(Vector3f start, Vector3f dir, float maxLength, Vector3f normalDest);
+
 	/**
 	 * Applies a scaling to this wrapper from its center of mass.
 	 * 
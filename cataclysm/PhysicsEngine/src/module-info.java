@@ -17,6 +17,8 @@ module org.briac.PhysicsEngine {
 	exports cataclysm.record;
 	exports cataclysm.integrators;
 	exports cataclysm.broadphase;
+	exports cataclysm.profiling;
 
 	requires transitive org.briac.MathLib;
+	requires transitive jdk.jfr;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package math;
 
+import math.vector.Quaternion;
 import math.vector.Vector2f;
 import math.vector.Vector3f;
 import math.vector.Vector4f;
@@ -210,6 +211,50 @@ public class Interpolation {
 		return angle;
 	}
 
+	/**
+	 * Calcule l'interpolation sphérique entre deux rotations. Le plus court chemin
+	 * entre les deux rotations est suivi, la vitesse angulaire est constante.
+	 * 
+	 * @param a      Un quaternion unitaire.
+	 * @param b      Un quaternion unitaire.
+	 * @param dest   Le quaternion dans lequel stocker le résultat ou null si un
+	 *               quaternion doit être créé.
+	 * @param amount
+	 * @return Le résultat de l'interpolation.
+	 */
+	public static Quaternion sphericalInterpolation(Quaternion a, Quaternion b, Quaternion dest, float amount) {
+		if (dest == null) {
+			dest = new Quaternion();
+		}
+		float cos = Quaternion.dot(a, b);
+		float sign = 1.0f;
+		if (cos < 0) {
+			// q et -q représentent la même rotation
+			cos = -cos;
+			sign = -1.0f;
+		}
+
+		float wa, wb;
+		if (cos > 0.9995f) {
+			// les rotations sont presque confondues, une interpolation linéaire
+			// normalisée est plus précise
+			wa = 1.0f - amount;
+			wb = sign * amount;
+		} else {
+			float angle = (float) Math.acos(cos);
+			float sin = (float) Math.sin(angle);
+			wa = (float) Math.sin((1.0f - amount) * angle) / sin;
+			wb = sign * (float) Math.sin(amount * angle) / sin;
+		}
+
+		dest.set(wa * a.x + wb * b.x, wa * a.y + wb * b.y, wa * a.z + wb * b.z, wa * a.w + wb * b.w);
+		float length = dest.length();
+		if (length != 0) {
+			dest.scale(1.0f / length);
+		}
+		return dest;
+	}
+
 	/**
 	 * Attribue un poids � chaque sommet du triangle en fonction de la position du
 	 * point d'interpolation. La somme des poids vaut toujours 1.